@@ -10,6 +10,7 @@ import android.support.annotation.Nullable;
 import android.support.annotation.XmlRes;
 import android.util.Log;
 
+import com.urbanairship.automation.Automation;
 import com.urbanairship.util.UAStringUtil;
 
 /**
@@ -209,6 +210,30 @@ public class AirshipConfigOptions {
     @ColorInt
     public final int notificationAccentColor;
 
+    /**
+     * The maximum number of automation schedules that can be stored at once.
+     * <p/>
+     * Defaults to {@link com.urbanairship.automation.Automation#SCHEDULES_LIMIT}.
+     */
+    public final long automationSchedulesLimit;
+
+    /**
+     * Flag indicating whether preferences are loaded lazily. When enabled, takeOff does not wait
+     * for every preference to be read. Preferences are loaded in bulk in the background, and any
+     * preference read before then is loaded on its own.
+     * <p/>
+     * The flag defaults to false.
+     */
+    public final boolean lazyPreferenceLoadingEnabled;
+
+    /**
+     * Flag indicating whether the SDK databases use write-ahead logging. When enabled, reads do
+     * not wait for writes in progress on other threads. Requires Jelly Bean or newer.
+     * <p/>
+     * The flag defaults to false.
+     */
+    public final boolean writeAheadLoggingEnabled;
+
     private AirshipConfigOptions(Builder builder) {
         this.productionAppKey = builder.productionAppKey;
         this.productionAppSecret = builder.productionAppSecret;
@@ -232,6 +257,9 @@ public class AirshipConfigOptions {
         this.notificationIcon = builder.notificationIcon;
         this.notificationAccentColor = builder.notificationAccentColor;
         this.walletUrl = builder.walletUrl;
+        this.automationSchedulesLimit = builder.automationSchedulesLimit;
+        this.lazyPreferenceLoadingEnabled = builder.lazyPreferenceLoadingEnabled;
+        this.writeAheadLoggingEnabled = builder.writeAheadLoggingEnabled;
     }
 
     /**
@@ -311,6 +339,9 @@ public class AirshipConfigOptions {
         private static final String FIELD_NOTIFICATION_ICON = "notificationIcon";
         private static final String FIELD_NOTIFICATION_ACCENT_COLOR = "notificationAccentColor";
         private static final String FIELD_WALLET_URL = "walletUrl";
+        private static final String FIELD_AUTOMATION_SCHEDULES_LIMIT = "automationSchedulesLimit";
+        private static final String FIELD_LAZY_PREFERENCE_LOADING_ENABLED = "lazyPreferenceLoadingEnabled";
+        private static final String FIELD_WRITE_AHEAD_LOGGING_ENABLED = "writeAheadLoggingEnabled";
 
         private String productionAppKey;
         private String productionAppSecret;
@@ -334,6 +365,9 @@ public class AirshipConfigOptions {
         private int notificationIcon;
         private int notificationAccentColor;
         private String walletUrl = "https://wallet-api.urbanairship.com";
+        private long automationSchedulesLimit = Automation.SCHEDULES_LIMIT;
+        private boolean lazyPreferenceLoadingEnabled = false;
+        private boolean writeAheadLoggingEnabled = false;
 
         /**
          * Apply the options from the default properties file {@code airshipconfig.properties}.
@@ -522,6 +556,18 @@ public class AirshipConfigOptions {
                         case FIELD_WALLET_URL:
                             this.setWalletUrl(configParser.getString(i));
                             break;
+
+                        case FIELD_AUTOMATION_SCHEDULES_LIMIT:
+                            this.setAutomationSchedulesLimit(configParser.getLong(i));
+                            break;
+
+                        case FIELD_LAZY_PREFERENCE_LOADING_ENABLED:
+                            this.setLazyPreferenceLoadingEnabled(configParser.getBoolean(i));
+                            break;
+
+                        case FIELD_WRITE_AHEAD_LOGGING_ENABLED:
+                            this.setWriteAheadLoggingEnabled(configParser.getBoolean(i));
+                            break;
                     }
                 } catch (Exception e) {
                     Logger.error("Unable to set config field '" + configParser.getName(i) + "' due to invalid configuration value.", e);
@@ -778,6 +824,39 @@ public class AirshipConfigOptions {
             return this;
         }
 
+        /**
+         * Set the maximum number of automation schedules that can be stored at once.
+         *
+         * @param automationSchedulesLimit The automation schedules limit.
+         * @return The config options builder.
+         */
+        public Builder setAutomationSchedulesLimit(long automationSchedulesLimit) {
+            this.automationSchedulesLimit = automationSchedulesLimit;
+            return this;
+        }
+
+        /**
+         * Set the flag indicating whether preferences are loaded lazily.
+         *
+         * @param lazyPreferenceLoadingEnabled The flag indicating whether preferences are loaded lazily.
+         * @return The config options builder.
+         */
+        public Builder setLazyPreferenceLoadingEnabled(boolean lazyPreferenceLoadingEnabled) {
+            this.lazyPreferenceLoadingEnabled = lazyPreferenceLoadingEnabled;
+            return this;
+        }
+
+        /**
+         * Set the flag indicating whether the SDK databases use write-ahead logging.
+         *
+         * @param writeAheadLoggingEnabled The flag indicating whether the SDK databases use write-ahead logging.
+         * @return The config options builder.
+         */
+        public Builder setWriteAheadLoggingEnabled(boolean writeAheadLoggingEnabled) {
+            this.writeAheadLoggingEnabled = writeAheadLoggingEnabled;
+            return this;
+        }
+
         /**
          * Builds the config options. Will fail if any of the following preconditions are not met.
          * <p/>
@@ -817,6 +896,10 @@ public class AirshipConfigOptions {
                 Logger.warn("AirshipConfigOptions - The backgroundReportingIntervalMS " + backgroundReportingIntervalMS + " may provide less detailed analytic reports.");
             }
 
+            if (automationSchedulesLimit <= 0) {
+                throw new IllegalArgumentException("Invalid config - automationSchedulesLimit must be greater than 0.");
+            }
+
             if (productionAppKey != null && productionAppKey.equals(developmentAppKey)) {
                 Logger.warn("Production App Key matches Development App Key");
             }
@@ -2,6 +2,7 @@
 
 package com.urbanairship;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.ContentObserver;
@@ -16,6 +17,7 @@ import com.urbanairship.util.UAStringUtil;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
@@ -30,6 +32,12 @@ import java.util.concurrent.Executors;
 public final class PreferenceDataStore {
 
     private static final String WHERE_CLAUSE_KEY = PreferencesDataManager.COLUMN_NAME_KEY + " = ?";
+    private static final String WHERE_CLAUSE_CHANGED = PreferencesDataManager.COLUMN_NAME_VERSION + " > ?";
+    private static final String[] CHANGED_PROJECTION = new String[] {
+            PreferencesDataManager.COLUMN_NAME_KEY,
+            PreferencesDataManager.COLUMN_NAME_VALUE,
+            PreferencesDataManager.COLUMN_NAME_VERSION
+    };
 
     Executor executor = Executors.newSingleThreadExecutor();
 
@@ -39,6 +47,26 @@ public final class PreferenceDataStore {
 
     private final List<PreferenceChangeListener> listeners = new ArrayList<>();
 
+    // Last change version read from the database. Rows written before versioning have
+    // version 0, so -1 reads every row.
+    private volatile long lastVersion = -1;
+
+    // True until the preferences are loaded in bulk when loading lazily
+    private volatile boolean isLoadingLazily;
+
+    private final ContentObserver observer = new ContentObserver(null) {
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return false;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            Logger.verbose("PreferenceDataStore - Preferences updated.");
+            scheduleSyncChanges();
+        }
+    };
 
     /**
      * Listener for when preferences changes either by the
@@ -91,35 +119,34 @@ public final class PreferenceDataStore {
 
     /**
      * Initializes the preference data store.
+     *
+     * @param loadLazily {@code true} to load the preferences in bulk in the background instead of
+     * blocking, loading any preference that is accessed before then on its own. Otherwise
+     * {@code false}.
      */
-    protected void init() {
-        Cursor cursor = resolver.query(UrbanAirshipProvider.getPreferencesContentUri(context), null, null, null, null);
-        if (cursor == null) {
-            return;
-        }
-
-        int keyIndex = cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_KEY);
-        int valueIndex = cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_VALUE);
-
-        while (cursor.moveToNext()) {
-            String key = cursor.getString(keyIndex);
-            String value = cursor.getString(valueIndex);
-            Preference preference = new Preference(key, value);
-            preference.registerObserver();
+    protected void init(boolean loadLazily) {
+        Uri preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(context);
 
-            preferences.put(key, preference);
+        if (loadLazily) {
+            isLoadingLazily = true;
+        } else {
+            // The first sync reads every row, so this loads all of the preferences
+            syncChanges();
         }
 
-        cursor.close();
+        // A single observer for every preference, changes are read from the change version
+        resolver.registerContentObserver(preferencesUri, true, observer);
+
+        // Loads the preferences when loading lazily, otherwise picks up any changes made before
+        // the observer was registered
+        scheduleSyncChanges();
     }
 
     /**
      * Unregisters any observers.
      */
     protected void tearDown() {
-        for (Preference preference : preferences.values()) {
-            preference.unregisterObserver();
-        }
+        resolver.unregisterContentObserver(observer);
     }
 
     /**
@@ -130,8 +157,8 @@ public final class PreferenceDataStore {
      * @return The boolean value for the preference or defaultValue if it doesn't exist.
      */
     public boolean getBoolean(@NonNull String key, boolean defaultValue) {
-        String value = getPreference(key).get();
-        return value == null ? defaultValue : Boolean.valueOf(value);
+        Boolean value = getPreference(key).getBoolean();
+        return value == null ? defaultValue : value;
     }
 
     /**
@@ -156,16 +183,8 @@ public final class PreferenceDataStore {
      * @return The long value for the preference or defaultValue if it doesn't exist.
      */
     public long getLong(@NonNull String key, long defaultValue) {
-        String value = getPreference(key).get();
-        if (value == null) {
-            return defaultValue;
-        }
-
-        try {
-            return Long.parseLong(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        Long value = getPreference(key).getLong();
+        return value == null ? defaultValue : value;
     }
 
     /**
@@ -177,16 +196,8 @@ public final class PreferenceDataStore {
      * @return The integer value for the preference or defaultValue if it doesn't exist.
      */
     public int getInt(@NonNull String key, int defaultValue) {
-        String value = getPreference(key).get();
-        if (value == null) {
-            return defaultValue;
-        }
-
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        Integer value = getPreference(key).getInt();
+        return value == null ? defaultValue : value;
     }
 
     /**
@@ -196,13 +207,7 @@ public final class PreferenceDataStore {
      * @return The value for the preference if available or {@link JsonValue#NULL} if it doesn't exist.
      */
     public JsonValue getJsonValue(@NonNull String key) {
-        try {
-            return JsonValue.parseString(getPreference(key).get());
-        } catch (JsonException e) {
-            // Should never happen
-            Logger.debug("Unable to parse preference value: " + key, e);
-            return JsonValue.NULL;
-        }
+        return getPreference(key).getJsonValue();
     }
 
     /**
@@ -296,6 +301,104 @@ public final class PreferenceDataStore {
         return getPreference(key).putSync(stringValue);
     }
 
+    /**
+     * Creates an editor to change several preferences in a single database transaction.
+     *
+     * @return A preference editor.
+     */
+    @NonNull
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Writes a batch of preference changes in a single transaction and notifies observers of
+     * each changed preference.
+     *
+     * @param changes Map of preference to value. A {@code null} value removes the preference.
+     * @return <code>true</code> if the changes were successfully written to the database,
+     * otherwise <code>false</code>
+     */
+    private boolean writeValues(@NonNull Map<Preference, String> changes) {
+        Uri preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(context);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+
+        for (Map.Entry<Preference, String> change : changes.entrySet()) {
+            // Removed preferences are written with a null value so the removal is versioned
+            operations.add(ContentProviderOperation.newInsert(preferencesUri)
+                                                   .withValue(PreferencesDataManager.COLUMN_NAME_KEY, change.getKey().key)
+                                                   .withValue(PreferencesDataManager.COLUMN_NAME_VALUE, change.getValue())
+                                                   .build());
+        }
+
+        Logger.verbose("PreferenceDataStore - Saving " + operations.size() + " preferences.");
+        if (resolver.applyBatch(operations) == null) {
+            return false;
+        }
+
+        for (Preference preference : changes.keySet()) {
+            resolver.notifyChange(preference.uri, observer);
+        }
+
+        return true;
+    }
+
+    /**
+     * Schedules reading the preferences changed by other processes.
+     */
+    private void scheduleSyncChanges() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                syncChanges();
+            }
+        });
+    }
+
+    /**
+     * Reads the preferences changed since the last seen change version, or every preference on
+     * the first read. After init it runs on the executor so it is ordered after any pending
+     * writes from this process.
+     */
+    private void syncChanges() {
+        long version = lastVersion;
+        Cursor cursor = resolver.query(UrbanAirshipProvider.getPreferencesContentUri(context), CHANGED_PROJECTION,
+                WHERE_CLAUSE_CHANGED, new String[] { String.valueOf(version) }, PreferencesDataManager.COLUMN_NAME_VERSION + " ASC");
+
+        if (cursor == null) {
+            Logger.debug("PreferenceDataStore - Unable to get preference changes from database. Falling back to cached values.");
+            return;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                String value = cursor.getString(1);
+                version = Math.max(version, cursor.getLong(2));
+
+                Preference preference;
+                synchronized (preferences) {
+                    preference = preferences.get(key);
+
+                    // Removed preferences have a null value
+                    if (preference == null && value != null) {
+                        preferences.put(key, new Preference(key, value));
+                    }
+                }
+
+                if (preference != null) {
+                    preference.syncValue(value);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Logger.verbose("PreferenceDataStore - Synced preference changes to version: " + version);
+        lastVersion = version;
+        isLoadingLazily = false;
+    }
+
     /**
      * Called when a preference changes in value.
      *
@@ -319,12 +422,19 @@ public final class PreferenceDataStore {
         Preference preference;
 
         synchronized (preferences) {
-            if (preferences.containsKey(key)) {
-                preference = preferences.get(key);
-            } else {
-                preference = new Preference(key, null);
-                preference.registerObserver();
+            preference = preferences.get(key);
+            if (preference != null) {
+                return preference;
+            }
+        }
+
+        // Query outside of the lock so other preferences are not blocked on the database
+        String value = isLoadingLazily ? queryValue(key) : null;
 
+        synchronized (preferences) {
+            preference = preferences.get(key);
+            if (preference == null) {
+                preference = new Preference(key, value);
                 preferences.put(key, preference);
             }
         }
@@ -333,34 +443,207 @@ public final class PreferenceDataStore {
     }
 
     /**
-     * A helper class that handles fetching, writing, and syncing with the
-     * preference provider.
+     * Reads a single preference value from the database.
+     *
+     * @param key The preference key.
+     * @return The preference value, or {@code null} if the preference does not exist or failed to be read.
      */
-    private class Preference {
+    private String queryValue(@NonNull String key) {
+        Cursor cursor = resolver.query(UrbanAirshipProvider.getPreferencesContentUri(context),
+                new String[] { PreferencesDataManager.COLUMN_NAME_VALUE }, WHERE_CLAUSE_KEY,
+                new String[] { key }, null);
 
-        private ContentObserver observer = new ContentObserver(null) {
+        if (cursor == null) {
+            Logger.debug("PreferenceDataStore - Unable to get preference " + key + " from database.");
+            return null;
+        }
 
-            @Override
-            public boolean deliverSelfNotifications() {
-                return false;
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Batches preference changes to be written in a single database transaction.
+     * <p/>
+     * Changes are not visible until the editor is applied or committed. Each changed
+     * preference notifies the listeners once.
+     */
+    public final class Editor {
+
+        // Preference keys to values, null values are removed
+        private final Map<String, String> changes = new LinkedHashMap<>();
+
+        private Editor() {}
+
+        /**
+         * Stores a String value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Stores a long value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, long value) {
+            return put(key, String.valueOf(value));
+        }
+
+        /**
+         * Stores an int value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, int value) {
+            return put(key, String.valueOf(value));
+        }
+
+        /**
+         * Stores a boolean value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, boolean value) {
+            return put(key, String.valueOf(value));
+        }
+
+        /**
+         * Stores a {@link JsonValue} value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, JsonValue value) {
+            return put(key, value == null ? null : value.toString());
+        }
+
+        /**
+         * Stores a {@link JsonSerializable} value.
+         *
+         * @param key The preference name.
+         * @param value The preference value.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor put(@NonNull String key, JsonSerializable value) {
+            return put(key, value == null ? null : value.toJsonValue());
+        }
+
+        /**
+         * Removes a preference.
+         *
+         * @param key The preference name.
+         * @return The editor.
+         */
+        @NonNull
+        public Editor remove(@NonNull String key) {
+            return put(key, (String) null);
+        }
+
+        /**
+         * Applies the changes in memory immediately and writes them to the database
+         * in the background.
+         */
+        public void apply() {
+            final Map<Preference, String> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                Preference preference = getPreference(change.getKey());
+                if (preference.setValue(change.getValue(), true)) {
+                    changed.put(preference, change.getValue());
+                }
             }
 
-            @Override
-            public void onChange(boolean selfChange) {
-                Logger.verbose("PreferenceDataStore - Preference updated: " + Preference.this.key);
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        syncValue();
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!writeValues(changed)) {
+                            Logger.error("PreferenceDataStore - Failed to save " + changed.size() + " preferences.");
+                        }
+                    } finally {
+                        for (Preference preference : changed.keySet()) {
+                            preference.onWriteFinished();
+                        }
                     }
-                });
+                }
+            });
+        }
+
+        /**
+         * Writes the changes to the database. This method will block on the database write.
+         *
+         * @return <code>true</code> if the changes were successfully saved to the database,
+         * otherwise <code>false</code>
+         */
+        public boolean commit() {
+            Map<Preference, String> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                changed.put(getPreference(change.getKey()), change.getValue());
+            }
+
+            if (changed.isEmpty()) {
+                return true;
+            }
+
+            if (!writeValues(changed)) {
+                return false;
+            }
+
+            for (Map.Entry<Preference, String> change : changed.entrySet()) {
+                change.getKey().setValue(change.getValue(), false);
             }
-        };
+
+            return true;
+        }
+    }
+
+    /**
+     * A helper class that handles fetching, writing, and syncing with the
+     * preference provider.
+     */
+    private class Preference {
 
         private final String key;
         private String value;
         private Uri uri;
 
+        // Values set by this process that have not been written yet
+        private int pendingWrites;
+
+        // Decoded values, cleared whenever the value changes
+        private Boolean booleanValue;
+        private Long longValue;
+        private boolean isLongDecoded;
+        private Integer intValue;
+        private boolean isIntDecoded;
+        private JsonValue jsonValue;
+
         Preference(String key, String value) {
             this.key = key;
             this.value = value;
@@ -378,17 +661,93 @@ public final class PreferenceDataStore {
             }
         }
 
+        /**
+         * Gets the value as a boolean, decoding it only once per value.
+         *
+         * @return The boolean value, or {@code null} if the preference does not exist.
+         */
+        synchronized Boolean getBoolean() {
+            if (booleanValue == null && value != null) {
+                booleanValue = Boolean.valueOf(value);
+            }
+
+            return booleanValue;
+        }
+
+        /**
+         * Gets the value as a long, decoding it only once per value.
+         *
+         * @return The long value, or {@code null} if the preference does not exist or
+         * cannot be coerced into a long.
+         */
+        synchronized Long getLong() {
+            if (!isLongDecoded) {
+                try {
+                    longValue = value == null ? null : Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    longValue = null;
+                }
+
+                isLongDecoded = true;
+            }
+
+            return longValue;
+        }
+
+        /**
+         * Gets the value as an integer, decoding it only once per value.
+         *
+         * @return The integer value, or {@code null} if the preference does not exist or
+         * cannot be coerced into an integer.
+         */
+        synchronized Integer getInt() {
+            if (!isIntDecoded) {
+                try {
+                    intValue = value == null ? null : Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    intValue = null;
+                }
+
+                isIntDecoded = true;
+            }
+
+            return intValue;
+        }
+
+        /**
+         * Gets the value as a {@link JsonValue}, parsing it only once per value.
+         *
+         * @return The JsonValue, or {@link JsonValue#NULL} if the preference does not exist.
+         */
+        synchronized JsonValue getJsonValue() {
+            if (jsonValue == null) {
+                try {
+                    jsonValue = JsonValue.parseString(value);
+                } catch (JsonException e) {
+                    // Should never happen
+                    Logger.debug("Unable to parse preference value: " + key, e);
+                    jsonValue = JsonValue.NULL;
+                }
+            }
+
+            return jsonValue;
+        }
+
         /**
          * Put a new value for the preference.
          *
          * @param value Value of the preference.
          */
         void put(final String value) {
-            if (setValue(value)) {
+            if (setValue(value, true)) {
                 executor.execute(new Runnable() {
                     @Override
                     public void run() {
-                        writeValue(value);
+                        try {
+                            writeValue(value);
+                        } finally {
+                            onWriteFinished();
+                        }
                     }
                 });
             }
@@ -406,26 +765,52 @@ public final class PreferenceDataStore {
         boolean putSync(String value) {
             synchronized (this) {
                 if (writeValue(value)) {
-                    setValue(value);
+                    setValue(value, false);
                     return true;
                 }
                 return false;
             }
         }
 
+        /**
+         * Sets the value read from the database, unless a newer value from this process is
+         * still waiting to be written.
+         *
+         * @param value The value of the preference.
+         */
+        void syncValue(String value) {
+            boolean changed;
+            synchronized (this) {
+                if (pendingWrites > 0) {
+                    return;
+                }
+
+                changed = updateValue(value);
+            }
+
+            if (changed) {
+                onPreferenceChanged(key);
+            }
+        }
+
         /**
          * Sets the value. If the value is different it calls the onPreferenceChanged
          * method.
          *
          * @param value The value of the preference.
+         * @param isPendingWrite {@code true} if the value will be written in the background, in which
+         * case {@link #onWriteFinished()} must be called once written.
          * @return {@code true} if the value changed, otherwise {@code false}.
          */
-        private boolean setValue(String value) {
+        private boolean setValue(String value, boolean isPendingWrite) {
             synchronized (this) {
-                if (UAStringUtil.equals(value, this.value)) {
+                if (!updateValue(value)) {
                     return false;
                 }
-                this.value = value;
+
+                if (isPendingWrite) {
+                    pendingWrites++;
+                }
             }
 
             onPreferenceChanged(key);
@@ -433,7 +818,37 @@ public final class PreferenceDataStore {
         }
 
         /**
-         * Actually writes the value to the database.
+         * Called when a background write finishes.
+         */
+        private synchronized void onWriteFinished() {
+            pendingWrites--;
+        }
+
+        /**
+         * Updates the value and clears the decoded values.
+         *
+         * @param value The value of the preference.
+         * @return {@code true} if the value changed, otherwise {@code false}.
+         */
+        private boolean updateValue(String value) {
+            if (UAStringUtil.equals(value, this.value)) {
+                return false;
+            }
+
+            this.value = value;
+
+            booleanValue = null;
+            longValue = null;
+            isLongDecoded = false;
+            intValue = null;
+            isIntDecoded = false;
+            jsonValue = null;
+            return true;
+        }
+
+        /**
+         * Actually writes the value to the database. Removed preferences are written with a
+         * null value so the removal is versioned.
          *
          * @param value The value to write
          * @return <code>true</code> if the preference was successfully written to
@@ -443,60 +858,21 @@ public final class PreferenceDataStore {
             synchronized (this) {
                 if (value == null) {
                     Logger.verbose("PreferenceDataStore - Removing preference: " + key);
-
-                    if (resolver.delete(UrbanAirshipProvider.getPreferencesContentUri(context), WHERE_CLAUSE_KEY, new String[] { key }) == 1) {
-                        resolver.notifyChange(this.uri, observer);
-                        return true;
-                    }
-
-                    return false;
                 } else {
                     Logger.verbose("PreferenceDataStore - Saving preference: " + key + " value: " + value);
-                    ContentValues values = new ContentValues();
-                    values.put(PreferencesDataManager.COLUMN_NAME_KEY, key);
-                    values.put(PreferencesDataManager.COLUMN_NAME_VALUE, value);
-
-                    if (resolver.insert(UrbanAirshipProvider.getPreferencesContentUri(context), values) != null) {
-                        resolver.notifyChange(this.uri, observer);
-                        return true;
-                    }
-
-                    return false;
                 }
-            }
-        }
 
-        /**
-         * Syncs the value from the database to the preference.
-         */
-        void syncValue() {
-            Cursor cursor = null;
-            try {
-                synchronized (this) {
-                    cursor = resolver.query(UrbanAirshipProvider.getPreferencesContentUri(context),
-                            new String[] { PreferencesDataManager.COLUMN_NAME_VALUE }, WHERE_CLAUSE_KEY,
-                            new String[] { key }, null);
-                }
+                ContentValues values = new ContentValues();
+                values.put(PreferencesDataManager.COLUMN_NAME_KEY, key);
+                values.put(PreferencesDataManager.COLUMN_NAME_VALUE, value);
 
-                if (cursor != null) {
-                    setValue(cursor.moveToFirst() ? cursor.getString(0) : null);
-                } else {
-                    Logger.debug("PreferenceDataStore - Unable to get preference " + key + " from" +
-                            " database. Falling back to cached value.");
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
+                if (resolver.insert(UrbanAirshipProvider.getPreferencesContentUri(context), values) != null) {
+                    resolver.notifyChange(this.uri, observer);
+                    return true;
                 }
-            }
-        }
 
-        void registerObserver() {
-            resolver.registerContentObserver(this.uri, true, observer);
-        }
-
-        void unregisterObserver() {
-            resolver.unregisterContentObserver(observer);
+                return false;
+            }
         }
     }
 }
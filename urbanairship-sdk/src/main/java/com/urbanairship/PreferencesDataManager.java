@@ -11,24 +11,80 @@ import com.urbanairship.util.DataManager;
 /**
  * A database manager to help create, open, and modify the preferences
  * database
+ * <p/>
+ * Every write stamps the row with the next value of a change counter, so readers can query
+ * only the rows changed since the last version they saw. Removed preferences are kept as
+ * rows with a null value so their removal is versioned as well.
  */
 class PreferencesDataManager extends DataManager {
 
     static final String COLUMN_NAME_KEY = "_id";
     static final String COLUMN_NAME_VALUE = "value";
+    static final String COLUMN_NAME_VERSION = "version";
     static final String TABLE_NAME = "preferences";
     static final String DATABASE_NAME = "ua_preferences.db";
-    static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 2;
 
-    public PreferencesDataManager(@NonNull Context context, @NonNull String appKey) {
-        super(context, appKey, DATABASE_NAME, DATABASE_VERSION);
+    /**
+     * Single row table holding the last change version.
+     */
+    private static final String CHANGE_COUNTER_TABLE_NAME = "preferences_change_counter";
+    private static final String INSERT_VERSION_TRIGGER_NAME = "preferences_insert_version";
+    private static final String UPDATE_VERSION_TRIGGER_NAME = "preferences_update_version";
+
+    public PreferencesDataManager(@NonNull Context context, @NonNull String appKey, boolean enableWriteAheadLogging) {
+        super(context, appKey, DATABASE_NAME, DATABASE_VERSION, enableWriteAheadLogging);
     }
 
     @Override
     protected void onCreate(@NonNull SQLiteDatabase db) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
                 + COLUMN_NAME_KEY + " TEXT PRIMARY KEY, "
-                + COLUMN_NAME_VALUE + " TEXT);");
+                + COLUMN_NAME_VALUE + " TEXT, "
+                + COLUMN_NAME_VERSION + " INTEGER NOT NULL DEFAULT 0);");
+
+        createChangeCounter(db);
+    }
+
+    @Override
+    protected void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        switch (oldVersion) {
+            case 1:
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NAME_VERSION + " INTEGER NOT NULL DEFAULT 0;");
+                createChangeCounter(db);
+                break;
+            default:
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+                db.execSQL("DROP TABLE IF EXISTS " + CHANGE_COUNTER_TABLE_NAME);
+                onCreate(db);
+        }
+    }
+
+    /**
+     * Creates the change counter and the triggers that stamp each inserted, replaced, or
+     * updated preference with the next version.
+     *
+     * @param db The database.
+     */
+    private void createChangeCounter(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CHANGE_COUNTER_TABLE_NAME + " ("
+                + COLUMN_NAME_VERSION + " INTEGER NOT NULL);");
+
+        db.execSQL("INSERT INTO " + CHANGE_COUNTER_TABLE_NAME + " (" + COLUMN_NAME_VERSION + ") "
+                + "SELECT 0 WHERE NOT EXISTS (SELECT 1 FROM " + CHANGE_COUNTER_TABLE_NAME + ");");
+
+        String stampVersion = " BEGIN "
+                + "UPDATE " + CHANGE_COUNTER_TABLE_NAME + " SET " + COLUMN_NAME_VERSION + " = " + COLUMN_NAME_VERSION + " + 1; "
+                + "UPDATE " + TABLE_NAME + " SET " + COLUMN_NAME_VERSION + " = (SELECT " + COLUMN_NAME_VERSION + " FROM " + CHANGE_COUNTER_TABLE_NAME + ") "
+                + "WHERE " + COLUMN_NAME_KEY + " = NEW." + COLUMN_NAME_KEY + "; "
+                + "END;";
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + INSERT_VERSION_TRIGGER_NAME
+                + " AFTER INSERT ON " + TABLE_NAME + stampVersion);
+
+        // Only fires for value changes, so stamping the version does not fire it again
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + UPDATE_VERSION_TRIGGER_NAME
+                + " AFTER UPDATE OF " + COLUMN_NAME_VALUE + " ON " + TABLE_NAME + stampVersion);
     }
 
     @Override
@@ -45,8 +101,9 @@ class PreferencesDataManager extends DataManager {
 
     @Override
     protected void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop the table and recreate it
+        // Drop the tables and recreate them
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + CHANGE_COUNTER_TABLE_NAME);
         onCreate(db);
     }
 }
@@ -20,8 +20,8 @@ class RichPushDataManager extends DataManager {
     private static final String DATABASE_NAME = "ua_richpush.db";
     private static final int DATABASE_VERSION = 3;
 
-    RichPushDataManager(Context context, String appKey) {
-        super(context, appKey, DATABASE_NAME, DATABASE_VERSION);
+    RichPushDataManager(Context context, String appKey, boolean enableWriteAheadLogging) {
+        super(context, appKey, DATABASE_NAME, DATABASE_VERSION, enableWriteAheadLogging);
     }
 
     @Override
@@ -537,7 +537,7 @@ public class UAirship {
     private void init() {
         // Create and init the preference data store first
         this.preferenceDataStore = new PreferenceDataStore(application);
-        this.preferenceDataStore.init();
+        this.preferenceDataStore.init(airshipConfigOptions.lazyPreferenceLoadingEnabled);
 
         // Airship components
         this.analytics = new Analytics(application, preferenceDataStore, airshipConfigOptions, getPlatformType());
@@ -4,16 +4,23 @@ package com.urbanairship;
 
 import android.app.Application;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.urbanairship.util.DataManager;
+import com.urbanairship.util.ManifestUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -57,6 +64,17 @@ public final class UrbanAirshipProvider extends ContentProvider {
 
     private static String authorityString;
 
+    /**
+     * The provider instance in this process.
+     */
+    private static volatile UrbanAirshipProvider createdProvider;
+
+    /**
+     * Whether the app runs in a single process, or {@code null} until it is checked on the first
+     * provider access off the main thread.
+     */
+    private static volatile Boolean isSingleProcess;
+
 
     /**
      * Creates the rich push content URI.
@@ -76,6 +94,51 @@ public final class UrbanAirshipProvider extends ContentProvider {
         return Uri.parse("content://" + getAuthorityString(context) + "/preferences");
     }
 
+    /**
+     * Gets the provider for direct in-process access. Only available when every component of the
+     * app runs in the same process, so no other process can be accessing the databases through
+     * the provider.
+     * <p/>
+     * Reading the app's components is a binder call, so it is done on the first access off the
+     * main thread instead of during app startup. Until then the provider is accessed through a
+     * {@link android.content.ContentResolver}.
+     *
+     * @return The provider running in this process, or {@code null} if the provider must be
+     * accessed through a {@link android.content.ContentResolver}.
+     */
+    @Nullable
+    static UrbanAirshipProvider getLocalProvider() {
+        UrbanAirshipProvider provider = createdProvider;
+        if (provider == null || provider.getContext() == null) {
+            return null;
+        }
+
+        if (isSingleProcess == null) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                return null;
+            }
+
+            isSingleProcess = ManifestUtils.isSingleProcess(provider.getContext());
+            if (isSingleProcess) {
+                Logger.debug("UrbanAirshipProvider - Single process app, enabling direct database access.");
+            }
+        }
+
+        return isSingleProcess ? provider : null;
+    }
+
+    /**
+     * Sets the provider for direct in-process access.
+     *
+     * @param provider The provider, or {@code null} to access the provider through a
+     * {@link android.content.ContentResolver}.
+     */
+    @VisibleForTesting
+    static void setLocalProvider(@Nullable UrbanAirshipProvider provider) {
+        createdProvider = provider;
+        isSingleProcess = provider == null ? null : true;
+    }
+
     /**
      * Get the package's authority string.
      *
@@ -105,6 +168,8 @@ public final class UrbanAirshipProvider extends ContentProvider {
         Autopilot.automaticTakeOff((Application) getContext().getApplicationContext(), true);
 
         UAirship.isMainProcess = true;
+        createdProvider = this;
+
         return true;
     }
 
@@ -191,8 +256,55 @@ public final class UrbanAirshipProvider extends ContentProvider {
         return model.dataManager.update(model.table, values, selection, selectionArgs);
     }
 
+    /**
+     * Applies the operations in a single database transaction. All operations must target the same
+     * database. If any operation fails, none of the changes are committed.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        if (operations.isEmpty()) {
+            return new ContentProviderResult[0];
+        }
+
+        DatabaseModel model = getDatabaseModel(operations.get(0).getUri());
+        if (model == null || getContext() == null) {
+            throw new OperationApplicationException("Unable to apply batch, database unavailable.");
+        }
+
+        for (ContentProviderOperation operation : operations) {
+            if (getDatabaseModel(operation.getUri()) != model) {
+                throw new OperationApplicationException("Unable to apply batch, operations must target the same database: " + operation.getUri());
+            }
+        }
+
+        if (!model.dataManager.beginTransaction()) {
+            throw new OperationApplicationException("Unable to apply batch, failed to start a transaction.");
+        }
+
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+
+            // Failed updates and deletes return a negative count instead of throwing
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].count != null && results[i].count < 0) {
+                    throw new OperationApplicationException("Unable to apply batch, operation failed: " + operations.get(i).getUri(), i);
+                }
+            }
+
+            model.dataManager.setTransactionSuccessful();
+            return results;
+        } finally {
+            model.dataManager.endTransaction();
+        }
+    }
+
     @Override
     public void shutdown() {
+        if (createdProvider == this) {
+            createdProvider = null;
+        }
+
         if (richPushDataModel != null) {
             richPushDataModel.dataManager.close();
             richPushDataModel = null;
@@ -223,13 +335,14 @@ public final class UrbanAirshipProvider extends ContentProvider {
         }
 
         String appKey = airship.getAirshipConfigOptions().getAppKey();
+        boolean enableWriteAheadLogging = airship.getAirshipConfigOptions().writeAheadLoggingEnabled;
 
         int type = matcher.match(uri);
         switch (type) {
             case RICHPUSH_MESSAGE_URI_TYPE:
             case RICHPUSH_MESSAGES_URI_TYPE:
                 if (richPushDataModel == null) {
-                    richPushDataModel = DatabaseModel.createRichPushModel(getContext(), appKey);
+                    richPushDataModel = DatabaseModel.createRichPushModel(getContext(), appKey, enableWriteAheadLogging);
                 }
 
                 return richPushDataModel;
@@ -237,7 +350,7 @@ public final class UrbanAirshipProvider extends ContentProvider {
             case PREFERENCE_URI_TYPE:
             case PREFERENCES_URI_TYPE:
                 if (preferencesDataModel == null) {
-                    preferencesDataModel = DatabaseModel.createPreferencesModel(getContext(), appKey);
+                    preferencesDataModel = DatabaseModel.createPreferencesModel(getContext(), appKey, enableWriteAheadLogging);
                 }
 
                 return preferencesDataModel;
@@ -274,10 +387,11 @@ public final class UrbanAirshipProvider extends ContentProvider {
          *
          * @param context The application context
          * @param appKey The current appKey.
+         * @param enableWriteAheadLogging {@code true} to use write-ahead logging.
          * @return A database model configured for rich push messages.
          */
-        static DatabaseModel createRichPushModel(@NonNull Context context, String appKey) {
-            DataManager model = new RichPushDataManager(context, appKey);
+        static DatabaseModel createRichPushModel(@NonNull Context context, String appKey, boolean enableWriteAheadLogging) {
+            DataManager model = new RichPushDataManager(context, appKey, enableWriteAheadLogging);
             return new DatabaseModel(model, RichPushTable.TABLE_NAME, RichPushTable.COLUMN_NAME_MESSAGE_ID);
         }
 
@@ -286,10 +400,11 @@ public final class UrbanAirshipProvider extends ContentProvider {
          *
          * @param context The application context
          * @param appKey The current appKey.
+         * @param enableWriteAheadLogging {@code true} to use write-ahead logging.
          * @return DatabaseModel.
          */
-        static DatabaseModel createPreferencesModel(@NonNull Context context, String appKey) {
-            DataManager model = new PreferencesDataManager(context, appKey);
+        static DatabaseModel createPreferencesModel(@NonNull Context context, String appKey, boolean enableWriteAheadLogging) {
+            DataManager model = new PreferencesDataManager(context, appKey, enableWriteAheadLogging);
             return new DatabaseModel(model, PreferencesDataManager.TABLE_NAME, PreferencesDataManager.COLUMN_NAME_KEY);
         }
     }
@@ -2,6 +2,8 @@
 
 package com.urbanairship;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -9,9 +11,14 @@ import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 
+import java.util.ArrayList;
+
 /**
  * An ContentResolver wrapper used to access data from the
  * {@link com.urbanairship.UrbanAirshipProvider}.
+ * <p/>
+ * When the app runs in a single process, the provider's database methods are called directly
+ * instead of through the ContentResolver.
  */
 public class UrbanAirshipResolver {
 
@@ -24,6 +31,11 @@ public class UrbanAirshipResolver {
     protected Cursor query(Uri uri, String[] projection, String whereClause, String[] whereArgs, String sortOrder) {
 
         try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.query(uri, projection, whereClause, whereArgs, sortOrder);
+            }
+
             return this.getResolver().query(uri, projection, whereClause, whereArgs, sortOrder);
         } catch (Exception e) {
             Logger.error("Failed to query the UrbanAirshipProvider.", e);
@@ -33,6 +45,11 @@ public class UrbanAirshipResolver {
 
     protected int delete(Uri uri, String whereClause, String[] whereArgs) {
         try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.delete(uri, whereClause, whereArgs);
+            }
+
             return this.getResolver().delete(uri, whereClause, whereArgs);
         } catch (Exception e) {
             Logger.error("Failed to perform a delete in UrbanAirshipProvider.", e);
@@ -42,6 +59,11 @@ public class UrbanAirshipResolver {
 
     protected int update(Uri uri, ContentValues values, String whereClause, String[] whereArgs) {
         try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.update(uri, values, whereClause, whereArgs);
+            }
+
             return this.getResolver().update(uri, values, whereClause, whereArgs);
         } catch (Exception e) {
             Logger.error("Failed to perform an update in UrbanAirshipProvider.", e);
@@ -51,6 +73,11 @@ public class UrbanAirshipResolver {
 
     protected Uri insert(Uri uri, ContentValues values) {
         try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.insert(uri, values);
+            }
+
             return this.getResolver().insert(uri, values);
         } catch (Exception e) {
             Logger.error("Failed to insert in UrbanAirshipProvider.", e);
@@ -60,6 +87,11 @@ public class UrbanAirshipResolver {
 
     protected int bulkInsert(Uri uri, ContentValues[] values) {
         try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.bulkInsert(uri, values);
+            }
+
             return this.getResolver().bulkInsert(uri, values);
         } catch (Exception e) {
             Logger.error("Failed to bulk insert in UrbanAirshipProvider.", e);
@@ -67,6 +99,26 @@ public class UrbanAirshipResolver {
         }
     }
 
+    /**
+     * Applies the operations in a single transaction in the {@link com.urbanairship.UrbanAirshipProvider}.
+     *
+     * @param operations The operations to apply. All operations must target the same database.
+     * @return The operation results, or {@code null} if the batch failed and no changes were applied.
+     */
+    protected ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) {
+        try {
+            UrbanAirshipProvider provider = UrbanAirshipProvider.getLocalProvider();
+            if (provider != null) {
+                return provider.applyBatch(operations);
+            }
+
+            return this.getResolver().applyBatch(UrbanAirshipProvider.getAuthorityString(context), operations);
+        } catch (Exception e) {
+            Logger.error("Failed to apply batch in UrbanAirshipProvider.", e);
+            return null;
+        }
+    }
+
     /**
      * Register a ContentObserver to listen for updates to the supplied URI.
      *
@@ -185,12 +185,24 @@ public class ActionRunRequest {
         };
 
         if (shouldRunOnMain(arguments)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                runnable.run();
+                return runnable.result;
+            }
+
             new Handler(Looper.getMainLooper()).post(runnable);
         } else {
             executor.execute(runnable);
         }
 
-        semaphore.tryAcquire();
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Logger.error("ActionRunRequest - Interrupted while waiting for the action to finish.", e);
+            Thread.currentThread().interrupt();
+            return ActionResult.newErrorResult(e);
+        }
+
         return runnable.result;
     }
 
@@ -120,7 +120,7 @@ class AnalyticsJobHandler {
     private boolean isScheduled;
 
     AnalyticsJobHandler(Context context, UAirship airship, PreferenceDataStore preferenceDataStore) {
-        this(context, airship, preferenceDataStore, JobDispatcher.shared(context), new EventDataManager(context, airship.getAirshipConfigOptions().getAppKey()), new EventApiClient(context));
+        this(context, airship, preferenceDataStore, JobDispatcher.shared(context), new EventDataManager(context, airship.getAirshipConfigOptions().getAppKey(), airship.getAirshipConfigOptions().writeAheadLoggingEnabled), new EventApiClient(context));
     }
 
     @VisibleForTesting
@@ -321,10 +321,15 @@ class AnalyticsJobHandler {
         Logger.debug("Analytic events uploaded.");
         dataManager.deleteEvents(events.keySet());
 
+        // Fold the deletes into the database while the job is running instead of on a later write
+        dataManager.checkpoint();
+
         // Update preferences
-        preferenceDataStore.put(MAX_TOTAL_DB_SIZE_KEY, response.getMaxTotalSize());
-        preferenceDataStore.put(MAX_BATCH_SIZE_KEY, response.getMaxBatchSize());
-        preferenceDataStore.put(MIN_BATCH_INTERVAL_KEY, response.getMinBatchInterval());
+        preferenceDataStore.edit()
+                           .put(MAX_TOTAL_DB_SIZE_KEY, response.getMaxTotalSize())
+                           .put(MAX_BATCH_SIZE_KEY, response.getMaxBatchSize())
+                           .put(MIN_BATCH_INTERVAL_KEY, response.getMinBatchInterval())
+                           .apply();
 
         // If there are still events left, schedule the next send
         if (eventCount - events.size() > 0) {
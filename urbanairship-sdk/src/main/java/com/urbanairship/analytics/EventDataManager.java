@@ -69,8 +69,8 @@ class EventDataManager extends DataManager {
 
     }
 
-    EventDataManager(@NonNull Context context, @NonNull String appKey) {
-        super(context, appKey, DATABASE_NAME, DATABASE_VERSION);
+    EventDataManager(@NonNull Context context, @NonNull String appKey, boolean enableWriteAheadLogging) {
+        super(context, appKey, DATABASE_NAME, DATABASE_VERSION, enableWriteAheadLogging);
     }
 
     @Override
@@ -6,11 +6,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 import android.support.v4.content.LocalBroadcastManager;
 
@@ -20,9 +20,6 @@ import com.urbanairship.Logger;
 import com.urbanairship.PendingResult;
 import com.urbanairship.PreferenceDataStore;
 import com.urbanairship.UAirship;
-import com.urbanairship.actions.Action;
-import com.urbanairship.actions.ActionArguments;
-import com.urbanairship.actions.ActionRunRequest;
 import com.urbanairship.analytics.Analytics;
 import com.urbanairship.analytics.AnalyticsListener;
 import com.urbanairship.analytics.CustomEvent;
@@ -40,6 +37,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is the primary interface to the Urban Airship On Device Automation API. If accessed outside
@@ -52,22 +51,77 @@ public class Automation extends AirshipComponent {
 
     private final Context context;
     private final AutomationDataManager dataManager;
-    private final Executor eventProcessingExecutor = Executors.newSingleThreadExecutor();
+    private final TriggerIndex triggerIndex;
+    private final ScheduleExpirySweeper expirySweeper;
+    private final ScheduleActionRunner actionRunner;
+    private final ScheduledExecutorService eventProcessingExecutor = Executors.newSingleThreadScheduledExecutor();
     private final Executor dbRequestProcessingExecutor = Executors.newCachedThreadPool();
     private final PreferenceDataStore preferenceDataStore;
 
     private final Analytics analytics;
 
     private BroadcastReceiver broadcastReceiver;
+    private volatile BatchListener batchListener;
     private AnalyticsListener analyticsListener;
 
     private boolean automationEnabled = false;
 
     /**
-     * Automation schedules limit.
+     * Number of events with trigger progress that has not been written to the database yet. Only
+     * accessed on the event processing executor.
+     */
+    private int bufferedProgressEvents = 0;
+
+    /**
+     * Events waiting to be processed in the next batch.
+     */
+    private final List<TriggerEvent> pendingEvents = new ArrayList<>();
+    private boolean isBatchScheduled = false;
+
+    /**
+     * Time in MS to wait for more events before processing a batch. Bursts of events, like the
+     * lifecycle, screen and custom events that are added when the app is foregrounded, are
+     * processed in a single pass.
+     */
+    static final long EVENT_BATCH_WINDOW_MS = 5;
+
+    /**
+     * Trigger progress is kept in memory and written to the database in batches. Progress is written
+     * whenever a schedule is triggered, the app is backgrounded, after
+     * {@link #PROGRESS_FLUSH_EVENT_COUNT} events, or {@link #PROGRESS_FLUSH_DELAY_MS} after the first
+     * buffered event, whichever comes first. If the process is killed, at most the progress from
+     * the last {@code PROGRESS_FLUSH_EVENT_COUNT - 1} events is lost. Schedule counts are never buffered.
+     */
+    static final int PROGRESS_FLUSH_EVENT_COUNT = 20;
+
+    /**
+     * Max time in MS buffered trigger progress is kept in memory.
+     */
+    static final long PROGRESS_FLUSH_DELAY_MS = 10000;
+
+    /**
+     * Listener for processed event batches.
+     */
+    @VisibleForTesting
+    interface BatchListener {
+
+        /**
+         * Called on the event processing executor after a batch of events is processed.
+         *
+         * @param eventCount The number of events in the batch.
+         * @param durationNanos Time in nanoseconds it took to process the batch.
+         */
+        void onBatchProcessed(int eventCount, long durationNanos);
+    }
+
+    /**
+     * Default automation schedules limit. The limit can be changed with
+     * {@link AirshipConfigOptions#automationSchedulesLimit}.
      */
     public static final long SCHEDULES_LIMIT = 1000;
 
+    private final long schedulesLimit;
+
     /**
      * Default constructor.
      *
@@ -77,14 +131,28 @@ public class Automation extends AirshipComponent {
      * @hide
      */
     public Automation(@NonNull Context context, @NonNull AirshipConfigOptions configOptions, @NonNull Analytics analytics, @NonNull PreferenceDataStore preferenceDataStore) {
-        this(context, analytics, new AutomationDataManager(context, configOptions.getAppKey()), preferenceDataStore);
+        this(context, analytics, new AutomationDataManager(context, configOptions.getAppKey(), configOptions.writeAheadLoggingEnabled), preferenceDataStore, configOptions.automationSchedulesLimit, new ScheduleActionRunner());
     }
 
     Automation(@NonNull Context context, @NonNull Analytics analytics, @NonNull AutomationDataManager dataManager, @NonNull PreferenceDataStore preferenceDataStore) {
+        this(context, analytics, dataManager, preferenceDataStore, SCHEDULES_LIMIT, new ScheduleActionRunner());
+    }
+
+    Automation(@NonNull Context context, @NonNull Analytics analytics, @NonNull AutomationDataManager dataManager, @NonNull PreferenceDataStore preferenceDataStore,
+               long schedulesLimit, @NonNull ScheduleActionRunner actionRunner) {
         this.context = context;
+        this.actionRunner = actionRunner;
+        this.schedulesLimit = schedulesLimit;
         this.analytics = analytics;
         this.dataManager = dataManager;
+        this.triggerIndex = new TriggerIndex(dataManager);
         this.preferenceDataStore = preferenceDataStore;
+        this.expirySweeper = new ScheduleExpirySweeper(dataManager, eventProcessingExecutor, new ScheduleExpirySweeper.Listener() {
+            @Override
+            public void onSchedulesExpired(@NonNull Set<String> scheduleIds) {
+                triggerIndex.removeSchedules(scheduleIds);
+            }
+        });
     }
 
     @Override
@@ -100,6 +168,7 @@ public class Automation extends AirshipComponent {
                 public void onReceive(Context context, Intent intent) {
                     if (intent.getAction().equals(Analytics.ACTION_APP_BACKGROUND)) {
                         onEventAdded(JsonValue.NULL, Trigger.LIFE_CYCLE_BACKGROUND, 1.00);
+                        flushTriggerProgressAsync();
                     } else {
                         onEventAdded(JsonValue.NULL, Trigger.LIFE_CYCLE_FOREGROUND, 1.00);
                     }
@@ -141,6 +210,7 @@ public class Automation extends AirshipComponent {
 
         analytics.addAnalyticsListener(analyticsListener);
         automationEnabled = preferenceDataStore.getBoolean(AUTOMATION_ENABLED_KEY, false);
+        expirySweeper.init();
     }
 
     @Override
@@ -152,6 +222,30 @@ public class Automation extends AirshipComponent {
 
         LocalBroadcastManager.getInstance(context).unregisterReceiver(broadcastReceiver);
         analytics.removeAnalyticsListener(analyticsListener);
+        flushTriggerProgressAsync();
+    }
+
+    /**
+     * Sets the batch listener.
+     *
+     * @param batchListener The batch listener.
+     */
+    @VisibleForTesting
+    void setBatchListener(@Nullable BatchListener batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Writes any buffered trigger progress to the database on the event processing executor. The
+     * flush is delayed by the batch window so it runs after any batch that is already queued.
+     */
+    private void flushTriggerProgressAsync() {
+        eventProcessingExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushTriggerProgress();
+            }
+        }, EVENT_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -161,7 +255,7 @@ public class Automation extends AirshipComponent {
      * @return The scheduled {@link ActionSchedule} containing the relevant
      * {@link ActionScheduleInfo} and generated schedule ID. May return null
      * if the scheduling failed or the schedule count is greater than or equal
-     * to {@link #SCHEDULES_LIMIT}.
+     * to the schedules limit.
      */
     @WorkerThread
     public ActionSchedule schedule(ActionScheduleInfo scheduleInfo) {
@@ -170,7 +264,7 @@ public class Automation extends AirshipComponent {
             return null;
         }
 
-        if (dataManager.getScheduleCount() >= SCHEDULES_LIMIT) {
+        if (dataManager.getScheduleCount() >= schedulesLimit) {
             Logger.error("AutomationDataManager - unable to insert schedule due to exceeded schedule limit.");
             return null;
         }
@@ -182,6 +276,8 @@ public class Automation extends AirshipComponent {
         }
 
         ActionSchedule insertedSchedule = insertSchedules.get(0);
+        triggerIndex.invalidate(getTriggerTypes(insertSchedules));
+        expirySweeper.add(insertSchedules);
 
         if (!automationEnabled) {
             automationEnabled = true;
@@ -199,7 +295,7 @@ public class Automation extends AirshipComponent {
      * @param scheduleInfo The {@link ActionScheduleInfo} instance.
      * @param callback An {@link com.urbanairship.PendingResult.ResultCallback} implementation. The value
      * returned to {@link com.urbanairship.PendingResult.ResultCallback#onResult(Object)} may be null
-     * if the scheduling failed, the schedule count is greater than or equal to {@link #SCHEDULES_LIMIT},
+     * if the scheduling failed, the schedule count is greater than or equal to the schedules limit,
      * or the scheduling was attempted off of the main process.
      */
     public void scheduleAsync(final ActionScheduleInfo scheduleInfo, @Nullable final PendingResult.ResultCallback<ActionSchedule> callback) {
@@ -227,7 +323,7 @@ public class Automation extends AirshipComponent {
      * @return The list of scheduled {@link ActionSchedule} instances, each containing the relevant
      * {@link ActionScheduleInfo} and generated schedule ID. May return {@link Collections#emptyList()}
      * if the scheduling failed or the schedule count is greater than or equal
-     * to {@link #SCHEDULES_LIMIT}.
+     * to the schedules limit.
      */
     @WorkerThread
     public List<ActionSchedule> schedule(List<ActionScheduleInfo> scheduleInfos) {
@@ -236,13 +332,16 @@ public class Automation extends AirshipComponent {
             return Collections.emptyList();
         }
 
-        if (dataManager.getScheduleCount() + scheduleInfos.size() >= SCHEDULES_LIMIT) {
+        if (dataManager.getScheduleCount() + scheduleInfos.size() >= schedulesLimit) {
             Logger.error("AutomationDataManager - unable to insert schedule due to schedule exceeded limit.");
             return Collections.emptyList();
         }
 
         List<ActionSchedule> actionSchedules = dataManager.insertSchedules(scheduleInfos);
         if (!actionSchedules.isEmpty()) {
+            triggerIndex.invalidate(getTriggerTypes(actionSchedules));
+            expirySweeper.add(actionSchedules);
+
             if (!automationEnabled) {
                 automationEnabled = true;
                 preferenceDataStore.put(AUTOMATION_ENABLED_KEY, true);
@@ -262,7 +361,7 @@ public class Automation extends AirshipComponent {
      * @param callback An {@link com.urbanairship.PendingResult.ResultCallback} implementation. The value
      * returned to {@link com.urbanairship.PendingResult.ResultCallback#onResult(Object)} may be
      * {@link Collections#emptyList()} if the scheduling failed, the schedule count is greater than or equal
-     * to {@link #SCHEDULES_LIMIT}, or the scheduling was attempted off of the main process.
+     * to the schedules limit, or the scheduling was attempted off of the main process.
      */
     public void scheduleAsync(final List<ActionScheduleInfo> scheduleInfos, final PendingResult.ResultCallback<List<ActionSchedule>> callback) {
         final Looper looper = Looper.myLooper() != null ? Looper.myLooper() : Looper.getMainLooper();
@@ -295,6 +394,7 @@ public class Automation extends AirshipComponent {
         }
 
         dataManager.deleteSchedule(id);
+        triggerIndex.removeSchedule(id);
     }
 
     /**
@@ -329,6 +429,7 @@ public class Automation extends AirshipComponent {
         }
 
         dataManager.bulkDeleteSchedules(ids);
+        triggerIndex.removeSchedules(new HashSet<>(ids));
     }
 
     /**
@@ -362,7 +463,9 @@ public class Automation extends AirshipComponent {
             return;
         }
 
+        Set<String> ids = dataManager.getScheduleIds(group);
         dataManager.deleteSchedules(group);
+        triggerIndex.removeSchedules(ids);
     }
 
     /**
@@ -395,6 +498,8 @@ public class Automation extends AirshipComponent {
         }
 
         dataManager.deleteSchedules();
+        triggerIndex.clear();
+        expirySweeper.clear();
     }
 
     /**
@@ -541,9 +646,54 @@ public class Automation extends AirshipComponent {
     }
 
     /**
-     * For a given event, retrieves and iterates through any relevant triggers. If a trigger goal
-     * is achieved, the correlated schedule is retrieved and the action is applied. The trigger progress
-     * and schedule count will then either be incremented or reset / removed.
+     * Gets a page of schedules ordered by schedule ID. To page through all schedules, pass the ID of
+     * the last schedule of the previous page until an empty list is returned.
+     *
+     * @param afterId The last schedule ID of the previous page, or null for the first page.
+     * @param pageSize The maximum number of schedules to return.
+     * @return The list of retrieved {@link ActionSchedule} instances.
+     */
+    @WorkerThread
+    public List<ActionSchedule> getSchedules(@Nullable String afterId, int pageSize) {
+        if (!UAirship.isMainProcess()) {
+            Logger.warn("Automation - Cannot access the Automation API outside of the main process, canceling operation.");
+            return Collections.emptyList();
+        }
+
+        return dataManager.getSchedules(afterId, pageSize);
+    }
+
+    /**
+     * Gets a page of schedules ordered by schedule ID asynchronously.
+     *
+     * @param afterId The last schedule ID of the previous page, or null for the first page.
+     * @param pageSize The maximum number of schedules to return.
+     * @param callback An {@link com.urbanairship.PendingResult.ResultCallback} implementation. The value
+     * returned to {@link com.urbanairship.PendingResult.ResultCallback#onResult(Object)} may be
+     * {@link Collections#emptyList()} if no schedules remain or the get was attempted off of the main process.
+     */
+    public void getSchedulesAsync(@Nullable final String afterId, final int pageSize, final PendingResult.ResultCallback<List<ActionSchedule>> callback) {
+        final Looper looper = Looper.myLooper() != null ? Looper.myLooper() : Looper.getMainLooper();
+
+        if (!UAirship.isMainProcess()) {
+            Logger.warn("Automation - Cannot access the Automation API outside of the main process, canceling operation and executing callback.");
+            runCallback(callback, Collections.<ActionSchedule>emptyList(), looper);
+            return;
+        }
+
+        dbRequestProcessingExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<ActionSchedule> schedules = getSchedules(afterId, pageSize);
+                runCallback(callback, schedules, looper);
+            }
+        });
+    }
+
+    /**
+     * Queues an event to be processed by the automation engine. Events that are added within
+     * {@link #EVENT_BATCH_WINDOW_MS} of each other, or while a previous batch is being processed,
+     * are processed together in a single pass.
      *
      * @param json The relevant event data.
      * @param type The event type.
@@ -554,101 +704,254 @@ public class Automation extends AirshipComponent {
             Logger.warn("Automation - Cannot access the Automation API outside of the main process, canceling operation.");
             return;
         }
-        
+
         if (!automationEnabled) {
             return;
         }
 
         Logger.debug("Automation - updating triggers with type: " + type);
 
-        eventProcessingExecutor.execute(new Runnable() {
+        synchronized (pendingEvents) {
+            pendingEvents.add(new TriggerEvent(json, type, value));
+            if (isBatchScheduled) {
+                return;
+            }
+
+            isBatchScheduled = true;
+        }
+
+        eventProcessingExecutor.schedule(new Runnable() {
             @Override
             public void run() {
-                List<TriggerEntry> triggerEntries = dataManager.getTriggers(type);
+                long start = System.nanoTime();
+                int eventCount = processEvents();
 
-                if (triggerEntries.isEmpty()) {
-                    return;
+                BatchListener listener = batchListener;
+                if (listener != null) {
+                    listener.onBatchProcessed(eventCount, System.nanoTime() - start);
                 }
+            }
+        }, EVENT_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
 
-                List<String> triggersToIncrement = new ArrayList<>();
-                List<String> triggersToReset = new ArrayList<>();
-                // Schedule ID to triggers map
-                Map<String, String> triggerMap = new HashMap<>();
+    /**
+     * Processes the queued events in the order they were added. For each event, retrieves and
+     * iterates through any relevant triggers from the {@link TriggerIndex}. If a trigger goal
+     * is achieved, the correlated schedule is retrieved and queued to run. The trigger
+     * progress and schedule count will then either be incremented or reset / removed. Schedule
+     * updates for the whole batch are written in a single transaction, trigger progress is
+     * buffered in memory, see {@link #PROGRESS_FLUSH_EVENT_COUNT}. Once the updates are written,
+     * the actions of the fired schedules are handed to the {@link ScheduleActionRunner} so they
+     * do not hold up the next batch.
+     *
+     * @return The number of processed events.
+     */
+    @WorkerThread
+    private int processEvents() {
+        List<TriggerEvent> events;
+        synchronized (pendingEvents) {
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            isBatchScheduled = false;
+        }
 
-                Set<String> schedulesToIncrement = new HashSet<>();
-                Set<String> schedulesToDelete = new HashSet<>();
-                Set<String> triggeredSchedules = new HashSet<>();
+        Map<String, Integer> schedulesToIncrement = new HashMap<>();
+        Set<String> schedulesToDelete = new HashSet<>();
+        Map<String, ActionSchedule> scheduleCache = new HashMap<>();
+        List<ActionSchedule> firedSchedules = new ArrayList<>();
 
-                for (TriggerEntry trigger : triggerEntries) {
-                    if ((json != null && (trigger.getPredicate() != null && !trigger.getPredicate().apply(json)))) {
-                        continue;
-                    }
+        int updatedEvents = 0;
+        boolean isTriggered = false;
 
-                    double progress = trigger.getProgress() + value;
-                    if (progress >= trigger.getGoal()) {
-                        triggersToReset.add(trigger.getId());
-                        triggeredSchedules.add(trigger.getScheduleId());
-                    } else {
-                        triggersToIncrement.add(trigger.getId());
-                    }
+        for (TriggerEvent event : events) {
+            List<TriggerEntry> triggerEntries = triggerIndex.getTriggers(event.type, event.json);
+
+            if (triggerEntries.isEmpty()) {
+                continue;
+            }
 
-                    triggerMap.put(trigger.getScheduleId(), trigger.getId());
+            int updatedTriggers = 0;
+            Set<String> triggeredSchedules = new HashSet<>();
+
+            for (TriggerEntry trigger : triggerEntries) {
+                if ((event.json != null && (trigger.getPredicate() != null && !trigger.getPredicate().apply(event.json)))) {
+                    continue;
                 }
 
-                if (!triggeredSchedules.isEmpty()) {
-                    List<ActionSchedule> scheduleEntries = dataManager.getSchedules(triggeredSchedules);
-
-                    for (ActionSchedule schedule : scheduleEntries) {
-                        if (schedule.getInfo().getEnd() > 0 && schedule.getInfo().getEnd() < System.currentTimeMillis()) {
-                            schedulesToDelete.add(schedule.getId());
-                            continue;
-                        }
-
-                        Bundle metadata = new Bundle();
-                        metadata.putParcelable(ActionArguments.ACTION_SCHEDULE_METADATA, schedule);
-
-                        for (Map.Entry<String, JsonValue> entry : schedule.getInfo().getActions().entrySet()) {
-                            ActionRunRequest.createRequest(entry.getKey())
-                                            .setValue(entry.getValue())
-                                            .setSituation(Action.SITUATION_AUTOMATION)
-                                            .setMetadata(metadata)
-                                            .run();
-                        }
-
-                        if (schedule.getCount() + 1 >= schedule.getInfo().getLimit()) {
-                            schedulesToDelete.add(schedule.getId());
-                        } else {
-                            schedulesToIncrement.add(schedule.getId());
-                        }
-                    }
+                double progress = trigger.getProgress() + event.value;
+                if (progress >= trigger.getGoal()) {
+                    triggeredSchedules.add(trigger.getScheduleId());
+                    progress = 0;
                 }
 
-                HashMap<String, List<String>> updatesMap = new HashMap<>();
-                updatesMap.put(AutomationDataManager.SCHEDULES_TO_DELETE_QUERY, new ArrayList<>(schedulesToDelete));
-                updatesMap.put(AutomationDataManager.SCHEDULES_TO_INCREMENT_QUERY, new ArrayList<>(schedulesToIncrement));
+                triggerIndex.updateProgress(trigger, progress);
+                updatedTriggers++;
+            }
+
+            if (updatedTriggers > 0) {
+                updatedEvents++;
+            }
+
+            if (!triggeredSchedules.isEmpty()) {
+                isTriggered = true;
+                runSchedules(triggeredSchedules, scheduleCache, schedulesToIncrement, schedulesToDelete, firedSchedules);
+            }
+
+            Logger.debug("Automation - Retrieved " + triggerEntries.size() + " triggers and " + triggeredSchedules.size() + " schedules for event type " + event.type);
+            Logger.debug("Automation - Updated progress for " + updatedTriggers + " triggers for event type " + event.type);
+        }
+
+        Logger.debug("Automation - Processed " + events.size() + " events, incrementing " + schedulesToIncrement.size() + " schedules and deleting " + schedulesToDelete.size() + " schedules");
 
-                // Don't need to waste DB time updating triggers if they'll be deleted in a schedule
-                // delete propagation.
-                List<String> triggersToDelete = new ArrayList<>();
-                for (String id : schedulesToDelete) {
-                    triggersToDelete.add(triggerMap.get(id));
+        if (updatedEvents == 0) {
+            return events.size();
+        }
+
+        int previouslyBuffered = bufferedProgressEvents;
+        bufferedProgressEvents += updatedEvents;
+
+        // Schedule counts are always written immediately, trigger progress is only written
+        // once enough events have been buffered.
+        if (isTriggered || bufferedProgressEvents >= PROGRESS_FLUSH_EVENT_COUNT) {
+            persistUpdates(schedulesToDelete, schedulesToIncrement);
+            actionRunner.run(firedSchedules);
+        } else if (previouslyBuffered == 0) {
+            eventProcessingExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushTriggerProgress();
                 }
+            }, PROGRESS_FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
 
-                triggersToIncrement.removeAll(triggersToDelete);
-                triggersToReset.removeAll(triggersToDelete);
+        return events.size();
+    }
 
-                updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, value), triggersToIncrement);
-                updatesMap.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, triggersToReset);
+    /**
+     * Queues the actions for a set of triggered schedules. Schedules are fetched from the database
+     * once per batch, and the batch's own executions are taken into account when checking the
+     * schedule limit.
+     *
+     * @param triggeredSchedules The triggered schedule IDs.
+     * @param scheduleCache Schedules already fetched in this batch.
+     * @param schedulesToIncrement Schedule ID to execution count in this batch.
+     * @param schedulesToDelete Schedules to delete at the end of the batch.
+     * @param firedSchedules Schedules whose actions should run at the end of the batch.
+     */
+    @WorkerThread
+    private void runSchedules(Set<String> triggeredSchedules, Map<String, ActionSchedule> scheduleCache,
+                              Map<String, Integer> schedulesToIncrement, Set<String> schedulesToDelete,
+                              List<ActionSchedule> firedSchedules) {
 
-                Logger.debug("Automation - Retrieved " + triggerEntries.size() + " triggers and " + triggeredSchedules.size() + " schedules for event type " + type);
-                Logger.debug("Automation - Incrementing " + schedulesToIncrement.size() + " schedules for event type " + type);
-                Logger.debug("Automation - Deleting " + schedulesToDelete.size() + " schedules for event type " + type);
-                Logger.debug("Automation - Updating values for " + triggersToIncrement.size() + " triggers for event type " + type);
-                Logger.debug("Automation - Resetting values for " + triggersToReset.size() + " triggers for event type " + type);
+        Set<String> toFetch = new HashSet<>(triggeredSchedules);
+        toFetch.removeAll(scheduleCache.keySet());
 
-                dataManager.updateLists(updatesMap);
+        if (!toFetch.isEmpty()) {
+            for (ActionSchedule schedule : dataManager.getSchedules(toFetch)) {
+                scheduleCache.put(schedule.getId(), schedule);
             }
-        });
+
+            // Schedules that no longer exist should be dropped from the trigger index
+            toFetch.removeAll(scheduleCache.keySet());
+            if (!toFetch.isEmpty()) {
+                triggerIndex.removeSchedules(toFetch);
+            }
+        }
+
+        Set<String> deleted = new HashSet<>();
+
+        for (String id : triggeredSchedules) {
+            ActionSchedule schedule = scheduleCache.get(id);
+            if (schedule == null || schedulesToDelete.contains(id)) {
+                continue;
+            }
+
+            if (schedule.getInfo().getEnd() > 0 && schedule.getInfo().getEnd() < System.currentTimeMillis()) {
+                schedulesToDelete.add(id);
+                deleted.add(id);
+                continue;
+            }
+
+            firedSchedules.add(schedule);
+
+            int executions = schedulesToIncrement.containsKey(id) ? schedulesToIncrement.get(id) : 0;
+            if (schedule.getCount() + executions + 1 >= schedule.getInfo().getLimit()) {
+                schedulesToIncrement.remove(id);
+                schedulesToDelete.add(id);
+                deleted.add(id);
+            } else {
+                schedulesToIncrement.put(id, executions + 1);
+            }
+        }
+
+        // Remove the triggers right away so the rest of the batch does not see them. This also
+        // drops their buffered progress since the triggers will be deleted in a schedule delete
+        // propagation.
+        if (!deleted.isEmpty()) {
+            triggerIndex.removeSchedules(deleted);
+        }
+    }
+
+    /**
+     * Writes any buffered trigger progress to the database. Must be called on the event
+     * processing executor.
+     */
+    @WorkerThread
+    private void flushTriggerProgress() {
+        if (bufferedProgressEvents == 0) {
+            return;
+        }
+
+        persistUpdates(Collections.<String>emptySet(), Collections.<String, Integer>emptyMap());
+    }
+
+    /**
+     * Writes schedule updates along with the buffered trigger progress in a single transaction.
+     * Must be called on the event processing executor.
+     *
+     * @param schedulesToDelete The schedules to delete.
+     * @param schedulesToIncrement Schedule ID to the amount to increment its count by.
+     */
+    @WorkerThread
+    private void persistUpdates(Set<String> schedulesToDelete, Map<String, Integer> schedulesToIncrement) {
+        Map<String, List<String>> updatesMap = triggerIndex.drainProgressUpdates();
+        updatesMap.put(AutomationDataManager.SCHEDULES_TO_DELETE_QUERY, new ArrayList<>(schedulesToDelete));
+        updatesMap.put(AutomationDataManager.SCHEDULES_TO_INCREMENT_QUERY, new ArrayList<String>());
+
+        for (Map.Entry<String, Integer> entry : schedulesToIncrement.entrySet()) {
+            String query = entry.getValue() == 1 ? AutomationDataManager.SCHEDULES_TO_INCREMENT_QUERY
+                                                 : String.format(AutomationDataManager.SCHEDULES_TO_INCREMENT_BY_QUERY, entry.getValue());
+
+            List<String> ids = updatesMap.get(query);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                updatesMap.put(query, ids);
+            }
+
+            ids.add(entry.getKey());
+        }
+
+        Logger.debug("Automation - Writing trigger progress buffered from " + bufferedProgressEvents + " events");
+        bufferedProgressEvents = 0;
+
+        dataManager.updateLists(updatesMap);
+    }
+
+    /**
+     * Gets the set of trigger types used by a list of schedules.
+     *
+     * @param schedules The list of {@link ActionSchedule} instances.
+     * @return The set of trigger types.
+     */
+    private static Set<Integer> getTriggerTypes(List<ActionSchedule> schedules) {
+        Set<Integer> types = new HashSet<>();
+        for (ActionSchedule schedule : schedules) {
+            for (Trigger trigger : schedule.getInfo().getTriggers()) {
+                types.add(trigger.getType());
+            }
+        }
+
+        return types;
     }
 
     /**
@@ -672,4 +975,18 @@ public class Automation extends AirshipComponent {
         }
     }
 
+    /**
+     * An event queued for processing.
+     */
+    private static class TriggerEvent {
+        final JsonSerializable json;
+        final int type;
+        final double value;
+
+        TriggerEvent(JsonSerializable json, int type, double value) {
+            this.json = json;
+            this.type = type;
+            this.value = value;
+        }
+    }
 }
@@ -10,6 +10,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.urbanairship.Logger;
 import com.urbanairship.json.JsonException;
@@ -78,7 +79,12 @@ class AutomationDataManager extends DataManager {
     /**
      * The database version
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
+
+    /**
+     * The first database version with the secondary indexes.
+     */
+    private static final int INDEXES_DATABASE_VERSION = 2;
 
     /**
      * Appended to the end of schedules GET queries to group rows by schedule ID.
@@ -100,28 +106,41 @@ class AutomationDataManager extends DataManager {
      */
     static final String SCHEDULES_TO_INCREMENT_QUERY = "UPDATE " + ActionSchedulesTable.TABLE_NAME + " SET " + ActionSchedulesTable.COLUMN_NAME_COUNT + " = " + ActionSchedulesTable.COLUMN_NAME_COUNT + " + 1 WHERE " + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID;
 
+    /**
+     * Partial query for incrementing schedule counts by a given amount by ID.
+     */
+    static final String SCHEDULES_TO_INCREMENT_BY_QUERY = "UPDATE " + ActionSchedulesTable.TABLE_NAME + " SET " + ActionSchedulesTable.COLUMN_NAME_COUNT + " = " + ActionSchedulesTable.COLUMN_NAME_COUNT + " + %d WHERE " + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID;
+
     /**
      * Partial query for resetting trigger progress by ID.
      */
     static final String TRIGGERS_TO_RESET_QUERY = "UPDATE " + TriggersTable.TABLE_NAME + " SET " + TriggersTable.COLUMN_NAME_PROGRESS + " = 0 WHERE " + TriggersTable._ID;
 
     /**
-     * Partial query for incrementing trigger progress by ID.
+     * Partial query for setting trigger progress by ID.
      */
-    static final String TRIGGERS_TO_INCREMENT_QUERY = "UPDATE " + TriggersTable.TABLE_NAME + " SET " + TriggersTable.COLUMN_NAME_PROGRESS + " = " + TriggersTable.COLUMN_NAME_PROGRESS + " + %s WHERE " + TriggersTable._ID;
+    static final String TRIGGERS_TO_SET_PROGRESS_QUERY = "UPDATE " + TriggersTable.TABLE_NAME + " SET " + TriggersTable.COLUMN_NAME_PROGRESS + " = %s WHERE " + TriggersTable._ID;
 
     /**
      * Class constructor.
      *
      * @param context The app context.
      * @param appKey The app key.
+     * @param enableWriteAheadLogging {@code true} to use write-ahead logging.
      */
-    AutomationDataManager(@NonNull Context context, @NonNull String appKey) {
-        super(context, appKey, DATABASE_NAME, DATABASE_VERSION);
+    AutomationDataManager(@NonNull Context context, @NonNull String appKey, boolean enableWriteAheadLogging) {
+        super(context, appKey, DATABASE_NAME, DATABASE_VERSION, enableWriteAheadLogging);
     }
 
     @Override
     protected void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion == 1 && newVersion == INDEXES_DATABASE_VERSION) {
+            // Version 2 only adds indexes, keep the existing schedules
+            Logger.debug("AutomationDataManager - Upgrading automation database from version " + oldVersion + " to " + newVersion);
+            createIndexes(db);
+            return;
+        }
+
         // Logs that the database is being upgraded
         Logger.debug("AutomationDataManager - Upgrading automation database from version " + oldVersion + " to "
                 + newVersion + ", which will destroy all old data");
@@ -160,9 +179,32 @@ class AutomationDataManager extends DataManager {
                 + "FOREIGN KEY(" + TriggersTable.COLUMN_NAME_SCHEDULE_ID + ") REFERENCES " + ActionSchedulesTable.TABLE_NAME + "(" + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID + ") ON DELETE CASCADE"
                 + ");");
 
+        createIndexes(db);
+
         Logger.debug("AutomationDataManager - Automation database created");
     }
 
+    /**
+     * Creates the secondary indexes. The trigger type and start index covers loading the triggers
+     * for an event, the trigger schedule ID index covers the schedules join and the cascading
+     * delete, and the schedule group and end indexes cover group and expiry lookups.
+     *
+     * @param db The database.
+     */
+    private void createIndexes(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS triggers_type_start ON " + TriggersTable.TABLE_NAME
+                + " (" + TriggersTable.COLUMN_NAME_TYPE + ", " + TriggersTable.COLUMN_NAME_START + ");");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS triggers_schedule_id ON " + TriggersTable.TABLE_NAME
+                + " (" + TriggersTable.COLUMN_NAME_SCHEDULE_ID + ");");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS action_schedules_group ON " + ActionSchedulesTable.TABLE_NAME
+                + " (" + ActionSchedulesTable.COLUMN_NAME_GROUP + ");");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS action_schedules_end ON " + ActionSchedulesTable.TABLE_NAME
+                + " (" + ActionSchedulesTable.COLUMN_NAME_END + ");");
+    }
+
     @Override
     protected void bindValuesToSqliteStatement(@NonNull String table, @NonNull SQLiteStatement statement, @NonNull ContentValues values) {
         if (TriggersTable.TABLE_NAME.equals(table)) {
@@ -307,6 +349,24 @@ class AutomationDataManager extends DataManager {
         return generateSchedules(c);
     }
 
+    /**
+     * Gets a page of schedules ordered by schedule ID. The page is selected on the schedules table
+     * before joining the triggers, so the cost of a page does not depend on the total schedule count.
+     *
+     * @param afterId The last schedule ID of the previous page, or null for the first page.
+     * @param limit The maximum number of schedules in the page.
+     * @return The list of {@link ActionSchedule} instances.
+     */
+    List<ActionSchedule> getSchedules(@Nullable String afterId, int limit) {
+        String query = GET_SCHEDULES_QUERY + " WHERE a." + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID + " IN ("
+                + "SELECT " + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID + " FROM " + ActionSchedulesTable.TABLE_NAME
+                + " WHERE " + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID + " > ?"
+                + " ORDER BY " + ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID + " ASC LIMIT ?)" + ORDER_SCHEDULES_STATEMENT;
+
+        Cursor c = rawQuery(query, new String[] { afterId == null ? "" : afterId, String.valueOf(limit) });
+        return generateSchedules(c);
+    }
+
     /**
      * Bulk inserts schedules.
      *
@@ -403,6 +463,118 @@ class AutomationDataManager extends DataManager {
         return triggers;
     }
 
+    /**
+     * Gets the earliest start time of the triggers for a given type that have yet to start.
+     *
+     * @param type The trigger type.
+     * @return The start time in MS, or -1 if every trigger of the given type has started.
+     */
+    long getNextTriggerStart(int type) {
+        String query = "SELECT MIN(" + TriggersTable.COLUMN_NAME_START + ") FROM " + TriggersTable.TABLE_NAME + " WHERE " + TriggersTable.COLUMN_NAME_TYPE + " = ? AND " + TriggersTable.COLUMN_NAME_START + " >= ?";
+        Cursor cursor = rawQuery(query, new String[] { String.valueOf(type), String.valueOf(System.currentTimeMillis()) });
+
+        if (cursor == null) {
+            return -1;
+        }
+
+        long start = -1;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            start = cursor.getLong(0);
+        }
+
+        cursor.close();
+        return start;
+    }
+
+    /**
+     * Gets the schedule IDs for a given group.
+     *
+     * @param group The schedule group.
+     * @return The set of schedule IDs.
+     */
+    Set<String> getScheduleIds(String group) {
+        Set<String> ids = new HashSet<>();
+        Cursor cursor = query(ActionSchedulesTable.TABLE_NAME, new String[] { ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID }, ActionSchedulesTable.COLUMN_NAME_GROUP + " = ?", new String[] { group }, null, null);
+
+        if (cursor == null) {
+            return ids;
+        }
+
+        cursor.moveToFirst();
+        while (!cursor.isAfterLast()) {
+            ids.add(cursor.getString(0));
+            cursor.moveToNext();
+        }
+
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * Gets the end times of the schedules that have one.
+     *
+     * @return The list of end times in MS.
+     */
+    List<Long> getScheduleEnds() {
+        List<Long> ends = new ArrayList<>();
+        Cursor cursor = query(ActionSchedulesTable.TABLE_NAME, new String[] { ActionSchedulesTable.COLUMN_NAME_END }, ActionSchedulesTable.COLUMN_NAME_END + " > 0", null, null, null);
+
+        if (cursor == null) {
+            return ends;
+        }
+
+        cursor.moveToFirst();
+        while (!cursor.isAfterLast()) {
+            ends.add(cursor.getLong(0));
+            cursor.moveToNext();
+        }
+
+        cursor.close();
+        return ends;
+    }
+
+    /**
+     * Deletes the schedules that ended before a given time. The schedules are deleted with a single
+     * statement on the schedule end index and their triggers are removed by the delete cascade.
+     *
+     * @param time The time in MS.
+     * @return The set of deleted schedule IDs.
+     */
+    Set<String> deleteExpiredSchedules(long time) {
+        Set<String> ids = new HashSet<>();
+
+        final SQLiteDatabase db = getWritableDatabase();
+        if (db == null) {
+            Logger.error("AutomationDataManager - Unable to delete expired schedules.");
+            return ids;
+        }
+
+        String selection = ActionSchedulesTable.COLUMN_NAME_END + " > 0 AND " + ActionSchedulesTable.COLUMN_NAME_END + " < ?";
+        String[] selectionArgs = new String[] { String.valueOf(time) };
+
+        db.beginTransaction();
+
+        Cursor cursor = db.query(ActionSchedulesTable.TABLE_NAME, new String[] { ActionSchedulesTable.COLUMN_NAME_SCHEDULE_ID }, selection, selectionArgs, null, null, null);
+        if (cursor != null) {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                ids.add(cursor.getString(0));
+                cursor.moveToNext();
+            }
+
+            cursor.close();
+        }
+
+        if (!ids.isEmpty()) {
+            db.delete(ActionSchedulesTable.TABLE_NAME, selection, selectionArgs);
+        }
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+
+        return ids;
+    }
+
     /**
      * Bulk applies a series of queries and lists of IDs to update.
      *
@@ -0,0 +1,219 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.urbanairship.json.JsonList;
+import com.urbanairship.json.JsonMap;
+import com.urbanairship.json.JsonPredicate;
+import com.urbanairship.json.JsonSerializable;
+import com.urbanairship.json.JsonValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary index over a set of triggers that groups them by the string value their predicate
+ * requires for a single top-level event field, e.g. {@code event_name}.
+ * <p/>
+ * Equality constraints are extracted from the predicate tree: a matcher on the key with an
+ * {@code equals} string value is constrained to that value, an {@code and} predicate is constrained
+ * to the intersection of its constrained children, and an {@code or} predicate is constrained to
+ * the union of its children if every child is constrained. Triggers with predicates that can not
+ * be constrained are kept in a residual list that is returned for every event.
+ * <p/>
+ * The index only narrows down the candidates, callers still need to apply the trigger predicate.
+ */
+class PredicateIndex {
+
+    private static final String KEY = "key";
+    private static final String SCOPE = "scope";
+    private static final String VALUE = "value";
+    private static final String EQUALS = "equals";
+
+    private final String key;
+    private final Map<String, List<TriggerEntry>> indexed = new HashMap<>();
+    private final List<TriggerEntry> residual = new ArrayList<>();
+
+    /**
+     * Class constructor.
+     *
+     * @param key The event field to index.
+     * @param triggers The triggers to index.
+     */
+    PredicateIndex(@NonNull String key, @NonNull Collection<TriggerEntry> triggers) {
+        this.key = key;
+        for (TriggerEntry trigger : triggers) {
+            add(trigger);
+        }
+    }
+
+    /**
+     * Adds a trigger to the index.
+     *
+     * @param trigger The trigger.
+     */
+    void add(@NonNull TriggerEntry trigger) {
+        Set<String> values = trigger.getPredicate() == null ? null : extractValues(trigger.getPredicate().toJsonValue());
+
+        if (values == null) {
+            residual.add(trigger);
+            return;
+        }
+
+        for (String value : values) {
+            List<TriggerEntry> list = indexed.get(value);
+            if (list == null) {
+                list = new ArrayList<>();
+                indexed.put(value, list);
+            }
+
+            list.add(trigger);
+        }
+    }
+
+    /**
+     * Removes the triggers for the given schedules.
+     *
+     * @param scheduleIds The schedule IDs.
+     */
+    void removeSchedules(@NonNull Collection<String> scheduleIds) {
+        removeSchedules(residual, scheduleIds);
+
+        Iterator<List<TriggerEntry>> iterator = indexed.values().iterator();
+        while (iterator.hasNext()) {
+            List<TriggerEntry> list = iterator.next();
+            removeSchedules(list, scheduleIds);
+            if (list.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the candidate triggers for an event.
+     *
+     * @param event The event.
+     * @return The list of triggers whose predicate may match the event.
+     */
+    @NonNull
+    List<TriggerEntry> getCandidates(@Nullable JsonSerializable event) {
+        List<TriggerEntry> candidates = new ArrayList<>(residual);
+
+        if (event == null) {
+            // Triggers constrained to several values are indexed more than once
+            Set<TriggerEntry> all = new LinkedHashSet<>(candidates);
+            for (List<TriggerEntry> list : indexed.values()) {
+                all.addAll(list);
+            }
+
+            return new ArrayList<>(all);
+        }
+
+        JsonValue value = event.toJsonValue() == null ? JsonValue.NULL : event.toJsonValue().optMap().opt(key);
+        if (value.isString() && indexed.containsKey(value.getString())) {
+            candidates.addAll(indexed.get(value.getString()));
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Gets the number of triggers that could not be indexed.
+     *
+     * @return The residual trigger count.
+     */
+    int getResidualCount() {
+        return residual.size();
+    }
+
+    /**
+     * Extracts the set of values a predicate requires for the indexed key.
+     *
+     * @param predicate The predicate JSON.
+     * @return The set of values, or null if the predicate does not constrain the key.
+     */
+    @Nullable
+    private Set<String> extractValues(@NonNull JsonValue predicate) {
+        JsonMap map = predicate.optMap();
+
+        if (map.containsKey(JsonPredicate.AND_PREDICATE_TYPE)) {
+            Set<String> result = null;
+            for (JsonValue child : map.opt(JsonPredicate.AND_PREDICATE_TYPE).optList()) {
+                Set<String> values = extractValues(child);
+                if (values == null) {
+                    continue;
+                }
+
+                if (result == null) {
+                    result = values;
+                } else {
+                    result.retainAll(values);
+                }
+            }
+
+            return result;
+        }
+
+        if (map.containsKey(JsonPredicate.OR_PREDICATE_TYPE)) {
+            JsonList children = map.opt(JsonPredicate.OR_PREDICATE_TYPE).optList();
+            if (children.size() == 0) {
+                return null;
+            }
+
+            Set<String> result = new HashSet<>();
+            for (JsonValue child : children) {
+                Set<String> values = extractValues(child);
+                if (values == null) {
+                    return null;
+                }
+
+                result.addAll(values);
+            }
+
+            return result;
+        }
+
+        if (map.containsKey(JsonPredicate.NOT_PREDICATE_TYPE)) {
+            return null;
+        }
+
+        // Matcher
+        if (!key.equals(map.opt(KEY).getString()) || map.opt(SCOPE).optList().size() > 0) {
+            return null;
+        }
+
+        JsonMap valueMatcher = map.opt(VALUE).optMap();
+        if (valueMatcher.size() != 1 || !valueMatcher.opt(EQUALS).isString()) {
+            return null;
+        }
+
+        Set<String> result = new HashSet<>();
+        result.add(valueMatcher.opt(EQUALS).getString());
+        return result;
+    }
+
+    /**
+     * Removes the triggers for the given schedules from a list.
+     *
+     * @param triggers The list of triggers.
+     * @param scheduleIds The schedule IDs.
+     */
+    private static void removeSchedules(List<TriggerEntry> triggers, Collection<String> scheduleIds) {
+        Iterator<TriggerEntry> iterator = triggers.iterator();
+        while (iterator.hasNext()) {
+            if (scheduleIds.contains(iterator.next().getScheduleId())) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+import com.urbanairship.actions.Action;
+import com.urbanairship.actions.ActionArguments;
+import com.urbanairship.actions.ActionResult;
+import com.urbanairship.actions.ActionRunRequestFactory;
+import com.urbanairship.json.JsonValue;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the actions of fired schedules off of the event processing thread.
+ * <p/>
+ * Schedules are assigned to a fixed set of serial lanes by schedule ID. Actions of different schedules
+ * run concurrently, while the actions of a single schedule run one after another in order, and a
+ * schedule that fires several times runs its executions in the order they fired.
+ */
+class ScheduleActionRunner {
+
+    /**
+     * Number of schedules whose actions can run at the same time.
+     */
+    static final int LANE_COUNT = 4;
+
+    /**
+     * Listener for action results.
+     */
+    interface Listener {
+
+        /**
+         * Called on the lane's thread after an action finished.
+         *
+         * @param schedule The schedule.
+         * @param actionName The action name.
+         * @param result The action result.
+         * @param latencyMs Time in MS the action took to run.
+         */
+        void onActionFinished(@NonNull ActionSchedule schedule, @NonNull String actionName, @NonNull ActionResult result, long latencyMs);
+    }
+
+    private final ActionRunRequestFactory actionRunRequestFactory;
+    private final Executor[] lanes;
+    private Listener listener;
+
+    /**
+     * Default constructor.
+     */
+    ScheduleActionRunner() {
+        this(new ActionRunRequestFactory(), createLanes(LANE_COUNT));
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param actionRunRequestFactory The action run request factory.
+     * @param lanes The serial executors to run the actions on.
+     */
+    ScheduleActionRunner(@NonNull ActionRunRequestFactory actionRunRequestFactory, @NonNull Executor[] lanes) {
+        this.actionRunRequestFactory = actionRunRequestFactory;
+        this.lanes = lanes;
+    }
+
+    /**
+     * Sets the action result listener.
+     *
+     * @param listener The listener.
+     */
+    synchronized void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the actions of the schedules fired in an automation pass. Returns immediately.
+     *
+     * @param schedules The fired schedules, in the order they fired.
+     */
+    void run(@NonNull Collection<ActionSchedule> schedules) {
+        for (final ActionSchedule schedule : schedules) {
+            lanes[(schedule.getId().hashCode() & Integer.MAX_VALUE) % lanes.length].execute(new Runnable() {
+                @Override
+                public void run() {
+                    runActions(schedule);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a schedule's actions in order.
+     *
+     * @param schedule The schedule.
+     */
+    @WorkerThread
+    private void runActions(@NonNull ActionSchedule schedule) {
+        Bundle metadata = new Bundle();
+        metadata.putParcelable(ActionArguments.ACTION_SCHEDULE_METADATA, schedule);
+
+        for (Map.Entry<String, JsonValue> entry : schedule.getInfo().getActions().entrySet()) {
+            long start = System.currentTimeMillis();
+
+            ActionResult result = actionRunRequestFactory.createActionRequest(entry.getKey())
+                                                         .setValue(entry.getValue())
+                                                         .setSituation(Action.SITUATION_AUTOMATION)
+                                                         .setMetadata(metadata)
+                                                         .runSync();
+
+            long latency = System.currentTimeMillis() - start;
+            Logger.verbose("ScheduleActionRunner - Action " + entry.getKey() + " for schedule " + schedule.getId()
+                    + " finished with status " + result.getStatus() + " in " + latency + " ms");
+
+            Listener listener;
+            synchronized (this) {
+                listener = this.listener;
+            }
+
+            if (listener != null) {
+                listener.onActionFinished(schedule, entry.getKey(), result, latency);
+            }
+        }
+    }
+
+    /**
+     * Creates the serial lanes.
+     *
+     * @param count The number of lanes.
+     * @return The array of single thread executors.
+     */
+    private static Executor[] createLanes(int count) {
+        Executor[] lanes = new Executor[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor();
+        }
+
+        return lanes;
+    }
+}
@@ -0,0 +1,167 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes expired schedules from the database as soon as they expire.
+ * <p/>
+ * The sweeper keeps a min-heap of the schedule end times and only schedules a sweep for the
+ * earliest one. A sweep deletes every expired schedule with a single statement on the schedule end
+ * index, and the triggers are removed by the delete cascade. Canceled schedules are not removed from
+ * the heap, their end time will just cause a sweep that deletes nothing.
+ */
+class ScheduleExpirySweeper {
+
+    /**
+     * Listener for expired schedules.
+     */
+    interface Listener {
+
+        /**
+         * Called on the sweeper's executor after expired schedules are deleted.
+         *
+         * @param scheduleIds The deleted schedule IDs.
+         */
+        void onSchedulesExpired(@NonNull Set<String> scheduleIds);
+    }
+
+    private final AutomationDataManager dataManager;
+    private final ScheduledExecutorService executor;
+    private final Listener listener;
+    private final PriorityQueue<Long> endTimes = new PriorityQueue<>();
+
+    private ScheduledFuture<?> scheduledSweep;
+    private long scheduledSweepTime = -1;
+
+    /**
+     * Class constructor.
+     *
+     * @param dataManager The automation data manager.
+     * @param executor The executor to run the sweeps on. Should be the same executor that processes
+     * the automation events so a sweep never runs in the middle of a batch.
+     * @param listener The expired schedules listener.
+     */
+    ScheduleExpirySweeper(@NonNull AutomationDataManager dataManager, @NonNull ScheduledExecutorService executor, @NonNull Listener listener) {
+        this.dataManager = dataManager;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the end times of the stored schedules and sweeps any schedule that expired while the
+     * app was not running.
+     */
+    void init() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ScheduleExpirySweeper.this) {
+                    endTimes.addAll(dataManager.getScheduleEnds());
+                }
+
+                sweep();
+            }
+        });
+    }
+
+    /**
+     * Adds the end times of newly inserted schedules.
+     *
+     * @param schedules The inserted schedules.
+     */
+    synchronized void add(@NonNull Collection<ActionSchedule> schedules) {
+        for (ActionSchedule schedule : schedules) {
+            if (schedule.getInfo().getEnd() > 0) {
+                endTimes.add(schedule.getInfo().getEnd());
+            }
+        }
+
+        scheduleNextSweep();
+    }
+
+    /**
+     * Clears the end times. Called after all schedules are deleted.
+     */
+    synchronized void clear() {
+        endTimes.clear();
+        scheduleNextSweep();
+    }
+
+    /**
+     * Gets the time of the next scheduled sweep.
+     *
+     * @return The time in MS, or -1 if no sweep is scheduled.
+     */
+    synchronized long getNextSweepTime() {
+        return scheduledSweepTime;
+    }
+
+    /**
+     * Deletes the expired schedules and schedules the next sweep.
+     */
+    @WorkerThread
+    void sweep() {
+        long time = System.currentTimeMillis();
+        Set<String> expired = dataManager.deleteExpiredSchedules(time);
+
+        if (!expired.isEmpty()) {
+            Logger.debug("ScheduleExpirySweeper - Deleted " + expired.size() + " expired schedules");
+            listener.onSchedulesExpired(expired);
+        }
+
+        synchronized (this) {
+            while (!endTimes.isEmpty() && endTimes.peek() < time) {
+                endTimes.poll();
+            }
+
+            scheduledSweep = null;
+            scheduledSweepTime = -1;
+            scheduleNextSweep();
+        }
+    }
+
+    /**
+     * Schedules a sweep right after the earliest end time, replacing a later scheduled sweep.
+     */
+    private synchronized void scheduleNextSweep() {
+        if (endTimes.isEmpty()) {
+            if (scheduledSweep != null) {
+                scheduledSweep.cancel(false);
+                scheduledSweep = null;
+                scheduledSweepTime = -1;
+            }
+
+            return;
+        }
+
+        // Schedules expire once the current time is past their end time
+        long sweepTime = endTimes.peek() + 1;
+        if (scheduledSweep != null && scheduledSweepTime <= sweepTime) {
+            return;
+        }
+
+        if (scheduledSweep != null) {
+            scheduledSweep.cancel(false);
+        }
+
+        scheduledSweepTime = sweepTime;
+        scheduledSweep = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, Math.max(0, sweepTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,281 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+import com.urbanairship.analytics.CustomEvent;
+import com.urbanairship.json.JsonSerializable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the triggers table keyed by trigger type. Triggers are loaded from the
+ * {@link AutomationDataManager} the first time a type is requested and are then served from memory
+ * with their predicates already parsed.
+ * <p/>
+ * Custom event triggers are additionally indexed by the event name their predicate requires with a
+ * {@link PredicateIndex}, so an event is only evaluated against the triggers that can match it.
+ * <p/>
+ * The index is versioned. Every mutation bumps the version, and a load that raced with a mutation
+ * is returned to the caller but not cached, so a stale read can never be stored.
+ * <p/>
+ * Trigger progress updated through {@link #updateProgress(TriggerEntry, double)} is authoritative
+ * until it is drained with {@link #drainProgressUpdates()} and written to the database. Triggers
+ * loaded in the meantime are patched with the buffered progress.
+ */
+class TriggerIndex {
+
+    private final AutomationDataManager dataManager;
+    private final Map<Integer, Bucket> buckets = new HashMap<>();
+    private final Map<String, TriggerEntry> pendingProgress = new HashMap<>();
+    private long version;
+
+    /**
+     * Cached triggers for a single trigger type.
+     */
+    private static class Bucket {
+        final List<TriggerEntry> triggers;
+
+        /**
+         * The earliest start time of a trigger that has yet to start, or -1 if none.
+         */
+        final long nextStart;
+
+        /**
+         * Optional event name index.
+         */
+        final PredicateIndex predicateIndex;
+
+        Bucket(List<TriggerEntry> triggers, long nextStart, PredicateIndex predicateIndex) {
+            this.triggers = triggers;
+            this.nextStart = nextStart;
+            this.predicateIndex = predicateIndex;
+        }
+
+        /**
+         * Gets the triggers that may match an event.
+         *
+         * @param event The event.
+         * @return A snapshot of the candidate triggers.
+         */
+        List<TriggerEntry> getCandidates(@Nullable JsonSerializable event) {
+            if (predicateIndex == null || event == null) {
+                return new ArrayList<>(triggers);
+            }
+
+            return predicateIndex.getCandidates(event);
+        }
+
+        /**
+         * Checks if a trigger that was excluded when the bucket was loaded has since started.
+         *
+         * @param time The current time in MS.
+         * @return {@code true} if the bucket needs to be reloaded, otherwise {@code false}.
+         */
+        boolean isStale(long time) {
+            return nextStart > 0 && time > nextStart;
+        }
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param dataManager The automation data manager.
+     */
+    TriggerIndex(@NonNull AutomationDataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Gets the started triggers for a given type, loading them from the database if needed.
+     *
+     * @param type The trigger type.
+     * @return A snapshot of the list of {@link TriggerEntry} instances.
+     */
+    @WorkerThread
+    @NonNull
+    List<TriggerEntry> getTriggers(int type) {
+        Bucket bucket = getBucket(type);
+        synchronized (this) {
+            return bucket.getCandidates(null);
+        }
+    }
+
+    /**
+     * Gets the started triggers for a given type that may match an event, loading them from the
+     * database if needed.
+     *
+     * @param type The trigger type.
+     * @param event The event.
+     * @return A snapshot of the list of candidate {@link TriggerEntry} instances.
+     */
+    @WorkerThread
+    @NonNull
+    List<TriggerEntry> getTriggers(int type, @Nullable JsonSerializable event) {
+        Bucket bucket = getBucket(type);
+        synchronized (this) {
+            return bucket.getCandidates(event);
+        }
+    }
+
+    /**
+     * Gets the bucket for a given type, loading it from the database if needed.
+     *
+     * @param type The trigger type.
+     * @return The bucket.
+     */
+    @WorkerThread
+    private Bucket getBucket(int type) {
+        long loadVersion;
+
+        synchronized (this) {
+            Bucket bucket = buckets.get(type);
+            if (bucket != null && !bucket.isStale(System.currentTimeMillis())) {
+                return bucket;
+            }
+
+            loadVersion = version;
+        }
+
+        List<TriggerEntry> triggers = new ArrayList<>(dataManager.getTriggers(type));
+        long nextStart = dataManager.getNextTriggerStart(type);
+
+        PredicateIndex predicateIndex = null;
+        if (type == Trigger.CUSTOM_EVENT_COUNT || type == Trigger.CUSTOM_EVENT_VALUE) {
+            predicateIndex = new PredicateIndex(CustomEvent.EVENT_NAME, triggers);
+        }
+
+        Bucket bucket = new Bucket(triggers, nextStart, predicateIndex);
+
+        synchronized (this) {
+            for (TriggerEntry trigger : triggers) {
+                TriggerEntry pending = pendingProgress.get(trigger.getId());
+                if (pending != null) {
+                    trigger.setProgress(pending.getProgress());
+                    pendingProgress.put(trigger.getId(), trigger);
+                }
+            }
+
+            if (loadVersion == version) {
+                buckets.put(type, bucket);
+                Logger.verbose("TriggerIndex - Cached " + triggers.size() + " triggers for type " + type
+                        + (predicateIndex == null ? "" : ", " + predicateIndex.getResidualCount() + " not indexed by event name"));
+            }
+        }
+
+        return bucket;
+    }
+
+    /**
+     * Updates a trigger's progress. The progress is buffered until it is drained.
+     *
+     * @param trigger The trigger.
+     * @param progress The new progress.
+     */
+    synchronized void updateProgress(@NonNull TriggerEntry trigger, double progress) {
+        trigger.setProgress(progress);
+        pendingProgress.put(trigger.getId(), trigger);
+    }
+
+    /**
+     * Drains the buffered trigger progress into a map of queries to trigger IDs that can be
+     * applied with {@link AutomationDataManager#updateLists(Map)}. Triggers are grouped by their
+     * progress, so the number of statements is bound by the number of distinct progress values.
+     *
+     * @return A map of queries to trigger ID lists. The map always contains the reset query.
+     */
+    @NonNull
+    synchronized Map<String, List<String>> drainProgressUpdates() {
+        Map<String, List<String>> updates = new HashMap<>();
+        updates.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, new ArrayList<String>());
+
+        for (TriggerEntry trigger : pendingProgress.values()) {
+            String query = trigger.getProgress() == 0 ? AutomationDataManager.TRIGGERS_TO_RESET_QUERY
+                                                      : String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, trigger.getProgress());
+
+            List<String> ids = updates.get(query);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                updates.put(query, ids);
+            }
+
+            ids.add(trigger.getId());
+        }
+
+        pendingProgress.clear();
+        return updates;
+    }
+
+    /**
+     * Invalidates the cached triggers for the given types. Called after new schedules are inserted.
+     *
+     * @param types The trigger types.
+     */
+    synchronized void invalidate(@NonNull Collection<Integer> types) {
+        version++;
+        for (Integer type : types) {
+            buckets.remove(type);
+        }
+    }
+
+    /**
+     * Removes the cached triggers for the given schedules. Called after schedules are deleted.
+     *
+     * @param scheduleIds The schedule IDs.
+     */
+    synchronized void removeSchedules(@NonNull Collection<String> scheduleIds) {
+        version++;
+
+        if (scheduleIds.isEmpty()) {
+            return;
+        }
+
+        Iterator<TriggerEntry> pendingIterator = pendingProgress.values().iterator();
+        while (pendingIterator.hasNext()) {
+            if (scheduleIds.contains(pendingIterator.next().getScheduleId())) {
+                pendingIterator.remove();
+            }
+        }
+
+        for (Bucket bucket : buckets.values()) {
+            Iterator<TriggerEntry> iterator = bucket.triggers.iterator();
+            while (iterator.hasNext()) {
+                if (scheduleIds.contains(iterator.next().getScheduleId())) {
+                    iterator.remove();
+                }
+            }
+
+            if (bucket.predicateIndex != null) {
+                bucket.predicateIndex.removeSchedules(scheduleIds);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached triggers for a given schedule.
+     *
+     * @param scheduleId The schedule ID.
+     */
+    void removeSchedule(@NonNull String scheduleId) {
+        removeSchedules(Collections.singleton(scheduleId));
+    }
+
+    /**
+     * Clears the index. Called after all schedules are deleted.
+     */
+    synchronized void clear() {
+        version++;
+        buckets.clear();
+        pendingProgress.clear();
+    }
+}
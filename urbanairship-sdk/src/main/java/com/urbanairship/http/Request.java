@@ -4,6 +4,7 @@ package com.urbanairship.http;
 
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Base64;
 
 import com.urbanairship.Logger;
@@ -29,6 +30,22 @@ import java.util.zip.GZIPOutputStream;
  */
 public class Request {
 
+    /**
+     * Handler for streaming a successful response body.
+     */
+    public interface ResponseBodyHandler {
+
+        /**
+         * Called on the request thread with the body of a 2xx response. The stream is closed
+         * after this method returns.
+         *
+         * @param inputStream The response body stream.
+         * @param contentType The response content type, or {@code null} if unknown.
+         * @throws IOException If the body fails to be read. The request will fail.
+         */
+        void onResponseBody(@NonNull InputStream inputStream, @Nullable String contentType) throws IOException;
+    }
+
     protected URL url;
     protected String user;
     protected String password;
@@ -136,6 +153,17 @@ public class Request {
      * @return The request response.
      */
     public Response execute() {
+        return execute(null);
+    }
+
+    /**
+     * Executes the request. The body of a 2xx response is passed to the body handler as a stream
+     * instead of being read into the response.
+     *
+     * @param bodyHandler The response body handler, or {@code null} to read the body into the response.
+     * @return The request response, or {@code null} if the request or the body handler failed.
+     */
+    public Response execute(@Nullable ResponseBodyHandler bodyHandler) {
         HttpURLConnection conn = null;
 
         try {
@@ -185,18 +213,31 @@ public class Request {
                 }
             }
 
-            Response.Builder responseBuilder = new Response.Builder(conn.getResponseCode())
+            int responseCode = conn.getResponseCode();
+            Response.Builder responseBuilder = new Response.Builder(responseCode)
                     .setResponseMessage(conn.getResponseMessage())
                     .setResponseHeaders(conn.getHeaderFields())
                     .setLastModified(conn.getLastModified());
 
-
+            InputStream inputStream = null;
             try {
-                responseBuilder.setResponseBody(readEntireStream(conn.getInputStream()));
+                inputStream = conn.getInputStream();
             } catch (IOException ex) {
                 responseBuilder.setResponseBody(readEntireStream(conn.getErrorStream()));
             }
 
+            if (inputStream != null) {
+                if (bodyHandler != null && responseCode / 100 == 2) {
+                    try {
+                        bodyHandler.onResponseBody(inputStream, conn.getContentType());
+                    } finally {
+                        inputStream.close();
+                    }
+                } else {
+                    responseBuilder.setResponseBody(readEntireStream(inputStream));
+                }
+            }
+
             return responseBuilder.create();
 
         } catch (Exception ex) {
@@ -9,26 +9,39 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.net.http.HttpResponseCache;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.util.LruCache;
+import android.view.View;
 import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
 import com.urbanairship.Logger;
+import com.urbanairship.util.BitmapDiskCache;
+import com.urbanairship.util.BitmapPool;
 import com.urbanairship.util.BitmapUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Asynchronous bitmap loader for image views.
@@ -36,6 +49,7 @@ import java.util.concurrent.Executors;
 class ImageLoader {
 
     private static final String CACHE_DIR = "urbanairship-cache";
+    private static final String BITMAP_CACHE_DIR = "urbanairship-bitmap-cache";
 
     /**
      * Max amount of memory cache.
@@ -47,15 +61,55 @@ class ImageLoader {
      */
     private static final int DISK_CACHE_SIZE = 1024 * 1024 * 50; // 50MB
 
+    /**
+     * Scaled bitmap disk cache size.
+     */
+    private static final int BITMAP_DISK_CACHE_SIZE = 1024 * 1024 * 20; // 20MB
+
     /**
      * How long the fade in animation when loading a bitmap into the image view in milliseconds.
      */
     private static final int FADE_IN_TIME_MS = 200;
 
-    private final Executor executor;
+    /**
+     * Load priority for images in visible image views.
+     */
+    private static final int PRIORITY_VISIBLE = 0;
+
+    /**
+     * Load priority for prefetched images.
+     */
+    private static final int PRIORITY_PREFETCH = 1;
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final Context context;
     private final Map<ImageView, Request> requestMap;
     private final LruCache<String, BitmapDrawable> memoryCache;
+    private final BitmapDiskCache diskCache;
+    private final BitmapPool bitmapPool;
+
+    // Loads in flight by cache key. Only accessed on the main thread.
+    private final Map<String, LoadTask> inFlightTasks = new HashMap<>();
+    private final List<LoadTask> prefetchTasks = new ArrayList<>();
+    private long nextSequence;
+
+    // Size of the most recently measured image view
+    private int prefetchWidth;
+    private int prefetchHeight;
+
+    // Drawables displayed by image views. Only accessed on the main thread.
+    private final Map<ImageView, DisplayReference> displayReferences = new WeakHashMap<>();
+
+    // Display references are held until their image view is collected and the reference is polled
+    private final Set<DisplayReference> liveDisplayReferences = new HashSet<>();
+    private final ReferenceQueue<ImageView> collectedImageViews = new ReferenceQueue<>();
+
+    // Reference counts of drawables that are displayed or being delivered by a task
+    private final Map<BitmapDrawable, Integer> drawableReferences = new HashMap<>();
+
+    // Drawables removed from the memory cache while still referenced
+    private final Set<BitmapDrawable> uncachedDrawables = new HashSet<>();
 
     /**
      * Creates an ImageLoader.
@@ -63,17 +117,47 @@ class ImageLoader {
      * @param context The application context.
      */
     ImageLoader(Context context) {
-        this.context = context.getApplicationContext();
+        this(context.getApplicationContext(),
+                new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>()),
+                new BitmapDiskCache(new File(context.getApplicationContext().getCacheDir(), BITMAP_CACHE_DIR), BITMAP_DISK_CACHE_SIZE),
+                BitmapPool.shared(),
+                (int) Math.min(MAX_MEM_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * Creates an ImageLoader.
+     *
+     * @param context The application context.
+     * @param executor The executor images are loaded on. Must be backed by a priority queue.
+     * @param diskCache The scaled bitmap disk cache.
+     * @param bitmapPool The pool evicted bitmaps are returned to.
+     * @param memCacheSize The size of the memory cache in bytes.
+     */
+    @VisibleForTesting
+    ImageLoader(Context context, ThreadPoolExecutor executor, BitmapDiskCache diskCache, BitmapPool bitmapPool, int memCacheSize) {
+        this.context = context;
         this.requestMap = new WeakHashMap<>();
-        this.executor = Executors.newFixedThreadPool(2);
+        this.executor = executor;
+        this.diskCache = diskCache;
+        this.bitmapPool = bitmapPool;
 
         // Memory Cache
-        int memCacheSize = (int) Math.min(MAX_MEM_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 8);
         this.memoryCache = new LruCache<String, BitmapDrawable>(memCacheSize) {
             @Override
             protected int sizeOf(String key, BitmapDrawable bitmapDrawable) {
                 return bitmapDrawable.getBitmap().getByteCount();
             }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, BitmapDrawable oldValue, BitmapDrawable newValue) {
+                synchronized (drawableReferences) {
+                    if (drawableReferences.containsKey(oldValue)) {
+                        uncachedDrawables.add(oldValue);
+                    } else {
+                        ImageLoader.this.bitmapPool.put(oldValue.getBitmap());
+                    }
+                }
+            }
         };
     }
 
@@ -100,6 +184,7 @@ class ImageLoader {
      * @param imageView The image view.
      */
     void load(String imageUrl, @DrawableRes int placeHolder, @NonNull ImageView imageView) {
+        releaseCollectedImageViews();
         cancelRequest(imageView);
 
         Request request = new Request(imageUrl, placeHolder, imageView) {
@@ -115,13 +200,224 @@ class ImageLoader {
         request.execute();
     }
 
+    /**
+     * Prefetches images into the cache at the size of the most recently loaded image view, behind
+     * any loads for visible image views. Prefetches from a previous call that have not started
+     * and are not requested again are canceled.
+     *
+     * @param imageUrls The urls to prefetch.
+     */
+    void prefetch(@NonNull List<String> imageUrls) {
+        List<LoadTask> previousTasks = new ArrayList<>(prefetchTasks);
+        prefetchTasks.clear();
+
+        if (prefetchWidth != 0 || prefetchHeight != 0) {
+            for (String imageUrl : imageUrls) {
+                if (imageUrl == null || memoryCache.get(getCacheKey(imageUrl, prefetchWidth, prefetchHeight)) != null) {
+                    continue;
+                }
+
+                // Joins the task in flight for the same image, including a previous prefetch
+                prefetchTasks.add(startLoad(imageUrl, prefetchWidth, prefetchHeight, PRIORITY_PREFETCH));
+            }
+        }
+
+        for (LoadTask task : previousTasks) {
+            if (!prefetchTasks.contains(task)) {
+                cancelLoad(task);
+            }
+        }
+    }
+
+    /**
+     * Sets the drawable displayed by an image view, releasing the previously displayed drawable.
+     *
+     * @param imageView The image view.
+     * @param bitmapDrawable The displayed drawable, or {@code null} if the image view no longer
+     * displays a loaded drawable.
+     * @param imageUrl The image url, used to reload the image if the view is attached again after
+     * it was detached.
+     * @param placeHolder The placeholder.
+     */
+    private void setDisplayedDrawable(@NonNull ImageView imageView, @Nullable BitmapDrawable bitmapDrawable, String imageUrl, int placeHolder) {
+        releaseCollectedImageViews();
+
+        DisplayReference reference = displayReferences.get(imageView);
+        if (reference == null) {
+            reference = new DisplayReference(imageView, collectedImageViews);
+            displayReferences.put(imageView, reference);
+            liveDisplayReferences.add(reference);
+            imageView.addOnAttachStateChangeListener(reference);
+        }
+
+        reference.imageUrl = imageUrl;
+        reference.placeHolder = placeHolder;
+        reference.isReleasedOnDetach = false;
+        reference.setDrawable(bitmapDrawable);
+    }
+
+    /**
+     * Releases the drawables of image views that were garbage collected.
+     */
+    @VisibleForTesting
+    void releaseCollectedImageViews() {
+        Reference<? extends ImageView> reference;
+        while ((reference = collectedImageViews.poll()) != null) {
+            DisplayReference displayReference = (DisplayReference) reference;
+            liveDisplayReferences.remove(displayReference);
+            displayReference.setDrawable(null);
+        }
+    }
+
+    /**
+     * Gets the display reference of an image view.
+     *
+     * @param imageView The image view.
+     * @return The display reference, or {@code null} if the image view never displayed an image.
+     */
+    @VisibleForTesting
+    @Nullable
+    DisplayReference getDisplayReference(@NonNull ImageView imageView) {
+        return displayReferences.get(imageView);
+    }
+
+    /**
+     * Adds a reference to a drawable so its bitmap is not reused.
+     *
+     * @param bitmapDrawable The drawable.
+     */
+    private void acquire(@NonNull BitmapDrawable bitmapDrawable) {
+        synchronized (drawableReferences) {
+            Integer count = drawableReferences.get(bitmapDrawable);
+            drawableReferences.put(bitmapDrawable, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Gets a drawable from the memory cache and adds a reference to it. The lookup and the
+     * reference are made under the same lock that evictions check the references with, so a
+     * drawable evicted from another thread can not be returned to the pool in between.
+     *
+     * @param cacheKey The cache key.
+     * @return The referenced drawable, or {@code null} if it is not cached. The caller has to
+     * release the reference.
+     */
+    @Nullable
+    private BitmapDrawable acquireCachedDrawable(@NonNull String cacheKey) {
+        synchronized (drawableReferences) {
+            BitmapDrawable bitmapDrawable = memoryCache.get(cacheKey);
+            if (bitmapDrawable != null) {
+                acquire(bitmapDrawable);
+            }
+
+            return bitmapDrawable;
+        }
+    }
+
+    /**
+     * Removes a reference to a drawable. Once a drawable that is no longer cached has no
+     * references, its bitmap is returned to the pool.
+     *
+     * @param bitmapDrawable The drawable.
+     */
+    private void release(@NonNull BitmapDrawable bitmapDrawable) {
+        synchronized (drawableReferences) {
+            Integer count = drawableReferences.get(bitmapDrawable);
+            if (count == null) {
+                return;
+            }
+
+            if (count > 1) {
+                drawableReferences.put(bitmapDrawable, count - 1);
+                return;
+            }
+
+            drawableReferences.remove(bitmapDrawable);
+            if (uncachedDrawables.remove(bitmapDrawable)) {
+                bitmapPool.put(bitmapDrawable.getBitmap());
+            }
+        }
+    }
+
+    /**
+     * Gets the cache key for an image at a size.
+     *
+     * @param imageUrl The image url.
+     * @param width The image width.
+     * @param height The image height.
+     * @return The cache key.
+     */
+    private static String getCacheKey(String imageUrl, int width, int height) {
+        return imageUrl + ",size(" + width + "x" + height + ")";
+    }
+
+    /**
+     * Starts loading an image, or joins the load already in flight for the same cache key.
+     *
+     * @param imageUrl The image url.
+     * @param width The image width.
+     * @param height The image height.
+     * @param priority The load priority.
+     * @return The load task.
+     */
+    private LoadTask startLoad(String imageUrl, int width, int height, int priority) {
+        String cacheKey = getCacheKey(imageUrl, width, height);
+
+        LoadTask task = inFlightTasks.get(cacheKey);
+        if (task == null) {
+            task = new LoadTask(imageUrl, cacheKey, width, height, priority);
+            inFlightTasks.put(cacheKey, task);
+            executor.execute(task);
+        } else if (priority < task.priority && executor.remove(task)) {
+            // Re-queue the waiting task at the higher priority
+            task.priority = priority;
+            executor.execute(task);
+        }
+
+        return task;
+    }
+
+    /**
+     * Cancels a load task if it has not started and is no longer needed.
+     *
+     * @param task The load task.
+     */
+    private void cancelLoad(LoadTask task) {
+        if (task.requests.isEmpty() && executor.remove(task)) {
+            task.isCancelled = true;
+            inFlightTasks.remove(task.cacheKey);
+        }
+    }
+
+    /**
+     * Called on the main thread when a load task finishes.
+     *
+     * @param task The load task.
+     * @param bitmapDrawable The loaded drawable, or {@code null} if the load failed.
+     */
+    private void onLoadFinished(LoadTask task, @Nullable BitmapDrawable bitmapDrawable) {
+        if (inFlightTasks.get(task.cacheKey) == task) {
+            inFlightTasks.remove(task.cacheKey);
+        }
+
+        for (Request request : new ArrayList<>(task.requests)) {
+            request.onLoadFinished(bitmapDrawable);
+        }
+        task.requests.clear();
+
+        if (bitmapDrawable != null) {
+            // Release the task's reference
+            release(bitmapDrawable);
+        }
+    }
+
     /**
      * Request to load a bitmap into an ImageView.
      */
     private abstract class Request implements ViewTreeObserver.OnPreDrawListener {
         private final String imageUrl;
         private final int placeHolder;
-        private BitmapAsyncTask task;
+        private LoadTask task;
         private int width;
         private int height;
         private final WeakReference<ImageView> imageViewReference;
@@ -152,7 +448,8 @@ class ImageLoader {
             }
 
             if (task != null) {
-                task.cancel(true);
+                task.requests.remove(this);
+                cancelLoad(task);
                 task = null;
             }
         }
@@ -192,22 +489,59 @@ class ImageLoader {
                 }
             }
 
-            BitmapDrawable cachedBitmapDrawable = memoryCache.get(getCacheKey());
+            // Prefetches are loaded at the most recently requested size
+            prefetchWidth = width;
+            prefetchHeight = height;
+
+            BitmapDrawable cachedBitmapDrawable = acquireCachedDrawable(getCacheKey(imageUrl, width, height));
             if (cachedBitmapDrawable != null) {
                 imageView.setImageDrawable(cachedBitmapDrawable);
+                setDisplayedDrawable(imageView, cachedBitmapDrawable, imageUrl, placeHolder);
+
+                // The image view holds its own reference now
+                release(cachedBitmapDrawable);
                 onFinish();
             } else {
+                setDisplayedDrawable(imageView, null, imageUrl, placeHolder);
                 if (placeHolder > 0) {
                     imageView.setImageResource(placeHolder);
                 } else {
                     imageView.setImageDrawable(null);
                 }
 
-                this.task = new BitmapAsyncTask(this);
-                task.executeOnExecutor(executor);
+                if (imageUrl == null) {
+                    onFinish();
+                    return;
+                }
+
+                this.task = startLoad(imageUrl, width, height, PRIORITY_VISIBLE);
+                task.requests.add(this);
             }
         }
 
+        /**
+         * Called when the request's load task finishes.
+         *
+         * @param bitmapDrawable The loaded drawable, or {@code null} if the load failed.
+         */
+        void onLoadFinished(@Nullable BitmapDrawable bitmapDrawable) {
+            this.task = null;
+
+            final ImageView imageView = getImageView();
+            if (bitmapDrawable != null && imageView != null) {
+                // Transition drawable with a transparent drawable and the final drawable
+                TransitionDrawable td = new TransitionDrawable(new Drawable[] {
+                        new ColorDrawable(ContextCompat.getColor(context, android.R.color.transparent)),
+                        bitmapDrawable
+                });
+                imageView.setImageDrawable(td);
+                setDisplayedDrawable(imageView, bitmapDrawable, imageUrl, placeHolder);
+                td.startTransition(FADE_IN_TIME_MS);
+            }
+
+            onFinish();
+        }
+
         @Override
         public boolean onPreDraw() {
             ImageView imageView = getImageView();
@@ -224,61 +558,159 @@ class ImageLoader {
 
             return true;
         }
+    }
+
+    /**
+     * Holds the drawable displayed by an image view without keeping the image view alive. The
+     * drawable is released when the image view is detached from its window, and reloaded if it is
+     * attached again, or when the image view is garbage collected.
+     */
+    @VisibleForTesting
+    class DisplayReference extends WeakReference<ImageView> implements View.OnAttachStateChangeListener {
+        private BitmapDrawable drawable;
+        private String imageUrl;
+        private int placeHolder;
+        private boolean isReleasedOnDetach;
+
+        DisplayReference(@NonNull ImageView imageView, @NonNull ReferenceQueue<ImageView> queue) {
+            super(imageView, queue);
+        }
 
         /**
-         * Returns the memory cache key for the request.
+         * Sets the displayed drawable, releasing the previous drawable.
          *
-         * @return The memory cache key.
+         * @param bitmapDrawable The drawable, or {@code null} if no loaded drawable is displayed.
          */
-        String getCacheKey() {
-            return imageUrl + ",size(" + width + "x" + height + ")";
+        private void setDrawable(@Nullable BitmapDrawable bitmapDrawable) {
+            if (bitmapDrawable != null) {
+                acquire(bitmapDrawable);
+            }
+
+            BitmapDrawable previous = drawable;
+            drawable = bitmapDrawable;
+
+            if (previous != null) {
+                release(previous);
+            }
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View view) {
+            if (!isReleasedOnDetach) {
+                return;
+            }
+
+            isReleasedOnDetach = false;
+            if (!requestMap.containsKey(view)) {
+                load(imageUrl, placeHolder, (ImageView) view);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View view) {
+            if (drawable == null) {
+                return;
+            }
+
+            // The bitmap may be reused once released, so the view can no longer display it
+            ((ImageView) view).setImageDrawable(null);
+            setDrawable(null);
+            isReleasedOnDetach = true;
         }
     }
 
     /**
-     * Bitmap task to fetch the bitmap.
+     * Task that loads a bitmap for every request waiting on the same cache key. Tasks for visible
+     * image views run before prefetches, otherwise in the order they were started.
      */
-    private class BitmapAsyncTask extends AsyncTask<Void, Void, BitmapDrawable> {
-        private final Request request;
+    private class LoadTask implements Runnable, Comparable<LoadTask> {
+        private final String imageUrl;
+        private final String cacheKey;
+        private final int width;
+        private final int height;
+        private final long sequence;
+
+        // Requests waiting on the task. Only accessed on the main thread.
+        private final List<Request> requests = new ArrayList<>();
 
-        BitmapAsyncTask(Request request) {
-            this.request = request;
+        // Only changed on the main thread while the task is not queued
+        private volatile int priority;
+        private volatile boolean isCancelled;
+
+        LoadTask(String imageUrl, String cacheKey, int width, int height, int priority) {
+            this.imageUrl = imageUrl;
+            this.cacheKey = cacheKey;
+            this.width = width;
+            this.height = height;
+            this.priority = priority;
+            this.sequence = nextSequence++;
         }
 
         @Override
-        protected BitmapDrawable doInBackground(Void... params) {
-            installCache();
+        public void run() {
+            final BitmapDrawable bitmapDrawable = isCancelled ? null : load();
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onLoadFinished(LoadTask.this, bitmapDrawable);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(@NonNull LoadTask another) {
+            if (priority != another.priority) {
+                return priority < another.priority ? -1 : 1;
+            }
 
-            if (request.imageUrl == null) {
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+
+        /**
+         * Loads the bitmap from the disk cache or the network.
+         *
+         * @return The loaded drawable, or {@code null} if the load failed.
+         */
+        @Nullable
+        private BitmapDrawable load() {
+            // Already scaled bitmap from the disk cache
+            Bitmap bitmap = diskCache.get(cacheKey);
+            if (bitmap != null) {
+                return cacheBitmap(bitmap);
+            }
+
+            if (isCancelled) {
                 return null;
             }
 
+            installCache();
+
             try {
-                Bitmap bitmap = BitmapUtils.fetchScaledBitmap(context, new URL(request.imageUrl), request.width, request.height);
+                bitmap = BitmapUtils.fetchScaledBitmap(context, new URL(imageUrl), width, height);
                 if (bitmap != null) {
-                    BitmapDrawable bitmapDrawable = new BitmapDrawable(context.getResources(), bitmap);
-                    memoryCache.put(request.getCacheKey(), bitmapDrawable);
-                    return bitmapDrawable;
+                    diskCache.put(cacheKey, bitmap);
+                    return cacheBitmap(bitmap);
                 }
             } catch (IOException e) {
-                Logger.debug("Unable to fetch bitmap: " + request.imageUrl);
+                Logger.debug("Unable to fetch bitmap: " + imageUrl);
             }
 
             return null;
         }
 
-        @Override
-        protected void onPostExecute(BitmapDrawable bitmapDrawable) {
-            final ImageView imageView = request.getImageView();
-            if (bitmapDrawable != null && imageView != null) {
-                // Transition drawable with a transparent drawable and the final drawable
-                TransitionDrawable td = new TransitionDrawable(new Drawable[] {
-                        new ColorDrawable(ContextCompat.getColor(context, android.R.color.transparent)),
-                        bitmapDrawable
-                });
-                imageView.setImageDrawable(td);
-                td.startTransition(FADE_IN_TIME_MS);
-            }
+        /**
+         * Adds a bitmap to the memory cache. The returned drawable is referenced by the task
+         * until it is delivered, so it is not reused if evicted in the meantime.
+         *
+         * @param bitmap The bitmap.
+         * @return The cached bitmap drawable.
+         */
+        private BitmapDrawable cacheBitmap(Bitmap bitmap) {
+            BitmapDrawable bitmapDrawable = new BitmapDrawable(context.getResources(), bitmap);
+            acquire(bitmapDrawable);
+            memoryCache.put(cacheKey, bitmapDrawable);
+            return bitmapDrawable;
         }
 
         /**
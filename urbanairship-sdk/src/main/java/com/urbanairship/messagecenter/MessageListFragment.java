@@ -25,6 +25,8 @@ import android.widget.TextView;
 import com.urbanairship.Cancelable;
 import com.urbanairship.R;
 import com.urbanairship.UAirship;
+import com.urbanairship.richpush.InboxChangeSet;
+import com.urbanairship.richpush.PagedMessageList;
 import com.urbanairship.richpush.RichPushInbox;
 import com.urbanairship.richpush.RichPushMessage;
 import com.urbanairship.util.ViewUtils;
@@ -51,10 +53,19 @@ public class MessageListFragment extends Fragment {
         void onListViewReady(AbsListView absListView);
     }
 
+    /**
+     * Number of rows past the bound rows to prefetch icons for.
+     */
+    private static final int PREFETCH_ITEM_COUNT = 5;
+
+    // Position of the most recently bound row
+    private int lastBoundPosition = -1;
+
     private SwipeRefreshLayout refreshLayout;
     private AbsListView absListView;
     private RichPushInbox richPushInbox;
     private MessageViewAdapter adapter;
+    private PagedMessageList pagedMessages;
     private Cancelable fetchMessagesOperation;
     private ImageLoader imageLoader;
     private String currentMessageId;
@@ -65,31 +76,36 @@ public class MessageListFragment extends Fragment {
     @DrawableRes
     private int placeHolder = R.drawable.ua_ic_image_placeholder;
 
-    private final RichPushInbox.Listener inboxListener = new RichPushInbox.Listener() {
+    // Set when the inbox listener is called with a change set, ahead of onInboxUpdated
+    private boolean isChangeSetHandled;
+
+    private final RichPushInbox.ChangeSetListener inboxListener = new RichPushInbox.ChangeSetListener() {
         @Override
-        public void onInboxUpdated() {
-            updateAdapterMessages();
+        public void onInboxChanged(@NonNull InboxChangeSet changeSet) {
+            isChangeSetHandled = true;
+            pagedMessages.reload(changeSet);
         }
-    };
 
-    /**
-     * Gets messages from the inbox filtered by the local predicate
-     * @return The filtered list of messages.
-     */
-    private List<RichPushMessage> getMessages() {
-        return richPushInbox.getMessages(predicate);
-    }
+        @Override
+        public void onInboxUpdated() {
+            if (isChangeSetHandled) {
+                isChangeSetHandled = false;
+                return;
+            }
 
-    private void updateAdapterMessages() {
-        adapter.set(getMessages());
-    }
+            pagedMessages.reload();
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         this.richPushInbox = UAirship.shared().getInbox();
         this.adapter = createMessageViewAdapter();
-        updateAdapterMessages();
+
+        this.pagedMessages = new PagedMessageList(getContext(), richPushInbox);
+        pagedMessages.setPredicate(predicate);
+        adapter.setPagedMessages(pagedMessages);
     }
 
     /**
@@ -218,6 +234,13 @@ public class MessageListFragment extends Fragment {
     protected MessageViewAdapter createMessageViewAdapter() {
         imageLoader = new ImageLoader(getContext());
         return new MessageViewAdapter(getContext(), R.layout.ua_item_mc) {
+            @Override
+            public View getView(int position, View convertView, ViewGroup parent) {
+                View view = super.getView(position, convertView, parent);
+                prefetchIcons(position);
+                return view;
+            }
+
             @Override
             protected void bindView(View view, RichPushMessage message, final int position) {
                 if (view instanceof MessageItemView) {
@@ -236,14 +259,41 @@ public class MessageListFragment extends Fragment {
         };
     }
 
+    /**
+     * Prefetches icons for the rows past a bound row, in the direction the list is scrolling.
+     *
+     * @param position The position of the bound row.
+     */
+    private void prefetchIcons(int position) {
+        if (imageLoader == null || position == lastBoundPosition) {
+            return;
+        }
+
+        boolean isScrollingUp = position < lastBoundPosition;
+        lastBoundPosition = position;
+
+        int start = isScrollingUp ? Math.max(0, position - PREFETCH_ITEM_COUNT) : position + 1;
+        int end = isScrollingUp ? position : Math.min(adapter.getCount(), start + PREFETCH_ITEM_COUNT);
+
+        List<String> iconUrls = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            RichPushMessage message = adapter.peekMessage(i);
+            if (message != null && message.getListIconUrl() != null) {
+                iconUrls.add(message.getListIconUrl());
+            }
+        }
+
+        imageLoader.prefetch(iconUrls);
+    }
+
     @Override
     public void onResume() {
         super.onResume();
 
         richPushInbox.addListener(inboxListener);
 
-        // Set latest messages
-        updateAdapterMessages();
+        // Load the latest messages
+        pagedMessages.reload();
 
         getAbsListView().invalidate();
     }
@@ -367,8 +417,9 @@ public class MessageListFragment extends Fragment {
 
     void setPredicate(RichPushInbox.Predicate predicate) {
         this.predicate = predicate;
-        if (adapter != null) {
-            updateAdapterMessages();
+        if (pagedMessages != null) {
+            pagedMessages.setPredicate(predicate);
+            pagedMessages.reload();
         }
     }
 }
@@ -3,16 +3,20 @@
 package com.urbanairship.messagecenter;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
+import com.urbanairship.richpush.PagedMessageList;
 import com.urbanairship.richpush.RichPushMessage;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -24,6 +28,7 @@ public abstract class MessageViewAdapter extends BaseAdapter {
     private final List<RichPushMessage> items;
     private final Context context;
     private final int layout;
+    private PagedMessageList pagedMessages;
 
     /**
      * Creates a ViewBinder
@@ -39,11 +44,19 @@ public abstract class MessageViewAdapter extends BaseAdapter {
 
     @Override
     public int getCount() {
+        if (pagedMessages != null) {
+            return pagedMessages.getCount();
+        }
+
         return items.size();
     }
 
     @Override
     public Object getItem(int position) {
+        if (pagedMessages != null) {
+            return pagedMessages.getMessage(position);
+        }
+
         if (position > items.size()) {
             return null;
         }
@@ -53,6 +66,10 @@ public abstract class MessageViewAdapter extends BaseAdapter {
 
     @Override
     public long getItemId(int position) {
+        if (pagedMessages != null) {
+            return pagedMessages.getKey(position);
+        }
+
         if (position > items.size()                                                                                                  ) {
             return -1;
         }
@@ -68,13 +85,65 @@ public abstract class MessageViewAdapter extends BaseAdapter {
             view = layoutInflater.inflate(layout, parent, false);
         }
 
-        if (position <= items.size()) {
-            bindView(view, items.get(position), position);
+        if (position < getCount()) {
+            RichPushMessage message = (RichPushMessage) getItem(position);
+
+            // A paged message removed from the database before the list reloads
+            if (message != null) {
+                bindView(view, message, position);
+            }
         }
 
         return view;
     }
 
+    /**
+     * Gets the message at a position without loading it.
+     *
+     * @param position The position.
+     * @return The message, or {@code null} if it is not loaded.
+     */
+    @Nullable
+    RichPushMessage peekMessage(int position) {
+        if (pagedMessages != null) {
+            return pagedMessages.peekMessage(position);
+        }
+
+        return (RichPushMessage) getItem(position);
+    }
+
+    /**
+     * Backs the adapter with a paged message list, replacing the current items. The list view is
+     * notified whenever the paged messages change.
+     *
+     * @param pagedMessages The paged messages.
+     */
+    void setPagedMessages(@NonNull PagedMessageList pagedMessages) {
+        synchronized (items) {
+            items.clear();
+        }
+
+        this.pagedMessages = pagedMessages;
+        pagedMessages.setListener(new PagedMessageList.Listener() {
+            @Override
+            public void onMessagesChanged() {
+                notifyDataSetChanged();
+            }
+        });
+
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Stops backing the adapter with the paged messages.
+     */
+    private void clearPagedMessages() {
+        if (pagedMessages != null) {
+            pagedMessages.setListener(null);
+            pagedMessages = null;
+        }
+    }
+
     /**
      * Called when a {@link RichPushMessage} needs to be bound to the view.
      *
@@ -90,6 +159,8 @@ public abstract class MessageViewAdapter extends BaseAdapter {
      * @param collection Collection of items
      */
     public void set(Collection<RichPushMessage> collection) {
+        clearPagedMessages();
+
         synchronized (items) {
             items.clear();
             items.addAll(collection);
@@ -98,6 +169,41 @@ public abstract class MessageViewAdapter extends BaseAdapter {
         notifyDataSetChanged();
     }
 
+    /**
+     * Sets the current items in the adapter to the list, only notifying the list view if the items
+     * were added, removed or reordered, or if a changed message is in the list.
+     *
+     * @param messages The messages.
+     * @param changedMessageIds IDs of messages whose content changed, such as their read state.
+     */
+    public void set(@NonNull List<RichPushMessage> messages, @NonNull Set<String> changedMessageIds) {
+        boolean changed = pagedMessages != null;
+        clearPagedMessages();
+
+        synchronized (items) {
+            if (items.size() != messages.size()) {
+                changed = true;
+            } else {
+                for (int i = 0; i < messages.size(); i++) {
+                    RichPushMessage message = messages.get(i);
+                    if (items.get(i) != message || changedMessageIds.contains(message.getMessageId())) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+
+            if (changed) {
+                items.clear();
+                items.addAll(messages);
+            }
+        }
+
+        if (changed) {
+            notifyDataSetChanged();
+        }
+    }
+
     /**
      * Returns the context.
      *
@@ -532,8 +532,10 @@ class ChannelJobHandler {
      * @param channelPayload A ChannelRegistrationPayload.
      */
     private void setLastRegistrationPayload(ChannelRegistrationPayload channelPayload) {
-        dataStore.put(LAST_REGISTRATION_PAYLOAD_KEY, channelPayload);
-        dataStore.put(LAST_REGISTRATION_TIME_KEY, System.currentTimeMillis());
+        dataStore.edit()
+                 .put(LAST_REGISTRATION_PAYLOAD_KEY, channelPayload)
+                 .put(LAST_REGISTRATION_TIME_KEY, System.currentTimeMillis())
+                 .apply();
     }
 
     /**
@@ -656,8 +658,10 @@ class ChannelJobHandler {
         Bundle removeTagsBundle = job.getExtras().getBundle(TagGroupsEditor.EXTRA_REMOVE_TAG_GROUPS);
         TagUtils.combineTagGroups(removeTagsBundle, pendingRemoveTags, pendingAddTags);
 
-        dataStore.put(PENDING_CHANNEL_ADD_TAG_GROUPS_KEY, JsonValue.wrapOpt(pendingAddTags));
-        dataStore.put(PENDING_CHANNEL_REMOVE_TAG_GROUPS_KEY, JsonValue.wrapOpt(pendingRemoveTags));
+        dataStore.edit()
+                 .put(PENDING_CHANNEL_ADD_TAG_GROUPS_KEY, JsonValue.wrapOpt(pendingAddTags))
+                 .put(PENDING_CHANNEL_REMOVE_TAG_GROUPS_KEY, JsonValue.wrapOpt(pendingRemoveTags))
+                 .apply();
 
         // Make sure we actually have tag changes to perform
         if (pushManager.getChannelId() != null && (!pendingAddTags.isEmpty() || !pendingRemoveTags.isEmpty())) {
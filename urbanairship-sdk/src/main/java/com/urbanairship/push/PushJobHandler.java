@@ -3,14 +3,18 @@
 package com.urbanairship.push;
 
 import android.app.Notification;
+import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.service.notification.StatusBarNotification;
+import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 
 import com.urbanairship.job.Job;
@@ -27,6 +31,7 @@ import com.urbanairship.json.JsonList;
 import com.urbanairship.json.JsonValue;
 import com.urbanairship.push.iam.InAppMessage;
 import com.urbanairship.push.notifications.NotificationFactory;
+import com.urbanairship.push.notifications.NotificationImageLoader;
 import com.urbanairship.richpush.RichPushInbox;
 import com.urbanairship.util.UAStringUtil;
 
@@ -71,6 +76,7 @@ class PushJobHandler {
     private final PreferenceDataStore dataStore;
     private final Context context;
     private final NotificationManagerCompat notificationManagerCompat;
+    private final NotificationImageLoader imageLoader;
 
     /**
      * Default constructor.
@@ -80,17 +86,18 @@ class PushJobHandler {
      * @param dataStore The preference data store.
      */
     PushJobHandler(Context context, UAirship airship, PreferenceDataStore dataStore) {
-        this(context, airship, dataStore, NotificationManagerCompat.from(context));
+        this(context, airship, dataStore, NotificationManagerCompat.from(context), NotificationImageLoader.shared(context));
     }
 
     @VisibleForTesting
     PushJobHandler(Context context, UAirship airship, PreferenceDataStore dataStore,
-                   NotificationManagerCompat notificationManager) {
+                   NotificationManagerCompat notificationManager, NotificationImageLoader imageLoader) {
         this.context = context;
         this.dataStore = dataStore;
         this.airship = airship;
         this.notificationManager = notificationManager;
         this.notificationManagerCompat = NotificationManagerCompat.from(context);
+        this.imageLoader = imageLoader;
     }
 
     /**
@@ -226,7 +233,6 @@ class PushJobHandler {
      */
     private Integer showNotification(@NonNull PushMessage message, @Nullable NotificationFactory factory) {
         int notificationId;
-        Notification notification;
 
         if (factory == null) {
             Logger.info("NotificationFactory is null. Unable to display notification for message: " + message);
@@ -235,14 +241,42 @@ class PushJobHandler {
 
         try {
             notificationId = factory.getNextId(message);
-            notification = factory.createNotification(message, notificationId);
         } catch (Exception e) {
             Logger.error("Unable to create and display notification.", e);
             return null;
         }
 
+        return postNotification(message, factory, notificationId, false) ? notificationId : null;
+    }
+
+    /**
+     * Builds and posts the notification. If the notification's image missed its deadline, the
+     * notification is posted without it and updated in place once the image is loaded.
+     *
+     * @param message The push message.
+     * @param factory The notification factory.
+     * @param notificationId The notification ID.
+     * @param isUpdate {@code true} if updating a posted notification, otherwise {@code false}.
+     * @return {@code true} if the notification was posted, otherwise {@code false}.
+     */
+    private boolean postNotification(@NonNull final PushMessage message, @NonNull final NotificationFactory factory,
+                                     final int notificationId, boolean isUpdate) {
+        Notification notification;
+
+        try {
+            notification = factory.createNotification(message, notificationId);
+        } catch (Exception e) {
+            Logger.error("Unable to create and display notification.", e);
+            return false;
+        }
+
         if (notification == null) {
-            return null;
+            return false;
+        }
+
+        if (isUpdate) {
+            // Only the image changed, so avoid alerting the user again
+            notification.flags |= Notification.FLAG_ONLY_ALERT_ONCE;
         }
 
         if (!airship.getPushManager().isVibrateEnabled() || airship.getPushManager().isInQuietTime()) {
@@ -284,7 +318,46 @@ class PushJobHandler {
         Logger.info("Posting notification " + notification + " with ID " + notificationId);
         notificationManager.notify(notificationId, notification);
 
-        return notificationId;
+        Bundle extras = NotificationCompat.getExtras(notification);
+        String pendingImageUrl = extras == null ? null : extras.getString(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL);
+        if (!isUpdate && pendingImageUrl != null) {
+            imageLoader.whenCached(pendingImageUrl, new Runnable() {
+                @Override
+                public void run() {
+                    if (!isNotificationActive(notificationId)) {
+                        Logger.debug("PushJobHandler - Notification " + notificationId + " was dismissed, skipping image update.");
+                        return;
+                    }
+
+                    Logger.debug("PushJobHandler - Updating notification " + notificationId + " with its loaded image.");
+                    postNotification(message, factory, notificationId, true);
+                }
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if a notification is still displayed. Always {@code true} before Marshmallow, where
+     * the displayed notifications are unavailable.
+     *
+     * @param notificationId The notification ID.
+     * @return {@code true} if the notification is displayed, otherwise {@code false}.
+     */
+    private boolean isNotificationActive(int notificationId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return true;
+        }
+
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        for (StatusBarNotification statusBarNotification : manager.getActiveNotifications()) {
+            if (statusBarNotification.getId() == notificationId && statusBarNotification.getTag() == null) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
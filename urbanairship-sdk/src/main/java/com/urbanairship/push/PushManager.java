@@ -964,8 +964,10 @@ public class PushManager extends AirshipComponent {
      * @param channelLocation The channel location as a URL.
      */
     void setChannel(String channelId, String channelLocation) {
-        preferenceDataStore.put(CHANNEL_ID_KEY, channelId);
-        preferenceDataStore.put(CHANNEL_LOCATION_KEY, channelLocation);
+        preferenceDataStore.edit()
+                           .put(CHANNEL_ID_KEY, channelId)
+                           .put(CHANNEL_LOCATION_KEY, channelLocation)
+                           .apply();
     }
 
     /**
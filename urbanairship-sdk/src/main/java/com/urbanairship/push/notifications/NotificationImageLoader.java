@@ -0,0 +1,254 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.push.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+import com.urbanairship.util.BitmapDiskCache;
+import com.urbanairship.util.BitmapUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads notification images with a deadline.
+ * <p/>
+ * Images are fetched in the background and stored in a shared disk cache, so an image that misses
+ * the deadline, or is sent again in a later push, is available without the network.
+ *
+ * @hide
+ */
+public class NotificationImageLoader {
+
+    /**
+     * Extra set on a notification built without an image because the image missed the deadline.
+     * The value is the image URL.
+     */
+    public static final String EXTRA_PENDING_IMAGE_URL = "com.urbanairship.push.notifications.PENDING_IMAGE_URL";
+
+    private static final String CACHE_DIR = "com.urbanairship.notification_images";
+    private static final long DISK_CACHE_SIZE = 1024 * 1024 * 10; // 10MB
+    private static final int THREAD_COUNT = 2;
+
+    private static NotificationImageLoader sharedLoader;
+
+    private final Context context;
+    private final BitmapDiskCache diskCache;
+    private final Executor executor;
+
+    // In flight loads by URL
+    private final Map<String, Load> pendingLoads = new HashMap<>();
+
+    /**
+     * Gets the shared notification image loader.
+     *
+     * @param context The application context.
+     * @return The shared notification image loader.
+     */
+    @NonNull
+    public static synchronized NotificationImageLoader shared(@NonNull Context context) {
+        if (sharedLoader == null) {
+            Context appContext = context.getApplicationContext();
+            sharedLoader = new NotificationImageLoader(appContext,
+                    new BitmapDiskCache(new File(appContext.getCacheDir(), CACHE_DIR), DISK_CACHE_SIZE),
+                    Executors.newFixedThreadPool(THREAD_COUNT));
+        }
+
+        return sharedLoader;
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param context The application context.
+     * @param diskCache The disk cache.
+     * @param executor The executor images are fetched on.
+     */
+    @VisibleForTesting
+    NotificationImageLoader(@NonNull Context context, @NonNull BitmapDiskCache diskCache, @NonNull Executor executor) {
+        this.context = context;
+        this.diskCache = diskCache;
+        this.executor = executor;
+    }
+
+    /**
+     * Loads an image, waiting at most the timeout for it to be fetched. If the image misses the
+     * deadline it continues to load in the background.
+     *
+     * @param url The image URL.
+     * @param reqWidth The requested width of the image.
+     * @param reqHeight The requested height of the image.
+     * @param timeoutMs The max time to wait for the image in milliseconds.
+     * @return The image, or {@code null} if it failed to load.
+     * @throws TimeoutException If the image missed the deadline.
+     */
+    @Nullable
+    @WorkerThread
+    public Bitmap load(@NonNull URL url, int reqWidth, int reqHeight, long timeoutMs) throws TimeoutException {
+        String key = url.toString();
+
+        Bitmap bitmap = diskCache.get(key);
+        if (bitmap != null) {
+            Logger.verbose("NotificationImageLoader - Loaded cached image: " + url);
+            return bitmap;
+        }
+
+        Load load;
+        synchronized (pendingLoads) {
+            load = pendingLoads.get(key);
+            if (load == null) {
+                load = new Load(url, reqWidth, reqHeight);
+                pendingLoads.put(key, load);
+                executor.execute(load);
+            }
+        }
+
+        try {
+            return load.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Logger.info("NotificationImageLoader - Image missed the deadline, continuing in the background: " + url);
+            throw e;
+        } catch (InterruptedException e) {
+            Logger.warn("NotificationImageLoader - Interrupted while waiting for image: " + url);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.error("NotificationImageLoader - Failed to load image: " + url, e.getCause());
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs a runnable once an image that missed its deadline is cached. If the image is already
+     * cached the runnable is run immediately on the loader's executor. Nothing is run if the image
+     * failed to load.
+     *
+     * @param url The image URL.
+     * @param runnable The runnable.
+     */
+    public void whenCached(@NonNull String url, @NonNull Runnable runnable) {
+        synchronized (pendingLoads) {
+            Load load = pendingLoads.get(url);
+            if (load != null) {
+                load.listeners.add(runnable);
+                return;
+            }
+        }
+
+        executor.execute(new CachedCheck(url, runnable));
+    }
+
+    /**
+     * Fetches an image.
+     *
+     * @param url The image URL.
+     * @param reqWidth The requested width of the image.
+     * @param reqHeight The requested height of the image.
+     * @return The image, or {@code null} if it failed to be fetched.
+     * @throws IOException If the image failed to be read.
+     */
+    @VisibleForTesting
+    @Nullable
+    @WorkerThread
+    Bitmap fetchBitmap(@NonNull URL url, int reqWidth, int reqHeight) throws IOException {
+        return BitmapUtils.fetchScaledBitmap(context, url, reqWidth, reqHeight);
+    }
+
+    /**
+     * Runs a runnable if an image is cached.
+     */
+    private class CachedCheck implements Runnable {
+
+        private final String url;
+        private final Runnable runnable;
+
+        CachedCheck(@NonNull String url, @NonNull Runnable runnable) {
+            this.url = url;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            if (diskCache.contains(url)) {
+                runnable.run();
+            }
+        }
+    }
+
+    /**
+     * Fetches and caches an image.
+     */
+    private class Load extends FutureTask<Bitmap> {
+
+        private final String key;
+
+        // Guarded by pendingLoads
+        private final List<Runnable> listeners = new ArrayList<>();
+
+        Load(@NonNull final URL url, final int reqWidth, final int reqHeight) {
+            super(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    Logger.info("NotificationImageLoader - Fetching image: " + url);
+                    Bitmap bitmap = fetchBitmap(url, reqWidth, reqHeight);
+                    if (bitmap != null) {
+                        diskCache.put(url.toString(), bitmap);
+                    }
+
+                    return bitmap;
+                }
+            });
+
+            this.key = url.toString();
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> runnables;
+            synchronized (pendingLoads) {
+                pendingLoads.remove(key);
+                runnables = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+
+            if (!isLoaded()) {
+                return;
+            }
+
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+
+        /**
+         * Checks if the load finished with an image.
+         *
+         * @return {@code true} if the image loaded, otherwise {@code false}.
+         */
+        private boolean isLoaded() {
+            try {
+                return !isCancelled() && get() != null;
+            } catch (InterruptedException | ExecutionException e) {
+                return false;
+            }
+        }
+    }
+}
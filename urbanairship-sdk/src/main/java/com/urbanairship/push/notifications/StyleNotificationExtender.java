@@ -6,6 +6,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.NotificationCompat;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
@@ -17,12 +18,11 @@ import com.urbanairship.json.JsonList;
 import com.urbanairship.json.JsonMap;
 import com.urbanairship.json.JsonValue;
 import com.urbanairship.push.PushMessage;
-import com.urbanairship.util.BitmapUtils;
 import com.urbanairship.util.UAStringUtil;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Notification builder extender to add the public notification defined by a {@link PushMessage}.
@@ -32,6 +32,11 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
     private final static int BIG_IMAGE_HEIGHT_DP = 240;
     private final static double BIG_IMAGE_SCREEN_WIDTH_PERCENT = .75;
 
+    /**
+     * Max time to wait for the big image before the notification is built without it.
+     */
+    private final static long BIG_IMAGE_DEADLINE_MS = 5000; // 5 seconds
+
     // Notification styles
     static final String TITLE_KEY = "title";
     static final String SUMMARY_KEY = "summary";
@@ -43,7 +48,9 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
 
     private final PushMessage message;
     private final Context context;
+    private final NotificationImageLoader imageLoader;
     private NotificationCompat.Style defaultStyle;
+    private String pendingImageUrl;
 
     /**
      * Default constructor.
@@ -52,8 +59,14 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
      * @param message The push message.
      */
     public StyleNotificationExtender(Context context, PushMessage message) {
+        this(context, message, NotificationImageLoader.shared(context));
+    }
+
+    @VisibleForTesting
+    StyleNotificationExtender(Context context, PushMessage message, NotificationImageLoader imageLoader) {
         this.context = context.getApplicationContext();
         this.message = message;
+        this.imageLoader = imageLoader;
     }
 
     /**
@@ -78,6 +91,11 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
             builder.setStyle(defaultStyle);
         }
 
+        if (pendingImageUrl != null) {
+            // Lets the notification be updated once the image is loaded
+            builder.getExtras().putString(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL, pendingImageUrl);
+        }
+
         return builder;
     }
 
@@ -154,22 +172,26 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
         String title = styleJson.opt(TITLE_KEY).getString();
         String summary = styleJson.opt(SUMMARY_KEY).getString();
 
+        URL url;
         try {
-            URL url = new URL(styleJson.opt(BIG_PICTURE_KEY).getString(""));
-            Bitmap bitmap;
-            try {
-                bitmap = fetchBigImage(url);
-            } catch (IOException e) {
-                Logger.error("Failed to create big picture style, unable to fetch image: " + e);
-                return null;
-            }
+            url = new URL(styleJson.opt(BIG_PICTURE_KEY).getString(""));
+        } catch (MalformedURLException e) {
+            Logger.error("Malformed big picture URL.", e);
+            return null;
+        }
+
+        try {
+            Bitmap bitmap = fetchBigImage(url);
             if (bitmap == null) {
                 Logger.error("Failed to create big picture style, unable to fetch image: " + url);
                 return null;
             }
             style.bigPicture(bitmap);
-        } catch (MalformedURLException e) {
-            Logger.error("Malformed big picture URL.", e);
+        } catch (TimeoutException e) {
+            Logger.error("Failed to create big picture style, image missed the deadline: " + url);
+
+            // Only an image that is still loading can update the notification later
+            pendingImageUrl = url.toString();
             return null;
         }
 
@@ -217,14 +239,14 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
 
     /**
      * Fetches a big image for a given URL. Attempts to sample the image down to a reasonable size
-     * before loading into memory.
+     * before loading into memory. Waits at most {@link #BIG_IMAGE_DEADLINE_MS} for the image.
      *
      * @param url The image URL.
      * @return The bitmap, or null if it failed to be fetched.
-     * @throws IOException
+     * @throws TimeoutException If the image missed the deadline.
      */
     @Nullable
-    private Bitmap fetchBigImage(@Nullable URL url) throws IOException {
+    private Bitmap fetchBigImage(@Nullable URL url) throws TimeoutException {
         if (url == null) {
             return null;
         }
@@ -240,6 +262,6 @@ public class StyleNotificationExtender implements NotificationCompat.Extender {
         // Big images have a max height of 240dp
         int reqHeight = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, BIG_IMAGE_HEIGHT_DP, dm);
 
-        return BitmapUtils.fetchScaledBitmap(context, url, reqWidth, reqHeight);
+        return imageLoader.load(url, reqWidth, reqHeight, BIG_IMAGE_DEADLINE_MS);
     }
 }
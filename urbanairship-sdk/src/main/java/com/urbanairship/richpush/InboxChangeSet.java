@@ -0,0 +1,101 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The message IDs that changed in a {@link RichPushInbox} update.
+ */
+public final class InboxChangeSet {
+
+    private final Set<String> addedMessageIds;
+    private final Set<String> updatedMessageIds;
+    private final Set<String> removedMessageIds;
+
+    /**
+     * Class constructor.
+     *
+     * @param addedMessageIds IDs of messages that were added.
+     * @param updatedMessageIds IDs of messages that were updated.
+     * @param removedMessageIds IDs of messages that were removed.
+     */
+    InboxChangeSet(@NonNull Collection<String> addedMessageIds, @NonNull Collection<String> updatedMessageIds, @NonNull Collection<String> removedMessageIds) {
+        this.addedMessageIds = Collections.unmodifiableSet(new HashSet<>(addedMessageIds));
+        this.updatedMessageIds = Collections.unmodifiableSet(new HashSet<>(updatedMessageIds));
+        this.removedMessageIds = Collections.unmodifiableSet(new HashSet<>(removedMessageIds));
+    }
+
+    /**
+     * Creates a change set for updated messages.
+     *
+     * @param updatedMessageIds IDs of messages that were updated.
+     * @return The change set.
+     */
+    static InboxChangeSet updated(@NonNull Collection<String> updatedMessageIds) {
+        return new InboxChangeSet(Collections.<String>emptySet(), updatedMessageIds, Collections.<String>emptySet());
+    }
+
+    /**
+     * Creates a change set for removed messages.
+     *
+     * @param removedMessageIds IDs of messages that were removed.
+     * @return The change set.
+     */
+    static InboxChangeSet removed(@NonNull Collection<String> removedMessageIds) {
+        return new InboxChangeSet(Collections.<String>emptySet(), Collections.<String>emptySet(), removedMessageIds);
+    }
+
+    /**
+     * Gets the IDs of messages that were added to the inbox.
+     *
+     * @return The added message IDs.
+     */
+    @NonNull
+    public Set<String> getAddedMessageIds() {
+        return addedMessageIds;
+    }
+
+    /**
+     * Gets the IDs of messages that were updated, including read state changes.
+     *
+     * @return The updated message IDs.
+     */
+    @NonNull
+    public Set<String> getUpdatedMessageIds() {
+        return updatedMessageIds;
+    }
+
+    /**
+     * Gets the IDs of messages that were removed from the inbox, either by being deleted or expired.
+     *
+     * @return The removed message IDs.
+     */
+    @NonNull
+    public Set<String> getRemovedMessageIds() {
+        return removedMessageIds;
+    }
+
+    /**
+     * Checks if the change set is empty.
+     *
+     * @return {@code true} if no messages changed, otherwise {@code false}.
+     */
+    public boolean isEmpty() {
+        return addedMessageIds.isEmpty() && updatedMessageIds.isEmpty() && removedMessageIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "InboxChangeSet{" +
+                "added=" + addedMessageIds +
+                ", updated=" + updatedMessageIds +
+                ", removed=" + removedMessageIds +
+                '}';
+    }
+}
@@ -6,30 +6,36 @@ import android.content.Context;
 import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
 import com.urbanairship.Logger;
 import com.urbanairship.PreferenceDataStore;
 import com.urbanairship.UAirship;
+import com.urbanairship.http.Request;
 import com.urbanairship.http.RequestFactory;
 import com.urbanairship.http.Response;
 import com.urbanairship.job.Job;
 import com.urbanairship.json.JsonException;
-import com.urbanairship.json.JsonList;
 import com.urbanairship.json.JsonMap;
 import com.urbanairship.json.JsonValue;
 import com.urbanairship.util.UAStringUtil;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Job handler for {@link RichPushInbox} component.
@@ -92,23 +98,36 @@ class InboxJobHandler {
     private static final String PAYLOAD_ANDROID_CHANNELS_KEY = "android_channels";
     private static final String PAYLOAD_ADD_KEY = "add";
 
+    // Prefetches run on their own thread so they do not delay the job
+    private static final Executor PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
     private final RichPushResolver resolver;
     private final String hostUrl;
     private final RichPushUser user;
     private final RequestFactory requestFactory;
     private final PreferenceDataStore dataStore;
     private final UAirship airship;
+    private final MessageBodyPrefetcher prefetcher;
+    private final Executor prefetchExecutor;
+
+    // Added and updated messages of the last messages update
+    private List<RichPushMessage> messagesToPrefetch = new ArrayList<>();
 
     InboxJobHandler(Context context, UAirship airship, PreferenceDataStore dataStore) {
-        this(airship, dataStore, new RequestFactory(), new RichPushResolver(context));
+        this(airship, dataStore, new RequestFactory(), new RichPushResolver(context),
+                new MessageBodyPrefetcher(airship.getInbox().getMessageBodyCache(), new RequestFactory(), airship.getInbox().getUser()),
+                PREFETCH_EXECUTOR);
     }
 
     @VisibleForTesting
     InboxJobHandler(UAirship airship, PreferenceDataStore dataStore,
-                    RequestFactory requestFactory, RichPushResolver resolver) {
+                    RequestFactory requestFactory, RichPushResolver resolver,
+                    MessageBodyPrefetcher prefetcher, Executor prefetchExecutor) {
         this.dataStore = dataStore;
         this.requestFactory = requestFactory;
         this.resolver = resolver;
+        this.prefetcher = prefetcher;
+        this.prefetchExecutor = prefetchExecutor;
         this.airship = airship;
         this.user = airship.getInbox().getUser();
         this.hostUrl = airship.getAirshipConfigOptions().hostURL;
@@ -151,8 +170,8 @@ class InboxJobHandler {
             boolean success = this.updateMessages();
             respond(job, success);
 
-            this.syncReadMessageState();
-            this.syncDeletedMessageState();
+            this.prefetchMessageBodies();
+            this.syncMessageState();
         }
     }
 
@@ -160,8 +179,7 @@ class InboxJobHandler {
      * Handles {@link #ACTION_SYNC_MESSAGE_STATE} intent.
      */
     private void onSyncMessages() {
-        this.syncReadMessageState();
-        this.syncDeletedMessageState();
+        this.syncMessageState();
     }
 
     /**
@@ -203,12 +221,13 @@ class InboxJobHandler {
         }
 
         Logger.verbose("InboxJobHandler - Fetching inbox messages.");
+        MessageListHandler messageListHandler = new MessageListHandler();
         Response response = requestFactory.createRequest("GET", getMessagesURL)
                                           .setCredentials(user.getId(), user.getPassword())
                                           .setHeader("Accept", "application/vnd.urbanairship+json; version=3;")
                                           .setHeader(CHANNEL_ID_HEADER, airship.getPushManager().getChannelId())
                                           .setIfModifiedSince(dataStore.getLong(LAST_MESSAGE_REFRESH_TIME, 0))
-                                          .execute();
+                                          .execute(messageListHandler);
 
         Logger.verbose("InboxJobHandler - Fetch inbox messages response: " + response);
 
@@ -222,22 +241,17 @@ class InboxJobHandler {
 
         // 200
         if (status == HttpURLConnection.HTTP_OK) {
-            JsonList serverMessages = null;
-            try {
-                JsonMap responseJson = JsonValue.parseString(response.getResponseBody()).getMap();
-                if (responseJson != null) {
-                    serverMessages = responseJson.get("messages").getList();
-                }
-            } catch (JsonException e) {
-                Logger.error("Failed to update inbox. Unable to parse response body: " + response.getResponseBody());
-                return false;
-            }
-
-            if (serverMessages == null) {
+            if (messageListHandler.messageCount < 0) {
                 Logger.info("Inbox message list is empty.");
             } else {
-                Logger.info("Received " + serverMessages.size() + " inbox messages.");
-                updateInbox(serverMessages);
+                Logger.info("Received " + messageListHandler.messageCount + " inbox messages.");
+
+                // Only advance the refresh time once the messages are stored, otherwise the next
+                // request would be answered with a 304 and the inbox would never be repaired
+                if (!updateInbox(messageListHandler.messageSync)) {
+                    return false;
+                }
+
                 dataStore.put(LAST_MESSAGE_REFRESH_TIME, response.getLastModifiedTime());
             }
 
@@ -252,50 +266,109 @@ class InboxJobHandler {
     /**
      * Update the Rich Push Inbox.
      *
-     * @param serverMessages The messages from the server.
+     * @param messageSync The message sync with the messages from the server.
+     * @return <code>true</code> if the messages were stored, otherwise <code>false</code>.
      */
-    private void updateInbox(JsonList serverMessages) {
-        List<JsonValue> messagesToInsert = new ArrayList<>();
-        HashSet<String> serverMessageIds = new HashSet<>();
-
-        for (JsonValue message : serverMessages) {
-            if (!message.isJsonMap()) {
-                Logger.error("InboxJobHandler - Invalid message payload: " + message);
-                continue;
+    private boolean updateInbox(RichPushResolver.MessageSync messageSync) {
+        RichPushInbox inbox = airship.getInbox();
+        InboxChangeSet changeSet = messageSync.apply();
+
+        // update the inbox cache
+        if (changeSet == null) {
+            Logger.error("InboxJobHandler - Failed to update the inbox messages.");
+            inbox.refresh(true);
+            return false;
+        }
+
+        // Capture the body URLs of removed and updated messages before they are replaced in the inbox
+        Set<String> staleBodyUrls = new HashSet<>();
+        addBodyUrls(inbox, changeSet.getRemovedMessageIds(), staleBodyUrls);
+        addBodyUrls(inbox, changeSet.getUpdatedMessageIds(), staleBodyUrls);
+
+        inbox.refresh(changeSet, true);
+
+        // Updated messages may have a new body at the same or a new URL, drop both
+        addBodyUrls(inbox, changeSet.getUpdatedMessageIds(), staleBodyUrls);
+        prefetcher.evict(staleBodyUrls);
+
+        List<RichPushMessage> changedMessages = new ArrayList<>();
+        for (String messageId : changeSet.getAddedMessageIds()) {
+            RichPushMessage message = inbox.getMessage(messageId);
+            if (message != null) {
+                changedMessages.add(message);
             }
+        }
 
-            String messageId = message.getMap().opt(RichPushMessage.MESSAGE_ID_KEY).getString();
-            if (messageId == null) {
-                Logger.error("InboxJobHandler - Invalid message payload, missing message ID: " + message);
-                continue;
+        for (String messageId : changeSet.getUpdatedMessageIds()) {
+            RichPushMessage message = inbox.getMessage(messageId);
+            if (message != null) {
+                changedMessages.add(message);
             }
+        }
 
-            serverMessageIds.add(messageId);
+        messagesToPrefetch = changedMessages;
+        return true;
+    }
 
-            if (resolver.updateMessage(messageId, message) != 1) {
-                messagesToInsert.add(message);
-            }
+    /**
+     * Prefetches the bodies of the messages added or updated by the last messages update on the
+     * prefetch executor.
+     */
+    private void prefetchMessageBodies() {
+        if (messagesToPrefetch.isEmpty()) {
+            return;
         }
 
-        // Bulk insert any new messages
-        if (messagesToInsert.size() > 0) {
-            resolver.insertMessages(messagesToInsert);
+        final List<RichPushMessage> messages = messagesToPrefetch;
+        messagesToPrefetch = new ArrayList<>();
+
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetcher.prefetch(messages);
+            }
+        });
+    }
+
+    /**
+     * Adds the body URLs of messages in the inbox to a collection.
+     *
+     * @param inbox The inbox.
+     * @param messageIds The message IDs.
+     * @param bodyUrls The collection the body URLs are added to.
+     */
+    private static void addBodyUrls(@NonNull RichPushInbox inbox, @NonNull Collection<String> messageIds, @NonNull Collection<String> bodyUrls) {
+        for (String messageId : messageIds) {
+            RichPushMessage message = inbox.getMessage(messageId);
+            if (message != null && message.getMessageBodyUrl() != null) {
+                bodyUrls.add(message.getMessageBodyUrl());
+            }
         }
+    }
 
-        // Delete any messages that did not come down with the message list
-        Set<String> deletedMessageIds = resolver.getMessageIds();
-        deletedMessageIds.removeAll(serverMessageIds);
-        resolver.deleteMessages(deletedMessageIds);
+    /**
+     * Synchronizes local read and deleted message state with the server.
+     */
+    private void syncMessageState() {
+        // Write any coalesced state changes before reading the pending changes
+        airship.getInbox().flushMessageStateChanges();
 
-        // update the inbox cache
-        airship.getInbox().refresh(true);
+        Set<String> idsToDelete = resolver.getDeletedMessageIds();
+
+        // Deleted messages do not need their read state synced
+        Set<String> idsToMarkRead = new HashSet<>(resolver.getReadUpdatedMessageIds());
+        idsToMarkRead.removeAll(idsToDelete);
+
+        this.syncReadMessageState(idsToMarkRead);
+        this.syncDeletedMessageState(idsToDelete);
     }
 
     /**
      * Synchronizes local deleted message state with the server.
+     *
+     * @param idsToDelete The IDs of messages deleted locally.
      */
-    private void syncDeletedMessageState() {
-        Set<String> idsToDelete = resolver.getDeletedMessageIds();
+    private void syncDeletedMessageState(@NonNull Set<String> idsToDelete) {
 
         if (idsToDelete.size() == 0) {
             // nothing to do
@@ -334,9 +407,10 @@ class InboxJobHandler {
 
     /**
      * Synchronizes local read messages state with the server.
+     *
+     * @param idsToUpdate The IDs of messages marked read locally.
      */
-    private void syncReadMessageState() {
-        Set<String> idsToUpdate = resolver.getReadUpdatedMessageIds();
+    private void syncReadMessageState(@NonNull Set<String> idsToUpdate) {
 
         if (idsToUpdate.size() == 0) {
             // nothing to do
@@ -568,4 +642,31 @@ class InboxJobHandler {
         }
         return null;
     }
+
+    /**
+     * Streams the message list response into a message sync.
+     */
+    private class MessageListHandler implements Request.ResponseBodyHandler {
+
+        RichPushResolver.MessageSync messageSync;
+        int messageCount = -1;
+
+        @Override
+        public void onResponseBody(@NonNull InputStream inputStream, @Nullable String contentType) throws IOException {
+            messageSync = resolver.newMessageSync();
+
+            try {
+                messageCount = MessageListParser.parse(inputStream, new MessageListParser.Listener() {
+                    @Override
+                    public void onMessage(@NonNull JsonValue messagePayload) {
+                        messageSync.add(messagePayload);
+                    }
+                });
+            } catch (IOException e) {
+                Logger.error("InboxJobHandler - Failed to update inbox. Unable to parse response body.", e);
+                messageCount = -1;
+                throw e;
+            }
+        }
+    }
 }
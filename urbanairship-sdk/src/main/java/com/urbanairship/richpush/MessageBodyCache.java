@@ -0,0 +1,359 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Size-bounded disk cache of message bodies, keyed by body URL, with least recently used eviction.
+ *
+ * @hide
+ */
+public class MessageBodyCache {
+
+    /**
+     * A cached message body.
+     */
+    public static class Entry {
+
+        /**
+         * The body's mime type.
+         */
+        @NonNull
+        public final String mimeType;
+
+        /**
+         * The body's encoding, or {@code null} if unknown.
+         */
+        @Nullable
+        public final String encoding;
+
+        /**
+         * The body stream. The caller is responsible for closing it.
+         */
+        @NonNull
+        public final InputStream inputStream;
+
+        private Entry(@NonNull String mimeType, @Nullable String encoding, @NonNull InputStream inputStream) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.inputStream = inputStream;
+        }
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File directory;
+    private final long maxBytes;
+
+    // Entry file names to sizes, in least recently used order
+    private Map<String, Long> entries;
+    private long size;
+
+    /**
+     * Default constructor.
+     *
+     * @param directory The cache directory.
+     * @param maxBytes The maximum size of the cache in bytes.
+     */
+    MessageBodyCache(@NonNull File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a cached message body.
+     *
+     * @param url The message body URL.
+     * @return The cached body, or {@code null} if the body is not cached.
+     */
+    @Nullable
+    @WorkerThread
+    public synchronized Entry get(@NonNull String url) {
+        String name = getFileName(url);
+
+        // Get, rather than contains, so the entry becomes the most recently used
+        if (ensureEntries().get(name) == null) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            String contentType = inputStream.readUTF();
+
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+
+            return new Entry(parseMimeType(contentType), parseEncoding(contentType), inputStream);
+        } catch (IOException e) {
+            Logger.error("MessageBodyCache - Failed to read cached body for: " + url, e);
+            closeQuietly(inputStream);
+            removeFile(name);
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a message body is cached.
+     *
+     * @param url The message body URL.
+     * @return {@code true} if the body is cached, otherwise {@code false}.
+     */
+    @WorkerThread
+    public synchronized boolean contains(@NonNull String url) {
+        return ensureEntries().containsKey(getFileName(url));
+    }
+
+    /**
+     * Caches a message body, evicting the least recently used bodies if the cache is full.
+     *
+     * @param url The message body URL.
+     * @param contentType The body's content type.
+     * @param body The body stream.
+     * @param maxBodyBytes The maximum size of the body. Larger bodies are not cached.
+     * @return The number of bytes cached.
+     * @throws IOException If the body fails to be read or written, or exceeds the max size.
+     */
+    @WorkerThread
+    long put(@NonNull String url, @NonNull String contentType, @NonNull InputStream body, long maxBodyBytes) throws IOException {
+        String name = getFileName(url);
+        File tempFile = new File(directory, name + TEMP_SUFFIX + Thread.currentThread().getId());
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+
+        long bodySize = 0;
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+        try {
+            outputStream.writeUTF(contentType);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                bodySize += read;
+                if (bodySize > maxBodyBytes) {
+                    throw new IOException("Message body exceeds " + maxBodyBytes + " bytes: " + url);
+                }
+
+                outputStream.write(buffer, 0, read);
+            }
+
+            outputStream.close();
+        } catch (IOException e) {
+            closeQuietly(outputStream);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            ensureEntries();
+            File file = new File(directory, name);
+            if (!tempFile.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                throw new IOException("Failed to cache message body: " + url);
+            }
+
+            Long previous = entries.put(name, file.length());
+            if (previous != null) {
+                size -= previous;
+            }
+
+            size += file.length();
+            trimToSize(maxBytes);
+        }
+
+        return bodySize;
+    }
+
+    /**
+     * Removes a cached message body.
+     *
+     * @param url The message body URL.
+     */
+    @WorkerThread
+    synchronized void remove(@NonNull String url) {
+        ensureEntries();
+        removeFile(getFileName(url));
+    }
+
+    /**
+     * Gets the size of the cache.
+     *
+     * @return The size of the cached bodies in bytes.
+     */
+    @WorkerThread
+    synchronized long getSize() {
+        ensureEntries();
+        return size;
+    }
+
+    /**
+     * Evicts the least recently used bodies until the cache is under the size.
+     *
+     * @param targetBytes The target size in bytes.
+     */
+    private void trimToSize(long targetBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > targetBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            size -= entry.getValue();
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * Removes an entry and its file.
+     *
+     * @param name The entry file name.
+     */
+    private void removeFile(@NonNull String name) {
+        Long previous = entries.remove(name);
+        if (previous != null) {
+            size -= previous;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, name).delete();
+    }
+
+    /**
+     * Loads the entries from the cache directory on first use, ordered by last access.
+     *
+     * @return The entries.
+     */
+    private Map<String, Long> ensureEntries() {
+        if (entries != null) {
+            return entries;
+        }
+
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return entries;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.valueOf(lhs.lastModified()).compareTo(rhs.lastModified());
+            }
+        });
+
+        for (File file : files) {
+            // Left over from an interrupted write
+            if (file.getName().contains(TEMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+
+        trimToSize(maxBytes);
+        return entries;
+    }
+
+    /**
+     * Gets the cache file name for a URL.
+     *
+     * @param url The URL.
+     * @return The file name.
+     */
+    @NonNull
+    private static String getFileName(@NonNull String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format(Locale.US, "%02x", b));
+            }
+
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every platform supports SHA-256 and UTF-8
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    /**
+     * Parses the mime type from a content type.
+     *
+     * @param contentType The content type, e.g. {@code text/html; charset=utf-8}.
+     * @return The mime type.
+     */
+    @NonNull
+    static String parseMimeType(@NonNull String contentType) {
+        int index = contentType.indexOf(';');
+        return (index == -1 ? contentType : contentType.substring(0, index)).trim();
+    }
+
+    /**
+     * Parses the encoding from a content type.
+     *
+     * @param contentType The content type, e.g. {@code text/html; charset=utf-8}.
+     * @return The encoding, or {@code null} if the content type does not define a charset.
+     */
+    @Nullable
+    static String parseEncoding(@NonNull String contentType) {
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.toLowerCase(Locale.US).startsWith("charset=")) {
+                return parameter.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Closes a stream, logging any errors.
+     *
+     * @param closeable The stream.
+     */
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Logger.debug("MessageBodyCache - Failed to close stream.", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+import com.urbanairship.http.Request;
+import com.urbanairship.http.RequestFactory;
+import com.urbanairship.http.Response;
+import com.urbanairship.util.Network;
+import com.urbanairship.util.UAStringUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefetches unread message bodies into the {@link MessageBodyCache} after an inbox sync.
+ * <p/>
+ * Bodies are only fetched on unmetered networks, newest message first, until the per-sync byte
+ * budget is spent.
+ */
+class MessageBodyPrefetcher {
+
+    /**
+     * The maximum number of bytes to download per prefetch.
+     */
+    static final long BYTE_BUDGET = 2 * 1024 * 1024; // 2 MB
+
+    /**
+     * The maximum size of a single prefetched body.
+     */
+    static final long MAX_BODY_BYTES = 512 * 1024; // 512 KB
+
+    private static final String DEFAULT_CONTENT_TYPE = "text/html";
+
+    private final MessageBodyCache cache;
+    private final RequestFactory requestFactory;
+    private final RichPushUser user;
+
+    /**
+     * Default constructor.
+     *
+     * @param cache The message body cache.
+     * @param requestFactory The request factory.
+     * @param user The rich push user.
+     */
+    MessageBodyPrefetcher(@NonNull MessageBodyCache cache, @NonNull RequestFactory requestFactory, @NonNull RichPushUser user) {
+        this.cache = cache;
+        this.requestFactory = requestFactory;
+        this.user = user;
+    }
+
+    /**
+     * Prefetches the bodies of any unread messages that are not already cached.
+     *
+     * @param messages The messages.
+     */
+    @WorkerThread
+    void prefetch(@NonNull Collection<RichPushMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        if (!Network.isUnmetered()) {
+            Logger.verbose("MessageBodyPrefetcher - Network is metered, skipping message body prefetch.");
+            return;
+        }
+
+        List<RichPushMessage> sortedMessages = new ArrayList<>(messages);
+        Collections.sort(sortedMessages, new RichPushInbox.SentAtRichPushMessageComparator());
+
+        long remainingBytes = BYTE_BUDGET;
+        for (RichPushMessage message : sortedMessages) {
+            if (remainingBytes <= 0) {
+                Logger.verbose("MessageBodyPrefetcher - Prefetch budget spent.");
+                break;
+            }
+
+            String bodyUrl = message.getMessageBodyUrl();
+            if (message.isRead() || message.isExpired() || message.isDeleted() || UAStringUtil.isEmpty(bodyUrl) || cache.contains(bodyUrl)) {
+                continue;
+            }
+
+            remainingBytes -= fetch(bodyUrl, Math.min(remainingBytes, MAX_BODY_BYTES));
+        }
+    }
+
+    /**
+     * Evicts message bodies from the cache.
+     *
+     * @param bodyUrls The message body URLs.
+     */
+    @WorkerThread
+    void evict(@NonNull Collection<String> bodyUrls) {
+        for (String bodyUrl : bodyUrls) {
+            cache.remove(bodyUrl);
+        }
+    }
+
+    /**
+     * Fetches a single message body into the cache.
+     *
+     * @param bodyUrl The message body URL.
+     * @param maxBytes The maximum number of bytes to download.
+     * @return The number of bytes spent against the budget.
+     */
+    private long fetch(@NonNull final String bodyUrl, final long maxBytes) {
+        URL url;
+        try {
+            url = new URL(bodyUrl);
+        } catch (MalformedURLException e) {
+            Logger.error("MessageBodyPrefetcher - Invalid message body URL: " + bodyUrl, e);
+            return 0;
+        }
+
+        final long[] spentBytes = new long[] { 0 };
+        Response response = requestFactory.createRequest("GET", url)
+                                          .setCredentials(user.getId(), user.getPassword())
+                                          .execute(new Request.ResponseBodyHandler() {
+                                              @Override
+                                              public void onResponseBody(@NonNull InputStream inputStream, @Nullable String contentType) throws IOException {
+                                                  // Charge the full allowance if the body is abandoned part way through
+                                                  spentBytes[0] = maxBytes;
+                                                  spentBytes[0] = cache.put(bodyUrl, contentType == null ? DEFAULT_CONTENT_TYPE : contentType, inputStream, maxBytes);
+                                              }
+                                          });
+
+        if (response == null || response.getStatus() != HttpURLConnection.HTTP_OK) {
+            Logger.debug("MessageBodyPrefetcher - Failed to prefetch message body: " + bodyUrl + " response: " + response);
+            if (response != null) {
+                // The cache write may have succeeded before a non-OK status was reported
+                cache.remove(bodyUrl);
+            }
+        } else {
+            Logger.verbose("MessageBodyPrefetcher - Prefetched " + spentBytes[0] + " bytes for message body: " + bodyUrl);
+        }
+
+        return spentBytes[0];
+    }
+}
@@ -0,0 +1,137 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A set of messages kept sorted by a comparator and indexed by message ID.
+ * <p/>
+ * Sorted snapshots are built at most once per change and shared until the index changes again.
+ * Not thread safe.
+ */
+class MessageIndex {
+
+    private final Map<String, RichPushMessage> messages = new HashMap<>();
+    private final TreeSet<RichPushMessage> sortedMessages;
+    private List<RichPushMessage> snapshot;
+
+    /**
+     * Default constructor.
+     *
+     * @param comparator The comparator used to sort the messages. Must be consistent with the
+     * message ID, and must not depend on values that change while the message is indexed.
+     */
+    MessageIndex(@NonNull Comparator<RichPushMessage> comparator) {
+        this.sortedMessages = new TreeSet<>(comparator);
+    }
+
+    /**
+     * Adds a message, replacing any message with the same ID.
+     *
+     * @param messageId The message ID.
+     * @param message The message.
+     * @return The replaced message, or {@code null} if the message was not indexed.
+     */
+    @Nullable
+    RichPushMessage put(@NonNull String messageId, @NonNull RichPushMessage message) {
+        RichPushMessage previous = messages.put(messageId, message);
+        if (previous != null) {
+            sortedMessages.remove(previous);
+        }
+
+        sortedMessages.add(message);
+        snapshot = null;
+        return previous;
+    }
+
+    /**
+     * Removes a message.
+     *
+     * @param messageId The message ID.
+     * @return The removed message, or {@code null} if the message was not indexed.
+     */
+    @Nullable
+    RichPushMessage remove(@NonNull String messageId) {
+        RichPushMessage previous = messages.remove(messageId);
+        if (previous != null) {
+            sortedMessages.remove(previous);
+            snapshot = null;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Gets a message.
+     *
+     * @param messageId The message ID.
+     * @return The message, or {@code null} if the message is not indexed.
+     */
+    @Nullable
+    RichPushMessage get(@NonNull String messageId) {
+        return messages.get(messageId);
+    }
+
+    /**
+     * Checks if a message is indexed.
+     *
+     * @param messageId The message ID.
+     * @return {@code true} if the message is indexed, otherwise {@code false}.
+     */
+    boolean containsKey(@NonNull String messageId) {
+        return messages.containsKey(messageId);
+    }
+
+    /**
+     * Gets the indexed message IDs. The returned set is backed by the index.
+     *
+     * @return The message IDs.
+     */
+    @NonNull
+    Set<String> keySet() {
+        return messages.keySet();
+    }
+
+    /**
+     * Gets the number of indexed messages.
+     *
+     * @return The message count.
+     */
+    int size() {
+        return messages.size();
+    }
+
+    /**
+     * Removes all messages.
+     */
+    void clear() {
+        messages.clear();
+        sortedMessages.clear();
+        snapshot = null;
+    }
+
+    /**
+     * Gets the sorted messages. The same list instance is returned until the index changes.
+     *
+     * @return An unmodifiable sorted list of messages.
+     */
+    @NonNull
+    List<RichPushMessage> getSnapshot() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(sortedMessages));
+        }
+
+        return snapshot;
+    }
+}
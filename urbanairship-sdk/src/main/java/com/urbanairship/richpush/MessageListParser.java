@@ -0,0 +1,150 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.urbanairship.json.JsonList;
+import com.urbanairship.json.JsonMap;
+import com.urbanairship.json.JsonValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for the inbox message list response.
+ * <p/>
+ * Messages are parsed one at a time from the {@code messages} array, so only a single message
+ * payload is held in memory at once.
+ */
+class MessageListParser {
+
+    static final String MESSAGES_KEY = "messages";
+
+    /**
+     * Message listener.
+     */
+    interface Listener {
+
+        /**
+         * Called for each message in the list, in order.
+         *
+         * @param messagePayload The raw message payload.
+         */
+        void onMessage(@NonNull JsonValue messagePayload);
+    }
+
+    /**
+     * Parses the message list response.
+     *
+     * @param inputStream The response body stream.
+     * @param listener The message listener.
+     * @return The number of messages in the list, or -1 if the response does not contain a message list.
+     * @throws IOException If the response is not valid JSON or fails to be read.
+     */
+    static int parse(@NonNull InputStream inputStream, @NonNull Listener listener) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        int count = -1;
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!MESSAGES_KEY.equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                count = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    listener.onMessage(readValue(reader));
+                    count++;
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Unexpected message list response", e);
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the next value.
+     *
+     * @param reader The JSON reader.
+     * @return The value as a JsonValue.
+     * @throws IOException If the value fails to be read.
+     */
+    @NonNull
+    private static JsonValue readValue(@NonNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, JsonValue> map = new HashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    map.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return new JsonMap(map).toJsonValue();
+
+            case BEGIN_ARRAY:
+                List<JsonValue> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(readValue(reader));
+                }
+                reader.endArray();
+                return new JsonList(list).toJsonValue();
+
+            case STRING:
+                return JsonValue.wrap(reader.nextString());
+
+            case NUMBER:
+                return readNumber(reader.nextString());
+
+            case BOOLEAN:
+                return JsonValue.wrap(reader.nextBoolean());
+
+            case NULL:
+                reader.nextNull();
+                return JsonValue.NULL;
+
+            default:
+                throw new IOException("Unexpected token: " + reader.peek());
+        }
+    }
+
+    /**
+     * Converts a JSON number to a JsonValue the same way {@link org.json.JSONTokener} does, so
+     * payloads serialize the same as when the response was parsed as a whole.
+     *
+     * @param number The number string.
+     * @return The number as a JsonValue.
+     */
+    @NonNull
+    private static JsonValue readNumber(@NonNull String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return JsonValue.wrap((int) longValue);
+                }
+
+                return JsonValue.wrap(longValue);
+            } catch (NumberFormatException e) {
+                // Fall through to a double
+            }
+        }
+
+        return JsonValue.wrap(Double.parseDouble(number));
+    }
+}
@@ -0,0 +1,278 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+import com.urbanairship.PreferenceDataStore;
+import com.urbanairship.json.JsonList;
+import com.urbanairship.json.JsonMap;
+import com.urbanairship.json.JsonValue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces message read, unread, and deleted state changes.
+ * <p/>
+ * Changes made within a short window are merged, with the latest change to a message winning,
+ * and written to the database in a single transaction. Pending changes are saved in the preference
+ * data store until they are written, so they are restored if the process is killed first. Changes
+ * that fail to be written are queued again and retried with an exponential backoff.
+ */
+class MessageStateQueue {
+
+    /**
+     * The default window changes are merged over, in milliseconds.
+     */
+    static final long DEFAULT_WINDOW_MS = 250;
+
+    /**
+     * The max delay before retrying a failed write, in milliseconds.
+     */
+    static final long MAX_RETRY_DELAY_MS = 60000;
+
+    /**
+     * Preference key of the pending changes.
+     */
+    static final String PENDING_CHANGES_KEY = "com.urbanairship.richpush.PENDING_MESSAGE_STATE_CHANGES";
+
+    private static final String READ_KEY = "read";
+    private static final String UNREAD_KEY = "unread";
+    private static final String DELETED_KEY = "deleted";
+
+    private final RichPushResolver resolver;
+    private final PreferenceDataStore dataStore;
+    private final Executor executor;
+    private final Handler handler;
+    private final long windowMs;
+
+    private final Object flushLock = new Object();
+
+    private Set<String> pendingReadIds = new HashSet<>();
+    private Set<String> pendingUnreadIds = new HashSet<>();
+    private Set<String> pendingDeletedIds = new HashSet<>();
+    private boolean isFlushScheduled;
+    private int failedWriteCount;
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    };
+
+    /**
+     * Default constructor. Restores any pending changes saved by a previous process.
+     *
+     * @param resolver The rich push resolver.
+     * @param dataStore The preference data store the pending changes are saved in.
+     * @param executor The executor the changes are written on.
+     * @param handler The handler used to schedule writes.
+     * @param windowMs The window changes are merged over, in milliseconds.
+     */
+    MessageStateQueue(@NonNull RichPushResolver resolver, @NonNull PreferenceDataStore dataStore, @NonNull Executor executor, @NonNull Handler handler, long windowMs) {
+        this.resolver = resolver;
+        this.dataStore = dataStore;
+        this.executor = executor;
+        this.handler = handler;
+        this.windowMs = windowMs;
+
+        restorePendingChanges();
+    }
+
+    /**
+     * Queues messages to be marked read.
+     *
+     * @param messageIds The message IDs.
+     */
+    synchronized void markRead(@NonNull Set<String> messageIds) {
+        pendingUnreadIds.removeAll(messageIds);
+        pendingReadIds.addAll(messageIds);
+        savePendingChanges();
+        scheduleFlush(windowMs);
+    }
+
+    /**
+     * Queues messages to be marked unread.
+     *
+     * @param messageIds The message IDs.
+     */
+    synchronized void markUnread(@NonNull Set<String> messageIds) {
+        pendingReadIds.removeAll(messageIds);
+        pendingUnreadIds.addAll(messageIds);
+        savePendingChanges();
+        scheduleFlush(windowMs);
+    }
+
+    /**
+     * Queues messages to be marked deleted. Any pending read state changes for the messages
+     * are dropped.
+     *
+     * @param messageIds The message IDs.
+     */
+    synchronized void markDeleted(@NonNull Set<String> messageIds) {
+        pendingReadIds.removeAll(messageIds);
+        pendingUnreadIds.removeAll(messageIds);
+        pendingDeletedIds.addAll(messageIds);
+        savePendingChanges();
+        scheduleFlush(windowMs);
+    }
+
+    /**
+     * Writes all pending changes to the database.
+     */
+    @WorkerThread
+    void flush() {
+        // Serialize flushes so changes to the same message are written in order
+        synchronized (flushLock) {
+            Set<String> readIds;
+            Set<String> unreadIds;
+            Set<String> deletedIds;
+
+            synchronized (this) {
+                readIds = pendingReadIds;
+                unreadIds = pendingUnreadIds;
+                deletedIds = pendingDeletedIds;
+
+                pendingReadIds = new HashSet<>();
+                pendingUnreadIds = new HashSet<>();
+                pendingDeletedIds = new HashSet<>();
+                isFlushScheduled = false;
+            }
+
+            if (readIds.isEmpty() && unreadIds.isEmpty() && deletedIds.isEmpty()) {
+                return;
+            }
+
+            Logger.verbose("MessageStateQueue - Writing message state changes. Read: " + readIds.size()
+                    + " unread: " + unreadIds.size() + " deleted: " + deletedIds.size());
+
+            if (resolver.updateMessageStates(readIds, unreadIds, deletedIds)) {
+                synchronized (this) {
+                    failedWriteCount = 0;
+                    savePendingChanges();
+                }
+            } else {
+                Logger.error("MessageStateQueue - Failed to write message state changes, queuing them for the next write.");
+                requeue(readIds, unreadIds, deletedIds);
+            }
+        }
+    }
+
+    /**
+     * Queues changes that failed to be written. Changes made to a message since the failed write
+     * take precedence, except that a failed delete still drops any pending read state change.
+     *
+     * @param readIds The message IDs that failed to be marked read.
+     * @param unreadIds The message IDs that failed to be marked unread.
+     * @param deletedIds The message IDs that failed to be marked deleted.
+     */
+    private synchronized void requeue(@NonNull Set<String> readIds, @NonNull Set<String> unreadIds, @NonNull Set<String> deletedIds) {
+        pendingReadIds.removeAll(deletedIds);
+        pendingUnreadIds.removeAll(deletedIds);
+        pendingDeletedIds.addAll(deletedIds);
+
+        for (String messageId : readIds) {
+            if (!hasPendingChange(messageId)) {
+                pendingReadIds.add(messageId);
+            }
+        }
+
+        for (String messageId : unreadIds) {
+            if (!hasPendingChange(messageId)) {
+                pendingUnreadIds.add(messageId);
+            }
+        }
+
+        savePendingChanges();
+
+        // Back off exponentially from the window
+        failedWriteCount++;
+        long delayMs = windowMs << Math.min(failedWriteCount, 16);
+        scheduleFlush(Math.min(delayMs, MAX_RETRY_DELAY_MS));
+    }
+
+    /**
+     * Checks if a message has a pending change.
+     *
+     * @param messageId The message ID.
+     * @return {@code true} if the message has a pending change, otherwise {@code false}.
+     */
+    private boolean hasPendingChange(@NonNull String messageId) {
+        return pendingReadIds.contains(messageId) || pendingUnreadIds.contains(messageId) || pendingDeletedIds.contains(messageId);
+    }
+
+    /**
+     * Schedules a flush if one is not already scheduled. Must be called while holding the
+     * queue's lock.
+     *
+     * @param delayMs The delay before the flush, in milliseconds.
+     */
+    private void scheduleFlush(long delayMs) {
+        if (isFlushScheduled) {
+            return;
+        }
+
+        isFlushScheduled = true;
+        handler.postDelayed(scheduledFlush, delayMs);
+    }
+
+    /**
+     * Saves the pending changes in the preference data store, or removes them if there are none.
+     * Must be called while holding the queue's lock.
+     */
+    private void savePendingChanges() {
+        if (pendingReadIds.isEmpty() && pendingUnreadIds.isEmpty() && pendingDeletedIds.isEmpty()) {
+            dataStore.remove(PENDING_CHANGES_KEY);
+            return;
+        }
+
+        JsonMap changes = JsonMap.newBuilder()
+                                 .putOpt(READ_KEY, pendingReadIds)
+                                 .putOpt(UNREAD_KEY, pendingUnreadIds)
+                                 .putOpt(DELETED_KEY, pendingDeletedIds)
+                                 .build();
+
+        dataStore.put(PENDING_CHANGES_KEY, changes);
+    }
+
+    /**
+     * Restores the pending changes from the preference data store and schedules a flush.
+     */
+    private synchronized void restorePendingChanges() {
+        JsonMap changes = dataStore.getJsonValue(PENDING_CHANGES_KEY).optMap();
+
+        addIds(changes.opt(READ_KEY).optList(), pendingReadIds);
+        addIds(changes.opt(UNREAD_KEY).optList(), pendingUnreadIds);
+        addIds(changes.opt(DELETED_KEY).optList(), pendingDeletedIds);
+
+        if (!pendingReadIds.isEmpty() || !pendingUnreadIds.isEmpty() || !pendingDeletedIds.isEmpty()) {
+            Logger.debug("MessageStateQueue - Restored pending message state changes.");
+            scheduleFlush(windowMs);
+        }
+    }
+
+    /**
+     * Adds the message IDs in a JSON list to a set.
+     *
+     * @param list The JSON list.
+     * @param messageIds The set to add to.
+     */
+    private static void addIds(@NonNull JsonList list, @NonNull Set<String> messageIds) {
+        for (JsonValue value : list) {
+            if (value.isString()) {
+                messageIds.add(value.getString());
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Sorted list of the inbox messages that is loaded from the database in pages.
+ * <p/>
+ * Only the row keys of the list and a few pages of messages are held in memory. Accessing a
+ * message prefetches the pages on either side of its page on a background thread. Accessing a
+ * message whose page is not loaded yet loads the page on the calling thread, the same way a
+ * cursor fills its window.
+ * <p/>
+ * Reloads compare the new row keys and the loaded pages to the current ones, and only notify the
+ * listener if the list changed.
+ *
+ * @hide
+ */
+@MainThread
+public class PagedMessageList {
+
+    /**
+     * Listener for changes to the list.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread when the messages in the list changed.
+         */
+        void onMessagesChanged();
+    }
+
+    /**
+     * The default number of messages in a page.
+     */
+    static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * The max number of loaded pages. Covers a visible range that spans two pages and a
+     * prefetched page on either side.
+     */
+    static final int MAX_LOADED_PAGES = 4;
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final RichPushInbox inbox;
+    private final RichPushResolver resolver;
+    private final Executor executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final int pageSize;
+
+    // Loaded pages in access order
+    private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(MAX_LOADED_PAGES + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_LOADED_PAGES;
+        }
+    };
+
+    private final Set<Integer> prefetchingPages = new HashSet<>();
+
+    private long[] keys = new long[0];
+    private RichPushInbox.Predicate predicate;
+    private Listener listener;
+
+    // Incremented on every reload to drop the results of older loads
+    private int generation;
+
+    /**
+     * Default constructor.
+     *
+     * @param context The application context.
+     * @param inbox The inbox.
+     */
+    public PagedMessageList(@NonNull Context context, @NonNull RichPushInbox inbox) {
+        this(inbox, new RichPushResolver(context), DEFAULT_EXECUTOR, DEFAULT_PAGE_SIZE);
+    }
+
+    @VisibleForTesting
+    PagedMessageList(@NonNull RichPushInbox inbox, @NonNull RichPushResolver resolver, @NonNull Executor executor, int pageSize) {
+        this.inbox = inbox;
+        this.resolver = resolver;
+        this.executor = executor;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the listener.
+     *
+     * @param listener The listener, or {@code null} to remove it.
+     */
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the predicate the messages have to match. Takes effect on the next reload.
+     *
+     * @param predicate The predicate, or {@code null} to list all the messages.
+     */
+    public void setPredicate(@Nullable RichPushInbox.Predicate predicate) {
+        this.predicate = predicate;
+    }
+
+    /**
+     * Gets the number of messages in the list.
+     *
+     * @return The message count.
+     */
+    public int getCount() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the row key of the message at a position. The key of a message does not change
+     * while it is in the database.
+     *
+     * @param position The position.
+     * @return The row key, or -1 if the position is out of bounds.
+     */
+    public long getKey(int position) {
+        if (position < 0 || position >= keys.length) {
+            return -1;
+        }
+
+        return keys[position];
+    }
+
+    /**
+     * Gets the message at a position, loading its page if needed, and prefetches the pages
+     * around it.
+     *
+     * @param position The position.
+     * @return The message, or {@code null} if the position is out of bounds or the message is no
+     * longer in the database.
+     */
+    @Nullable
+    public RichPushMessage getMessage(int position) {
+        if (position < 0 || position >= keys.length) {
+            return null;
+        }
+
+        int pageIndex = position / pageSize;
+        prefetch(pageIndex - 1);
+        prefetch(pageIndex + 1);
+
+        Page page = pages.get(pageIndex);
+        if (page == null) {
+            long[] pageKeys = getPageKeys(keys, pageIndex);
+            page = new Page(pageKeys, resolver.getMessages(pageKeys));
+            pages.put(pageIndex, page);
+        }
+
+        return page.messages[position - pageIndex * pageSize];
+    }
+
+    /**
+     * Gets the message at a position only if its page is loaded.
+     *
+     * @param position The position.
+     * @return The message, or {@code null} if its page is not loaded.
+     */
+    @Nullable
+    public RichPushMessage peekMessage(int position) {
+        if (position < 0 || position >= keys.length) {
+            return null;
+        }
+
+        int pageIndex = position / pageSize;
+        if (!pages.containsKey(pageIndex)) {
+            return null;
+        }
+
+        return pages.get(pageIndex).messages[position - pageIndex * pageSize];
+    }
+
+    /**
+     * Reloads the list after an unknown change. Every loaded page is reloaded.
+     */
+    public void reload() {
+        reloadPages(null);
+    }
+
+    /**
+     * Reloads the list after an inbox change. Loaded pages are only reloaded if their keys or
+     * one of their messages changed.
+     *
+     * @param changeSet The inbox change set.
+     */
+    public void reload(@NonNull InboxChangeSet changeSet) {
+        reloadPages(changeSet.getUpdatedMessageIds());
+    }
+
+    /**
+     * Reloads the keys and the loaded pages on the executor.
+     *
+     * @param updatedMessageIds IDs of the messages that changed, or {@code null} if any message
+     * could have changed.
+     */
+    private void reloadPages(@Nullable final Set<String> updatedMessageIds) {
+        final int reloadGeneration = ++generation;
+        final long[] currentKeys = keys;
+        final Map<Integer, Page> currentPages = new LinkedHashMap<>(pages);
+        final RichPushInbox.Predicate currentPredicate = predicate;
+
+        prefetchingPages.clear();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Write any pending state changes so the database matches the inbox
+                inbox.flushMessageStateChanges();
+
+                final long[] reloadedKeys = resolver.getMessageKeys(currentPredicate);
+                final Map<Integer, Page> reloadedPages = new LinkedHashMap<>();
+                boolean changed = !Arrays.equals(currentKeys, reloadedKeys);
+
+                for (Map.Entry<Integer, Page> entry : currentPages.entrySet()) {
+                    int pageIndex = entry.getKey();
+                    Page page = entry.getValue();
+
+                    long[] pageKeys = getPageKeys(reloadedKeys, pageIndex);
+                    if (pageKeys.length == 0) {
+                        continue;
+                    }
+
+                    if (updatedMessageIds != null && Arrays.equals(page.keys, pageKeys) && !page.containsAny(updatedMessageIds)) {
+                        reloadedPages.put(pageIndex, page);
+                        continue;
+                    }
+
+                    Page reloadedPage = new Page(pageKeys, resolver.getMessages(pageKeys));
+                    changed = changed || !page.isSame(reloadedPage);
+                    reloadedPages.put(pageIndex, reloadedPage);
+                }
+
+                final boolean notify = changed;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (reloadGeneration != generation) {
+                            return;
+                        }
+
+                        keys = reloadedKeys;
+                        pages.clear();
+                        pages.putAll(reloadedPages);
+
+                        if (notify && listener != null) {
+                            listener.onMessagesChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads a page on the executor if it is not loaded or already loading.
+     *
+     * @param pageIndex The page index.
+     */
+    private void prefetch(final int pageIndex) {
+        if (pageIndex < 0 || pageIndex * pageSize >= keys.length || pages.containsKey(pageIndex) || prefetchingPages.contains(pageIndex)) {
+            return;
+        }
+
+        final int prefetchGeneration = generation;
+        final long[] pageKeys = getPageKeys(keys, pageIndex);
+        prefetchingPages.add(pageIndex);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final RichPushMessage[] messages = resolver.getMessages(pageKeys);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (prefetchGeneration != generation) {
+                            return;
+                        }
+
+                        prefetchingPages.remove(pageIndex);
+                        if (!pages.containsKey(pageIndex)) {
+                            pages.put(pageIndex, new Page(pageKeys, messages));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Gets the keys of a page.
+     *
+     * @param keys The keys of the list.
+     * @param pageIndex The page index.
+     * @return The keys of the page, or an empty array if the page is out of bounds.
+     */
+    @NonNull
+    private long[] getPageKeys(@NonNull long[] keys, int pageIndex) {
+        int start = pageIndex * pageSize;
+        if (start >= keys.length) {
+            return new long[0];
+        }
+
+        return Arrays.copyOfRange(keys, start, Math.min(start + pageSize, keys.length));
+    }
+
+    /**
+     * Gets the indexes of the loaded pages.
+     *
+     * @return The loaded page indexes.
+     */
+    @VisibleForTesting
+    @NonNull
+    Set<Integer> getLoadedPages() {
+        return Collections.unmodifiableSet(pages.keySet());
+    }
+
+    /**
+     * A loaded page of messages.
+     */
+    private static class Page {
+
+        final long[] keys;
+        final RichPushMessage[] messages;
+
+        Page(@NonNull long[] keys, @NonNull RichPushMessage[] messages) {
+            this.keys = keys;
+            this.messages = messages;
+        }
+
+        /**
+         * Checks if the page contains any of the messages.
+         *
+         * @param messageIds The message IDs.
+         * @return {@code true} if the page contains one of the messages, otherwise {@code false}.
+         */
+        boolean containsAny(@NonNull Set<String> messageIds) {
+            for (RichPushMessage message : messages) {
+                if (message == null || messageIds.contains(message.getMessageId())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Checks if the page has the same messages, including their payloads and read state.
+         *
+         * @param page The other page.
+         * @return {@code true} if the pages have the same messages, otherwise {@code false}.
+         */
+        boolean isSame(@NonNull Page page) {
+            if (!Arrays.equals(keys, page.keys)) {
+                return false;
+            }
+
+            for (int i = 0; i < messages.length; i++) {
+                RichPushMessage message = messages[i];
+                RichPushMessage other = page.messages[i];
+
+                if (message == null || other == null) {
+                    if (message != other) {
+                        return false;
+                    }
+                } else if (!message.equals(other) || !message.getRawMessageJson().equals(other.getRawMessageJson())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
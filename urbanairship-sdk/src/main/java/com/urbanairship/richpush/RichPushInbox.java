@@ -14,6 +14,7 @@ import android.os.ResultReceiver;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.support.v4.content.LocalBroadcastManager;
 
 import com.urbanairship.AirshipComponent;
@@ -29,14 +30,12 @@ import com.urbanairship.messagecenter.MessageActivity;
 import com.urbanairship.messagecenter.MessageCenterActivity;
 import com.urbanairship.util.UAStringUtil;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -60,6 +59,19 @@ public class RichPushInbox extends AirshipComponent {
         void onInboxUpdated();
     }
 
+    /**
+     * A listener that is also given the messages that changed in each inbox update.
+     */
+    public interface ChangeSetListener extends Listener {
+
+        /**
+         * Called when the inbox is updated, before {@link #onInboxUpdated()}.
+         *
+         * @param changeSet The messages that changed.
+         */
+        void onInboxChanged(@NonNull InboxChangeSet changeSet);
+    }
+
     /**
      * A callback used to be notified when refreshing messages.
      */
@@ -105,20 +117,29 @@ public class RichPushInbox extends AirshipComponent {
 
     private static final SentAtRichPushMessageComparator MESSAGE_COMPARATOR = new SentAtRichPushMessageComparator();
 
+    private static final String MESSAGE_BODY_CACHE_DIRECTORY = "com.urbanairship.richpush.message_bodies";
+    private static final long MESSAGE_BODY_CACHE_SIZE = 10 * 1024 * 1024; // 10 MB
+
     private final static Object inboxLock = new Object();
     private final List<Listener> listeners = new ArrayList<>();
 
     private final Set<String> deletedMessageIds = new HashSet<>();
-    private final Map<String, RichPushMessage> unreadMessages = new HashMap<>();
-    private final Map<String, RichPushMessage> readMessages = new HashMap<>();
+    private final MessageIndex unreadMessages = new MessageIndex(MESSAGE_COMPARATOR);
+    private final MessageIndex readMessages = new MessageIndex(MESSAGE_COMPARATOR);
+
+    // Merged snapshot of all messages, and the unread and read snapshots it was built from
+    private List<RichPushMessage> messagesSnapshot;
+    private List<RichPushMessage> messagesSnapshotUnread;
+    private List<RichPushMessage> messagesSnapshotRead;
 
     private final RichPushResolver richPushResolver;
     private final RichPushUser user;
-    private final Executor executor;
     private final Context context;
     private final Handler handler = new Handler(Looper.getMainLooper());
     private final PreferenceDataStore dataStore;
     private final JobDispatcher jobDispatcher;
+    private final MessageBodyCache messageBodyCache;
+    private final MessageStateQueue messageStateQueue;
 
     private int fetchCount = 0;
     private BroadcastReceiver foregroundReceiver;
@@ -142,8 +163,9 @@ public class RichPushInbox extends AirshipComponent {
         this.dataStore = dataStore;
         this.user = user;
         this.richPushResolver = resolver;
-        this.executor = executor;
         this.jobDispatcher = jobDispatcher;
+        this.messageStateQueue = new MessageStateQueue(resolver, dataStore, executor, handler, MessageStateQueue.DEFAULT_WINDOW_MS);
+        this.messageBodyCache = new MessageBodyCache(new File(this.context.getCacheDir(), MESSAGE_BODY_CACHE_DIRECTORY), MESSAGE_BODY_CACHE_SIZE);
     }
 
     @Override
@@ -215,6 +237,17 @@ public class RichPushInbox extends AirshipComponent {
         return user;
     }
 
+    /**
+     * Returns the cache of prefetched message bodies.
+     *
+     * @return The message body cache.
+     * @hide
+     */
+    @NonNull
+    public MessageBodyCache getMessageBodyCache() {
+        return messageBodyCache;
+    }
+
     /**
      * Starts an activity that can display the Message Center. An implicit intent with the intent
      * action {@code com.urbanairship.VIEW_RICH_PUSH_INBOX} will be attempted first. If the intent
@@ -440,19 +473,19 @@ public class RichPushInbox extends AirshipComponent {
     }
 
     /**
-     * Filters a collection of messages according to the supplied predicate
+     * Filters a list of messages according to the supplied predicate
      *
-     * @param messages The messages to filter
-     * @param predicate The predicate. If null, the collection will be returned as-is.
-     * @return A filtered collection of messages
+     * @param messages The sorted messages to filter
+     * @param predicate The predicate. If null, all the messages will be returned.
+     * @return A new filtered list of messages, in the same order. The caller owns the list, so
+     * it can be modified without affecting the shared snapshots.
      */
-    private Collection<RichPushMessage> filterMessages(Collection<RichPushMessage> messages, @Nullable Predicate predicate) {
-        List<RichPushMessage> filteredMessages = new ArrayList<>();
-
+    private List<RichPushMessage> filterMessages(List<RichPushMessage> messages, @Nullable Predicate predicate) {
         if (predicate == null) {
-            return messages;
+            return new ArrayList<>(messages);
         }
 
+        List<RichPushMessage> filteredMessages = new ArrayList<>();
         for (RichPushMessage message : messages) {
             if (predicate.apply(message)) {
                 filteredMessages.add(message);
@@ -471,12 +504,28 @@ public class RichPushInbox extends AirshipComponent {
      */
     @NonNull
     public List<RichPushMessage> getMessages(@Nullable Predicate predicate) {
+        return filterMessages(getMessagesSnapshot(), predicate);
+    }
+
+    /**
+     * Gets the merged snapshot of all messages. The same list instance is returned until the
+     * inbox changes.
+     *
+     * @return An unmodifiable list of the sorted {@link RichPushMessage}s.
+     */
+    @NonNull
+    List<RichPushMessage> getMessagesSnapshot() {
         synchronized (inboxLock) {
-            List<RichPushMessage> messages = new ArrayList<>();
-            messages.addAll(filterMessages(unreadMessages.values(), predicate));
-            messages.addAll(filterMessages(readMessages.values(), predicate));
-            Collections.sort(messages, MESSAGE_COMPARATOR);
-            return messages;
+            List<RichPushMessage> unread = unreadMessages.getSnapshot();
+            List<RichPushMessage> read = readMessages.getSnapshot();
+
+            if (messagesSnapshot == null || messagesSnapshotUnread != unread || messagesSnapshotRead != read) {
+                messagesSnapshot = Collections.unmodifiableList(mergeMessages(unread, read));
+                messagesSnapshotUnread = unread;
+                messagesSnapshotRead = read;
+            }
+
+            return messagesSnapshot;
         }
     }
 
@@ -501,9 +550,7 @@ public class RichPushInbox extends AirshipComponent {
     @NonNull
     public List<RichPushMessage> getUnreadMessages(@Nullable Predicate predicate) {
         synchronized (inboxLock) {
-            List<RichPushMessage> messages = new ArrayList<>(filterMessages(unreadMessages.values(), predicate));
-            Collections.sort(messages, MESSAGE_COMPARATOR);
-            return messages;
+            return filterMessages(unreadMessages.getSnapshot(), predicate);
         }
     }
 
@@ -527,9 +574,7 @@ public class RichPushInbox extends AirshipComponent {
     @NonNull
     public List<RichPushMessage> getReadMessages(@Nullable Predicate predicate) {
         synchronized (inboxLock) {
-            List<RichPushMessage> messages = new ArrayList<>(filterMessages(readMessages.values(), predicate));
-            Collections.sort(messages, MESSAGE_COMPARATOR);
-            return messages;
+            return filterMessages(readMessages.getSnapshot(), predicate);
         }
     }
 
@@ -543,6 +588,31 @@ public class RichPushInbox extends AirshipComponent {
         return getReadMessages(null);
     }
 
+    /**
+     * Merges two sorted lists of messages.
+     *
+     * @param first The first sorted list.
+     * @param second The second sorted list.
+     * @return A sorted list with the messages of both lists.
+     */
+    private static List<RichPushMessage> mergeMessages(List<RichPushMessage> first, List<RichPushMessage> second) {
+        List<RichPushMessage> merged = new ArrayList<>(first.size() + second.size());
+
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (MESSAGE_COMPARATOR.compare(first.get(i), second.get(j)) <= 0) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
     /**
      * Get the {@link RichPushMessage} with the corresponding message ID.
      *
@@ -570,14 +640,10 @@ public class RichPushInbox extends AirshipComponent {
      *
      * @param messageIds A set of message ids.
      */
-    public void markMessagesRead(@NonNull final Set<String> messageIds) {
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                richPushResolver.markMessagesRead(messageIds);
-            }
-        });
+    public void markMessagesRead(@NonNull Set<String> messageIds) {
+        messageStateQueue.markRead(messageIds);
 
+        Set<String> changedIds = new HashSet<>();
         synchronized (inboxLock) {
             for (String messageId : messageIds) {
 
@@ -587,11 +653,12 @@ public class RichPushInbox extends AirshipComponent {
                     message.unreadClient = false;
                     unreadMessages.remove(messageId);
                     readMessages.put(messageId, message);
+                    changedIds.add(messageId);
                 }
             }
-
-            notifyInboxUpdated();
         }
+
+        notifyInboxUpdated(InboxChangeSet.updated(changedIds));
     }
 
     /**
@@ -599,14 +666,10 @@ public class RichPushInbox extends AirshipComponent {
      *
      * @param messageIds A set of message ids.
      */
-    public void markMessagesUnread(@NonNull final Set<String> messageIds) {
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                richPushResolver.markMessagesUnread(messageIds);
-            }
-        });
+    public void markMessagesUnread(@NonNull Set<String> messageIds) {
+        messageStateQueue.markUnread(messageIds);
 
+        Set<String> changedIds = new HashSet<>();
         synchronized (inboxLock) {
             for (String messageId : messageIds) {
 
@@ -616,11 +679,12 @@ public class RichPushInbox extends AirshipComponent {
                     message.unreadClient = true;
                     readMessages.remove(messageId);
                     unreadMessages.put(messageId, message);
+                    changedIds.add(messageId);
                 }
             }
         }
 
-        notifyInboxUpdated();
+        notifyInboxUpdated(InboxChangeSet.updated(changedIds));
     }
 
     /**
@@ -631,14 +695,10 @@ public class RichPushInbox extends AirshipComponent {
      *
      * @param messageIds A set of message ids.
      */
-    public void deleteMessages(@NonNull final Set<String> messageIds) {
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                richPushResolver.markMessagesDeleted(messageIds);
-            }
-        });
+    public void deleteMessages(@NonNull Set<String> messageIds) {
+        messageStateQueue.markDeleted(messageIds);
 
+        Set<String> changedIds = new HashSet<>();
         synchronized (inboxLock) {
             for (String messageId : messageIds) {
 
@@ -648,11 +708,20 @@ public class RichPushInbox extends AirshipComponent {
                     unreadMessages.remove(messageId);
                     readMessages.remove(messageId);
                     deletedMessageIds.add(messageId);
+                    changedIds.add(messageId);
                 }
             }
         }
 
-        notifyInboxUpdated();
+        notifyInboxUpdated(InboxChangeSet.removed(changedIds));
+    }
+
+    /**
+     * Writes any pending message read, unread, and deleted state changes to the database.
+     */
+    @WorkerThread
+    void flushMessageStateChanges() {
+        messageStateQueue.flush();
     }
 
     /**
@@ -661,8 +730,13 @@ public class RichPushInbox extends AirshipComponent {
      * @param notify {@code true} to notify listeners, otherwise {@code false}.
      */
     void refresh(boolean notify) {
+        // Write any pending state changes so they are not lost when the messages are reloaded
+        messageStateQueue.flush();
 
         List<RichPushMessage> messageList = richPushResolver.getMessages();
+        Set<String> addedIds = new HashSet<>();
+        Set<String> updatedIds = new HashSet<>();
+        Set<String> removedIds;
 
         // Sync the messages
         synchronized (inboxLock) {
@@ -673,63 +747,156 @@ public class RichPushInbox extends AirshipComponent {
 
             Set<String> previousDeletedMessageIds = new HashSet<>(deletedMessageIds);
 
+            removedIds = new HashSet<>(previousUnreadMessageIds);
+            removedIds.addAll(previousReadMessageIds);
+
             // Clear the current messages
             unreadMessages.clear();
             readMessages.clear();
 
             // Process the new messages
             for (RichPushMessage message : messageList) {
-
-                // Deleted
-                if (message.isDeleted() || previousDeletedMessageIds.contains(message.getMessageId())) {
-                    deletedMessageIds.add(message.getMessageId());
-                    continue;
+                String messageId = message.getMessageId();
+                boolean cached = cacheMessage(message, previousUnreadMessageIds.contains(messageId),
+                        previousReadMessageIds.contains(messageId), previousDeletedMessageIds.contains(messageId));
+
+                if (cached) {
+                    if (removedIds.remove(messageId)) {
+                        updatedIds.add(messageId);
+                    } else {
+                        addedIds.add(messageId);
+                    }
                 }
+            }
+        }
 
-                // Expired
-                if (message.isExpired()) {
-                    deletedMessageIds.add(message.getMessageId());
-                    continue;
-                }
+        if (notify) {
+            notifyInboxUpdated(new InboxChangeSet(addedIds, updatedIds, removedIds));
+        }
+    }
 
-                // Unread - check the previousUnreadMessageIds if any mark reads are still in process
-                if (previousUnreadMessageIds.contains(message.getMessageId())) {
-                    message.unreadClient = true;
-                    unreadMessages.put(message.getMessageId(), message);
-                    continue;
+    /**
+     * Refreshes only the changed inbox messages from the DB.
+     *
+     * @param changeSet The IDs of the messages that changed in the DB.
+     * @param notify {@code true} to notify listeners, otherwise {@code false}.
+     */
+    void refresh(@NonNull InboxChangeSet changeSet, boolean notify) {
+        messageStateQueue.flush();
+
+        Set<String> changedIds = new HashSet<>(changeSet.getAddedMessageIds());
+        changedIds.addAll(changeSet.getUpdatedMessageIds());
+
+        List<RichPushMessage> messageList = changedIds.isEmpty() ? Collections.<RichPushMessage>emptyList() : richPushResolver.getMessages(changedIds);
+        Set<String> addedIds = new HashSet<>();
+        Set<String> updatedIds = new HashSet<>();
+        Set<String> removedIds = new HashSet<>();
+
+        synchronized (inboxLock) {
+            for (String messageId : changeSet.getRemovedMessageIds()) {
+                if (uncacheMessage(messageId)) {
+                    removedIds.add(messageId);
                 }
 
-                // Read - check the previousUnreadMessageIds if any mark reads are still in process
-                if (previousReadMessageIds.contains(message.getMessageId())) {
-                    message.unreadClient = false;
-                    readMessages.put(message.getMessageId(), message);
-                    continue;
+                deletedMessageIds.remove(messageId);
+            }
+
+            for (RichPushMessage message : messageList) {
+                String messageId = message.getMessageId();
+                changedIds.remove(messageId);
+
+                boolean wasUnread = unreadMessages.containsKey(messageId);
+                boolean wasRead = readMessages.containsKey(messageId);
+
+                if (cacheMessage(message, wasUnread, wasRead, deletedMessageIds.contains(messageId))) {
+                    if (wasUnread || wasRead) {
+                        updatedIds.add(messageId);
+                    } else {
+                        addedIds.add(messageId);
+                    }
+                } else if (wasUnread || wasRead) {
+                    removedIds.add(messageId);
                 }
+            }
 
-                // Otherwise fallback to the current state
-                if (message.unreadClient) {
-                    unreadMessages.put(message.getMessageId(), message);
-                } else {
-                    readMessages.put(message.getMessageId(), message);
+            // Messages that are no longer in the DB
+            for (String messageId : changedIds) {
+                if (uncacheMessage(messageId)) {
+                    removedIds.add(messageId);
                 }
             }
         }
 
         if (notify) {
-            notifyInboxUpdated();
+            notifyInboxUpdated(new InboxChangeSet(addedIds, updatedIds, removedIds));
         }
     }
 
+    /**
+     * Adds a message loaded from the DB to the cache. Must be called while holding the inbox lock.
+     *
+     * @param message The message.
+     * @param wasUnread {@code true} if the message was cached as unread. Pending mark unreads take
+     * precedence over the DB state.
+     * @param wasRead {@code true} if the message was cached as read. Pending mark reads take
+     * precedence over the DB state.
+     * @param wasDeleted {@code true} if the message was already marked deleted.
+     * @return {@code true} if the message is in the inbox, or {@code false} if it is deleted or expired.
+     */
+    private boolean cacheMessage(@NonNull RichPushMessage message, boolean wasUnread, boolean wasRead, boolean wasDeleted) {
+        String messageId = message.getMessageId();
+        unreadMessages.remove(messageId);
+        readMessages.remove(messageId);
+
+        // Deleted or expired
+        if (message.isDeleted() || wasDeleted || message.isExpired()) {
+            deletedMessageIds.add(messageId);
+            return false;
+        }
+
+        if (wasUnread) {
+            message.unreadClient = true;
+        } else if (wasRead) {
+            message.unreadClient = false;
+        }
+
+        if (message.unreadClient) {
+            unreadMessages.put(messageId, message);
+        } else {
+            readMessages.put(messageId, message);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a message from the cache. Must be called while holding the inbox lock.
+     *
+     * @param messageId The message ID.
+     * @return {@code true} if the message was in the inbox, otherwise {@code false}.
+     */
+    private boolean uncacheMessage(@NonNull String messageId) {
+        boolean wasUnread = unreadMessages.remove(messageId) != null;
+        boolean wasRead = readMessages.remove(messageId) != null;
+        return wasUnread || wasRead;
+    }
+
     /**
      * Notifies all of the registered listeners that the
      * inbox updated.
+     *
+     * @param changeSet The messages that changed.
      */
-    private void notifyInboxUpdated() {
+    private void notifyInboxUpdated(@NonNull final InboxChangeSet changeSet) {
         handler.post(new Runnable() {
             @Override
             public void run() {
                 synchronized (listeners) {
                     for (Listener listener : new ArrayList<>(listeners)) {
+                        if (listener instanceof ChangeSetListener) {
+                            ((ChangeSetListener) listener).onInboxChanged(changeSet);
+                        }
+
                         listener.onInboxUpdated();
                     }
                 }
@@ -2,6 +2,8 @@
 
 package com.urbanairship.richpush;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -16,11 +18,19 @@ import com.urbanairship.UrbanAirshipResolver;
 import com.urbanairship.json.JsonException;
 import com.urbanairship.json.JsonMap;
 import com.urbanairship.json.JsonValue;
+import com.urbanairship.util.DateUtils;
 import com.urbanairship.util.UAStringUtil;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,8 +42,13 @@ class RichPushResolver extends UrbanAirshipResolver {
             " <> " + RichPushTable.COLUMN_NAME_UNREAD_ORIG;
     private static final String WHERE_CLAUSE_READ = RichPushTable.COLUMN_NAME_UNREAD + " = ?";
     private static final String WHERE_CLAUSE_MESSAGE_ID = RichPushTable.COLUMN_NAME_MESSAGE_ID + " = ?";
+    private static final String WHERE_CLAUSE_NOT_DELETED = RichPushTable.COLUMN_NAME_DELETED + " IS NOT 1";
+    // The server sends the timestamps as ISO 8601 strings in a single format, so they sort by date
+    private static final String SORT_ORDER_SENT = RichPushTable.COLUMN_NAME_TIMESTAMP + " DESC, " +
+            RichPushTable.COLUMN_NAME_MESSAGE_ID + " ASC";
     private static final String FALSE_VALUE = "0";
     private static final String TRUE_VALUE = "1";
+    private static final int MAX_QUERY_ARGUMENTS = 500;
     private final Uri uri;
 
     /**
@@ -53,31 +68,121 @@ class RichPushResolver extends UrbanAirshipResolver {
      */
     @NonNull
     List<RichPushMessage> getMessages() {
-        List<RichPushMessage> messages = new ArrayList<>();
-
         Cursor cursor = this.query(this.uri, null, null, null, null);
+        return getMessagesFromCursor(cursor);
+    }
+
+    /**
+     * Gets the {@link RichPushMessage} instances with the given IDs from the database.
+     *
+     * @param messageIds The message IDs.
+     * @return A list of {@link RichPushMessage}.
+     */
+    @NonNull
+    List<RichPushMessage> getMessages(@NonNull Collection<String> messageIds) {
+        List<RichPushMessage> messages = new ArrayList<>(messageIds.size());
+        List<String> ids = new ArrayList<>(messageIds);
+
+        // Query in chunks to stay under SQLite's bound argument limit
+        for (int i = 0; i < ids.size(); i += MAX_QUERY_ARGUMENTS) {
+            List<String> chunk = ids.subList(i, Math.min(i + MAX_QUERY_ARGUMENTS, ids.size()));
+            Cursor cursor = this.query(this.uri, null,
+                    RichPushTable.COLUMN_NAME_MESSAGE_ID + " IN ( " + UAStringUtil.repeat("?", chunk.size(), ", ") + " )",
+                    chunk.toArray(new String[chunk.size()]), null);
+
+            messages.addAll(getMessagesFromCursor(cursor));
+        }
+
+        return messages;
+    }
+
+    /**
+     * Gets the row keys of the messages that are not deleted or expired, sorted by descending
+     * sent date. The rows are read one at a time, so only the keys are held in memory.
+     *
+     * @param predicate Optional predicate the messages have to match. Each message is parsed to
+     * apply it.
+     * @return The sorted row keys.
+     */
+    @NonNull
+    long[] getMessageKeys(@Nullable RichPushInbox.Predicate predicate) {
+        String[] projection = predicate == null ? new String[] { RichPushTable.COLUMN_NAME_KEY, RichPushTable.COLUMN_NAME_EXPIRATION_TIMESTAMP } : null;
+        Cursor cursor = this.query(this.uri, projection, WHERE_CLAUSE_NOT_DELETED, null, SORT_ORDER_SENT);
         if (cursor == null) {
-            return messages;
+            return new long[0];
         }
 
-        // Read all the messages from the database
+        long[] keys = new long[cursor.getCount()];
+        int count = 0;
+
+        int keyIndex = cursor.getColumnIndex(RichPushTable.COLUMN_NAME_KEY);
+        int expirationIndex = cursor.getColumnIndex(RichPushTable.COLUMN_NAME_EXPIRATION_TIMESTAMP);
+        long now = System.currentTimeMillis();
+
         while (cursor.moveToNext()) {
-            try {
-                String messageJson = cursor.getString(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_RAW_MESSAGE_OBJECT));
-                boolean unreadClient = cursor.getInt(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_UNREAD)) == 1;
-                boolean deleted = cursor.getInt(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_DELETED)) == 1;
-
-                RichPushMessage message = RichPushMessage.create(JsonValue.parseString(messageJson), unreadClient, deleted);
-                if (message != null) {
-                    messages.add(message);
+            String expiration = cursor.getString(expirationIndex);
+            if (!UAStringUtil.isEmpty(expiration) && now >= DateUtils.parseIso8601(expiration, Long.MAX_VALUE)) {
+                continue;
+            }
+
+            if (predicate != null) {
+                RichPushMessage message = createMessage(cursor);
+                if (message == null || !predicate.apply(message)) {
+                    continue;
                 }
-            } catch (JsonException e) {
-                Logger.error("RichPushResolver - Failed to parse message from the database.", e);
             }
+
+            keys[count++] = cursor.getLong(keyIndex);
         }
 
         cursor.close();
 
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Gets the messages in the rows with the given keys.
+     *
+     * @param keys The row keys.
+     * @return The messages, in the same order as the keys. Rows that no longer exist or fail to
+     * parse are {@code null}.
+     */
+    @NonNull
+    RichPushMessage[] getMessages(@NonNull long[] keys) {
+        RichPushMessage[] messages = new RichPushMessage[keys.length];
+
+        Map<Long, Integer> positions = new HashMap<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            positions.put(keys[i], i);
+        }
+
+        // Query in chunks to stay under SQLite's bound argument limit
+        for (int i = 0; i < keys.length; i += MAX_QUERY_ARGUMENTS) {
+            int chunkSize = Math.min(MAX_QUERY_ARGUMENTS, keys.length - i);
+            String[] args = new String[chunkSize];
+            for (int j = 0; j < chunkSize; j++) {
+                args[j] = String.valueOf(keys[i + j]);
+            }
+
+            Cursor cursor = this.query(this.uri, null,
+                    RichPushTable.COLUMN_NAME_KEY + " IN ( " + UAStringUtil.repeat("?", chunkSize, ", ") + " )",
+                    args, null);
+
+            if (cursor == null) {
+                continue;
+            }
+
+            int keyIndex = cursor.getColumnIndex(RichPushTable.COLUMN_NAME_KEY);
+            while (cursor.moveToNext()) {
+                Integer position = positions.get(cursor.getLong(keyIndex));
+                if (position != null) {
+                    messages[position] = createMessage(cursor);
+                }
+            }
+
+            cursor.close();
+        }
+
         return messages;
     }
 
@@ -166,6 +271,36 @@ class RichPushResolver extends UrbanAirshipResolver {
         return this.updateMessages(messageIds, values);
     }
 
+    /**
+     * Applies read, unread, and deleted state changes in a single transaction.
+     *
+     * @param readIds Set of message IDs to mark as read.
+     * @param unreadIds Set of message IDs to mark as unread.
+     * @param deletedIds Set of message IDs to mark as deleted.
+     * @return {@code true} if the changes were applied, otherwise {@code false}.
+     */
+    boolean updateMessageStates(@NonNull Set<String> readIds, @NonNull Set<String> unreadIds, @NonNull Set<String> deletedIds) {
+        ContentValues readValues = new ContentValues();
+        readValues.put(RichPushTable.COLUMN_NAME_UNREAD, false);
+
+        ContentValues unreadValues = new ContentValues();
+        unreadValues.put(RichPushTable.COLUMN_NAME_UNREAD, true);
+
+        ContentValues deletedValues = new ContentValues();
+        deletedValues.put(RichPushTable.COLUMN_NAME_DELETED, true);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        addUpdateOperations(operations, readIds, readValues);
+        addUpdateOperations(operations, unreadIds, unreadValues);
+        addUpdateOperations(operations, deletedIds, deletedValues);
+
+        if (operations.isEmpty()) {
+            return true;
+        }
+
+        return applyBatch(operations) != null;
+    }
+
     /**
      * Deletes messages from the database.
      *
@@ -179,46 +314,60 @@ class RichPushResolver extends UrbanAirshipResolver {
 
 
     /**
-     * Inserts new messages into the database.
+     * Starts an incremental sync of the database with the server's message list. Messages
+     * are diffed as they are added, and all changes are applied in a single transaction.
      *
-     * @param messagePayloads A list of the raw message payloads.
-     * @return The number of messages that were successfully inserted into the database.
+     * @return The message sync.
      */
-    int insertMessages(@NonNull List<JsonValue> messagePayloads) {
-        List<ContentValues> contentValues = new ArrayList<>();
-        for (JsonValue messagePayload : messagePayloads) {
-            ContentValues values = parseMessageContentValues(messagePayload);
+    @NonNull
+    MessageSync newMessageSync() {
+        return new MessageSync(this);
+    }
 
-            if (values != null) {
-                // Set the client unread status the same as the origin for new messages
-                values.put(RichPushTable.COLUMN_NAME_UNREAD, values.getAsBoolean(RichPushTable.COLUMN_NAME_UNREAD_ORIG));
-                contentValues.add(values);
-            }
+    /**
+     * Gets the hashes of the raw message payloads in the database. The payloads are read one row
+     * at a time, so only the hashes are held in memory.
+     *
+     * @return A map of message IDs to raw message payload hashes.
+     */
+    @NonNull
+    private Map<String, byte[]> getRawMessageHashes() {
+        Map<String, byte[]> messages = new HashMap<>();
+
+        Cursor cursor = this.query(this.uri, new String[] { RichPushTable.COLUMN_NAME_MESSAGE_ID, RichPushTable.COLUMN_NAME_RAW_MESSAGE_OBJECT }, null, null, null);
+        if (cursor == null) {
+            return messages;
         }
 
-        if (contentValues.isEmpty()) {
-            return -1;
+        int messageIdIndex = cursor.getColumnIndex(RichPushTable.COLUMN_NAME_MESSAGE_ID);
+        int rawMessageIndex = cursor.getColumnIndex(RichPushTable.COLUMN_NAME_RAW_MESSAGE_OBJECT);
+        while (cursor.moveToNext()) {
+            messages.put(cursor.getString(messageIdIndex), hash(cursor.getString(rawMessageIndex)));
         }
 
-        return this.bulkInsert(this.uri,
-                contentValues.toArray(new ContentValues[contentValues.size()]));
+        cursor.close();
+
+        return messages;
     }
 
     /**
-     * Updates a message in the database.
-     * @param messageId The message ID to update.
-     * @param messagePayload The raw message payload.
-     * @return The row number that new message, or -1 if the message failed ot be updated.
+     * Hashes a raw message payload.
+     *
+     * @param rawMessage The raw message payload.
+     * @return The payload hash.
      */
-    int updateMessage(@NonNull String messageId, @NonNull JsonValue messagePayload) {
-        ContentValues values = parseMessageContentValues(messagePayload);
-        if (values == null) {
-            return -1;
+    @NonNull
+    private static byte[] hash(@Nullable String rawMessage) {
+        if (rawMessage == null) {
+            return new byte[0];
         }
 
-        Uri uri = Uri.withAppendedPath(this.uri, messageId);
-
-        return this.update(uri, values, WHERE_CLAUSE_MESSAGE_ID, new String[] { messageId });
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(rawMessage.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Every platform supports SHA-1 and UTF-8
+            return rawMessage.getBytes();
+        }
     }
 
     /**
@@ -235,6 +384,71 @@ class RichPushResolver extends UrbanAirshipResolver {
     }
 
 
+    /**
+     * Adds update operations for the message IDs, chunked to stay under SQLite's bound argument limit.
+     *
+     * @param operations The operations to add to.
+     * @param messageIds The message IDs to update.
+     * @param values The content values of the update.
+     */
+    private void addUpdateOperations(@NonNull ArrayList<ContentProviderOperation> operations, @NonNull Set<String> messageIds, @NonNull ContentValues values) {
+        List<String> ids = new ArrayList<>(messageIds);
+        for (int i = 0; i < ids.size(); i += MAX_QUERY_ARGUMENTS) {
+            List<String> chunk = ids.subList(i, Math.min(i + MAX_QUERY_ARGUMENTS, ids.size()));
+            operations.add(ContentProviderOperation.newUpdate(this.uri)
+                                                   .withValues(values)
+                                                   .withSelection(RichPushTable.COLUMN_NAME_MESSAGE_ID + " IN ( " + UAStringUtil.repeat("?", chunk.size(), ", ") + " )",
+                                                           chunk.toArray(new String[chunk.size()]))
+                                                   .build());
+        }
+    }
+
+    /**
+     * Gets the messages.
+     *
+     * @param cursor The cursor to get the messages from.
+     * @return A list of {@link RichPushMessage}.
+     */
+    @NonNull
+    private List<RichPushMessage> getMessagesFromCursor(@Nullable Cursor cursor) {
+        List<RichPushMessage> messages = new ArrayList<>();
+        if (cursor == null) {
+            return messages;
+        }
+
+        // Read all the messages from the database
+        while (cursor.moveToNext()) {
+            RichPushMessage message = createMessage(cursor);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+
+        cursor.close();
+
+        return messages;
+    }
+
+    /**
+     * Creates a message from the current row of the cursor.
+     *
+     * @param cursor The cursor.
+     * @return The message, or {@code null} if the row failed to parse.
+     */
+    @Nullable
+    private RichPushMessage createMessage(@NonNull Cursor cursor) {
+        try {
+            String messageJson = cursor.getString(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_RAW_MESSAGE_OBJECT));
+            boolean unreadClient = cursor.getInt(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_UNREAD)) == 1;
+            boolean deleted = cursor.getInt(cursor.getColumnIndex(RichPushTable.COLUMN_NAME_DELETED)) == 1;
+
+            return RichPushMessage.create(JsonValue.parseString(messageJson), unreadClient, deleted);
+        } catch (JsonException e) {
+            Logger.error("RichPushResolver - Failed to parse message from the database.", e);
+            return null;
+        }
+    }
+
     /**
      * Get the message IDs.
      *
@@ -300,4 +514,97 @@ class RichPushResolver extends UrbanAirshipResolver {
 
         return values;
     }
+
+    /**
+     * Diffs server messages against the database one at a time. Only the IDs and payload hashes
+     * of the stored messages, the IDs of the server messages, and the operations for new and
+     * changed messages are held until the sync is applied. Unchanged server messages are dropped
+     * as soon as they are added.
+     */
+    static class MessageSync {
+
+        private final RichPushResolver resolver;
+        private final Map<String, byte[]> localMessageHashes;
+        private final Set<String> syncedIds = new HashSet<>();
+        private final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        private final List<String> insertedIds = new ArrayList<>();
+        private final List<String> updatedIds = new ArrayList<>();
+
+        /**
+         * Default constructor.
+         *
+         * @param resolver The resolver.
+         */
+        MessageSync(@NonNull RichPushResolver resolver) {
+            this.resolver = resolver;
+            this.localMessageHashes = resolver.getRawMessageHashes();
+        }
+
+        /**
+         * Adds a message from the server's message list. Unchanged messages and repeated
+         * message IDs are skipped.
+         *
+         * @param messagePayload The raw message payload.
+         */
+        void add(@NonNull JsonValue messagePayload) {
+            ContentValues values = resolver.parseMessageContentValues(messagePayload);
+            if (values == null) {
+                return;
+            }
+
+            String messageId = values.getAsString(RichPushTable.COLUMN_NAME_MESSAGE_ID);
+            if (!syncedIds.add(messageId)) {
+                Logger.error("RichPushResolver - Skipping duplicate message: " + messageId);
+                return;
+            }
+
+            byte[] localHash = localMessageHashes.get(messageId);
+            if (localHash == null) {
+                // Set the client unread status the same as the origin for new messages
+                values.put(RichPushTable.COLUMN_NAME_UNREAD, values.getAsBoolean(RichPushTable.COLUMN_NAME_UNREAD_ORIG));
+                operations.add(ContentProviderOperation.newInsert(resolver.uri)
+                                                       .withValues(values)
+                                                       .build());
+                insertedIds.add(messageId);
+            } else if (!Arrays.equals(localHash, hash(values.getAsString(RichPushTable.COLUMN_NAME_RAW_MESSAGE_OBJECT)))) {
+                operations.add(ContentProviderOperation.newUpdate(resolver.uri)
+                                                       .withValues(values)
+                                                       .withSelection(WHERE_CLAUSE_MESSAGE_ID, new String[] { messageId })
+                                                       .build());
+                updatedIds.add(messageId);
+            }
+        }
+
+        /**
+         * Applies the changes in a single transaction. Messages that were not added to the sync
+         * are deleted.
+         *
+         * @return The IDs of the inserted, updated, and deleted messages, or {@code null} if the
+         * database failed to sync.
+         */
+        @Nullable
+        InboxChangeSet apply() {
+            // Delete any messages that did not come down with the message list
+            List<String> deletedIds = new ArrayList<>();
+            for (String messageId : localMessageHashes.keySet()) {
+                if (syncedIds.contains(messageId)) {
+                    continue;
+                }
+
+                operations.add(ContentProviderOperation.newDelete(resolver.uri)
+                                                       .withSelection(WHERE_CLAUSE_MESSAGE_ID, new String[] { messageId })
+                                                       .build());
+                deletedIds.add(messageId);
+            }
+
+            InboxChangeSet changeSet = new InboxChangeSet(insertedIds, updatedIds, deletedIds);
+            if (operations.isEmpty()) {
+                return changeSet;
+            }
+
+            Logger.verbose("RichPushResolver - Syncing inbox with " + operations.size() + " operations.");
+            ContentProviderResult[] results = resolver.applyBatch(operations);
+            return results == null ? null : changeSet;
+        }
+    }
 }
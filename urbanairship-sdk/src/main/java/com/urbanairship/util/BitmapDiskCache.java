@@ -0,0 +1,275 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.urbanairship.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Size-bounded disk cache of downsampled bitmaps with least recently used eviction.
+ * <p/>
+ * Bitmaps are stored already scaled to the size they are displayed at, so a cache hit avoids both
+ * the network and decoding the full size image.
+ */
+public class BitmapDiskCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int JPEG_QUALITY = 90;
+
+    private final File directory;
+    private final long maxBytes;
+
+    // Entry file names to sizes, in least recently used order
+    private Map<String, Long> entries;
+    private long size;
+
+    /**
+     * Default constructor.
+     *
+     * @param directory The cache directory.
+     * @param maxBytes The maximum size of the cache in bytes.
+     */
+    public BitmapDiskCache(@NonNull File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a cached bitmap.
+     *
+     * @param key The cache key.
+     * @return The bitmap, or {@code null} if the bitmap is not cached.
+     */
+    @Nullable
+    @WorkerThread
+    public Bitmap get(@NonNull String key) {
+        String name = getFileName(key);
+        File file = new File(directory, name);
+
+        synchronized (this) {
+            // Get, rather than contains, so the entry becomes the most recently used
+            if (ensureEntries().get(name) == null) {
+                return null;
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        Bitmap bitmap = null;
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            bitmap = BitmapUtils.decodeScaledBitmap(inputStream, 0, 0);
+        } catch (IOException e) {
+            Logger.debug("BitmapDiskCache - Failed to read cached bitmap for: " + key, e);
+        } finally {
+            closeQuietly(inputStream);
+        }
+
+        if (bitmap == null) {
+            Logger.debug("BitmapDiskCache - Failed to decode cached bitmap for: " + key);
+            remove(name);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Checks if a bitmap is cached.
+     *
+     * @param key The cache key.
+     * @return {@code true} if the bitmap is cached, otherwise {@code false}.
+     */
+    @WorkerThread
+    public synchronized boolean contains(@NonNull String key) {
+        return ensureEntries().containsKey(getFileName(key));
+    }
+
+    /**
+     * Caches a bitmap, evicting the least recently used bitmaps if the cache is full.
+     *
+     * @param key The cache key.
+     * @param bitmap The bitmap.
+     */
+    @WorkerThread
+    public void put(@NonNull String key, @NonNull Bitmap bitmap) {
+        String name = getFileName(key);
+        File tempFile = new File(directory, name + TEMP_SUFFIX + Thread.currentThread().getId());
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+
+        // PNG keeps transparency, otherwise JPEG is much smaller
+        Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+            if (!bitmap.compress(format, JPEG_QUALITY, outputStream)) {
+                throw new IOException("Failed to compress bitmap");
+            }
+            outputStream.close();
+            outputStream = null;
+        } catch (IOException e) {
+            Logger.debug("BitmapDiskCache - Failed to cache bitmap for: " + key, e);
+            closeQuietly(outputStream);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            ensureEntries();
+            File file = new File(directory, name);
+            if (!tempFile.renameTo(file)) {
+                Logger.debug("BitmapDiskCache - Failed to cache bitmap for: " + key);
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                return;
+            }
+
+            Long previous = entries.put(name, file.length());
+            if (previous != null) {
+                size -= previous;
+            }
+
+            size += file.length();
+            trimToSize(maxBytes);
+        }
+    }
+
+    /**
+     * Removes an entry and its file.
+     *
+     * @param name The entry file name.
+     */
+    private synchronized void remove(@NonNull String name) {
+        Long previous = ensureEntries().remove(name);
+        if (previous != null) {
+            size -= previous;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, name).delete();
+    }
+
+    /**
+     * Evicts the least recently used bitmaps until the cache is under the size.
+     *
+     * @param targetBytes The target size in bytes.
+     */
+    private void trimToSize(long targetBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > targetBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            size -= entry.getValue();
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * Loads the entries from the cache directory on first use, ordered by last access.
+     *
+     * @return The entries.
+     */
+    private Map<String, Long> ensureEntries() {
+        if (entries != null) {
+            return entries;
+        }
+
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return entries;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.valueOf(lhs.lastModified()).compareTo(rhs.lastModified());
+            }
+        });
+
+        for (File file : files) {
+            // Left over from an interrupted write
+            if (file.getName().contains(TEMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+
+        trimToSize(maxBytes);
+        return entries;
+    }
+
+    /**
+     * Gets the cache file name for a key.
+     *
+     * @param key The cache key.
+     * @return The file name.
+     */
+    @NonNull
+    private static String getFileName(@NonNull String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format(Locale.US, "%02x", b));
+            }
+
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every platform supports SHA-256 and UTF-8
+            return String.valueOf(key.hashCode());
+        }
+    }
+
+    /**
+     * Closes a stream, logging any errors.
+     *
+     * @param closeable The stream.
+     */
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Logger.debug("BitmapDiskCache - Failed to close stream.", e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of mutable bitmaps, bucketed by allocation size, that can be reused when decoding
+ * with {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ * <p/>
+ * Reusing a bitmap of a different size requires KitKat, so the pool is disabled on older devices.
+ */
+public class BitmapPool {
+
+    /**
+     * Default max size of the shared pool in bytes.
+     */
+    private static final long DEFAULT_MAX_SIZE = 1024 * 1024 * 4; // 4MB
+
+    /**
+     * A pooled bitmap is only reused when at most this many times larger than required.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static BitmapPool sharedPool;
+
+    // Bitmaps bucketed by allocation byte count
+    private final TreeMap<Integer, List<Bitmap>> buckets = new TreeMap<>();
+
+    // Pooled bitmaps, least recently added first
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<>();
+
+    private final long maxSize;
+    private final boolean isEnabled;
+    private long size;
+
+    /**
+     * Gets the shared bitmap pool.
+     *
+     * @return The shared bitmap pool.
+     */
+    @NonNull
+    public static synchronized BitmapPool shared() {
+        if (sharedPool == null) {
+            sharedPool = new BitmapPool(DEFAULT_MAX_SIZE, Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+        }
+
+        return sharedPool;
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param maxSize The maximum size of the pooled bitmaps in bytes.
+     * @param isEnabled {@code true} to pool bitmaps, {@code false} to drop every bitmap.
+     */
+    @VisibleForTesting
+    BitmapPool(long maxSize, boolean isEnabled) {
+        this.maxSize = maxSize;
+        this.isEnabled = isEnabled;
+    }
+
+    /**
+     * Takes a bitmap from the pool that can be decoded into.
+     *
+     * @param byteCount The number of bytes the decoded bitmap requires.
+     * @return A mutable bitmap with at least the required bytes, or {@code null} if the pool
+     * does not contain a suitable bitmap.
+     */
+    @Nullable
+    public synchronized Bitmap get(int byteCount) {
+        if (!isEnabled || byteCount <= 0) {
+            return null;
+        }
+
+        Map.Entry<Integer, List<Bitmap>> entry = buckets.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() / MAX_SIZE_MULTIPLE > byteCount) {
+            return null;
+        }
+
+        List<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.remove(bucket.size() - 1);
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+
+        bitmaps.remove(bitmap);
+        size -= entry.getKey();
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must no longer use the bitmap.
+     *
+     * @param bitmap The bitmap.
+     */
+    public synchronized void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || !isEnabled || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        int byteCount = getAllocationByteCount(bitmap);
+        if (byteCount > maxSize || bitmaps.contains(bitmap)) {
+            return;
+        }
+
+        List<Bitmap> bucket = buckets.get(byteCount);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.put(byteCount, bucket);
+        }
+
+        bucket.add(bitmap);
+        bitmaps.add(bitmap);
+        size += byteCount;
+
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Removes all bitmaps from the pool.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Gets the size of the pooled bitmaps.
+     *
+     * @return The size in bytes.
+     */
+    @VisibleForTesting
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Drops the least recently added bitmaps until the pool is under the size.
+     *
+     * @param targetSize The target size in bytes.
+     */
+    private void trimToSize(long targetSize) {
+        while (size > targetSize && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.removeFirst();
+            int byteCount = getAllocationByteCount(bitmap);
+
+            List<Bitmap> bucket = buckets.get(byteCount);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                buckets.remove(byteCount);
+            }
+
+            size -= byteCount;
+        }
+    }
+
+    /**
+     * Gets the number of bytes a bitmap can be decoded into.
+     *
+     * @param bitmap The bitmap.
+     * @return The allocation byte count.
+     */
+    private static int getAllocationByteCount(@NonNull Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+
+        return bitmap.getByteCount();
+    }
+}
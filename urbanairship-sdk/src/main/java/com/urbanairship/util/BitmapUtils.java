@@ -10,13 +10,12 @@ import android.support.annotation.Nullable;
 
 import com.urbanairship.Logger;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -25,7 +24,16 @@ import java.util.Locale;
 public class BitmapUtils {
 
     private final static int NETWORK_TIMEOUT_MS = 2000;
-    private final static int BUFFER_SIZE = 1024;
+    private final static int ARGB_8888_BYTES_PER_PIXEL = 4;
+    private final static int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024; // 1MB
+
+    // Per thread decode buffer, so concurrent loaders do not contend or allocate per image
+    private final static ThreadLocal<DecodeBuffer> decodeBuffer = new ThreadLocal<DecodeBuffer>() {
+        @Override
+        protected DecodeBuffer initialValue() {
+            return new DecodeBuffer();
+        }
+    };
 
     /**
      * Create a scaled bitmap.
@@ -40,41 +48,100 @@ public class BitmapUtils {
     public static Bitmap fetchScaledBitmap(@NonNull Context context, @NonNull URL url, int reqWidth, int reqHeight) throws IOException {
         Logger.verbose("BitmapUtils - Fetching image from: " + url);
 
-        File outputFile = File.createTempFile("ua_", ".temp", context.getCacheDir());
-        Logger.verbose("BitmapUtils - Created temp file: " + outputFile);
+        InputStream inputStream = null;
+        try {
+            URLConnection conn = url.openConnection();
+            conn.setConnectTimeout(NETWORK_TIMEOUT_MS);
+            conn.setUseCaches(true);
+            inputStream = conn.getInputStream();
+
+            if (conn instanceof HttpURLConnection && !UAHttpStatusUtil.inSuccessRange(((HttpURLConnection) conn).getResponseCode())) {
+                Logger.warn("Unable to download file from URL. Received response code: " + ((HttpURLConnection) conn).getResponseCode());
+                return null;
+            }
+
+            if (inputStream == null) {
+                Logger.verbose("BitmapUtils - Failed to fetch image from: " + url);
+                return null;
+            }
+
+            Bitmap bitmap = decodeScaledBitmap(inputStream, reqWidth, reqHeight);
+            if (bitmap == null) {
+                Logger.error("BitmapUtils - Failed to create bitmap for URL: " + url);
+                return null;
+            }
+
+            Logger.debug(String.format(Locale.US, "BitmapUtils - Fetched image from: %s. Requested image size: %dx%d. Bitmap size: %dx%d.",
+                    url, reqWidth, reqHeight, bitmap.getWidth(), bitmap.getHeight()));
 
-        if (!downloadFile(url, outputFile)) {
-            Logger.verbose("BitmapUtils - Failed to fetch image from: " + url);
-            return null;
+            return bitmap;
+        } finally {
+            if (inputStream != null) {
+                inputStream.close();
+            }
         }
+    }
 
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
+    /**
+     * Decodes a bitmap from a stream, sampled down to at least the requested size. The stream is
+     * read into a reusable buffer and the bitmap is decoded into a bitmap from the
+     * {@link BitmapPool} when a suitable one is available.
+     *
+     * @param inputStream The image stream. The caller is responsible for closing it.
+     * @param reqWidth The requested width of the image, or 0 to decode at full size.
+     * @param reqHeight The requested height of the image, or 0 to decode at full size.
+     * @return The bitmap, or {@code null} if the image could not be decoded.
+     * @throws IOException If the stream fails to be read.
+     */
+    @Nullable
+    public static Bitmap decodeScaledBitmap(@NonNull InputStream inputStream, int reqWidth, int reqHeight) throws IOException {
+        DecodeBuffer buffer = decodeBuffer.get();
 
-        BitmapFactory.decodeFile(outputFile.getAbsolutePath(), options);
+        try {
+            buffer.readFrom(inputStream);
 
-        int width = options.outWidth;
-        int height = options.outHeight;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(buffer.getBytes(), 0, buffer.size(), options);
 
-        options.inSampleSize = calculateInSampleSize(width, height, reqWidth, reqHeight);
-        options.inJustDecodeBounds = false;
-        Bitmap bitmap = BitmapFactory.decodeFile(outputFile.getAbsolutePath(), options);
+            int width = options.outWidth;
+            int height = options.outHeight;
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
 
-        if (outputFile.delete()) {
-            Logger.verbose("BitmapUtils - Deleted temp file: " + outputFile);
-        } else {
-            Logger.verbose("BitmapUtils - Failed to delete temp file: " + outputFile);
-        }
+            options.inSampleSize = (reqWidth > 0 || reqHeight > 0) ? calculateInSampleSize(width, height, reqWidth, reqHeight) : 1;
+            options.inJustDecodeBounds = false;
+            options.inMutable = true;
+
+            // Sampled dimensions are rounded up so the reused bitmap is never too small
+            int sampledWidth = (width + options.inSampleSize - 1) / options.inSampleSize;
+            int sampledHeight = (height + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = BitmapPool.shared().get(sampledWidth * sampledHeight * ARGB_8888_BYTES_PER_PIXEL);
+
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeByteArray(buffer.getBytes(), 0, buffer.size(), options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap can not be reused for this image
+                Logger.verbose("BitmapUtils - Unable to reuse bitmap: " + e.getMessage());
+                BitmapPool.shared().put(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeByteArray(buffer.getBytes(), 0, buffer.size(), options);
+            }
 
-        if (bitmap == null) {
-            Logger.error("BitmapUtils - Failed to create bitmap for URL: " + url);
-            return null;
-        }
+            if (bitmap == null) {
+                BitmapPool.shared().put(options.inBitmap);
+                return null;
+            }
 
-        Logger.debug(String.format(Locale.US, "BitmapUtils - Fetched image from: %s. Original image size: %dx%d. Requested image size: %dx%d. Bitmap size: %dx%d. SampleSize: %d",
-                url, width, height, reqWidth, reqHeight, bitmap.getWidth(), bitmap.getHeight(), options.inSampleSize));
+            Logger.verbose(String.format(Locale.US, "BitmapUtils - Decoded image. Original image size: %dx%d. Requested image size: %dx%d. Bitmap size: %dx%d. SampleSize: %d. Reused bitmap: %b",
+                    width, height, reqWidth, reqHeight, bitmap.getWidth(), bitmap.getHeight(), options.inSampleSize, options.inBitmap != null));
 
-        return bitmap;
+            return bitmap;
+        } finally {
+            buffer.release();
+        }
     }
 
     /**
@@ -109,54 +176,59 @@ public class BitmapUtils {
     }
 
     /**
-     * Downloads a file to disk.
-     * @param url The URL image.
-     * @param file The file path where the image will be downloaded.
-     * @return <code>true</code> if file was downloaded, <code>false</code> otherwise.
-     * @throws IOException
+     * Growable byte buffer that is read into directly and kept between decodes.
      */
-    private static boolean downloadFile(@NonNull URL url, @NonNull File file) throws IOException {
-        Logger.verbose("Downloading file from: " + url + " to: " + file.getAbsolutePath());
-
-        InputStream inputStream = null;
-        FileOutputStream outputStream = null;
-
-        try {
-            URLConnection conn = url.openConnection();
-            conn.setConnectTimeout(NETWORK_TIMEOUT_MS);
-            conn.setUseCaches(true);
-            inputStream = conn.getInputStream();
-
-            if (conn instanceof HttpURLConnection && !UAHttpStatusUtil.inSuccessRange(((HttpURLConnection) conn).getResponseCode())) {
-                Logger.warn("Unable to download file from URL. Received response code: " + ((HttpURLConnection) conn).getResponseCode());
-                return false;
-            }
-
-            if (inputStream != null) {
-                outputStream = new FileOutputStream(file);
-
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bytesRead;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
+    private static class DecodeBuffer {
+
+        private static final int INITIAL_SIZE = 1024 * 32; // 32KB
+
+        private byte[] bytes = new byte[INITIAL_SIZE];
+        private int count;
+
+        /**
+         * Reads the stream into the buffer, replacing the previous contents.
+         *
+         * @param inputStream The stream.
+         * @throws IOException If the stream fails to be read.
+         */
+        void readFrom(@NonNull InputStream inputStream) throws IOException {
+            count = 0;
+
+            int read;
+            while ((read = inputStream.read(bytes, count, bytes.length - count)) != -1) {
+                count += read;
+                if (count == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
                 }
+            }
+        }
 
-                outputStream.close();
-                inputStream.close();
+        /**
+         * Gets the buffer bytes. Only the first {@link #size()} bytes are valid.
+         *
+         * @return The buffer bytes.
+         */
+        byte[] getBytes() {
+            return bytes;
+        }
 
-                return true;
-            }
-        } finally {
-            if (outputStream != null) {
-                outputStream.close();
-            }
+        /**
+         * Gets the number of bytes read.
+         *
+         * @return The number of bytes read.
+         */
+        int size() {
+            return count;
+        }
 
-            if (inputStream != null) {
-                inputStream.close();
+        /**
+         * Releases the buffer after a decode, shrinking it if it grew too large to keep around.
+         */
+        void release() {
+            count = 0;
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                bytes = new byte[INITIAL_SIZE];
             }
         }
-
-        return false;
     }
 }
@@ -25,13 +25,31 @@ import java.util.Map;
 
 /**
  * An abstract class to manage a SQLiteDatabase.
+ * <p/>
+ * The database can optionally use write-ahead logging on Jelly Bean and newer. With write-ahead
+ * logging, queries run on the framework's pool of read connections and do not wait for writes
+ * on other threads. The log is checkpointed into the database automatically once it reaches
+ * {@link #WAL_AUTO_CHECKPOINT_PAGES} pages, truncated to {@link #WAL_JOURNAL_SIZE_LIMIT} bytes
+ * after each checkpoint, and can be checkpointed early with {@link #checkpoint()}.
  */
 public abstract class DataManager {
     private static final int MAX_ATTEMPTS = 3;
     private final SQLiteOpenHelper openHelper;
+    private final boolean isWriteAheadLoggingEnabled;
 
     private static final String DATABASE_DIRECTORY_NAME = "com.urbanairship.databases";
 
+    /**
+     * Number of pages the write-ahead log grows to before it is checkpointed. The SQLite default
+     * is 1000 pages, this keeps the log under a megabyte for the default 4KB page size.
+     */
+    static final int WAL_AUTO_CHECKPOINT_PAGES = 250;
+
+    /**
+     * Size in bytes the write-ahead log is truncated to after a checkpoint.
+     */
+    static final long WAL_JOURNAL_SIZE_LIMIT = 512 * 1024; // 512KB
+
     /**
      * Default Constructor for DataManager
      * @param context The context used for opening and creating databases
@@ -40,7 +58,20 @@ public abstract class DataManager {
      * @param version The version of the database
      */
     public DataManager(@NonNull Context context, @NonNull String appKey, @NonNull String name, int version) {
+        this(context, appKey, name, version, false);
+    }
+
+    /**
+     * Constructor for DataManager
+     * @param context The context used for opening and creating databases
+     * @param appKey The application key. Used to prefix the database file.
+     * @param name The name of the database
+     * @param version The version of the database
+     * @param enableWriteAheadLogging {@code true} to use write-ahead logging on Jelly Bean and newer.
+     */
+    public DataManager(@NonNull Context context, @NonNull String appKey, @NonNull String name, int version, boolean enableWriteAheadLogging) {
         name = migrateDatabase(context, appKey, name);
+        isWriteAheadLoggingEnabled = enableWriteAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
 
         openHelper = new SQLiteOpenHelper(context, name, null, version) {
 
@@ -64,9 +95,19 @@ public abstract class DataManager {
             @Override
             public void onConfigure(SQLiteDatabase db) {
                 super.onConfigure(db);
+                if (isWriteAheadLoggingEnabled) {
+                    // Checkpoints run on the connection that writes, which is the one being configured
+                    executePragma(db, "PRAGMA wal_autocheckpoint=" + WAL_AUTO_CHECKPOINT_PAGES);
+                    executePragma(db, "PRAGMA journal_size_limit=" + WAL_JOURNAL_SIZE_LIMIT);
+                }
+
                 DataManager.this.onConfigure(db);
             }
         };
+
+        if (isWriteAheadLoggingEnabled) {
+            openHelper.setWriteAheadLoggingEnabled(true);
+        }
     }
 
     /**
@@ -509,6 +550,91 @@ public abstract class DataManager {
         return null;
     }
 
+    /**
+     * Begins a transaction on the writable database. Every call that returns {@code true} must be
+     * followed by a call to {@link #endTransaction()} on the same thread.
+     *
+     * @return {@code true} if the transaction was started, otherwise {@code false}.
+     */
+    public boolean beginTransaction() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null) {
+            return false;
+        }
+
+        try {
+            db.beginTransaction();
+            return true;
+        } catch (Exception ex) {
+            Logger.error("Unable to begin a database transaction", ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks the current transaction as successful so it will be committed when it ends.
+     */
+    public void setTransactionSuccessful() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null) {
+            return;
+        }
+
+        try {
+            db.setTransactionSuccessful();
+        } catch (Exception ex) {
+            Logger.error("Unable to mark the database transaction successful", ex);
+        }
+    }
+
+    /**
+     * Ends the current transaction. The transaction is committed if it was marked successful,
+     * otherwise it is rolled back.
+     */
+    public void endTransaction() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null) {
+            return;
+        }
+
+        try {
+            db.endTransaction();
+        } catch (Exception ex) {
+            Logger.error("Unable to end the database transaction", ex);
+        }
+    }
+
+    /**
+     * Checks if the database uses write-ahead logging.
+     *
+     * @return {@code true} if write-ahead logging is enabled, otherwise {@code false}.
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+        return isWriteAheadLoggingEnabled;
+    }
+
+    /**
+     * Copies the write-ahead log into the database without waiting for readers or writers.
+     * Does nothing if write-ahead logging is not enabled.
+     */
+    public void checkpoint() {
+        if (!isWriteAheadLoggingEnabled) {
+            return;
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        if (db == null) {
+            return;
+        }
+
+        try {
+            executePragma(db, "PRAGMA wal_checkpoint(PASSIVE)");
+        } catch (Exception ex) {
+            Logger.error("Unable to checkpoint the database", ex);
+        }
+    }
+
     /**
      * Closes the connection to the database
      */
@@ -546,6 +672,21 @@ public abstract class DataManager {
         return false;
     }
 
+    /**
+     * Executes a pragma. Pragmas that return a result must be run as a query.
+     *
+     * @param db The database.
+     * @param pragma The pragma statement.
+     */
+    private static void executePragma(@NonNull SQLiteDatabase db, @NonNull String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Tries to move the database to a prefixed name. On API 21+, it will also move the database
      * to the no backup directory.
@@ -602,10 +743,12 @@ public abstract class DataManager {
                 return oldFile.getAbsolutePath();
             }
 
-            // Move the journal file if it exists
-            File journal = new File(oldFile.getAbsolutePath() + "-journal");
-            if (journal.exists()) {
-                journal.renameTo(new File(target.getAbsolutePath() + "-journal"));
+            // Move the journal files if they exist
+            for (String suffix : new String[] { "-journal", "-wal", "-shm" }) {
+                File journal = new File(oldFile.getAbsolutePath() + suffix);
+                if (journal.exists()) {
+                    journal.renameTo(new File(target.getAbsolutePath() + suffix));
+                }
             }
         }
 
@@ -3,9 +3,13 @@
 package com.urbanairship.util;
 
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
 
 import com.urbanairship.AirshipReceiver;
 import com.urbanairship.Logger;
@@ -61,6 +65,59 @@ public class ManifestUtils {
         }
     }
 
+    /**
+     * Determines whether every component of the application runs in the application's process.
+     * <p/>
+     * Each component type is read with a separate call to keep the binder transactions small
+     * for apps with many components.
+     *
+     * @param context The application context.
+     * @return <code>true</code> if the application runs in a single process, <code>false</code>
+     * if any component runs in another process or the components could not be read.
+     */
+    @WorkerThread
+    public static boolean isSingleProcess(@NonNull Context context) {
+        PackageManager packageManager = context.getPackageManager();
+        String packageName = context.getPackageName();
+
+        try {
+            PackageInfo info = packageManager.getPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
+            if (info == null || info.applicationInfo == null) {
+                return false;
+            }
+
+            String processName = info.applicationInfo.processName;
+            return isInProcess(info.activities, processName)
+                    && isInProcess(packageManager.getPackageInfo(packageName, PackageManager.GET_SERVICES).services, processName)
+                    && isInProcess(packageManager.getPackageInfo(packageName, PackageManager.GET_RECEIVERS).receivers, processName)
+                    && isInProcess(packageManager.getPackageInfo(packageName, PackageManager.GET_PROVIDERS).providers, processName);
+        } catch (Exception e) {
+            Logger.debug("ManifestUtils - Unable to read the application components.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the components run in a process.
+     *
+     * @param components The components, may be null.
+     * @param processName The process name.
+     * @return <code>true</code> if every component runs in the process, otherwise <code>false</code>.
+     */
+    private static boolean isInProcess(ComponentInfo[] components, String processName) {
+        if (components == null) {
+            return true;
+        }
+
+        for (ComponentInfo component : components) {
+            if (component.processName != null && !component.processName.equals(processName)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Validates the manifest for Urban Airship components.
      */
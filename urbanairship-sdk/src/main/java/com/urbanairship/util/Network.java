@@ -34,5 +34,24 @@ public class Network {
 
         return info != null && info.isConnected();
     }
-}
 
+    /**
+     * Determines whether or not the device has an active network connection that is not metered,
+     * such as Wi-Fi.
+     *
+     * @return <code>true</code> if the network has an unmetered connection, otherwise
+     * <code>false</code>.
+     */
+    public static boolean isUnmetered() {
+        ConnectivityManager cm = (ConnectivityManager)
+                UAirship.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (cm == null) {
+            Logger.error("Error fetching network info.");
+            return false;
+        }
+
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected() && !cm.isActiveNetworkMetered();
+    }
+}
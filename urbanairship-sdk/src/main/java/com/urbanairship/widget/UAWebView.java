@@ -36,7 +36,8 @@ public class UAWebView extends WebView {
     private static final String CACHE_DIRECTORY = "urbanairship";
 
     private String currentClientAuthRequestUrl;
-    private RichPushMessage currentMessage;
+    // Read by the web view client on a background thread
+    private volatile RichPushMessage currentMessage;
 
     /**
      * UAWebView Constructor
@@ -3,6 +3,7 @@
 package com.urbanairship.widget;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
@@ -15,6 +16,8 @@ import android.support.v4.os.AsyncTaskCompat;
 import android.text.TextUtils;
 import android.view.KeyEvent;
 import android.webkit.HttpAuthHandler;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
@@ -29,6 +32,7 @@ import com.urbanairship.actions.ActionRunRequestFactory;
 import com.urbanairship.actions.ActionValue;
 import com.urbanairship.json.JsonException;
 import com.urbanairship.json.JsonValue;
+import com.urbanairship.richpush.MessageBodyCache;
 import com.urbanairship.richpush.RichPushMessage;
 import com.urbanairship.util.UriUtils;
 
@@ -184,6 +188,55 @@ public class UAWebViewClient extends WebViewClient {
         interceptUrl(webView, url);
     }
 
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView webView, String url) {
+        // Newer platforms use the WebResourceRequest variant
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            WebResourceResponse response = getCachedMessageBody(webView, url);
+            if (response != null) {
+                return response;
+            }
+        }
+
+        return super.shouldInterceptRequest(webView, url);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView webView, WebResourceRequest request) {
+        if (request.isForMainFrame()) {
+            WebResourceResponse response = getCachedMessageBody(webView, request.getUrl().toString());
+            if (response != null) {
+                return response;
+            }
+        }
+
+        return super.shouldInterceptRequest(webView, request);
+    }
+
+    /**
+     * Gets the cached body of the message loaded in the web view. Called on a background thread.
+     *
+     * @param webView The web view.
+     * @param url The requested url.
+     * @return The cached message body, or {@code null} if the url is not the body of the web
+     * view's message or the body is not cached.
+     */
+    private WebResourceResponse getCachedMessageBody(WebView webView, String url) {
+        RichPushMessage message = getMessage(webView);
+        if (message == null || url == null || !url.equals(message.getMessageBodyUrl()) || !UAirship.isFlying()) {
+            return null;
+        }
+
+        MessageBodyCache.Entry entry = UAirship.shared().getInbox().getMessageBodyCache().get(url);
+        if (entry == null) {
+            return null;
+        }
+
+        Logger.verbose("UAWebViewClient - Loading cached message body: " + url);
+        return new WebResourceResponse(entry.mimeType, entry.encoding == null ? "UTF-8" : entry.encoding, entry.inputStream);
+    }
+
     /**
      * Intercepts a url for our JS bridge.
      *
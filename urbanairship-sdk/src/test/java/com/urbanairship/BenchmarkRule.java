@@ -0,0 +1,90 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship;
+
+import android.util.Log;
+
+import org.junit.Assume;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rule shared by the benchmarks. Skips the benchmark unless the {@code benchmark} system property
+ * is set, and reports results through the Robolectric log so they show up in the test output:
+ * <pre>
+ * ./gradlew :urbanairship-sdk:testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ * </pre>
+ * The benchmarks run on the JVM against Robolectric's SQLite and shadows, so the results are only
+ * meaningful compared to each other, on the same machine. They do not predict device timings.
+ */
+public class BenchmarkRule implements TestRule {
+
+    /**
+     * Log tag of the benchmark results.
+     */
+    public static final String TAG = "Benchmark";
+
+    private Description description;
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Assume.assumeTrue("Benchmarks are only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+
+                BenchmarkRule.this.description = description;
+                PrintStream stream = ShadowLog.stream;
+                ShadowLog.stream = System.out;
+                try {
+                    base.evaluate();
+                } finally {
+                    ShadowLog.stream = stream;
+                }
+            }
+        };
+    }
+
+    /**
+     * Reports a result of the running benchmark.
+     *
+     * @param format The result format string.
+     * @param args The format arguments.
+     */
+    public void report(String format, Object... args) {
+        String name = description == null ? "" : description.getTestClass().getSimpleName() + "." + description.getMethodName() + " - ";
+        Log.i(TAG, name + String.format(Locale.US, format, args) + " (robolectric)");
+    }
+
+    /**
+     * Gets a percentile from a sorted list.
+     *
+     * @param sorted The sorted values.
+     * @param percentile The percentile between 0 and 1.
+     * @return The value, or 0 if the list is empty.
+     */
+    public static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    public static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
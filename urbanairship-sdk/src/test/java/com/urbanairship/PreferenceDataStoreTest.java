@@ -2,7 +2,10 @@
 
 package com.urbanairship;
 
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
 import android.content.Context;
+import android.net.Uri;
 
 import com.urbanairship.json.JsonException;
 import com.urbanairship.json.JsonSerializable;
@@ -10,15 +13,24 @@ import com.urbanairship.json.JsonValue;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class PreferenceDataStoreTest extends BaseTestCase {
 
@@ -52,6 +64,30 @@ public class PreferenceDataStoreTest extends BaseTestCase {
         assertEquals(123, testPrefs.getLong("value", -1));
     }
 
+    /**
+     * Test decoded values are updated when the preference changes.
+     */
+    @Test
+    public void testDecodedValueChanged() throws JsonException {
+        testPrefs.put("value", "not a number");
+        assertEquals(-1, testPrefs.getLong("value", -1));
+        assertEquals(-1, testPrefs.getInt("value", -1));
+
+        testPrefs.put("value", 123);
+        assertEquals(123, testPrefs.getLong("value", -1));
+        assertEquals(123, testPrefs.getInt("value", -1));
+        assertEquals(JsonValue.wrap(123), testPrefs.getJsonValue("value"));
+
+        testPrefs.put("value", 456);
+        assertEquals(456, testPrefs.getLong("value", -1));
+        assertEquals(456, testPrefs.getInt("value", -1));
+        assertEquals(JsonValue.wrap(456), testPrefs.getJsonValue("value"));
+
+        testPrefs.remove("value");
+        assertEquals(-1, testPrefs.getLong("value", -1));
+        assertTrue(testPrefs.getJsonValue("value").isNull());
+    }
+
     /**
      * Test saving ints.
      */
@@ -133,4 +169,134 @@ public class PreferenceDataStoreTest extends BaseTestCase {
         testPrefs.put("value", testObject);
         assertTrue(testPrefs.getJsonValue("value").isNull());
     }
+
+    /**
+     * Test applying an editor updates the values immediately and writes them in a single batch.
+     */
+    @Test
+    public void testEditApply() {
+        UrbanAirshipResolver resolver = mock(UrbanAirshipResolver.class);
+        when(resolver.applyBatch(any(ArrayList.class))).thenReturn(new ContentProviderResult[0]);
+
+        testPrefs = new PreferenceDataStore(context, resolver);
+        testPrefs.executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        PreferenceDataStore.PreferenceChangeListener listener = mock(PreferenceDataStore.PreferenceChangeListener.class);
+        testPrefs.addListener(listener);
+
+        testPrefs.edit()
+                 .put("string", "oh hi")
+                 .put("long", 123l)
+                 .remove("missing")
+                 .apply();
+
+        assertEquals("oh hi", testPrefs.getString("string", null));
+        assertEquals(123, testPrefs.getLong("long", -1));
+
+        verify(listener).onPreferenceChange("string");
+        verify(listener).onPreferenceChange("long");
+        verify(listener, never()).onPreferenceChange("missing");
+
+        // Only the changed preferences are written
+        ArgumentCaptor<ArrayList> captor = ArgumentCaptor.forClass(ArrayList.class);
+        verify(resolver).applyBatch(captor.capture());
+        assertEquals(2, captor.getValue().size());
+    }
+
+    /**
+     * Test committing an editor only updates the values if the batch is written.
+     */
+    @Test
+    public void testEditCommit() {
+        UrbanAirshipResolver resolver = mock(UrbanAirshipResolver.class);
+        testPrefs = new PreferenceDataStore(context, resolver);
+
+        when(resolver.applyBatch(any(ArrayList.class))).thenReturn(null);
+        assertFalse(testPrefs.edit().put("value", true).put("other", 1).commit());
+        assertFalse(testPrefs.getBoolean("value", false));
+        assertEquals(-1, testPrefs.getInt("other", -1));
+
+        when(resolver.applyBatch(any(ArrayList.class))).thenReturn(new ContentProviderResult[0]);
+        assertTrue(testPrefs.edit().put("value", true).put("other", 1).commit());
+        assertTrue(testPrefs.getBoolean("value", false));
+        assertEquals(1, testPrefs.getInt("other", -1));
+    }
+
+    /**
+     * Test changes written by another process are read from the change version.
+     */
+    @Test
+    public void testSyncChanges() {
+        testPrefs.executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        testPrefs.init(false);
+
+        PreferenceDataStore.PreferenceChangeListener listener = mock(PreferenceDataStore.PreferenceChangeListener.class);
+        testPrefs.addListener(listener);
+
+        // Simulate another process writing the preference
+        Uri preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(context);
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "value");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "oh hi");
+        context.getContentResolver().insert(preferencesUri, values);
+        context.getContentResolver().notifyChange(Uri.withAppendedPath(preferencesUri, "value"), null);
+
+        assertEquals("oh hi", testPrefs.getString("value", null));
+        verify(listener).onPreferenceChange("value");
+
+        // Removed preferences are written with a null value
+        values.putNull(PreferencesDataManager.COLUMN_NAME_VALUE);
+        context.getContentResolver().insert(preferencesUri, values);
+        context.getContentResolver().notifyChange(Uri.withAppendedPath(preferencesUri, "value"), null);
+
+        assertNull(testPrefs.getString("value", null));
+
+        testPrefs.tearDown();
+    }
+
+    /**
+     * Test lazy init loads accessed preferences on their own until the bulk load runs.
+     */
+    @Test
+    public void testLazyInit() {
+        Uri preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(context);
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "accessed");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "oh hi");
+        context.getContentResolver().insert(preferencesUri, values);
+
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "loaded");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "123");
+        context.getContentResolver().insert(preferencesUri, values);
+
+        final List<Runnable> pending = new ArrayList<>();
+        testPrefs.executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                pending.add(runnable);
+            }
+        };
+
+        testPrefs.init(true);
+
+        // Nothing is loaded until the bulk load runs
+        assertEquals(1, pending.size());
+        assertEquals("oh hi", testPrefs.getString("accessed", null));
+
+        pending.remove(0).run();
+        assertEquals(123, testPrefs.getInt("loaded", -1));
+
+        testPrefs.tearDown();
+    }
 }
@@ -0,0 +1,141 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Preference data store startup benchmarks. The benchmarks fill the preferences table through the
+ * Robolectric backed {@link UrbanAirshipProvider} and compare the time takeOff spends in
+ * {@link PreferenceDataStore#init(boolean)} with eager and lazy loading, including the
+ * preferences the components read during takeOff.
+ * <p/>
+ * The benchmarks are skipped unless run with {@code -Pbenchmark}, see {@link BenchmarkRule}.
+ */
+public class PreferenceStartupBenchmark extends BaseTestCase {
+
+    private static final int[] PREFERENCE_COUNTS = new int[] { 100, 500, 2000 };
+    private static final int TAKE_OFF_READ_COUNT = 20;
+    private static final int RUNS = 10;
+
+    @Rule
+    public final BenchmarkRule benchmark = new BenchmarkRule();
+
+    private Uri preferencesUri;
+
+    @Before
+    public void setUp() {
+        preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void takeDown() {
+        if (preferencesUri != null) {
+            RuntimeEnvironment.application.getContentResolver().delete(preferencesUri, null, null);
+        }
+    }
+
+    /**
+     * Measures the takeOff time of eager and lazy loading for each preference count.
+     */
+    @Test
+    public void testTakeOffTime() throws Exception {
+        for (int count : PREFERENCE_COUNTS) {
+            fillPreferences(count);
+
+            // Warm up
+            measureTakeOff(false, count);
+            measureTakeOff(true, count);
+
+            long eager = 0;
+            long lazy = 0;
+            for (int i = 0; i < RUNS; i++) {
+                eager += measureTakeOff(false, count);
+                lazy += measureTakeOff(true, count);
+            }
+
+            eager /= RUNS;
+            lazy /= RUNS;
+
+            benchmark.report("preferences: %d, eager takeOff: %.3f ms, lazy takeOff: %.3f ms, saved: %.3f ms",
+                    count, BenchmarkRule.millis(eager), BenchmarkRule.millis(lazy), BenchmarkRule.millis(eager - lazy));
+        }
+    }
+
+    /**
+     * Measures the time to init a data store and read the preferences components read during
+     * takeOff. Waits for the background load to finish afterwards, outside of the measurement.
+     *
+     * @param loadLazily {@code true} to load lazily, otherwise {@code false}.
+     * @param count The number of stored preferences.
+     * @return The takeOff time in nanoseconds.
+     */
+    private long measureTakeOff(boolean loadLazily, int count) throws InterruptedException {
+        PreferenceDataStore dataStore = new PreferenceDataStore(RuntimeEnvironment.application);
+        Executor executor = Executors.newSingleThreadExecutor();
+        dataStore.executor = executor;
+
+        long start = System.nanoTime();
+        dataStore.init(loadLazily);
+        for (int i = 0; i < TAKE_OFF_READ_COUNT; i++) {
+            int index = i * count / TAKE_OFF_READ_COUNT;
+            assertEquals(index, dataStore.getInt(getKey(index), -1));
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Wait for the background load so runs do not overlap
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+        dataStore.tearDown();
+
+        return elapsed;
+    }
+
+    /**
+     * Replaces the stored preferences.
+     *
+     * @param count The number of preferences.
+     */
+    private void fillPreferences(int count) {
+        RuntimeEnvironment.application.getContentResolver().delete(preferencesUri, null, null);
+
+        List<ContentValues> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ContentValues value = new ContentValues();
+            value.put(PreferencesDataManager.COLUMN_NAME_KEY, getKey(i));
+            value.put(PreferencesDataManager.COLUMN_NAME_VALUE, String.valueOf(i));
+            values.add(value);
+        }
+
+        RuntimeEnvironment.application.getContentResolver().bulkInsert(preferencesUri, values.toArray(new ContentValues[values.size()]));
+    }
+
+    private static String getKey(int index) {
+        return "com.urbanairship.benchmark.PREFERENCE_" + index;
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PreferencesDataManagerTest extends BaseTestCase {
+
+    private static final String APP_KEY = "upgrade_test";
+
+    private Context context;
+    private PreferencesDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        context.deleteDatabase(getDatabaseName());
+    }
+
+    @After
+    public void takeDown() {
+        if (dataManager != null) {
+            dataManager.close();
+        }
+
+        context.deleteDatabase(getDatabaseName());
+    }
+
+    /**
+     * Test upgrading a version 1 database keeps the existing preferences and versions later writes.
+     */
+    @Test
+    public void testUpgradeFromVersion1() {
+        createVersion1Database();
+
+        dataManager = new PreferencesDataManager(context, APP_KEY, false);
+
+        // Existing preferences are kept at version 0
+        Map<String, String> values = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        readPreferences(values, versions);
+
+        assertEquals(2, values.size());
+        assertEquals("one", values.get("first"));
+        assertEquals("two", values.get("second"));
+        assertEquals(0, (long) versions.get("first"));
+        assertEquals(0, (long) versions.get("second"));
+
+        // Replacing a preference bumps its version
+        ContentValues replaced = new ContentValues();
+        replaced.put(PreferencesDataManager.COLUMN_NAME_KEY, "first");
+        replaced.put(PreferencesDataManager.COLUMN_NAME_VALUE, "uno");
+        assertTrue(dataManager.insert(PreferencesDataManager.TABLE_NAME, replaced) != -1);
+
+        // Updating a preference bumps its version
+        ContentValues updated = new ContentValues();
+        updated.put(PreferencesDataManager.COLUMN_NAME_VALUE, "dos");
+        assertEquals(1, dataManager.update(PreferencesDataManager.TABLE_NAME, updated,
+                PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "second" }));
+
+        // New preferences are versioned
+        ContentValues added = new ContentValues();
+        added.put(PreferencesDataManager.COLUMN_NAME_KEY, "third");
+        added.put(PreferencesDataManager.COLUMN_NAME_VALUE, "tres");
+        assertTrue(dataManager.insert(PreferencesDataManager.TABLE_NAME, added) != -1);
+
+        values.clear();
+        versions.clear();
+        readPreferences(values, versions);
+
+        assertEquals("uno", values.get("first"));
+        assertEquals("dos", values.get("second"));
+        assertEquals("tres", values.get("third"));
+        assertEquals(1, (long) versions.get("first"));
+        assertEquals(2, (long) versions.get("second"));
+        assertEquals(3, (long) versions.get("third"));
+    }
+
+    /**
+     * Creates a version 1 preferences database, before preferences were versioned.
+     */
+    private void createVersion1Database() {
+        File file = context.getDatabasePath(getDatabaseName());
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE " + PreferencesDataManager.TABLE_NAME + " ("
+                + PreferencesDataManager.COLUMN_NAME_KEY + " TEXT PRIMARY KEY, "
+                + PreferencesDataManager.COLUMN_NAME_VALUE + " TEXT);");
+        db.execSQL("INSERT INTO " + PreferencesDataManager.TABLE_NAME + " VALUES ('first', 'one');");
+        db.execSQL("INSERT INTO " + PreferencesDataManager.TABLE_NAME + " VALUES ('second', 'two');");
+        db.setVersion(1);
+        db.close();
+    }
+
+    /**
+     * Reads the stored preferences.
+     *
+     * @param values Map to fill with the preference values.
+     * @param versions Map to fill with the preference versions.
+     */
+    private void readPreferences(Map<String, String> values, Map<String, Long> versions) {
+        Cursor cursor = dataManager.query(PreferencesDataManager.TABLE_NAME, new String[] {
+                PreferencesDataManager.COLUMN_NAME_KEY,
+                PreferencesDataManager.COLUMN_NAME_VALUE,
+                PreferencesDataManager.COLUMN_NAME_VERSION
+        }, null, null, null);
+
+        assertNotNull(cursor);
+        while (cursor.moveToNext()) {
+            values.put(cursor.getString(0), cursor.getString(1));
+            versions.put(cursor.getString(0), cursor.getLong(2));
+        }
+
+        cursor.close();
+    }
+
+    private static String getDatabaseName() {
+        return APP_KEY + "_" + PreferencesDataManager.DATABASE_NAME;
+    }
+}
@@ -101,6 +101,8 @@ public class TestApplication extends Application implements TestLifecycleApplica
 
     @Override
     public void afterTest(Method method) {
+        // The provider is only local to a single test
+        UrbanAirshipProvider.setLocalProvider(null);
     }
 
     @Override
@@ -7,6 +7,8 @@ import android.support.annotation.NonNull;
 import com.urbanairship.http.Request;
 import com.urbanairship.http.Response;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URL;
 import java.util.Map;
 
@@ -26,6 +28,21 @@ public class TestRequest extends Request {
         return response;
     }
 
+    @Override
+    public Response execute(ResponseBodyHandler bodyHandler) {
+        if (bodyHandler == null || response == null || response.getStatus() / 100 != 2 || response.getResponseBody() == null) {
+            return response;
+        }
+
+        try {
+            bodyHandler.onResponseBody(new ByteArrayInputStream(response.getResponseBody().getBytes("UTF-8")), response.getResponseHeader("Content-Type"));
+        } catch (IOException e) {
+            return null;
+        }
+
+        return response;
+    }
+
     /**
      * Get the request body.
      *
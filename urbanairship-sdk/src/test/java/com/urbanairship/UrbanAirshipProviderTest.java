@@ -2,8 +2,11 @@
 
 package com.urbanairship;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 
@@ -12,9 +15,13 @@ import org.junit.Test;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 public class UrbanAirshipProviderTest extends BaseTestCase {
 
@@ -87,6 +94,40 @@ public class UrbanAirshipProviderTest extends BaseTestCase {
     }
 
 
+    /**
+     * Test every preference write stamps the row with a newer change version.
+     */
+    @Test
+    public void testPreferenceVersion() {
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "key");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "value");
+        this.resolver.insert(this.preferenceUri, values);
+        long inserted = getPreferenceVersion("key");
+
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "new value");
+        this.resolver.insert(this.preferenceUri, values);
+        long replaced = getPreferenceVersion("key");
+        assertTrue(replaced > inserted);
+
+        ContentValues updateValue = new ContentValues();
+        updateValue.put(PreferencesDataManager.COLUMN_NAME_VALUE, "updated value");
+        this.resolver.update(this.preferenceUri, updateValue, PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "key" });
+        long updated = getPreferenceVersion("key");
+        assertTrue(updated > replaced);
+
+        // Only rows changed since a version are returned
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "another key");
+        this.resolver.insert(this.preferenceUri, values);
+
+        Cursor cursor = this.resolver.query(this.preferenceUri, null, PreferencesDataManager.COLUMN_NAME_VERSION + " > ?",
+                new String[] { String.valueOf(updated) }, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("another key", cursor.getString(cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_KEY)));
+        cursor.close();
+    }
+
     @Test
     public void testUpdateAllData() {
         ContentValues values = new ContentValues();
@@ -189,4 +230,76 @@ public class UrbanAirshipProviderTest extends BaseTestCase {
         assertEquals(1, deleted);
     }
 
+    @Test
+    public void testApplyBatch() throws Exception {
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "key");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "value");
+        resolver.insert(this.preferenceUri, values);
+
+        ContentValues anotherValue = new ContentValues();
+        anotherValue.put(PreferencesDataManager.COLUMN_NAME_KEY, "another key");
+        anotherValue.put(PreferencesDataManager.COLUMN_NAME_VALUE, "another value");
+
+        ContentValues updatedValue = new ContentValues();
+        updatedValue.put(PreferencesDataManager.COLUMN_NAME_VALUE, "new value");
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(this.preferenceUri).withValues(anotherValue).build());
+        operations.add(ContentProviderOperation.newUpdate(this.preferenceUri)
+                                               .withValues(updatedValue)
+                                               .withSelection(PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "key" })
+                                               .build());
+
+        ContentProviderResult[] results = this.resolver.applyBatch(UrbanAirshipProvider.getAuthorityString(TestApplication.getApplication()), operations);
+        assertEquals(2, results.length);
+        assertEquals(1, results[1].count.intValue());
+
+        Cursor cursor = this.resolver.query(this.preferenceUri, null, null, null, PreferencesDataManager.COLUMN_NAME_KEY + " ASC");
+        assertEquals(2, cursor.getCount());
+
+        cursor.moveToFirst();
+        assertEquals("another key", cursor.getString(cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_KEY)));
+        cursor.moveToLast();
+        assertEquals("new value", cursor.getString(cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_VALUE)));
+
+        cursor.close();
+    }
+
+    /**
+     * Test a failed update rolls back the whole batch.
+     */
+    @Test
+    public void testApplyBatchFailedUpdate() throws Exception {
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "key");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "value");
+
+        ContentValues invalidValue = new ContentValues();
+        invalidValue.put("not_a_column", "value");
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(this.preferenceUri).withValues(values).build());
+        operations.add(ContentProviderOperation.newUpdate(this.preferenceUri).withValues(invalidValue).build());
+
+        try {
+            this.resolver.applyBatch(UrbanAirshipProvider.getAuthorityString(TestApplication.getApplication()), operations);
+            fail("Expected the batch to fail");
+        } catch (OperationApplicationException expected) {
+            // Expected
+        }
+
+        Cursor cursor = this.resolver.query(this.preferenceUri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    private long getPreferenceVersion(String key) {
+        Cursor cursor = this.resolver.query(this.preferenceUri, new String[] { PreferencesDataManager.COLUMN_NAME_VERSION },
+                PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { key }, null);
+        cursor.moveToFirst();
+        long version = cursor.getLong(0);
+        cursor.close();
+        return version;
+    }
 }
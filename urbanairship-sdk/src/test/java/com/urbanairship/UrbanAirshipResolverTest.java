@@ -0,0 +1,157 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UrbanAirshipResolverTest extends BaseTestCase {
+
+    private UrbanAirshipResolver resolver;
+    private RecordingProvider contentResolverProvider;
+    private Uri preferencesUri;
+
+    @Before
+    public void setUp() {
+        // Records any calls that go through the ContentResolver
+        contentResolverProvider = new RecordingProvider();
+        ShadowContentResolver.registerProvider(UrbanAirshipProvider.getAuthorityString(RuntimeEnvironment.application), contentResolverProvider);
+
+        resolver = new UrbanAirshipResolver(RuntimeEnvironment.application);
+        preferencesUri = UrbanAirshipProvider.getPreferencesContentUri(RuntimeEnvironment.application);
+    }
+
+    /**
+     * Test the resolver calls the local provider directly when one is set.
+     */
+    @Test
+    public void testLocalProvider() {
+        UrbanAirshipProvider provider = new UrbanAirshipProvider();
+        provider.onCreate();
+        UrbanAirshipProvider.setLocalProvider(provider);
+
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "key");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "value");
+        assertNotNull(resolver.insert(preferencesUri, values));
+
+        ContentValues updated = new ContentValues();
+        updated.put(PreferencesDataManager.COLUMN_NAME_VALUE, "new value");
+        assertEquals(1, resolver.update(preferencesUri, updated, PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "key" }));
+
+        Cursor cursor = resolver.query(preferencesUri, null, PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "key" }, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("new value", cursor.getString(cursor.getColumnIndex(PreferencesDataManager.COLUMN_NAME_VALUE)));
+        cursor.close();
+
+        resolver.delete(preferencesUri, PreferencesDataManager.COLUMN_NAME_KEY + " = ?", new String[] { "key" });
+
+        assertTrue(contentResolverProvider.calls.isEmpty());
+    }
+
+    /**
+     * Test the app is only checked for a single process off the main thread, and the result is
+     * used by later calls on the main thread.
+     */
+    @Test
+    public void testLocalProviderCheckedOffMainThread() throws InterruptedException {
+        UrbanAirshipProvider provider = new UrbanAirshipProvider();
+        provider.onCreate();
+
+        assertNull(UrbanAirshipProvider.getLocalProvider());
+
+        final AtomicReference<UrbanAirshipProvider> backgroundProvider = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                backgroundProvider.set(UrbanAirshipProvider.getLocalProvider());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertSame(provider, backgroundProvider.get());
+        assertSame(provider, UrbanAirshipProvider.getLocalProvider());
+    }
+
+    /**
+     * Test the resolver goes through the ContentResolver when there is no local provider.
+     */
+    @Test
+    public void testContentResolver() {
+        UrbanAirshipProvider.setLocalProvider(null);
+
+        ContentValues values = new ContentValues();
+        values.put(PreferencesDataManager.COLUMN_NAME_KEY, "key");
+        values.put(PreferencesDataManager.COLUMN_NAME_VALUE, "value");
+
+        resolver.query(preferencesUri, null, null, null, null);
+        resolver.insert(preferencesUri, values);
+        resolver.update(preferencesUri, values, null, null);
+        resolver.delete(preferencesUri, null, null);
+
+        assertEquals(Arrays.asList("query", "insert", "update", "delete"), contentResolverProvider.calls);
+    }
+
+    /**
+     * Content provider that records the calls made to it.
+     */
+    private static class RecordingProvider extends ContentProvider {
+
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            calls.add("query");
+            return null;
+        }
+
+        @Override
+        public String getType(@NonNull Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(@NonNull Uri uri, ContentValues values) {
+            calls.add("insert");
+            return uri;
+        }
+
+        @Override
+        public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+            calls.add("delete");
+            return 0;
+        }
+
+        @Override
+        public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            calls.add("update");
+            return 0;
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class EventDataManagerTest extends BaseTestCase {
 
     @Before
     public void setUp() {
-        dataManager = new EventDataManager(RuntimeEnvironment.application, "test");
+        dataManager = new EventDataManager(RuntimeEnvironment.application, "test", false);
     }
 
     /**
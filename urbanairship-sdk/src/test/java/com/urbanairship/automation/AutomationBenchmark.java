@@ -0,0 +1,373 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import android.content.Intent;
+import android.support.v4.content.LocalBroadcastManager;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.BenchmarkRule;
+import com.urbanairship.TestApplication;
+import com.urbanairship.actions.ActionRunRequestFactory;
+import com.urbanairship.actions.StubbedActionRunRequest;
+import com.urbanairship.analytics.Analytics;
+import com.urbanairship.analytics.AnalyticsListener;
+import com.urbanairship.analytics.CustomEvent;
+import com.urbanairship.json.JsonPredicate;
+import com.urbanairship.json.JsonValue;
+import com.urbanairship.location.RegionEvent;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Automation engine benchmarks. The benchmarks load schedules with a mix of trigger types and
+ * predicates into a Robolectric backed {@link AutomationDataManager} and replay a recorded event
+ * stream through the {@link Automation} analytics listener and lifecycle broadcast receiver.
+ * <p/>
+ * The benchmarks are skipped unless run with {@code -Pbenchmark}, see {@link BenchmarkRule}.
+ * The schedule counts default to 1000, 10000 and 50000 and can be changed with
+ * {@code -PbenchmarkScheduleCounts=1000,5000}.
+ */
+public class AutomationBenchmark extends BaseTestCase {
+
+    private static final long SEED = 2016;
+    private static final int EVENT_COUNT = 2000;
+    private static final int WARM_UP_EVENT_COUNT = 200;
+    private static final int EVENT_NAME_COUNT = 50;
+    private static final int SCREEN_COUNT = 20;
+    private static final int REGION_COUNT = 20;
+
+    private CountingDataManager dataManager;
+    private Automation automation;
+    private AnalyticsListener analyticsListener;
+
+    private final Semaphore processedEvents = new Semaphore(0);
+    private final List<Long> batchDurations = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Rule
+    public final BenchmarkRule benchmark = new BenchmarkRule();
+
+    @After
+    public void takeDown() {
+        if (dataManager != null) {
+            dataManager.deleteSchedules();
+        }
+    }
+
+    /**
+     * Replays the event stream against each schedule count.
+     */
+    @Test
+    public void testEventThroughput() throws Exception {
+        for (int scheduleCount : getScheduleCounts()) {
+            setUpAutomation(scheduleCount);
+
+            List<Runnable> events = createEventStream(WARM_UP_EVENT_COUNT);
+            replaySequentially(events);
+
+            // Latency: each event is processed in its own batch
+            events = createEventStream(EVENT_COUNT);
+            batchDurations.clear();
+            dataManager.resetCounts();
+            replaySequentially(events);
+
+            List<Long> latencies = new ArrayList<>(batchDurations);
+            int transactions = dataManager.transactions.get();
+            int statements = dataManager.statements.get();
+
+            // Throughput: the events are added back to back and processed in as many batches as needed
+            long start = System.nanoTime();
+            for (Runnable event : events) {
+                event.run();
+            }
+
+            assertTrue(processedEvents.tryAcquire(EVENT_COUNT, 5, TimeUnit.MINUTES));
+            long elapsed = System.nanoTime() - start;
+
+            Collections.sort(latencies);
+            benchmark.report("schedules: %d, events/sec: %.0f, p50: %.3f ms, p99: %.3f ms, transactions/event: %.3f, statements/event: %.3f",
+                    scheduleCount,
+                    EVENT_COUNT / (elapsed / 1e9),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(latencies, 0.50)),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(latencies, 0.99)),
+                    (double) transactions / EVENT_COUNT,
+                    (double) statements / EVENT_COUNT);
+
+            automation.tearDown();
+            dataManager.deleteSchedules();
+        }
+    }
+
+    /**
+     * Measures predicate evaluation on its own, without the trigger index narrowing down the
+     * candidates.
+     */
+    @Test
+    public void testPredicateEvaluation() {
+        for (int scheduleCount : getScheduleCounts()) {
+            Random random = new Random(SEED);
+            List<JsonPredicate> predicates = new ArrayList<>();
+            for (int i = 0; i < scheduleCount; i++) {
+                predicates.add(Triggers.newCustomEventTriggerBuilder()
+                                       .setCountGoal(1)
+                                       .setEventName("event " + random.nextInt(EVENT_NAME_COUNT))
+                                       .build()
+                                       .getPredicate());
+            }
+
+            List<JsonValue> events = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                events.add(new CustomEvent.Builder("event " + random.nextInt(EVENT_NAME_COUNT)).create().toJsonValue());
+            }
+
+            int matches = 0;
+            long start = System.nanoTime();
+            for (JsonValue event : events) {
+                for (JsonPredicate predicate : predicates) {
+                    if (predicate.apply(event)) {
+                        matches++;
+                    }
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+            benchmark.report("predicates: %d, evaluations/sec: %.0f, matches: %d",
+                    scheduleCount, (double) events.size() * predicates.size() / (elapsed / 1e9), matches);
+        }
+    }
+
+    /**
+     * Creates the automation instance and loads the schedules.
+     *
+     * @param scheduleCount The number of schedules.
+     */
+    private void setUpAutomation(int scheduleCount) {
+        dataManager = new CountingDataManager();
+
+        ActionRunRequestFactory actionRunRequestFactory = mock(ActionRunRequestFactory.class);
+        when(actionRunRequestFactory.createActionRequest(anyString())).thenReturn(new StubbedActionRunRequest());
+
+        Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        ScheduleActionRunner actionRunner = new ScheduleActionRunner(actionRunRequestFactory, new Executor[] { directExecutor });
+
+        Analytics analytics = mock(Analytics.class);
+        automation = new Automation(RuntimeEnvironment.application, analytics, dataManager,
+                TestApplication.getApplication().preferenceDataStore, scheduleCount + 1, actionRunner);
+        automation.init();
+
+        ArgumentCaptor<AnalyticsListener> captor = ArgumentCaptor.forClass(AnalyticsListener.class);
+        verify(analytics).addAnalyticsListener(captor.capture());
+        analyticsListener = captor.getValue();
+
+        automation.setBatchListener(new Automation.BatchListener() {
+            @Override
+            public void onBatchProcessed(int eventCount, long durationNanos) {
+                batchDurations.add(durationNanos);
+                processedEvents.release(eventCount);
+            }
+        });
+
+        Random random = new Random(SEED);
+        List<ActionScheduleInfo> schedules = new ArrayList<>();
+        for (int i = 0; i < scheduleCount; i++) {
+            schedules.add(ActionScheduleInfo.newBuilder()
+                                            .addTrigger(createTrigger(random))
+                                            .addAction("test_action", JsonValue.wrap("action_value"))
+                                            .setLimit(Integer.MAX_VALUE)
+                                            .build());
+
+            if (schedules.size() == 500) {
+                automation.schedule(schedules);
+                schedules.clear();
+            }
+        }
+
+        automation.schedule(schedules);
+        processedEvents.drainPermits();
+    }
+
+    /**
+     * Adds each event and waits for it to be processed before adding the next one.
+     *
+     * @param events The events.
+     */
+    private void replaySequentially(List<Runnable> events) throws InterruptedException {
+        for (Runnable event : events) {
+            event.run();
+            assertTrue(processedEvents.tryAcquire(1, TimeUnit.MINUTES));
+        }
+    }
+
+    /**
+     * Creates a trigger with a random type and predicate.
+     *
+     * @param random The random instance.
+     * @return The trigger.
+     */
+    private static Trigger createTrigger(Random random) {
+        double goal = 1 + random.nextInt(5);
+
+        switch (random.nextInt(6)) {
+            case 0:
+                return Triggers.newCustomEventTriggerBuilder()
+                               .setCountGoal(goal)
+                               .setEventName("event " + random.nextInt(EVENT_NAME_COUNT))
+                               .build();
+            case 1:
+                return Triggers.newCustomEventTriggerBuilder()
+                               .setValueGoal(goal * 10)
+                               .setEventName("event " + random.nextInt(EVENT_NAME_COUNT))
+                               .build();
+            case 2:
+                return Triggers.newScreenTriggerBuilder()
+                               .setGoal(goal)
+                               .setScreenName("screen " + random.nextInt(SCREEN_COUNT))
+                               .build();
+            case 3:
+                return Triggers.newEnterRegionTriggerBuilder()
+                               .setGoal(goal)
+                               .setRegionId("region " + random.nextInt(REGION_COUNT))
+                               .build();
+            case 4:
+                return Triggers.newExitRegionTriggerBuilder()
+                               .setGoal(goal)
+                               .setRegionId("region " + random.nextInt(REGION_COUNT))
+                               .build();
+            default:
+                return random.nextBoolean() ? Triggers.newForegroundTriggerBuilder().setGoal(goal).build()
+                                            : Triggers.newBackgroundTriggerBuilder().setGoal(goal).build();
+        }
+    }
+
+    /**
+     * Creates a recorded event stream. The stream is generated from a fixed seed, so every run
+     * replays the same events. Each event counts as a single processed event.
+     *
+     * @param count The number of events.
+     * @return The list of events to replay.
+     */
+    private List<Runnable> createEventStream(int count) {
+        Random random = new Random(SEED + count);
+        List<Runnable> events = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    // Without a value, a custom event only adds a single automation event
+                    final CustomEvent customEvent = new CustomEvent.Builder("event " + random.nextInt(EVENT_NAME_COUNT)).create();
+                    events.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            analyticsListener.onCustomEventAdded(customEvent);
+                        }
+                    });
+                    break;
+                case 1:
+                    final String screen = "screen " + random.nextInt(SCREEN_COUNT);
+                    events.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            analyticsListener.onScreenTracked(screen);
+                        }
+                    });
+                    break;
+                case 2:
+                    final RegionEvent regionEvent = new RegionEvent("region " + random.nextInt(REGION_COUNT), "benchmark",
+                            random.nextBoolean() ? RegionEvent.BOUNDARY_EVENT_ENTER : RegionEvent.BOUNDARY_EVENT_EXIT);
+                    events.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            analyticsListener.onRegionEventAdded(regionEvent);
+                        }
+                    });
+                    break;
+                default:
+                    final String action = random.nextBoolean() ? Analytics.ACTION_APP_FOREGROUND : Analytics.ACTION_APP_BACKGROUND;
+                    events.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            LocalBroadcastManager.getInstance(RuntimeEnvironment.application).sendBroadcast(new Intent(action));
+                        }
+                    });
+                    break;
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Gets the schedule counts to benchmark.
+     *
+     * @return The schedule counts.
+     */
+    private static List<Integer> getScheduleCounts() {
+        List<Integer> counts = new ArrayList<>();
+        for (String count : System.getProperty("benchmark.scheduleCounts", "1000,10000,50000").split(",")) {
+            counts.add(Integer.parseInt(count.trim()));
+        }
+
+        return counts;
+    }
+
+    /**
+     * Data manager that counts the write transactions and statements.
+     */
+    private static class CountingDataManager extends AutomationDataManager {
+
+        final AtomicInteger transactions = new AtomicInteger();
+        final AtomicInteger statements = new AtomicInteger();
+
+        CountingDataManager() {
+            super(RuntimeEnvironment.application, "benchmark", false);
+        }
+
+        void resetCounts() {
+            transactions.set(0);
+            statements.set(0);
+        }
+
+        @Override
+        void updateLists(Map<String, List<String>> updatesMap) {
+            int count = 0;
+            for (List<String> ids : updatesMap.values()) {
+                if (!ids.isEmpty()) {
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                transactions.incrementAndGet();
+                statements.addAndGet(count);
+            }
+
+            super.updateLists(updatesMap);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AutomationDataManagerTest extends BaseTestCase {
 
@@ -27,7 +28,7 @@ public class AutomationDataManagerTest extends BaseTestCase {
 
     @Before
     public void setUp() {
-        dataManager = new AutomationDataManager(RuntimeEnvironment.application, "test");
+        dataManager = new AutomationDataManager(RuntimeEnvironment.application, "test", false);
     }
 
     @After
@@ -86,6 +87,30 @@ public class AutomationDataManagerTest extends BaseTestCase {
         assertEquals(17, retrieved.size());
     }
 
+    @Test
+    public void testDeleteExpiredSchedules() {
+        long now = System.currentTimeMillis();
+        ActionScheduleInfo expiredSchedule = ActionScheduleInfo.newBuilder()
+                .addAction("test_action", JsonValue.wrap("action_value"))
+                .addTrigger(Triggers.newForegroundTriggerBuilder().setGoal(3).build())
+                .setStart(now - 2000)
+                .setEnd(now - 1000)
+                .build();
+
+        String expiredId = dataManager.insertSchedules(Collections.singletonList(expiredSchedule)).get(0).getId();
+        dataManager.insertSchedules(createSchedules(5));
+
+        assertTrue(dataManager.getScheduleEnds().contains(now - 1000));
+        assertEquals(6, dataManager.getScheduleEnds().size());
+
+        assertEquals(Collections.singleton(expiredId), dataManager.deleteExpiredSchedules(now));
+        assertEquals(5, dataManager.getSchedules().size());
+
+        // Triggers are removed by the delete cascade
+        assertEquals(5, dataManager.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).size());
+        assertEquals(0, dataManager.deleteExpiredSchedules(now).size());
+    }
+
     @Test
     public void testGetSchedule() {
         ActionScheduleInfo actionScheduleInfo = createSchedules(1).get(0);
@@ -156,6 +181,30 @@ public class AutomationDataManagerTest extends BaseTestCase {
         assertEquals(2, retrieved.size());
     }
 
+    @Test
+    public void testGetSchedulesPaged() {
+        dataManager.insertSchedules(createSchedules(25));
+
+        List<Integer> pageSizes = new ArrayList<>();
+        HashSet<String> ids = new HashSet<>();
+        String lastId = null;
+
+        List<ActionSchedule> page;
+        do {
+            page = dataManager.getSchedules(lastId, 10);
+            pageSizes.add(page.size());
+
+            for (ActionSchedule schedule : page) {
+                ids.add(schedule.getId());
+                assertEquals(2, schedule.getInfo().getTriggers().size());
+                lastId = schedule.getId();
+            }
+        } while (!page.isEmpty());
+
+        assertEquals(Arrays.asList(10, 10, 5, 0), pageSizes);
+        assertEquals(25, ids.size());
+    }
+
     @Test
     public void testGetTriggers() {
         // Triggers that have yet to start should not be returned by the data manager.
@@ -173,6 +222,40 @@ public class AutomationDataManagerTest extends BaseTestCase {
         assertEquals(20, retrieved.size());
     }
 
+    @Test
+    public void testGetNextTriggerStart() {
+        assertEquals(-1, dataManager.getNextTriggerStart(Trigger.LIFE_CYCLE_FOREGROUND));
+
+        long start = System.currentTimeMillis() + 1000;
+        ActionScheduleInfo futureSchedule = ActionScheduleInfo.newBuilder()
+                .addAction("test_action", JsonValue.wrap("action_value"))
+                .addTrigger(Triggers.newForegroundTriggerBuilder().setGoal(3).build())
+                .setLimit(5)
+                .setGroup("group")
+                .setStart(start)
+                .build();
+        dataManager.insertSchedules(Collections.singletonList(futureSchedule));
+        dataManager.insertSchedules(createSchedules(5));
+
+        assertEquals(start, dataManager.getNextTriggerStart(Trigger.LIFE_CYCLE_FOREGROUND));
+        assertEquals(-1, dataManager.getNextTriggerStart(Trigger.LIFE_CYCLE_BACKGROUND));
+    }
+
+    @Test
+    public void testGetScheduleIds() {
+        List<ActionSchedule> inserted = dataManager.insertSchedules(createSchedules(20));
+
+        String id = null;
+        for (ActionSchedule schedule : inserted) {
+            if (schedule.getInfo().getGroup().equals("group 5")) {
+                id = schedule.getId();
+            }
+        }
+
+        assertEquals(Collections.singleton(id), dataManager.getScheduleIds("group 5"));
+        assertEquals(0, dataManager.getScheduleIds("not a group").size());
+    }
+
     @Test
     public void testBulkInsertSchedules() {
         Trigger firstTrigger = Triggers.newForegroundTriggerBuilder()
@@ -85,6 +85,34 @@ public class AutomationTest extends BaseTestCase {
         automation.tearDown();
     }
 
+    @Test
+    public void testProgressFlushedAfterEventCount() throws Exception {
+        when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
+        automation.schedule(customEventActionSchedule);
+
+        TriggerEntry triggerEntry = new TriggerEntry(customEventTrigger.getType(), 100, customEventTrigger.getPredicate(), "1", "automation id", 0.0);
+        when(automationDataManager.getTriggers(Trigger.CUSTOM_EVENT_COUNT)).thenReturn(Collections.singletonList(triggerEntry));
+
+        for (int i = 0; i < Automation.PROGRESS_FLUSH_EVENT_COUNT - 1; i++) {
+            new CustomEvent.Builder("name")
+                    .create()
+                    .track();
+        }
+
+        Thread.sleep(SLEEP_TIME);
+        verify(automationDataManager, never()).updateLists(anyMap());
+
+        new CustomEvent.Builder("name")
+                .create()
+                .track();
+
+        Thread.sleep(SLEEP_TIME);
+
+        // All the buffered events should be written as a single update
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, (double) Automation.PROGRESS_FLUSH_EVENT_COUNT), Collections.singletonList("1"));
+        verify(automationDataManager).updateLists(updatesMap);
+    }
+
     @Test
     public void testCustomEventMatch() throws Exception {
         when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
@@ -112,10 +140,37 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager, never()).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
+    @Test
+    public void testTriggersCached() throws Exception {
+        when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
+        automation.schedule(customEventActionSchedule);
+
+        TriggerEntry triggerEntry = new TriggerEntry(customEventTrigger.getType(), 5, customEventTrigger.getPredicate(), "1", "automation id", 0.0);
+        when(automationDataManager.getTriggers(Trigger.CUSTOM_EVENT_COUNT)).thenReturn(Collections.singletonList(triggerEntry));
+
+        new CustomEvent.Builder("name")
+                .create()
+                .track();
+
+        new CustomEvent.Builder("name")
+                .create()
+                .track();
+
+        Thread.sleep(SLEEP_TIME);
+
+        // Triggers should only be loaded once and the progress should be tracked in memory
+        verify(automationDataManager).getTriggers(Trigger.CUSTOM_EVENT_COUNT);
+        assertEquals(2.0, triggerEntry.getProgress());
+    }
+
     @Test
     public void testCustomEventValueMatch() throws Exception {
         // This will test that if the custom event value gets reduced to an integer in the action parsing process, a proper comparison will still be made in the value matching.
@@ -155,7 +210,6 @@ public class AutomationTest extends BaseTestCase {
 
         verify(automationDataManager, atLeastOnce()).getTriggers(anyInt());
         updatesMap.put(AutomationDataManager.SCHEDULES_TO_INCREMENT_QUERY, Collections.singletonList("automation id"));
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 5.0), Collections.EMPTY_LIST);
         updatesMap.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
@@ -202,7 +256,11 @@ public class AutomationTest extends BaseTestCase {
         Thread.sleep(SLEEP_TIME);
 
         verify(automationDataManager, atLeastOnce()).getTriggers(anyInt());
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -226,8 +284,8 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager, never()).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.EMPTY_LIST);
-        verify(automationDataManager).updateLists(updatesMap);
+        // The trigger is not indexed under the event name so nothing should be updated
+        verify(automationDataManager, never()).updateLists(anyMap());
     }
 
     @Test
@@ -237,7 +295,7 @@ public class AutomationTest extends BaseTestCase {
 
         assertEquals("automation id", id);
 
-        TriggerEntry triggerEntry = new TriggerEntry(customEventTrigger.getType(), customEventTrigger.getGoal(), customEventTrigger.getPredicate(), "1", "customEventActionSchedule id", 1.0);
+        TriggerEntry triggerEntry = new TriggerEntry(customEventTrigger.getType(), customEventTrigger.getGoal(), customEventTrigger.getPredicate(), "1", "automation id", 1.0);
         when(automationDataManager.getTriggers(Trigger.CUSTOM_EVENT_COUNT)).thenReturn(Collections.singletonList(triggerEntry));
         when(automationDataManager.getSchedules(anySet())).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
 
@@ -245,17 +303,43 @@ public class AutomationTest extends BaseTestCase {
                 .create()
                 .track();
 
-        Thread.sleep(15);
+        Thread.sleep(SLEEP_TIME);
 
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.EMPTY_LIST);
         updatesMap.put(AutomationDataManager.SCHEDULES_TO_INCREMENT_QUERY, Collections.singletonList("automation id"));
         updatesMap.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
+    @Test
+    public void testEventBurstProcessedInSingleBatch() throws Exception {
+        when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
+        automation.schedule(customEventActionSchedule);
+
+        TriggerEntry triggerEntry = new TriggerEntry(customEventTrigger.getType(), 1, customEventTrigger.getPredicate(), "1", "automation id", 0.0);
+        when(automationDataManager.getTriggers(Trigger.CUSTOM_EVENT_COUNT)).thenReturn(Collections.singletonList(triggerEntry));
+        when(automationDataManager.getSchedules(anySet())).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
+
+        new CustomEvent.Builder("name")
+                .create()
+                .track();
+
+        new CustomEvent.Builder("name")
+                .create()
+                .track();
+
+        Thread.sleep(SLEEP_TIME);
+
+        // The schedule is fetched once and both executions are written in a single update
+        verify(automationDataManager).getSchedules(anySet());
+
+        updatesMap.put(String.format(AutomationDataManager.SCHEDULES_TO_INCREMENT_BY_QUERY, 2), Collections.singletonList("automation id"));
+        updatesMap.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, Collections.singletonList("1"));
+        verify(automationDataManager).updateLists(updatesMap);
+    }
+
     @Test
     public void testCustomEventScheduleLimitReached() throws Exception {
         when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
@@ -276,7 +360,6 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.EMPTY_LIST);
         updatesMap.put(AutomationDataManager.SCHEDULES_TO_DELETE_QUERY, Collections.singletonList("automation id"));
         updatesMap.put(AutomationDataManager.TRIGGERS_TO_RESET_QUERY, Collections.EMPTY_LIST);
         verify(automationDataManager).updateLists(updatesMap);
@@ -331,7 +414,11 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(Trigger.REGION_ENTER);
         verify(automationDataManager, never()).getTriggers(Trigger.REGION_EXIT);
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -369,7 +456,11 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager, never()).getTriggers(Trigger.REGION_ENTER);
         verify(automationDataManager).getTriggers(Trigger.REGION_EXIT);
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -404,7 +495,11 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager, never()).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -439,7 +534,7 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager, never()).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -474,7 +569,11 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager, never()).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.singletonList("1"));
+        // Trigger progress is buffered until the app is backgrounded
+        verify(automationDataManager, never()).updateLists(anyMap());
+        sendBackgroundBroadcast();
+
+        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0), Collections.singletonList("1"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
@@ -509,11 +608,20 @@ public class AutomationTest extends BaseTestCase {
         verify(automationDataManager).getTriggers(anyInt());
         verify(automationDataManager).getSchedules(anySet());
 
-        updatesMap.put(String.format(AutomationDataManager.TRIGGERS_TO_INCREMENT_QUERY, 1.0), Collections.EMPTY_LIST);
         updatesMap.put(AutomationDataManager.SCHEDULES_TO_DELETE_QUERY, Collections.singletonList("automation id"));
         verify(automationDataManager).updateLists(updatesMap);
     }
 
+    /**
+     * Sends an app background broadcast, which writes any buffered trigger progress.
+     */
+    private void sendBackgroundBroadcast() throws InterruptedException {
+        LocalBroadcastManager.getInstance(RuntimeEnvironment.application)
+                             .sendBroadcast(new Intent(Analytics.ACTION_APP_BACKGROUND));
+
+        Thread.sleep(SLEEP_TIME);
+    }
+
     @Test
     public void testScheduleAsync() throws Exception {
         when(automationDataManager.insertSchedules(Collections.singletonList(customEventActionSchedule))).thenReturn(Collections.singletonList(new ActionSchedule("automation id", customEventActionSchedule, 0)));
@@ -0,0 +1,108 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.analytics.CustomEvent;
+import com.urbanairship.json.JsonException;
+import com.urbanairship.json.JsonPredicate;
+import com.urbanairship.json.JsonValue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PredicateIndexTest extends BaseTestCase {
+
+    /**
+     * Test triggers are only returned for events with a matching event name.
+     */
+    @Test
+    public void testEventNameEquals() {
+        List<TriggerEntry> triggers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Trigger trigger = Triggers.newCustomEventTriggerBuilder()
+                                      .setCountGoal(1)
+                                      .setEventName("event " + i)
+                                      .build();
+
+            triggers.add(new TriggerEntry(trigger.getType(), trigger.getGoal(), trigger.getPredicate(), String.valueOf(i), "schedule " + i, 0.0));
+        }
+
+        PredicateIndex index = new PredicateIndex(CustomEvent.EVENT_NAME, triggers);
+        assertEquals(0, index.getResidualCount());
+
+        List<TriggerEntry> candidates = index.getCandidates(new CustomEvent.Builder("event 3").create());
+        assertEquals(1, candidates.size());
+        assertEquals("3", candidates.get(0).getId());
+
+        assertTrue(index.getCandidates(new CustomEvent.Builder("other").create()).isEmpty());
+        assertEquals(10, index.getCandidates(null).size());
+    }
+
+    /**
+     * Test predicates that do not constrain the event name are returned for every event.
+     */
+    @Test
+    public void testResidual() throws JsonException {
+        List<TriggerEntry> triggers = new ArrayList<>();
+        triggers.add(createEntry("1", null));
+        triggers.add(createEntry("2", "{\"key\": \"event_value\", \"value\": {\"at_least\": 5}}"));
+        triggers.add(createEntry("3", "{\"not\": [{\"key\": \"event_name\", \"value\": {\"equals\": \"name\"}}]}"));
+        triggers.add(createEntry("4", "{\"or\": [{\"key\": \"event_name\", \"value\": {\"equals\": \"name\"}}, {\"key\": \"event_value\", \"value\": {\"equals\": 5}}]}"));
+        triggers.add(createEntry("5", "{\"key\": \"event_name\", \"scope\": [\"properties\"], \"value\": {\"equals\": \"name\"}}"));
+
+        PredicateIndex index = new PredicateIndex(CustomEvent.EVENT_NAME, triggers);
+        assertEquals(5, index.getResidualCount());
+        assertEquals(5, index.getCandidates(new CustomEvent.Builder("anything").create()).size());
+    }
+
+    /**
+     * Test equality constraints are extracted from nested and/or predicates.
+     */
+    @Test
+    public void testNestedPredicates() throws JsonException {
+        List<TriggerEntry> triggers = new ArrayList<>();
+        triggers.add(createEntry("and", "{\"and\": [{\"key\": \"event_value\", \"value\": {\"at_least\": 5}}, {\"key\": \"event_name\", \"value\": {\"equals\": \"purchase\"}}]}"));
+        triggers.add(createEntry("or", "{\"or\": [{\"key\": \"event_name\", \"value\": {\"equals\": \"purchase\"}}, {\"key\": \"event_name\", \"value\": {\"equals\": \"browse\"}}]}"));
+
+        PredicateIndex index = new PredicateIndex(CustomEvent.EVENT_NAME, triggers);
+        assertEquals(0, index.getResidualCount());
+
+        assertEquals(2, index.getCandidates(new CustomEvent.Builder("purchase").create()).size());
+
+        List<TriggerEntry> candidates = index.getCandidates(new CustomEvent.Builder("browse").create());
+        assertEquals(1, candidates.size());
+        assertEquals("or", candidates.get(0).getId());
+
+        // The OR trigger is indexed twice but should only be returned once
+        assertEquals(2, index.getCandidates(null).size());
+    }
+
+    /**
+     * Test removing schedules removes their triggers from the index.
+     */
+    @Test
+    public void testRemoveSchedules() throws JsonException {
+        List<TriggerEntry> triggers = new ArrayList<>();
+        triggers.add(createEntry("1", "{\"key\": \"event_name\", \"value\": {\"equals\": \"name\"}}"));
+        triggers.add(createEntry("2", null));
+
+        PredicateIndex index = new PredicateIndex(CustomEvent.EVENT_NAME, triggers);
+        index.removeSchedules(Collections.singleton("schedule 1"));
+
+        List<TriggerEntry> candidates = index.getCandidates(new CustomEvent.Builder("name").create());
+        assertEquals(1, candidates.size());
+        assertEquals("2", candidates.get(0).getId());
+    }
+
+    private static TriggerEntry createEntry(String id, String predicateJson) throws JsonException {
+        JsonPredicate predicate = predicateJson == null ? null : JsonPredicate.parse(JsonValue.parseString(predicateJson));
+        return new TriggerEntry(Trigger.CUSTOM_EVENT_COUNT, 1, predicate, id, "schedule " + id, 0.0);
+    }
+}
@@ -0,0 +1,110 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.actions.ActionResult;
+import com.urbanairship.actions.ActionRunRequest;
+import com.urbanairship.actions.ActionRunRequestFactory;
+import com.urbanairship.actions.StubbedActionRunRequest;
+import com.urbanairship.json.JsonValue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScheduleActionRunnerTest extends BaseTestCase {
+
+    private ActionRunRequestFactory actionRunRequestFactory;
+    private List<Runnable> firstLane;
+    private List<Runnable> secondLane;
+    private ScheduleActionRunner runner;
+    private List<String> finishedActions;
+
+    @Before
+    public void setUp() {
+        actionRunRequestFactory = mock(ActionRunRequestFactory.class);
+        when(actionRunRequestFactory.createActionRequest(anyString())).thenAnswer(new Answer<ActionRunRequest>() {
+            @Override
+            public ActionRunRequest answer(InvocationOnMock invocation) {
+                return new StubbedActionRunRequest();
+            }
+        });
+
+        firstLane = new ArrayList<>();
+        secondLane = new ArrayList<>();
+
+        runner = new ScheduleActionRunner(actionRunRequestFactory, new Executor[] { createLane(firstLane), createLane(secondLane) });
+
+        finishedActions = new ArrayList<>();
+        runner.setListener(new ScheduleActionRunner.Listener() {
+            @Override
+            public void onActionFinished(ActionSchedule schedule, String actionName, ActionResult result, long latencyMs) {
+                finishedActions.add(schedule.getId() + ":" + actionName);
+            }
+        });
+    }
+
+    /**
+     * Test run returns before any action runs.
+     */
+    @Test
+    public void testRunIsAsync() {
+        runner.run(Arrays.asList(createSchedule("a"), createSchedule("b")));
+
+        assertEquals(0, finishedActions.size());
+        assertEquals(2, firstLane.size() + secondLane.size());
+    }
+
+    /**
+     * Test the executions of a schedule are queued on the same lane in the order they fired, and
+     * each execution runs all of its actions before the next one starts.
+     */
+    @Test
+    public void testScheduleOrdering() {
+        ActionSchedule schedule = createSchedule("a");
+        runner.run(Arrays.asList(schedule, schedule));
+
+        List<Runnable> lane = firstLane.isEmpty() ? secondLane : firstLane;
+        assertEquals(2, lane.size());
+
+        for (Runnable runnable : lane) {
+            runnable.run();
+        }
+
+        assertEquals(4, finishedActions.size());
+        assertEquals(new HashSet<>(Arrays.asList("a:first_action", "a:second_action")), new HashSet<>(finishedActions.subList(0, 2)));
+        assertEquals(finishedActions.subList(0, 2), finishedActions.subList(2, 4));
+    }
+
+    private static Executor createLane(final List<Runnable> queue) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+    }
+
+    private static ActionSchedule createSchedule(String id) {
+        ActionScheduleInfo info = ActionScheduleInfo.newBuilder()
+                                                    .addTrigger(Triggers.newForegroundTriggerBuilder().setGoal(1).build())
+                                                    .addAction("first_action", JsonValue.wrap("value"))
+                                                    .addAction("second_action", JsonValue.wrap("value"))
+                                                    .build();
+
+        return new ActionSchedule(id, info, 0);
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.json.JsonValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScheduleExpirySweeperTest extends BaseTestCase {
+
+    private AutomationDataManager dataManager;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture future;
+    private ScheduleExpirySweeper.Listener listener;
+    private ScheduleExpirySweeper sweeper;
+
+    @Before
+    public void setUp() {
+        dataManager = mock(AutomationDataManager.class);
+        executor = mock(ScheduledExecutorService.class);
+        future = mock(ScheduledFuture.class);
+        listener = mock(ScheduleExpirySweeper.Listener.class);
+
+        doReturn(future).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        sweeper = new ScheduleExpirySweeper(dataManager, executor, listener);
+    }
+
+    /**
+     * Test a sweep is scheduled right after the earliest schedule end.
+     */
+    @Test
+    public void testAddSchedulesSchedulesSweep() {
+        long end = System.currentTimeMillis() + 10000;
+        sweeper.add(Collections.singletonList(createSchedule("first", end)));
+
+        assertEquals(end + 1, sweeper.getNextSweepTime());
+        verify(executor).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test an earlier schedule end replaces the scheduled sweep, and a later one does not.
+     */
+    @Test
+    public void testEarlierEndReschedulesSweep() {
+        long end = System.currentTimeMillis() + 10000;
+        sweeper.add(Collections.singletonList(createSchedule("first", end)));
+        sweeper.add(Collections.singletonList(createSchedule("second", end - 5000)));
+
+        assertEquals(end - 5000 + 1, sweeper.getNextSweepTime());
+        verify(future).cancel(false);
+
+        sweeper.add(Collections.singletonList(createSchedule("third", end + 5000)));
+        assertEquals(end - 5000 + 1, sweeper.getNextSweepTime());
+        verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    /**
+     * Test schedules without an end time do not schedule a sweep.
+     */
+    @Test
+    public void testNoEnd() {
+        sweeper.add(Collections.singletonList(createSchedule("first", -1)));
+
+        assertEquals(-1, sweeper.getNextSweepTime());
+        verify(executor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    /**
+     * Test a sweep notifies the listener and schedules the next sweep.
+     */
+    @Test
+    public void testSweep() {
+        Set<String> expired = new HashSet<>(Collections.singletonList("first"));
+        when(dataManager.deleteExpiredSchedules(anyLong())).thenReturn(expired);
+
+        long now = System.currentTimeMillis();
+        sweeper.add(Collections.singletonList(createSchedule("first", now - 1)));
+        sweeper.add(Collections.singletonList(createSchedule("second", now + 10000)));
+
+        sweeper.sweep();
+
+        verify(listener).onSchedulesExpired(expired);
+        assertEquals(now + 10000 + 1, sweeper.getNextSweepTime());
+    }
+
+    /**
+     * Test clearing the sweeper cancels the scheduled sweep.
+     */
+    @Test
+    public void testClear() {
+        sweeper.add(Collections.singletonList(createSchedule("first", System.currentTimeMillis() + 10000)));
+        sweeper.clear();
+
+        assertEquals(-1, sweeper.getNextSweepTime());
+        verify(future).cancel(false);
+    }
+
+    private static ActionSchedule createSchedule(String id, long end) {
+        ActionScheduleInfo info = ActionScheduleInfo.newBuilder()
+                                                    .addTrigger(Triggers.newForegroundTriggerBuilder().setGoal(1).build())
+                                                    .addAction("test_action", JsonValue.wrap("action_value"))
+                                                    .setEnd(end)
+                                                    .build();
+
+        return new ActionSchedule(id, info, 0);
+    }
+}
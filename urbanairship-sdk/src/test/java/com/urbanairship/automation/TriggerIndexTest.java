@@ -0,0 +1,165 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.automation;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TriggerIndexTest extends BaseTestCase {
+
+    private AutomationDataManager dataManager;
+    private TriggerIndex triggerIndex;
+    private List<TriggerEntry> foregroundTriggers;
+
+    @Before
+    public void setUp() {
+        dataManager = mock(AutomationDataManager.class);
+        triggerIndex = new TriggerIndex(dataManager);
+
+        foregroundTriggers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            foregroundTriggers.add(new TriggerEntry(Trigger.LIFE_CYCLE_FOREGROUND, 2, null, String.valueOf(i), "schedule " + i, 0.0));
+        }
+
+        when(dataManager.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND)).thenReturn(foregroundTriggers);
+        when(dataManager.getNextTriggerStart(Trigger.LIFE_CYCLE_FOREGROUND)).thenReturn(-1L);
+    }
+
+    /**
+     * Test triggers are only loaded from the data manager once per type.
+     */
+    @Test
+    public void testGetTriggersCached() {
+        assertEquals(3, triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).size());
+        assertEquals(3, triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).size());
+
+        verify(dataManager, times(1)).getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+    }
+
+    /**
+     * Test invalidating a type reloads the triggers on the next request.
+     */
+    @Test
+    public void testInvalidate() {
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_BACKGROUND);
+
+        triggerIndex.invalidate(Collections.singleton(Trigger.LIFE_CYCLE_FOREGROUND));
+
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_BACKGROUND);
+
+        verify(dataManager, times(2)).getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        verify(dataManager, times(1)).getTriggers(Trigger.LIFE_CYCLE_BACKGROUND);
+    }
+
+    /**
+     * Test removing schedules updates the cached triggers without reloading them.
+     */
+    @Test
+    public void testRemoveSchedules() {
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.removeSchedules(Arrays.asList("schedule 0", "schedule 2"));
+
+        List<TriggerEntry> triggers = triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        assertEquals(1, triggers.size());
+        assertEquals("schedule 1", triggers.get(0).getScheduleId());
+
+        verify(dataManager, times(1)).getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+    }
+
+    /**
+     * Test clearing the index reloads every type.
+     */
+    @Test
+    public void testClear() {
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.clear();
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+
+        verify(dataManager, times(2)).getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+    }
+
+    /**
+     * Test the cached triggers are reloaded once a pending trigger has started.
+     */
+    @Test
+    public void testPendingTriggerStart() {
+        when(dataManager.getNextTriggerStart(Trigger.LIFE_CYCLE_FOREGROUND)).thenReturn(System.currentTimeMillis() - 1);
+
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+
+        verify(dataManager, times(2)).getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+    }
+
+    /**
+     * Test buffered progress is drained grouped by progress value.
+     */
+    @Test
+    public void testDrainProgressUpdates() {
+        List<TriggerEntry> triggers = triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND);
+        triggerIndex.updateProgress(triggers.get(0), 1);
+        triggerIndex.updateProgress(triggers.get(1), 1);
+        triggerIndex.updateProgress(triggers.get(2), 0);
+
+        Map<String, List<String>> updates = triggerIndex.drainProgressUpdates();
+        assertEquals(2, updates.size());
+        assertEquals(Collections.singletonList("2"), updates.get(AutomationDataManager.TRIGGERS_TO_RESET_QUERY));
+
+        List<String> ids = updates.get(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.0));
+        Collections.sort(ids);
+        assertEquals(Arrays.asList("0", "1"), ids);
+
+        // Nothing left to drain
+        updates = triggerIndex.drainProgressUpdates();
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(AutomationDataManager.TRIGGERS_TO_RESET_QUERY).isEmpty());
+    }
+
+    /**
+     * Test reloaded triggers are patched with the buffered progress.
+     */
+    @Test
+    public void testReloadKeepsBufferedProgress() {
+        triggerIndex.updateProgress(triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).get(0), 1.5);
+
+        // Reload with fresh entries from the database
+        List<TriggerEntry> reloaded = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            reloaded.add(new TriggerEntry(Trigger.LIFE_CYCLE_FOREGROUND, 2, null, String.valueOf(i), "schedule " + i, 0.0));
+        }
+
+        when(dataManager.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND)).thenReturn(reloaded);
+        triggerIndex.invalidate(Collections.singleton(Trigger.LIFE_CYCLE_FOREGROUND));
+
+        assertEquals(1.5, triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).get(0).getProgress(), 0.0);
+        assertEquals(Collections.singletonList("0"), triggerIndex.drainProgressUpdates().get(String.format(AutomationDataManager.TRIGGERS_TO_SET_PROGRESS_QUERY, 1.5)));
+    }
+
+    /**
+     * Test removing schedules drops their buffered progress.
+     */
+    @Test
+    public void testRemoveSchedulesDropsBufferedProgress() {
+        triggerIndex.updateProgress(triggerIndex.getTriggers(Trigger.LIFE_CYCLE_FOREGROUND).get(0), 1);
+        triggerIndex.removeSchedule("schedule 0");
+
+        assertEquals(1, triggerIndex.drainProgressUpdates().size());
+    }
+}
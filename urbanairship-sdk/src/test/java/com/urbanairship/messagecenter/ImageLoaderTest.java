@@ -0,0 +1,322 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.messagecenter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.view.View;
+import android.widget.ImageView;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.util.BitmapDiskCache;
+import com.urbanairship.util.BitmapPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImageLoaderTest extends BaseTestCase {
+
+    private static final String IMAGE_URL = "https://example.com/icon.png";
+
+    private TestExecutor executor;
+    private BitmapDiskCache mockDiskCache;
+    private BitmapPool mockBitmapPool;
+    private ShadowLooper looper;
+    private Bitmap bitmap;
+
+    @Before
+    public void setUp() {
+        executor = new TestExecutor();
+        mockDiskCache = mock(BitmapDiskCache.class);
+        mockBitmapPool = mock(BitmapPool.class);
+
+        bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(mockDiskCache.get(anyString())).thenReturn(bitmap);
+
+        looper = Shadows.shadowOf(Looper.getMainLooper());
+        looper.pause();
+    }
+
+    /**
+     * Test detaching an image view releases its bitmap to the pool once it is no longer cached,
+     * and attaching it again reloads the image.
+     */
+    @Test
+    public void testDetachReleasesBitmap() {
+        // Memory cache too small to hold the bitmap
+        ImageLoader imageLoader = createImageLoader(1);
+
+        TestImageView imageView = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, imageView);
+        runLoads();
+
+        assertNotNull(imageView.getDrawable());
+        verify(mockBitmapPool, never()).put(bitmap);
+
+        imageView.attachStateChangeListener.onViewDetachedFromWindow(imageView);
+        assertNull(imageView.getDrawable());
+        verify(mockBitmapPool).put(bitmap);
+
+        imageView.attachStateChangeListener.onViewAttachedToWindow(imageView);
+        runLoads();
+
+        assertNotNull(imageView.getDrawable());
+        verify(mockDiskCache, times(2)).get(anyString());
+    }
+
+    /**
+     * Test detaching an image view does not release a bitmap that is still in the memory cache.
+     */
+    @Test
+    public void testDetachCachedBitmap() {
+        ImageLoader imageLoader = createImageLoader(1024 * 1024);
+
+        TestImageView imageView = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, imageView);
+        runLoads();
+
+        imageView.attachStateChangeListener.onViewDetachedFromWindow(imageView);
+        verify(mockBitmapPool, never()).put(bitmap);
+
+        // Reattaching loads from the memory cache
+        imageView.attachStateChangeListener.onViewAttachedToWindow(imageView);
+        assertNotNull(imageView.getDrawable());
+        verify(mockDiskCache, times(1)).get(anyString());
+    }
+
+    /**
+     * Test a bitmap displayed from the memory cache is not returned to the pool when it is
+     * evicted, and is returned once no image view displays it.
+     */
+    @Test
+    public void testCacheHitHoldsBitmap() {
+        Bitmap otherBitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(mockDiskCache.get(startsWith("https://example.com/other.png"))).thenReturn(otherBitmap);
+
+        // Memory cache that holds a single bitmap
+        ImageLoader imageLoader = createImageLoader(bitmap.getByteCount());
+
+        TestImageView first = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, first);
+        runLoads();
+
+        // Loads from the memory cache
+        TestImageView second = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, second);
+        assertEquals(0, executor.getQueue().size());
+        assertNotNull(second.getDrawable());
+
+        first.attachStateChangeListener.onViewDetachedFromWindow(first);
+
+        // Evict the bitmap while the second image view displays it
+        imageLoader.load("https://example.com/other.png", 0, new TestImageView(RuntimeEnvironment.application));
+        runLoads();
+        verify(mockBitmapPool, never()).put(bitmap);
+
+        second.attachStateChangeListener.onViewDetachedFromWindow(second);
+        verify(mockBitmapPool).put(bitmap);
+    }
+
+    /**
+     * Test the bitmap of a garbage collected image view is released to the pool.
+     */
+    @Test
+    public void testCollectedImageViewReleasesBitmap() {
+        ImageLoader imageLoader = createImageLoader(1);
+
+        TestImageView imageView = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, imageView);
+        runLoads();
+
+        // Simulate the image view being garbage collected
+        ImageLoader.DisplayReference reference = imageLoader.getDisplayReference(imageView);
+        assertNotNull(reference);
+        reference.clear();
+        reference.enqueue();
+
+        imageLoader.releaseCollectedImageViews();
+        verify(mockBitmapPool).put(bitmap);
+    }
+
+    /**
+     * Test image views requesting the same image at the same size share a single load.
+     */
+    @Test
+    public void testCoalesce() {
+        ImageLoader imageLoader = createImageLoader(1024 * 1024);
+
+        TestImageView first = new TestImageView(RuntimeEnvironment.application);
+        TestImageView second = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, first);
+        imageLoader.load(IMAGE_URL, 0, second);
+
+        assertEquals(1, executor.getQueue().size());
+        runLoads();
+
+        verify(mockDiskCache, times(1)).get(anyString());
+        assertNotNull(first.getDrawable());
+        assertNotNull(second.getDrawable());
+    }
+
+    /**
+     * Test canceling one of the requests sharing a load still delivers the image to the others,
+     * and the load is dropped once no request waits on it.
+     */
+    @Test
+    public void testCancelCoalescedRequest() {
+        ImageLoader imageLoader = createImageLoader(1024 * 1024);
+
+        TestImageView first = new TestImageView(RuntimeEnvironment.application);
+        TestImageView second = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load(IMAGE_URL, 0, first);
+        imageLoader.load(IMAGE_URL, 0, second);
+
+        imageLoader.cancelRequest(first);
+        assertEquals(1, executor.getQueue().size());
+
+        runLoads();
+        assertNull(first.getDrawable());
+        assertNotNull(second.getDrawable());
+
+        // Canceling every request drops the load
+        TestImageView third = new TestImageView(RuntimeEnvironment.application);
+        imageLoader.load("https://example.com/other.png", 0, third);
+        assertEquals(1, executor.getQueue().size());
+
+        imageLoader.cancelRequest(third);
+        assertEquals(0, executor.getQueue().size());
+        verify(mockDiskCache, times(1)).get(anyString());
+    }
+
+    /**
+     * Test loads for visible image views run before prefetches, and a prefetch that a visible
+     * image view joins runs at the visible priority.
+     */
+    @Test
+    public void testPriority() {
+        final List<String> loadedKeys = new ArrayList<>();
+        when(mockDiskCache.get(anyString())).thenAnswer(new Answer<Bitmap>() {
+            @Override
+            public Bitmap answer(InvocationOnMock invocation) throws Throwable {
+                loadedKeys.add(((String) invocation.getArguments()[0]).split(",")[0]);
+                return bitmap;
+            }
+        });
+
+        ImageLoader imageLoader = createImageLoader(1024 * 1024);
+
+        // Measures the prefetch size
+        imageLoader.load("https://example.com/visible-1.png", 0, new TestImageView(RuntimeEnvironment.application));
+
+        imageLoader.prefetch(Arrays.asList("https://example.com/prefetch-1.png", "https://example.com/prefetch-2.png", "https://example.com/prefetch-3.png"));
+        imageLoader.load("https://example.com/visible-2.png", 0, new TestImageView(RuntimeEnvironment.application));
+        imageLoader.load("https://example.com/prefetch-3.png", 0, new TestImageView(RuntimeEnvironment.application));
+
+        runLoads();
+
+        // The joined prefetch keeps its place among the visible loads
+        assertEquals(Arrays.asList("https://example.com/visible-1.png",
+                "https://example.com/prefetch-3.png",
+                "https://example.com/visible-2.png",
+                "https://example.com/prefetch-1.png",
+                "https://example.com/prefetch-2.png"), loadedKeys);
+    }
+
+    /**
+     * Test prefetching cancels earlier prefetches that have not started and are not requested again.
+     */
+    @Test
+    public void testPrefetchCancelsPreviousPrefetch() {
+        ImageLoader imageLoader = createImageLoader(1024 * 1024);
+        imageLoader.load(IMAGE_URL, 0, new TestImageView(RuntimeEnvironment.application));
+        runLoads();
+
+        imageLoader.prefetch(Arrays.asList("https://example.com/prefetch-1.png", "https://example.com/prefetch-2.png"));
+        assertEquals(2, executor.getQueue().size());
+
+        imageLoader.prefetch(Arrays.asList("https://example.com/prefetch-2.png", "https://example.com/prefetch-3.png"));
+        assertEquals(2, executor.getQueue().size());
+
+        runLoads();
+        verify(mockDiskCache, never()).get("https://example.com/prefetch-1.png,size(10x10)");
+        verify(mockDiskCache, times(1)).get("https://example.com/prefetch-2.png,size(10x10)");
+        verify(mockDiskCache, times(1)).get("https://example.com/prefetch-3.png,size(10x10)");
+    }
+
+    private ImageLoader createImageLoader(int memCacheSize) {
+        return new ImageLoader(RuntimeEnvironment.application, executor, mockDiskCache, mockBitmapPool, memCacheSize);
+    }
+
+    /**
+     * Runs the queued loads and delivers the results.
+     */
+    private void runLoads() {
+        executor.runAll();
+        looper.idle();
+    }
+
+    /**
+     * Image view with a size that exposes its attach state change listener.
+     */
+    private static class TestImageView extends ImageView {
+
+        View.OnAttachStateChangeListener attachStateChangeListener;
+
+        TestImageView(Context context) {
+            super(context);
+            layout(0, 0, 10, 10);
+        }
+
+        @Override
+        public void addOnAttachStateChangeListener(OnAttachStateChangeListener listener) {
+            super.addOnAttachStateChangeListener(listener);
+            this.attachStateChangeListener = listener;
+        }
+    }
+
+    /**
+     * Executor that queues tasks by priority and only runs them when asked.
+     */
+    private static class TestExecutor extends ThreadPoolExecutor {
+
+        TestExecutor() {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            getQueue().add(command);
+        }
+
+        void runAll() {
+            Runnable runnable;
+            while ((runnable = getQueue().poll()) != null) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.messagecenter;
+
+import android.database.DataSetObserver;
+import android.view.View;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.richpush.PagedMessageList;
+import com.urbanairship.richpush.RichPushMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessageViewAdapterTest extends BaseTestCase {
+
+    private MessageViewAdapter adapter;
+    private TestObserver observer;
+
+    private RichPushMessage first;
+    private RichPushMessage second;
+    private RichPushMessage third;
+
+    @Before
+    public void setUp() {
+        adapter = new MessageViewAdapter(RuntimeEnvironment.application, 0) {
+            @Override
+            protected void bindView(View view, RichPushMessage message, int position) {
+            }
+        };
+
+        first = createMessage("first");
+        second = createMessage("second");
+        third = createMessage("third");
+
+        adapter.set(Arrays.asList(first, second), Collections.<String>emptySet());
+
+        observer = new TestObserver();
+        adapter.registerDataSetObserver(observer);
+    }
+
+    /**
+     * Test setting the same messages without changes in the list does not notify.
+     */
+    @Test
+    public void testSetUnchanged() {
+        adapter.set(Arrays.asList(first, second), Collections.<String>emptySet());
+        assertEquals(0, observer.changedCount);
+
+        // Changed messages that are not in the list
+        adapter.set(Arrays.asList(first, second), Collections.singleton("third"));
+        assertEquals(0, observer.changedCount);
+    }
+
+    /**
+     * Test adding or removing messages notifies.
+     */
+    @Test
+    public void testSetSizeChanged() {
+        adapter.set(Arrays.asList(first, second, third), Collections.<String>emptySet());
+        assertEquals(1, observer.changedCount);
+        assertEquals(3, adapter.getCount());
+
+        adapter.set(Collections.singletonList(first), Collections.<String>emptySet());
+        assertEquals(2, observer.changedCount);
+        assertEquals(1, adapter.getCount());
+    }
+
+    /**
+     * Test reordering or replacing messages notifies.
+     */
+    @Test
+    public void testSetReordered() {
+        adapter.set(Arrays.asList(second, first), Collections.<String>emptySet());
+        assertEquals(1, observer.changedCount);
+        assertSame(second, adapter.getItem(0));
+        assertSame(first, adapter.getItem(1));
+
+        // A new instance of a message, such as from an inbox refresh
+        RichPushMessage updatedFirst = createMessage("first");
+        adapter.set(Arrays.asList(second, updatedFirst), Collections.<String>emptySet());
+        assertEquals(2, observer.changedCount);
+        assertSame(updatedFirst, adapter.getItem(1));
+    }
+
+    /**
+     * Test a changed message in the list notifies.
+     */
+    @Test
+    public void testSetMessageChanged() {
+        adapter.set(Arrays.asList(first, second), Collections.singleton("second"));
+        assertEquals(1, observer.changedCount);
+    }
+
+    /**
+     * Test the adapter delegates to the paged messages and is notified when they change.
+     */
+    @Test
+    public void testPagedMessages() {
+        PagedMessageList pagedMessages = mock(PagedMessageList.class);
+        when(pagedMessages.getCount()).thenReturn(100);
+        when(pagedMessages.getMessage(50)).thenReturn(third);
+        when(pagedMessages.getKey(50)).thenReturn(7L);
+
+        adapter.setPagedMessages(pagedMessages);
+        assertEquals(1, observer.changedCount);
+        assertEquals(100, adapter.getCount());
+        assertSame(third, adapter.getItem(50));
+        assertEquals(7L, adapter.getItemId(50));
+
+        ArgumentCaptor<PagedMessageList.Listener> listenerCaptor = ArgumentCaptor.forClass(PagedMessageList.Listener.class);
+        verify(pagedMessages).setListener(listenerCaptor.capture());
+        listenerCaptor.getValue().onMessagesChanged();
+        assertEquals(2, observer.changedCount);
+
+        // Setting messages stops using the paged messages
+        adapter.set(Arrays.asList(first, second), Collections.<String>emptySet());
+        assertEquals(3, observer.changedCount);
+        assertEquals(2, adapter.getCount());
+        verify(pagedMessages).setListener(null);
+    }
+
+    private static RichPushMessage createMessage(String messageId) {
+        RichPushMessage message = mock(RichPushMessage.class);
+        when(message.getMessageId()).thenReturn(messageId);
+        return message;
+    }
+
+    /**
+     * Observer that counts data set changes.
+     */
+    private static class TestObserver extends DataSetObserver {
+
+        int changedCount;
+
+        @Override
+        public void onChanged() {
+            changedCount++;
+        }
+    }
+}
@@ -19,9 +19,11 @@ import com.urbanairship.analytics.PushArrivedEvent;
 import com.urbanairship.job.Job;
 import com.urbanairship.push.iam.InAppMessage;
 import com.urbanairship.push.notifications.NotificationFactory;
+import com.urbanairship.push.notifications.NotificationImageLoader;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -38,7 +40,11 @@ import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +57,7 @@ public class PushJobHandlerTest extends BaseTestCase {
 
     private PushManager pushManager;
     private NotificationManagerCompat notificationManager;
+    private NotificationImageLoader imageLoader;
     private Analytics analytics;
 
     private Notification notification;
@@ -68,6 +75,7 @@ public class PushJobHandlerTest extends BaseTestCase {
 
         pushManager = mock(PushManager.class);
         notificationManager = mock(NotificationManagerCompat.class);
+        imageLoader = mock(NotificationImageLoader.class);
 
         when(pushManager.isPushAvailable()).thenReturn(true);
 
@@ -103,7 +111,56 @@ public class PushJobHandlerTest extends BaseTestCase {
         TestApplication.getApplication().setAnalytics(analytics);
 
         jobHandler = new PushJobHandler(TestApplication.getApplication(), UAirship.shared(),
-                TestApplication.getApplication().preferenceDataStore, notificationManager);
+                TestApplication.getApplication().preferenceDataStore, notificationManager, imageLoader);
+    }
+
+    /**
+     * Test a notification that is not missing its image is not updated.
+     */
+    @Test
+    public void testDeliverPushWithoutPendingImage() {
+        when(pushManager.isPushEnabled()).thenReturn(true);
+        when(pushManager.getUserNotificationsEnabled()).thenReturn(true);
+
+        Job job = Job.newBuilder(PushJobHandler.ACTION_RECEIVE_GCM_MESSAGE).setExtras(pushBundle).build();
+        jobHandler.performJob(job);
+
+        verify(imageLoader, never()).whenCached(anyString(), any(Runnable.class));
+    }
+
+    /**
+     * Test a notification posted without its image is updated in place once the image is cached.
+     */
+    @Test
+    public void testDeliverPushPendingImage() {
+        when(pushManager.isPushEnabled()).thenReturn(true);
+        when(pushManager.getUserNotificationsEnabled()).thenReturn(true);
+
+        Bundle extras = new Bundle();
+        extras.putString(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL, "https://example.com/image.png");
+        notification = new NotificationCompat.Builder(RuntimeEnvironment.application)
+                .setContentTitle("Test NotificationBuilder Title")
+                .setContentText("Test NotificationBuilder Text")
+                .addExtras(extras)
+                .build();
+
+        Job job = Job.newBuilder(PushJobHandler.ACTION_RECEIVE_GCM_MESSAGE).setExtras(pushBundle).build();
+        jobHandler.performJob(job);
+
+        verify(notificationManager).notify(TEST_NOTIFICATION_ID, notification);
+        assertEquals(0, notification.flags & Notification.FLAG_ONLY_ALERT_ONCE);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(imageLoader).whenCached(eq("https://example.com/image.png"), captor.capture());
+
+        // Simulate the image being cached
+        captor.getValue().run();
+
+        verify(notificationManager, times(2)).notify(TEST_NOTIFICATION_ID, notification);
+        assertEquals(Notification.FLAG_ONLY_ALERT_ONCE, notification.flags & Notification.FLAG_ONLY_ALERT_ONCE);
+
+        // The update does not wait on the image again
+        verify(imageLoader, times(1)).whenCached(anyString(), any(Runnable.class));
     }
 
     /**
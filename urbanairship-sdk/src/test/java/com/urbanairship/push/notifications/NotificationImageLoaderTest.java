@@ -0,0 +1,253 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.push.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.util.BitmapDiskCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NotificationImageLoaderTest extends BaseTestCase {
+
+    private static final String IMAGE_URL = "https://example.com/image.png";
+    private static final long TIMEOUT_MS = 10;
+
+    private File directory;
+    private BitmapDiskCache diskCache;
+    private TestExecutor executor;
+    private TestImageLoader imageLoader;
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(RuntimeEnvironment.application.getCacheDir(), "notification_image_loader_test");
+        deleteFiles(directory);
+
+        diskCache = new BitmapDiskCache(directory, 1024 * 1024);
+        executor = new TestExecutor();
+        imageLoader = new TestImageLoader(RuntimeEnvironment.application, diskCache, executor);
+        url = new URL(IMAGE_URL);
+    }
+
+    /**
+     * Test an image that misses the deadline continues to load and is cached.
+     */
+    @Test
+    public void testDeadline() {
+        assertMissesDeadline();
+        assertEquals(1, executor.runnables.size());
+        assertEquals(0, imageLoader.fetchCount);
+
+        executor.runAll();
+
+        assertEquals(1, imageLoader.fetchCount);
+        assertTrue(diskCache.contains(IMAGE_URL));
+    }
+
+    /**
+     * Test loads of the same image share a single fetch.
+     */
+    @Test
+    public void testCoalesce() throws TimeoutException {
+        assertMissesDeadline();
+        assertMissesDeadline();
+        assertEquals(1, executor.runnables.size());
+
+        executor.runAll();
+        assertEquals(1, imageLoader.fetchCount);
+
+        // Later loads are read from the disk cache
+        assertNotNull(imageLoader.load(url, 10, 10, TIMEOUT_MS));
+        assertEquals(1, imageLoader.fetchCount);
+        assertTrue(executor.runnables.isEmpty());
+    }
+
+    /**
+     * Test an image that loads before the deadline is returned and cached.
+     */
+    @Test
+    public void testLoad() throws TimeoutException {
+        executor.runImmediately = true;
+
+        assertNotNull(imageLoader.load(url, 10, 10, TIMEOUT_MS));
+        assertEquals(1, imageLoader.fetchCount);
+        assertTrue(diskCache.contains(IMAGE_URL));
+    }
+
+    /**
+     * Test an image that fails to load returns null without missing the deadline.
+     */
+    @Test
+    public void testLoadFailed() throws TimeoutException {
+        executor.runImmediately = true;
+        imageLoader.bitmap = null;
+
+        assertNull(imageLoader.load(url, 10, 10, TIMEOUT_MS));
+        assertFalse(diskCache.contains(IMAGE_URL));
+    }
+
+    /**
+     * Test a cached image is loaded without fetching it.
+     */
+    @Test
+    public void testDiskCacheHit() throws TimeoutException {
+        diskCache.put(IMAGE_URL, createBitmap());
+
+        assertNotNull(imageLoader.load(url, 10, 10, TIMEOUT_MS));
+        assertEquals(0, imageLoader.fetchCount);
+        assertTrue(executor.runnables.isEmpty());
+    }
+
+    /**
+     * Test whenCached runs the runnable once an in flight load is cached.
+     */
+    @Test
+    public void testWhenCachedInFlight() {
+        assertMissesDeadline();
+
+        CountingRunnable runnable = new CountingRunnable();
+        imageLoader.whenCached(IMAGE_URL, runnable);
+
+        // Waits on the load instead of checking the cache
+        assertEquals(1, executor.runnables.size());
+        assertEquals(0, runnable.count);
+
+        executor.runAll();
+        assertEquals(1, runnable.count);
+    }
+
+    /**
+     * Test whenCached does not run the runnable if the in flight load fails.
+     */
+    @Test
+    public void testWhenCachedInFlightFailed() {
+        imageLoader.bitmap = null;
+        assertMissesDeadline();
+
+        CountingRunnable runnable = new CountingRunnable();
+        imageLoader.whenCached(IMAGE_URL, runnable);
+        executor.runAll();
+
+        assertEquals(0, runnable.count);
+    }
+
+    /**
+     * Test whenCached checks the disk cache once the load finished.
+     */
+    @Test
+    public void testWhenCachedFinished() {
+        diskCache.put(IMAGE_URL, createBitmap());
+
+        CountingRunnable cached = new CountingRunnable();
+        imageLoader.whenCached(IMAGE_URL, cached);
+
+        CountingRunnable notCached = new CountingRunnable();
+        imageLoader.whenCached("https://example.com/other.png", notCached);
+
+        // The cache is checked on the executor
+        assertEquals(0, cached.count);
+        executor.runAll();
+
+        assertEquals(1, cached.count);
+        assertEquals(0, notCached.count);
+    }
+
+    private void assertMissesDeadline() {
+        try {
+            imageLoader.load(url, 10, 10, TIMEOUT_MS);
+            fail("Load should miss the deadline.");
+        } catch (TimeoutException expected) {
+            // Expected
+        }
+    }
+
+    private static Bitmap createBitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    private static void deleteFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Image loader that fetches a test bitmap.
+     */
+    private static class TestImageLoader extends NotificationImageLoader {
+
+        Bitmap bitmap = createBitmap();
+        int fetchCount;
+
+        TestImageLoader(@NonNull Context context, @NonNull BitmapDiskCache diskCache, @NonNull Executor executor) {
+            super(context, diskCache, executor);
+        }
+
+        @Override
+        Bitmap fetchBitmap(@NonNull URL url, int reqWidth, int reqHeight) {
+            fetchCount++;
+            return bitmap;
+        }
+    }
+
+    /**
+     * Executor that queues runnables until they are run by the test.
+     */
+    private static class TestExecutor implements Executor {
+
+        final Queue<Runnable> runnables = new ArrayDeque<>();
+        boolean runImmediately;
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            if (runImmediately) {
+                runnable.run();
+            } else {
+                runnables.add(runnable);
+            }
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.poll().run();
+            }
+        }
+    }
+
+    /**
+     * Runnable that counts its runs.
+     */
+    private static class CountingRunnable implements Runnable {
+
+        int count;
+
+        @Override
+        public void run() {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.push.notifications;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.support.v4.app.NotificationCompat;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.push.PushMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.net.URL;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StyleNotificationExtenderTest extends BaseTestCase {
+
+    private static final String IMAGE_URL = "https://example.com/image.png";
+
+    private NotificationImageLoader imageLoader;
+    private NotificationCompat.Builder builder;
+    private StyleNotificationExtender extender;
+
+    @Before
+    public void setUp() {
+        Bundle extras = new Bundle();
+        extras.putString(PushMessage.EXTRA_ALERT, "Test Push Alert!");
+        extras.putString(PushMessage.EXTRA_STYLE, "{\"type\":\"big_picture\",\"big_picture\":\"" + IMAGE_URL + "\",\"title\":\"Title\"}");
+
+        imageLoader = mock(NotificationImageLoader.class);
+        builder = spy(new NotificationCompat.Builder(RuntimeEnvironment.application));
+        extender = new StyleNotificationExtender(RuntimeEnvironment.application, new PushMessage(extras), imageLoader);
+    }
+
+    /**
+     * Test the big picture style is set when the image loads.
+     */
+    @Test
+    public void testBigPicture() throws TimeoutException {
+        when(imageLoader.load(any(URL.class), anyInt(), anyInt(), anyLong())).thenReturn(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        extender.extend(builder);
+
+        verify(builder).setStyle(isA(NotificationCompat.BigPictureStyle.class));
+        assertFalse(builder.getExtras().containsKey(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL));
+    }
+
+    /**
+     * Test an image that misses the deadline falls back to the default style and sets the
+     * pending image URL.
+     */
+    @Test
+    public void testImageMissedDeadline() throws TimeoutException {
+        when(imageLoader.load(any(URL.class), anyInt(), anyInt(), anyLong())).thenThrow(new TimeoutException());
+
+        NotificationCompat.Style defaultStyle = new NotificationCompat.BigTextStyle();
+        extender.setDefaultStyle(defaultStyle).extend(builder);
+
+        verify(builder).setStyle(defaultStyle);
+        assertEquals(IMAGE_URL, builder.getExtras().getString(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL));
+    }
+
+    /**
+     * Test an image that fails to load does not set the pending image URL.
+     */
+    @Test
+    public void testImageFailed() throws TimeoutException {
+        when(imageLoader.load(any(URL.class), anyInt(), anyInt(), anyLong())).thenReturn(null);
+
+        extender.extend(builder);
+
+        verify(builder, never()).setStyle(any(NotificationCompat.Style.class));
+        assertFalse(builder.getExtras().containsKey(NotificationImageLoader.EXTRA_PENDING_IMAGE_URL));
+    }
+}
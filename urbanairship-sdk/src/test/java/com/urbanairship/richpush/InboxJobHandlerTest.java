@@ -16,24 +16,35 @@ import com.urbanairship.http.Request;
 import com.urbanairship.http.RequestFactory;
 import com.urbanairship.http.Response;
 import com.urbanairship.job.Job;
+import com.urbanairship.json.JsonException;
+import com.urbanairship.json.JsonList;
+import com.urbanairship.json.JsonValue;
 import com.urbanairship.push.PushManager;
 
 import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static junit.framework.Assert.assertNull;
 import static junit.framework.TestCase.assertEquals;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +62,10 @@ public class InboxJobHandlerTest extends BaseTestCase {
 
     private RichPushUser user;
     private PreferenceDataStore dataStore;
+    private RichPushResolver mockResolver;
+    private RichPushResolver.MessageSync mockMessageSync;
+    private MessageBodyPrefetcher mockPrefetcher;
+    private List<Runnable> prefetchRunnables;
 
     @Before
     public void setup() {
@@ -87,9 +102,24 @@ public class InboxJobHandlerTest extends BaseTestCase {
         // Clear any user or password
         user.setUser(null, null);
 
+        mockMessageSync = mock(RichPushResolver.MessageSync.class);
+        mockResolver = mock(RichPushResolver.class);
+        when(mockResolver.newMessageSync()).thenReturn(mockMessageSync);
+
+        mockPrefetcher = mock(MessageBodyPrefetcher.class);
+
+        // Records the prefetches so tests control when they run
+        prefetchRunnables = new ArrayList<>();
+        Executor prefetchExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                prefetchRunnables.add(runnable);
+            }
+        };
+
         jobHandler = new InboxJobHandler(UAirship.shared(),
                 TestApplication.getApplication().preferenceDataStore,
-                requestFactory, mock(RichPushResolver.class));
+                requestFactory, mockResolver, mockPrefetcher, prefetchExecutor);
     }
     
 
@@ -206,6 +236,9 @@ public class InboxJobHandlerTest extends BaseTestCase {
                         .setResponseBody("{ \"messages\": []}")
                         .create());
 
+        InboxChangeSet changeSet = InboxChangeSet.removed(Collections.singleton("some_mesg_id"));
+        when(mockMessageSync.apply()).thenReturn(changeSet);
+
         Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE)
                      .putExtra(InboxJobHandler.EXTRA_RICH_PUSH_RESULT_RECEIVER, resultReceiver)
                      .build();
@@ -227,7 +260,7 @@ public class InboxJobHandlerTest extends BaseTestCase {
         assertEquals(600l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
 
         // Verify we updated the inbox
-        verify(inbox).refresh(true);
+        verify(inbox).refresh(changeSet, true);
     }
 
     /**
@@ -258,6 +291,9 @@ public class InboxJobHandlerTest extends BaseTestCase {
                                 "\"content_type\": \"text/html\", \"content_size\": \"128\"}]}")
                         .create());
 
+        InboxChangeSet changeSet = InboxChangeSet.updated(Collections.singleton("some_mesg_id"));
+        when(mockMessageSync.apply()).thenReturn(changeSet);
+
         Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE)
                      .putExtra(InboxJobHandler.EXTRA_RICH_PUSH_RESULT_RECEIVER, resultReceiver)
                      .build();
@@ -279,8 +315,173 @@ public class InboxJobHandlerTest extends BaseTestCase {
         // Verify LAST_MESSAGE_REFRESH_TIME was updated
         assertEquals(600l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
 
-        // Verify we updated the inbox
+        // Verify the message was streamed into the sync
+        ArgumentCaptor<JsonValue> captor = ArgumentCaptor.forClass(JsonValue.class);
+        verify(mockMessageSync).add(captor.capture());
+        assertEquals("some_mesg_id", captor.getValue().getMap().opt("message_id").getString());
+        assertEquals("Message title", captor.getValue().getMap().opt("title").getString());
+        assertEquals("some_value", captor.getValue().getMap().opt("extra").getMap().opt("some_key").getString());
+
+        // Verify we updated the inbox with the changes
+        verify(inbox).refresh(changeSet, true);
+    }
+
+    /**
+     * Test updateMessages prefetches added message bodies and evicts removed message bodies.
+     */
+    @Test
+    public void testUpdateMessagesPrefetch() {
+        // Set a valid user
+        user.setUser("fakeUserId", "password");
+
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/",
+                new Response.Builder(HttpURLConnection.HTTP_OK)
+                        .setResponseMessage("OK")
+                        .setLastModified(600l)
+                        .setResponseBody("{ \"messages\": [] }")
+                        .create());
+
+        RichPushMessage addedMessage = mock(RichPushMessage.class);
+        when(inbox.getMessage("added")).thenReturn(addedMessage);
+
+        RichPushMessage removedMessage = mock(RichPushMessage.class);
+        when(removedMessage.getMessageBodyUrl()).thenReturn("https://example.com/removed/body/");
+        when(inbox.getMessage("removed")).thenReturn(removedMessage);
+
+        InboxChangeSet changeSet = new InboxChangeSet(Collections.singleton("added"),
+                Collections.<String>emptySet(), Collections.singleton("removed"));
+        when(mockMessageSync.apply()).thenReturn(changeSet);
+
+        Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE)
+                     .putExtra(InboxJobHandler.EXTRA_RICH_PUSH_RESULT_RECEIVER, resultReceiver)
+                     .build();
+
+        assertEquals(Job.JOB_FINISHED, jobHandler.performJob(job));
+
+        verify(inbox).refresh(changeSet, true);
+        verify(mockPrefetcher).evict(Collections.singleton("https://example.com/removed/body/"));
+
+        // The job responds and stores the refresh time without waiting on the prefetch
+        assertEquals(InboxJobHandler.STATUS_RICH_PUSH_UPDATE_SUCCESS, resultReceiver.lastResultCode);
+        assertEquals(600l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
+        verify(mockPrefetcher, never()).prefetch(Mockito.anyCollectionOf(RichPushMessage.class));
+
+        runPrefetches();
+        verify(mockPrefetcher).prefetch(Collections.singletonList(addedMessage));
+    }
+
+    /**
+     * Test updateMessages evicts the cached body of an updated message and prefetches the new body.
+     */
+    @Test
+    public void testUpdateMessagesRefreshesUpdatedBody() {
+        // Set a valid user
+        user.setUser("fakeUserId", "password");
+
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/",
+                new Response.Builder(HttpURLConnection.HTTP_OK)
+                        .setResponseMessage("OK")
+                        .setLastModified(600l)
+                        .setResponseBody("{ \"messages\": [] }")
+                        .create());
+
+        RichPushMessage oldMessage = mock(RichPushMessage.class);
+        when(oldMessage.getMessageBodyUrl()).thenReturn("https://example.com/updated/body/");
+
+        RichPushMessage newMessage = mock(RichPushMessage.class);
+        when(newMessage.getMessageBodyUrl()).thenReturn("https://example.com/updated/body/v2/");
+
+        // The inbox returns the old message before the refresh and the new message after
+        when(inbox.getMessage("updated")).thenReturn(oldMessage, newMessage);
+
+        InboxChangeSet changeSet = InboxChangeSet.updated(Collections.singleton("updated"));
+        when(mockMessageSync.apply()).thenReturn(changeSet);
+
+        Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE).build();
+        assertEquals(Job.JOB_FINISHED, jobHandler.performJob(job));
+
+        runPrefetches();
+
+        // Verify both the old and new body URLs were evicted before prefetching the new body
+        InOrder inOrder = inOrder(mockPrefetcher);
+        inOrder.verify(mockPrefetcher).evict(new HashSet<>(Arrays.asList("https://example.com/updated/body/", "https://example.com/updated/body/v2/")));
+        inOrder.verify(mockPrefetcher).prefetch(Collections.singletonList(newMessage));
+    }
+
+    /**
+     * Test updateMessages returns error code and does not update the refresh time when the
+     * messages fail to be stored.
+     */
+    @Test
+    public void testUpdateMessagesSyncFailed() {
+        // Set a valid user
+        user.setUser("fakeUserId", "password");
+
+        // Set the last refresh time
+        dataStore.put(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 300l);
+
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/",
+                new Response.Builder(HttpURLConnection.HTTP_OK)
+                        .setResponseMessage("OK")
+                        .setLastModified(600l)
+                        .setResponseBody("{ \"messages\": [ {\"message_id\": \"some_mesg_id\"} ] }")
+                        .create());
+
+        // Fail the transaction
+        when(mockMessageSync.apply()).thenReturn(null);
+
+        Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE)
+                     .putExtra(InboxJobHandler.EXTRA_RICH_PUSH_RESULT_RECEIVER, resultReceiver)
+                     .build();
+
+        assertEquals(Job.JOB_FINISHED, jobHandler.performJob(job));
+
+        // Verify result receiver
+        assertEquals("Should return an error code", InboxJobHandler.STATUS_RICH_PUSH_UPDATE_ERROR,
+                resultReceiver.lastResultCode);
+
+        // Verify the inbox was reloaded from the database
         verify(inbox).refresh(true);
+
+        // Verify LAST_MESSAGE_REFRESH_TIME was not updated so the next request fetches the full list
+        assertEquals(300l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
+    }
+
+    /**
+     * Test updateMessages returns error code and does not sync when the response is not valid JSON.
+     */
+    @Test
+    public void testUpdateMessagesInvalidResponse() {
+        // Set a valid user
+        user.setUser("fakeUserId", "password");
+
+        // Set the last refresh time
+        dataStore.put(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 300l);
+
+        // Return a truncated message list
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/",
+                new Response.Builder(HttpURLConnection.HTTP_OK)
+                        .setResponseMessage("OK")
+                        .setLastModified(600l)
+                        .setResponseBody("{ \"messages\": [ {\"message_id\": \"some_mesg_id\"}, {\"message_id\": ")
+                        .create());
+
+        Job job = Job.newBuilder(InboxJobHandler.ACTION_RICH_PUSH_MESSAGES_UPDATE)
+                     .putExtra(InboxJobHandler.EXTRA_RICH_PUSH_RESULT_RECEIVER, resultReceiver)
+                     .build();
+
+        assertEquals(Job.JOB_FINISHED, jobHandler.performJob(job));
+
+        // Verify result receiver
+        assertEquals("Should return an error code", InboxJobHandler.STATUS_RICH_PUSH_UPDATE_ERROR,
+                resultReceiver.lastResultCode);
+
+        // Verify the partial message list was not applied
+        verify(mockMessageSync, never()).apply();
+        verify(inbox, never()).refresh(true);
+
+        // Verify LAST_MESSAGE_REFRESH_TIME was not updated
+        assertEquals(300l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
     }
 
     /**
@@ -356,6 +557,36 @@ public class InboxJobHandlerTest extends BaseTestCase {
         assertEquals(300l, dataStore.getLong(InboxJobHandler.LAST_MESSAGE_REFRESH_TIME, 0));
     }
 
+    /**
+     * Test syncing message state flushes pending changes and does not mark deleted messages read.
+     */
+    @Test
+    public void testSyncMessageState() throws JsonException {
+        // Set a valid user
+        user.setUser("fakeUserId", "password");
+
+        when(mockResolver.getReadUpdatedMessageIds()).thenReturn(new HashSet<>(Arrays.asList("read", "deleted")));
+        when(mockResolver.getDeletedMessageIds()).thenReturn(Collections.singleton("deleted"));
+
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/unread/",
+                new Response.Builder(HttpURLConnection.HTTP_OK).create());
+        responses.put("https://device-api.urbanairship.com/api/user/fakeUserId/messages/delete/",
+                new Response.Builder(HttpURLConnection.HTTP_OK).create());
+
+        Job job = Job.newBuilder(InboxJobHandler.ACTION_SYNC_MESSAGE_STATE).build();
+        assertEquals(Job.JOB_FINISHED, jobHandler.performJob(job));
+
+        verify(inbox).flushMessageStateChanges();
+
+        assertEquals(2, requests.size());
+        JsonList markedRead = JsonValue.parseString(requests.get(0).getRequestBody()).getMap().opt("mark_as_read").getList();
+        assertEquals(1, markedRead.size());
+        assertEquals("https://device-api.urbanairship.com/api/user/fakeUserId/messages/message/read/", markedRead.get(0).getString());
+
+        verify(mockResolver).markMessagesReadOrigin(Collections.singleton("read"));
+        verify(mockResolver).deleteMessages(Collections.singleton("deleted"));
+    }
+
     /**
      * Test create user when PushManager has a amazon channel.
      */
@@ -598,6 +829,17 @@ public class InboxJobHandlerTest extends BaseTestCase {
                 resultReceiver.lastResultCode);
     }
 
+    /**
+     * Runs the recorded prefetches.
+     */
+    private void runPrefetches() {
+        for (Runnable runnable : new ArrayList<>(prefetchRunnables)) {
+            runnable.run();
+        }
+
+        prefetchRunnables.clear();
+    }
+
     class TestResultReceiver extends ResultReceiver {
 
         public Bundle lastResultData;
@@ -0,0 +1,152 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageBodyCacheTest extends BaseTestCase {
+
+    private File directory;
+    private MessageBodyCache cache;
+
+    @Before
+    public void setUp() {
+        directory = new File(RuntimeEnvironment.application.getCacheDir(), "message_body_cache_test");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        cache = new MessageBodyCache(directory, 100);
+    }
+
+    /**
+     * Test caching and reading a body.
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        assertFalse(cache.contains("https://example.com/body"));
+        assertNull(cache.get("https://example.com/body"));
+
+        assertEquals(5, cache.put("https://example.com/body", "text/html; charset=utf-8", body("hello"), 50));
+        assertTrue(cache.contains("https://example.com/body"));
+
+        MessageBodyCache.Entry entry = cache.get("https://example.com/body");
+        assertEquals("text/html", entry.mimeType);
+        assertEquals("utf-8", entry.encoding);
+        assertEquals("hello", read(entry.inputStream));
+    }
+
+    /**
+     * Test bodies larger than the max body size are not cached.
+     */
+    @Test
+    public void testPutTooLarge() throws IOException {
+        try {
+            cache.put("https://example.com/body", "text/html", body("hello"), 4);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+
+        assertFalse(cache.contains("https://example.com/body"));
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Test the least recently used bodies are evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        cache.put("https://example.com/first", "text/html", body(30), 100);
+        cache.put("https://example.com/second", "text/html", body(30), 100);
+
+        // Access the first body so the second is least recently used
+        cache.get("https://example.com/first").inputStream.close();
+
+        cache.put("https://example.com/third", "text/html", body(30), 100);
+
+        assertTrue(cache.contains("https://example.com/first"));
+        assertFalse(cache.contains("https://example.com/second"));
+        assertTrue(cache.contains("https://example.com/third"));
+        assertTrue(cache.getSize() <= 100);
+    }
+
+    /**
+     * Test removing a body.
+     */
+    @Test
+    public void testRemove() throws IOException {
+        cache.put("https://example.com/body", "text/html", body("hello"), 50);
+        cache.remove("https://example.com/body");
+
+        assertFalse(cache.contains("https://example.com/body"));
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Test cached bodies are loaded from disk by a new cache instance.
+     */
+    @Test
+    public void testReload() throws IOException {
+        cache.put("https://example.com/body", "text/plain", body("hello"), 50);
+        long size = cache.getSize();
+
+        MessageBodyCache reloaded = new MessageBodyCache(directory, 100);
+        assertEquals(size, reloaded.getSize());
+
+        MessageBodyCache.Entry entry = reloaded.get("https://example.com/body");
+        assertEquals("text/plain", entry.mimeType);
+        assertNull(entry.encoding);
+        assertEquals("hello", read(entry.inputStream));
+    }
+
+    /**
+     * Test parsing the mime type and encoding from content types.
+     */
+    @Test
+    public void testParseContentType() {
+        assertEquals("text/html", MessageBodyCache.parseMimeType("text/html"));
+        assertEquals("text/html", MessageBodyCache.parseMimeType("text/html ; charset=UTF-8"));
+        assertNull(MessageBodyCache.parseEncoding("text/html"));
+        assertEquals("UTF-8", MessageBodyCache.parseEncoding("text/html; Charset=\"UTF-8\""));
+    }
+
+    private static InputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes());
+    }
+
+    private static InputStream body(int size) {
+        return new ByteArrayInputStream(new byte[size]);
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+
+        inputStream.close();
+        return outputStream.toString();
+    }
+}
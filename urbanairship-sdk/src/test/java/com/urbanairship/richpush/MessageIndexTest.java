@@ -0,0 +1,100 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.json.JsonValue;
+import com.urbanairship.util.DateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MessageIndexTest extends BaseTestCase {
+
+    private MessageIndex index;
+
+    @Before
+    public void setUp() {
+        index = new MessageIndex(new RichPushInbox.SentAtRichPushMessageComparator());
+    }
+
+    /**
+     * Test the snapshot is sorted by descending sent date.
+     */
+    @Test
+    public void testSnapshotSorted() {
+        index.put("old", createMessage("old", 1000));
+        index.put("new", createMessage("new", 3000));
+        index.put("middle", createMessage("middle", 2000));
+
+        List<RichPushMessage> snapshot = index.getSnapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals("new", snapshot.get(0).getMessageId());
+        assertEquals("middle", snapshot.get(1).getMessageId());
+        assertEquals("old", snapshot.get(2).getMessageId());
+    }
+
+    /**
+     * Test the snapshot is reused until the index changes.
+     */
+    @Test
+    public void testSnapshotReused() {
+        index.put("first", createMessage("first", 1000));
+
+        List<RichPushMessage> snapshot = index.getSnapshot();
+        assertSame(snapshot, index.getSnapshot());
+
+        // Removing a missing message does not change the index
+        index.remove("missing");
+        assertSame(snapshot, index.getSnapshot());
+
+        index.put("second", createMessage("second", 2000));
+        assertNotSame(snapshot, index.getSnapshot());
+        assertEquals(1, snapshot.size());
+    }
+
+    /**
+     * Test replacing a message with a new instance.
+     */
+    @Test
+    public void testReplace() {
+        RichPushMessage original = createMessage("message", 1000);
+        RichPushMessage replacement = createMessage("message", 5000);
+
+        index.put("message", original);
+        index.put("other", createMessage("other", 3000));
+
+        assertSame(original, index.put("message", replacement));
+        assertEquals(2, index.size());
+        assertSame(replacement, index.getSnapshot().get(0));
+
+        assertSame(replacement, index.remove("message"));
+        assertNull(index.get("message"));
+        assertEquals(1, index.getSnapshot().size());
+    }
+
+    /**
+     * Test the snapshot can not be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotUnmodifiable() {
+        index.put("first", createMessage("first", 1000));
+        index.getSnapshot().clear();
+    }
+
+    private static RichPushMessage createMessage(String messageId, long sentMS) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(RichPushMessage.MESSAGE_ID_KEY, messageId);
+        payload.put(RichPushMessage.MESSAGE_SENT_KEY, DateUtils.createIso8601TimeStamp(sentMS));
+        return RichPushMessage.create(JsonValue.wrapOpt(payload), true, false);
+    }
+}
@@ -0,0 +1,84 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.support.annotation.NonNull;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.json.JsonValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageListParserTest extends BaseTestCase {
+
+    private List<JsonValue> messages;
+    private MessageListParser.Listener listener;
+
+    @Before
+    public void setUp() {
+        messages = new ArrayList<>();
+        listener = new MessageListParser.Listener() {
+            @Override
+            public void onMessage(@NonNull JsonValue messagePayload) {
+                messages.add(messagePayload);
+            }
+        };
+    }
+
+    /**
+     * Test parsing a message list produces the same payloads as parsing the whole response.
+     */
+    @Test
+    public void testParse() throws Exception {
+        String first = "{\"message_id\":\"first\",\"unread\":true,\"content_size\":128,\"big\":12345678901," +
+                "\"ratio\":1.5,\"extra\":{\"some_key\":\"some_value\"},\"tags\":[\"a\",\"b\"],\"missing\":null}";
+        String second = "{\"message_id\":\"second\",\"unread\":false}";
+        String response = "{\"other\": {\"messages\": []}, \"messages\": [" + first + "," + second + "], \"count\": 2}";
+
+        assertEquals(2, MessageListParser.parse(stream(response), listener));
+        assertEquals(2, messages.size());
+        assertEquals(JsonValue.parseString(first), messages.get(0));
+        assertEquals(JsonValue.parseString(second), messages.get(1));
+        assertEquals(JsonValue.parseString(first).toString(), messages.get(0).toString());
+    }
+
+    /**
+     * Test parsing a response without a message list.
+     */
+    @Test
+    public void testParseNoMessages() throws Exception {
+        assertEquals(-1, MessageListParser.parse(stream("{\"messages\": null}"), listener));
+        assertEquals(-1, MessageListParser.parse(stream("{}"), listener));
+        assertEquals(0, MessageListParser.parse(stream("{\"messages\": []}"), listener));
+        assertEquals(0, messages.size());
+    }
+
+    /**
+     * Test parsing a truncated response throws after delivering the complete messages.
+     */
+    @Test(expected = IOException.class)
+    public void testParseTruncated() throws Exception {
+        MessageListParser.parse(stream("{\"messages\": [{\"message_id\":\"first\"}, {\"message_id\""), listener);
+    }
+
+    /**
+     * Test parsing a response that is not an object throws.
+     */
+    @Test(expected = IOException.class)
+    public void testParseInvalid() throws Exception {
+        MessageListParser.parse(stream("[]"), listener);
+    }
+
+    private static InputStream stream(String value) throws IOException {
+        return new ByteArrayInputStream(value.getBytes("UTF-8"));
+    }
+}
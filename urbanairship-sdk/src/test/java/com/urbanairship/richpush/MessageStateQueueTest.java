@@ -0,0 +1,165 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.PreferenceDataStore;
+import com.urbanairship.TestApplication;
+import com.urbanairship.json.JsonValue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class MessageStateQueueTest extends BaseTestCase {
+
+    private RichPushResolver mockResolver;
+    private MessageStateQueue queue;
+    private ShadowLooper looper;
+    private PreferenceDataStore dataStore;
+    private Executor executor;
+
+    @Before
+    public void setUp() {
+        mockResolver = mock(RichPushResolver.class);
+        when(mockResolver.updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class))).thenReturn(true);
+
+        executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        looper = Shadows.shadowOf(Looper.getMainLooper());
+        looper.pause();
+
+        dataStore = TestApplication.getApplication().preferenceDataStore;
+        queue = new MessageStateQueue(mockResolver, dataStore, executor, new Handler(Looper.getMainLooper()), 100);
+    }
+
+    /**
+     * Test changes made within the window are merged into a single write.
+     */
+    @Test
+    public void testCoalesce() {
+        queue.markRead(new HashSet<>(Arrays.asList("read", "unread", "deleted")));
+        queue.markUnread(Collections.singleton("unread"));
+        queue.markDeleted(Collections.singleton("deleted"));
+
+        // Nothing is written until the window ends
+        verifyZeroInteractions(mockResolver);
+        looper.idle(100);
+
+        ArgumentCaptor<Set> readCaptor = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<Set> unreadCaptor = ArgumentCaptor.forClass(Set.class);
+        ArgumentCaptor<Set> deletedCaptor = ArgumentCaptor.forClass(Set.class);
+        verify(mockResolver, times(1)).updateMessageStates(readCaptor.capture(), unreadCaptor.capture(), deletedCaptor.capture());
+
+        assertEquals(Collections.singleton("read"), readCaptor.getValue());
+        assertEquals(Collections.singleton("unread"), unreadCaptor.getValue());
+        assertEquals(Collections.singleton("deleted"), deletedCaptor.getValue());
+    }
+
+    /**
+     * Test flush writes pending changes immediately and the scheduled write does nothing.
+     */
+    @Test
+    public void testFlush() {
+        queue.markRead(Collections.singleton("read"));
+        queue.flush();
+
+        verify(mockResolver).updateMessageStates(Collections.singleton("read"), Collections.<String>emptySet(), Collections.<String>emptySet());
+
+        looper.idle(100);
+        verify(mockResolver, times(1)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+    }
+
+    /**
+     * Test changes that fail to be written are retried with the next write, and newer changes
+     * to the same messages win.
+     */
+    @Test
+    public void testFlushFailed() {
+        when(mockResolver.updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class))).thenReturn(false);
+
+        queue.markRead(new HashSet<>(Arrays.asList("read", "changed")));
+        queue.markDeleted(Collections.singleton("deleted"));
+        queue.flush();
+
+        // Change a message after the failed write
+        when(mockResolver.updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class))).thenReturn(true);
+        queue.markUnread(Collections.singleton("changed"));
+        queue.flush();
+
+        verify(mockResolver).updateMessageStates(Collections.singleton("read"), Collections.singleton("changed"), Collections.singleton("deleted"));
+    }
+
+    /**
+     * Test a failed write is retried with a backoff.
+     */
+    @Test
+    public void testRetryFailedWrite() {
+        when(mockResolver.updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class))).thenReturn(false, false, true);
+
+        queue.markRead(Collections.singleton("read"));
+        looper.idle(100);
+        verify(mockResolver, times(1)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+
+        // First retry is after twice the window
+        looper.idle(199);
+        verify(mockResolver, times(1)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+        looper.idle(1);
+        verify(mockResolver, times(2)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+
+        // Second retry is after four times the window
+        looper.idle(399);
+        verify(mockResolver, times(2)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+        looper.idle(1);
+        verify(mockResolver, times(3)).updateMessageStates(Collections.singleton("read"), Collections.<String>emptySet(), Collections.<String>emptySet());
+
+        // Nothing is retried after the write succeeds
+        looper.idle(MessageStateQueue.MAX_RETRY_DELAY_MS);
+        verify(mockResolver, times(3)).updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class));
+    }
+
+    /**
+     * Test pending changes are saved until they are written and restored by a new queue.
+     */
+    @Test
+    public void testRestorePendingChanges() {
+        queue.markRead(Collections.singleton("read"));
+        queue.markUnread(Collections.singleton("unread"));
+        queue.markDeleted(Collections.singleton("deleted"));
+
+        // A new process before the changes are written
+        RichPushResolver restoredResolver = mock(RichPushResolver.class);
+        when(restoredResolver.updateMessageStates(anySetOf(String.class), anySetOf(String.class), anySetOf(String.class))).thenReturn(true);
+        MessageStateQueue restoredQueue = new MessageStateQueue(restoredResolver, dataStore, executor, new Handler(Looper.getMainLooper()), 100);
+
+        restoredQueue.flush();
+        verify(restoredResolver).updateMessageStates(Collections.singleton("read"), Collections.singleton("unread"), Collections.singleton("deleted"));
+
+        // Written changes are no longer saved
+        assertEquals(JsonValue.NULL, dataStore.getJsonValue(MessageStateQueue.PENDING_CHANGES_KEY));
+    }
+}
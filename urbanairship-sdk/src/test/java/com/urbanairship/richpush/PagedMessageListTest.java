@@ -0,0 +1,233 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.richpush;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.json.JsonException;
+import com.urbanairship.json.JsonValue;
+import com.urbanairship.util.DateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PagedMessageListTest extends BaseTestCase {
+
+    private static final int PAGE_SIZE = 2;
+    private static final int MESSAGE_COUNT = 11;
+
+    private RichPushInbox mockInbox;
+    private RichPushResolver resolver;
+    private PagedMessageList pagedMessages;
+    private TestListener listener;
+
+    @Before
+    public void setUp() {
+        resolver = spy(new RichPushResolver(RuntimeEnvironment.application));
+
+        // Each message is sent a minute before the previous one
+        long sent = System.currentTimeMillis();
+        RichPushResolver.MessageSync sync = resolver.newMessageSync();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            sync.add(createPayload("message_" + i, sent - i * 60000, null));
+        }
+
+        sync.add(createPayload("expired", sent, 0L));
+        assertNotNull(sync.apply());
+
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        mockInbox = mock(RichPushInbox.class);
+        listener = new TestListener();
+
+        pagedMessages = new PagedMessageList(mockInbox, resolver, executor, PAGE_SIZE);
+        pagedMessages.setListener(listener);
+    }
+
+    /**
+     * Test reloading loads the sorted messages and writes any pending state changes first.
+     */
+    @Test
+    public void testReload() {
+        assertEquals(0, pagedMessages.getCount());
+
+        pagedMessages.reload();
+
+        verify(mockInbox).flushMessageStateChanges();
+        assertEquals(1, listener.changedCount);
+        assertEquals(MESSAGE_COUNT, pagedMessages.getCount());
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals("message_" + i, pagedMessages.getMessage(i).getMessageId());
+        }
+
+        assertNull(pagedMessages.getMessage(MESSAGE_COUNT));
+        assertEquals(-1, pagedMessages.getKey(MESSAGE_COUNT));
+    }
+
+    /**
+     * Test only the accessed page and the pages around it are loaded.
+     */
+    @Test
+    public void testPages() {
+        pagedMessages.reload();
+        assertTrue(pagedMessages.getLoadedPages().isEmpty());
+        assertNull(pagedMessages.peekMessage(0));
+
+        // Position 2 is on page 1, so pages 0 and 2 are prefetched
+        assertEquals("message_2", pagedMessages.getMessage(2).getMessageId());
+        assertEquals(3, pagedMessages.getLoadedPages().size());
+        assertEquals("message_4", pagedMessages.peekMessage(4).getMessageId());
+        assertNull(pagedMessages.peekMessage(6));
+
+        // Position 10 is on page 5, so page 4 is prefetched and page 0 is the least recently used
+        assertEquals("message_10", pagedMessages.getMessage(10).getMessageId());
+        assertEquals(PagedMessageList.MAX_LOADED_PAGES, pagedMessages.getLoadedPages().size());
+        assertTrue(pagedMessages.getLoadedPages().containsAll(Arrays.asList(1, 2, 4, 5)));
+        assertNull(pagedMessages.peekMessage(0));
+    }
+
+    /**
+     * Test a reload without changes to the list or its loaded pages does not notify or reload
+     * the pages.
+     */
+    @Test
+    public void testReloadUnchanged() {
+        pagedMessages.reload();
+        pagedMessages.getMessage(0);
+        verify(resolver, times(2)).getMessages(any(long[].class));
+
+        // Message 9 is not loaded
+        pagedMessages.reload(InboxChangeSet.updated(Collections.singleton("message_9")));
+        assertEquals(1, listener.changedCount);
+        verify(resolver, times(2)).getMessages(any(long[].class));
+
+        // Every loaded page is reloaded and compared
+        pagedMessages.reload();
+        assertEquals(1, listener.changedCount);
+        verify(resolver, times(4)).getMessages(any(long[].class));
+    }
+
+    /**
+     * Test a reload after a loaded message changed reloads its page and notifies.
+     */
+    @Test
+    public void testReloadUpdatedMessage() {
+        pagedMessages.reload();
+        assertFalse(pagedMessages.getMessage(0).isRead());
+
+        resolver.markMessagesRead(Collections.singleton("message_0"));
+        pagedMessages.reload(InboxChangeSet.updated(Collections.singleton("message_0")));
+
+        assertEquals(2, listener.changedCount);
+        assertTrue(pagedMessages.peekMessage(0).isRead());
+    }
+
+    /**
+     * Test a reload after a message is deleted removes it from the list.
+     */
+    @Test
+    public void testReloadRemovedMessage() {
+        pagedMessages.reload();
+        long key = pagedMessages.getKey(2);
+
+        resolver.markMessagesDeleted(Collections.singleton("message_1"));
+        pagedMessages.reload(InboxChangeSet.removed(Collections.singleton("message_1")));
+
+        assertEquals(2, listener.changedCount);
+        assertEquals(MESSAGE_COUNT - 1, pagedMessages.getCount());
+        assertEquals("message_2", pagedMessages.getMessage(1).getMessageId());
+
+        // Keys stay with their message
+        assertEquals(key, pagedMessages.getKey(1));
+        assertNotEquals(key, pagedMessages.getKey(2));
+    }
+
+    /**
+     * Test expired messages are not in the list.
+     */
+    @Test
+    public void testExpiredMessages() {
+        pagedMessages.reload();
+
+        for (int i = 0; i < pagedMessages.getCount(); i++) {
+            assertNotEquals("expired", pagedMessages.getMessage(i).getMessageId());
+        }
+    }
+
+    /**
+     * Test the predicate filters the list.
+     */
+    @Test
+    public void testPredicate() {
+        pagedMessages.setPredicate(new RichPushInbox.Predicate() {
+            @Override
+            public boolean apply(RichPushMessage message) {
+                return message.getMessageId().equals("message_1") || message.getMessageId().equals("message_5");
+            }
+        });
+
+        pagedMessages.reload();
+
+        assertEquals(2, pagedMessages.getCount());
+        assertEquals("message_1", pagedMessages.getMessage(0).getMessageId());
+        assertEquals("message_5", pagedMessages.getMessage(1).getMessageId());
+    }
+
+    private static JsonValue createPayload(String messageId, long sent, Long expiry) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(RichPushMessage.MESSAGE_ID_KEY, messageId);
+        payload.put(RichPushMessage.MESSAGE_BODY_URL_KEY, "https://go.urbanairship.com/api/user/tests/messages/" + messageId + "/body/");
+        payload.put(RichPushMessage.MESSAGE_READ_URL_KEY, "https://go.urbanairship.com/api/user/tests/messages/" + messageId + "/read/");
+        payload.put(RichPushMessage.MESSAGE_URL_KEY, "https://go.urbanairship.com/api/user/tests/messages/" + messageId);
+        payload.put(RichPushMessage.TITLE_KEY, messageId + " title");
+        payload.put(RichPushMessage.UNREAD_KEY, true);
+        payload.put(RichPushMessage.MESSAGE_SENT_KEY, DateUtils.createIso8601TimeStamp(sent));
+
+        if (expiry != null) {
+            payload.put(RichPushMessage.MESSAGE_EXPIRY_KEY, DateUtils.createIso8601TimeStamp(expiry));
+        }
+
+        try {
+            return JsonValue.wrap(payload);
+        } catch (JsonException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Listener that counts the changes.
+     */
+    private static class TestListener implements PagedMessageList.Listener {
+
+        int changedCount;
+
+        @Override
+        public void onMessagesChanged() {
+            changedCount++;
+        }
+    }
+}
@@ -17,10 +17,13 @@ import junit.framework.Assert;
 import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +32,10 @@ import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -442,4 +449,100 @@ public class RichPushInboxTest extends BaseTestCase {
 
         return messageMap;
     }
+
+    /**
+     * Test refreshing with a change set only reloads the changed messages and notifies listeners
+     * with the inbox changes.
+     */
+    @Test
+    public void testRefreshChangeSet() {
+        RichPushResolver resolver = new RichPushResolver(RuntimeEnvironment.application);
+        RichPushTestUtils.insertMessage("new_message_id");
+        resolver.deleteMessages(Collections.singleton("1_message_id"));
+
+        RichPushMessage unchanged = inbox.getMessage("3_message_id");
+        RichPushMessage updated = inbox.getMessage("2_message_id");
+
+        RichPushInbox.ChangeSetListener listener = mock(RichPushInbox.ChangeSetListener.class);
+        inbox.addListener(listener);
+
+        inbox.refresh(new InboxChangeSet(Collections.singleton("new_message_id"), Collections.singleton("2_message_id"),
+                Collections.singleton("1_message_id")), true);
+
+        assertEquals(10, inbox.getCount());
+        assertNull(inbox.getMessage("1_message_id"));
+        assertNotNull(inbox.getMessage("new_message_id"));
+        assertSame(unchanged, inbox.getMessage("3_message_id"));
+        assertNotSame(updated, inbox.getMessage("2_message_id"));
+
+        ArgumentCaptor<InboxChangeSet> captor = ArgumentCaptor.forClass(InboxChangeSet.class);
+        verify(listener).onInboxChanged(captor.capture());
+        verify(listener).onInboxUpdated();
+
+        assertEquals(Collections.singleton("new_message_id"), captor.getValue().getAddedMessageIds());
+        assertEquals(Collections.singleton("2_message_id"), captor.getValue().getUpdatedMessageIds());
+        assertEquals(Collections.singleton("1_message_id"), captor.getValue().getRemovedMessageIds());
+    }
+
+    /**
+     * Test marking messages read notifies listeners with only the messages that changed.
+     */
+    @Test
+    public void testMarkMessagesReadChangeSet() {
+        inbox.markMessagesRead(new HashSet<>(Collections.singletonList("1_message_id")));
+
+        RichPushInbox.ChangeSetListener listener = mock(RichPushInbox.ChangeSetListener.class);
+        inbox.addListener(listener);
+
+        inbox.markMessagesRead(new HashSet<>(Arrays.asList("1_message_id", "2_message_id")));
+
+        ArgumentCaptor<InboxChangeSet> captor = ArgumentCaptor.forClass(InboxChangeSet.class);
+        verify(listener).onInboxChanged(captor.capture());
+        verify(listener).onInboxUpdated();
+
+        assertEquals(Collections.singleton("2_message_id"), captor.getValue().getUpdatedMessageIds());
+        assertTrue(captor.getValue().getAddedMessageIds().isEmpty());
+        assertTrue(captor.getValue().getRemovedMessageIds().isEmpty());
+    }
+
+    /**
+     * Test the message snapshots are sorted and reused until the inbox changes.
+     */
+    @Test
+    public void testMessageSnapshots() {
+        RichPushInbox.SentAtRichPushMessageComparator comparator = new RichPushInbox.SentAtRichPushMessageComparator();
+
+        List<RichPushMessage> messages = inbox.getMessagesSnapshot();
+        assertSame(messages, inbox.getMessagesSnapshot());
+
+        for (int i = 1; i < messages.size(); i++) {
+            assertTrue(comparator.compare(messages.get(i - 1), messages.get(i)) < 0);
+        }
+
+        inbox.markMessagesRead(new HashSet<>(Collections.singletonList("1_message_id")));
+
+        List<RichPushMessage> updated = inbox.getMessagesSnapshot();
+        assertNotSame(messages, updated);
+        assertEquals(messages, updated);
+        assertEquals(1, inbox.getReadMessages().size());
+    }
+
+    /**
+     * Test the returned message lists can be modified without changing the inbox.
+     */
+    @Test
+    public void testMessagesModifiable() {
+        List<RichPushMessage> messages = inbox.getMessages();
+        assertEquals(inbox.getMessagesSnapshot(), messages);
+
+        Collections.reverse(messages);
+        messages.remove(0);
+        assertEquals(inbox.getCount() - 1, messages.size());
+        assertEquals(inbox.getCount(), inbox.getMessages().size());
+
+        inbox.getUnreadMessages().clear();
+        inbox.getReadMessages().clear();
+        assertEquals(inbox.getCount(), inbox.getUnreadCount() + inbox.getReadCount());
+        assertEquals(inbox.getCount(), inbox.getMessages().size());
+    }
 }
@@ -3,15 +3,25 @@
 package com.urbanairship.richpush;
 
 import com.urbanairship.BaseTestCase;
+import com.urbanairship.json.JsonMap;
+import com.urbanairship.json.JsonValue;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
 
@@ -131,6 +141,23 @@ public class RichPushResolverTest extends BaseTestCase {
         assertEquals(10, resolver.getMessages().size());
     }
 
+    /**
+     * Test applying read, unread, and deleted state changes together.
+     */
+    @Test
+    public void testUpdateMessageStates() {
+        resolver.markMessagesRead(Collections.singleton("2_message_id"));
+
+        assertTrue(resolver.updateMessageStates(new HashSet<>(Arrays.asList("1_message_id", "3_message_id")),
+                Collections.singleton("2_message_id"), Collections.singleton("4_message_id")));
+
+        for (RichPushMessage message : resolver.getMessages()) {
+            String id = message.getMessageId();
+            assertEquals(id.equals("1_message_id") || id.equals("3_message_id"), message.isRead());
+            assertEquals(id.equals("4_message_id"), message.isDeleted());
+        }
+    }
+
     /**
      * Test deleting messages.
      */
@@ -186,4 +213,129 @@ public class RichPushResolverTest extends BaseTestCase {
         assertEquals(10, resolver.getMessages().size());
     }
 
+    /**
+     * Test getting messages by ID.
+     */
+    @Test
+    public void testGetMessagesByIds() {
+        Set<String> keys = new HashSet<>(Arrays.asList("1_message_id", "6_message_id", "missing_message_id"));
+
+        List<RichPushMessage> messages = resolver.getMessages(keys);
+        assertEquals(2, messages.size());
+
+        for (RichPushMessage message : messages) {
+            assertTrue(keys.contains(message.getMessageId()));
+        }
+    }
+
+    /**
+     * Test syncing messages inserts new messages, updates changed messages, and deletes messages
+     * that are no longer on the server.
+     */
+    @Test
+    public void testSyncMessages() {
+        List<JsonValue> serverMessages = new ArrayList<>();
+        for (RichPushMessage message : resolver.getMessages()) {
+            String messageId = message.getMessageId();
+            if (messageId.equals("1_message_id") || messageId.equals("2_message_id")) {
+                serverMessages.add(message.getRawMessageJson());
+            } else if (messageId.equals("3_message_id")) {
+                Map<String, JsonValue> payload = new HashMap<>(message.getRawMessageJson().getMap().getMap());
+                payload.put(RichPushMessage.TITLE_KEY, JsonValue.wrap("updated title"));
+                serverMessages.add(new JsonMap(payload).toJsonValue());
+            }
+        }
+
+        Map<String, Object> newPayload = new HashMap<>();
+        newPayload.put(RichPushMessage.MESSAGE_ID_KEY, "new_message_id");
+        newPayload.put(RichPushMessage.TITLE_KEY, "new title");
+        newPayload.put(RichPushMessage.UNREAD_KEY, false);
+        serverMessages.add(JsonValue.wrapOpt(newPayload));
+
+        InboxChangeSet changeSet = sync(serverMessages);
+        assertNotNull(changeSet);
+        assertEquals(Collections.singleton("new_message_id"), changeSet.getAddedMessageIds());
+        assertEquals(Collections.singleton("3_message_id"), changeSet.getUpdatedMessageIds());
+        assertEquals(7, changeSet.getRemovedMessageIds().size());
+
+        assertEquals(new HashSet<>(Arrays.asList("1_message_id", "2_message_id", "3_message_id", "new_message_id")), resolver.getMessageIds());
+
+        for (RichPushMessage message : resolver.getMessages()) {
+            if (message.getMessageId().equals("3_message_id")) {
+                assertEquals("updated title", message.getTitle());
+            } else if (message.getMessageId().equals("new_message_id")) {
+                assertEquals("new title", message.getTitle());
+                assertTrue(message.isRead());
+            } else {
+                assertEquals(message.getMessageId() + " title", message.getTitle());
+            }
+        }
+    }
+
+    /**
+     * Test syncing the same messages again does not change the database.
+     */
+    @Test
+    public void testSyncUnchangedMessages() {
+        List<JsonValue> serverMessages = new ArrayList<>();
+        for (RichPushMessage message : resolver.getMessages()) {
+            serverMessages.add(message.getRawMessageJson());
+        }
+
+        Set<String> keys = new HashSet<>(Arrays.asList("1_message_id", "2_message_id"));
+        resolver.markMessagesRead(keys);
+
+        InboxChangeSet changeSet = sync(serverMessages);
+        assertNotNull(changeSet);
+        assertTrue(changeSet.isEmpty());
+
+        assertEquals(10, resolver.getMessages().size());
+        assertEquals(keys, resolver.getReadUpdatedMessageIds());
+    }
+
+    /**
+     * Test a message ID repeated in the server's message list is only synced once.
+     */
+    @Test
+    public void testSyncDuplicateMessages() {
+        List<JsonValue> serverMessages = new ArrayList<>();
+        for (RichPushMessage message : resolver.getMessages()) {
+            serverMessages.add(message.getRawMessageJson());
+
+            // Repeat an existing message with a changed payload
+            if (message.getMessageId().equals("1_message_id")) {
+                Map<String, JsonValue> payload = new HashMap<>(message.getRawMessageJson().getMap().getMap());
+                payload.put(RichPushMessage.TITLE_KEY, JsonValue.wrap("updated title"));
+                serverMessages.add(new JsonMap(payload).toJsonValue());
+            }
+        }
+
+        Map<String, Object> newPayload = new HashMap<>();
+        newPayload.put(RichPushMessage.MESSAGE_ID_KEY, "new_message_id");
+        newPayload.put(RichPushMessage.TITLE_KEY, "new title");
+        serverMessages.add(JsonValue.wrapOpt(newPayload));
+        serverMessages.add(JsonValue.wrapOpt(newPayload));
+
+        InboxChangeSet changeSet = sync(serverMessages);
+        assertNotNull(changeSet);
+        assertEquals(Collections.singleton("new_message_id"), changeSet.getAddedMessageIds());
+        assertTrue(changeSet.getUpdatedMessageIds().isEmpty());
+        assertTrue(changeSet.getRemovedMessageIds().isEmpty());
+        assertEquals(11, resolver.getMessageIds().size());
+    }
+
+    /**
+     * Syncs the database with the server messages.
+     *
+     * @param serverMessages The raw message payloads from the server.
+     * @return The change set, or {@code null} if the sync failed.
+     */
+    private InboxChangeSet sync(List<JsonValue> serverMessages) {
+        RichPushResolver.MessageSync sync = resolver.newMessageSync();
+        for (JsonValue message : serverMessages) {
+            sync.add(message);
+        }
+
+        return sync.apply();
+    }
 }
@@ -9,7 +9,6 @@ import com.urbanairship.util.DateUtils;
 
 import junit.framework.Assert;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,7 +49,15 @@ public class RichPushTestUtils {
 
         try {
             RichPushResolver resolver = new RichPushResolver(TestApplication.getApplication());
-            resolver.insertMessages(Arrays.asList(JsonValue.wrap(payload)));
+
+            // Sync the stored messages along with the new message so none are removed
+            RichPushResolver.MessageSync sync = resolver.newMessageSync();
+            for (RichPushMessage message : resolver.getMessages()) {
+                sync.add(message.getRawMessageJson());
+            }
+
+            sync.add(JsonValue.wrap(payload));
+            Assert.assertNotNull(sync.apply());
         } catch (JsonException e) {
             Assert.fail(e.getMessage());
         }
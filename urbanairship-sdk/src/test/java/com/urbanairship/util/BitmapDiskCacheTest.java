@@ -0,0 +1,140 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.graphics.Bitmap;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapDiskCacheTest extends BaseTestCase {
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(RuntimeEnvironment.application.getCacheDir(), "bitmap_disk_cache_test");
+        deleteFiles(directory);
+    }
+
+    /**
+     * Test caching and reading a bitmap.
+     */
+    @Test
+    public void testPutGet() {
+        BitmapDiskCache cache = new BitmapDiskCache(directory, 1024 * 1024);
+
+        assertFalse(cache.contains("https://example.com/image.png"));
+        assertNull(cache.get("https://example.com/image.png"));
+
+        cache.put("https://example.com/image.png", createBitmap());
+
+        assertTrue(cache.contains("https://example.com/image.png"));
+        assertNotNull(cache.get("https://example.com/image.png"));
+
+        // The key is hashed into the file name
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        assertFalse(files[0].getName().contains("example"));
+
+        // Entries are loaded from disk by a new cache
+        assertTrue(new BitmapDiskCache(directory, 1024 * 1024).contains("https://example.com/image.png"));
+    }
+
+    /**
+     * Test the least recently used bitmaps are evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        long entrySize = measureEntrySize();
+
+        // Room for two entries
+        BitmapDiskCache cache = new BitmapDiskCache(directory, entrySize * 2 + entrySize / 2);
+        cache.put("first", createBitmap());
+        cache.put("second", createBitmap());
+
+        // Use the first so the second is the least recently used
+        assertNotNull(cache.get("first"));
+
+        cache.put("third", createBitmap());
+
+        assertTrue(cache.contains("first"));
+        assertFalse(cache.contains("second"));
+        assertTrue(cache.contains("third"));
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    /**
+     * Test a missing entry file is a cache miss and the entry is dropped.
+     */
+    @Test
+    public void testMissingEntry() {
+        BitmapDiskCache cache = new BitmapDiskCache(directory, 1024 * 1024);
+        cache.put("https://example.com/image.png", createBitmap());
+
+        deleteFiles(directory);
+
+        assertNull(cache.get("https://example.com/image.png"));
+        assertFalse(cache.contains("https://example.com/image.png"));
+    }
+
+    /**
+     * Test an entry that can not be read is a cache miss and the entry is dropped.
+     */
+    @Test
+    public void testCorruptEntry() {
+        BitmapDiskCache cache = new BitmapDiskCache(directory, 1024 * 1024);
+        cache.put("https://example.com/image.png", createBitmap());
+
+        // Replace the entry file with a directory so it can not be read
+        File file = directory.listFiles()[0];
+        assertTrue(file.delete());
+        assertTrue(file.mkdir());
+
+        assertNull(cache.get("https://example.com/image.png"));
+        assertFalse(cache.contains("https://example.com/image.png"));
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Measures the size of a cached bitmap in a separate directory.
+     *
+     * @return The entry size in bytes.
+     */
+    private long measureEntrySize() {
+        File measureDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "bitmap_disk_cache_test_measure");
+        deleteFiles(measureDirectory);
+
+        new BitmapDiskCache(measureDirectory, 1024 * 1024).put("measure", createBitmap());
+        long size = measureDirectory.listFiles()[0].length();
+        deleteFiles(measureDirectory);
+
+        assertTrue(size > 0);
+        return size;
+    }
+
+    private static Bitmap createBitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    private static void deleteFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.graphics.Bitmap;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BitmapPoolTest extends BaseTestCase {
+
+    private BitmapPool pool;
+
+    @Before
+    public void setUp() {
+        // 10x10 ARGB_8888 bitmaps are 400 bytes
+        pool = new BitmapPool(1000, true);
+    }
+
+    /**
+     * Test getting a bitmap returns the smallest bitmap large enough.
+     */
+    @Test
+    public void testGet() {
+        Bitmap small = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap large = Bitmap.createBitmap(10, 15, Bitmap.Config.ARGB_8888);
+        pool.put(large);
+        pool.put(small);
+
+        assertSame(small, pool.get(300));
+        assertSame(large, pool.get(300));
+        assertNull(pool.get(300));
+        assertEquals(0, pool.getSize());
+    }
+
+    /**
+     * Test bitmaps much larger than required are not reused.
+     */
+    @Test
+    public void testGetTooLarge() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        assertNull(pool.get(100));
+        assertNull(pool.get(500));
+        assertSame(bitmap, pool.get(400));
+    }
+
+    /**
+     * Test the least recently added bitmaps are dropped when the pool is full.
+     */
+    @Test
+    public void testTrim() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+
+        assertEquals(800, pool.getSize());
+        assertSame(third, pool.get(400));
+        assertSame(second, pool.get(400));
+        assertNull(pool.get(400));
+    }
+
+    /**
+     * Test a disabled pool never returns bitmaps.
+     */
+    @Test
+    public void testDisabled() {
+        pool = new BitmapPool(1000, false);
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        assertNull(pool.get(400));
+        assertEquals(0, pool.getSize());
+    }
+}
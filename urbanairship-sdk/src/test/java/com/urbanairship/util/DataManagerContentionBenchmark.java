@@ -0,0 +1,200 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.urbanairship.BaseTestCase;
+import com.urbanairship.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Database contention benchmarks. The benchmarks measure the latency of queries on one thread
+ * while other threads insert and delete rows in batches, like analytics events being added and
+ * uploaded, with and without write-ahead logging.
+ * <p/>
+ * The benchmarks are skipped unless run with {@code -Pbenchmark}, see {@link BenchmarkRule}.
+ * Robolectric runs every SQLite call on a single thread, so on the JVM the results show the
+ * overhead of write-ahead logging rather than the concurrency it allows on a device.
+ */
+public class DataManagerContentionBenchmark extends BaseTestCase {
+
+    private static final int WRITER_COUNT = 2;
+    private static final int WRITE_BATCH_SIZE = 50;
+    private static final int MAX_ROW_COUNT = 2000;
+    private static final int WARM_UP_READ_COUNT = 100;
+    private static final int READ_COUNT = 1000;
+
+    private final List<BenchmarkDataManager> dataManagers = new ArrayList<>();
+
+    @Rule
+    public final BenchmarkRule benchmark = new BenchmarkRule();
+
+    @After
+    public void takeDown() {
+        for (BenchmarkDataManager dataManager : dataManagers) {
+            dataManager.delete(BenchmarkDataManager.TABLE_NAME, null, null);
+            dataManager.close();
+        }
+    }
+
+    /**
+     * Measures the read latency with rollback journaling and with write-ahead logging, with and
+     * without active writers.
+     */
+    @Test
+    public void testReadLatency() throws Exception {
+        for (boolean enableWriteAheadLogging : new boolean[] { false, true }) {
+            BenchmarkDataManager dataManager = new BenchmarkDataManager(enableWriteAheadLogging);
+            dataManagers.add(dataManager);
+            fillRows(dataManager, MAX_ROW_COUNT / 2);
+
+            List<Long> idle = measureReads(dataManager, 0, new AtomicInteger());
+            AtomicInteger writes = new AtomicInteger();
+            List<Long> contended = measureReads(dataManager, WRITER_COUNT, writes);
+
+            benchmark.report("wal: %b, idle p50: %.3f ms, idle p99: %.3f ms, contended p50: %.3f ms, contended p99: %.3f ms, contended max: %.3f ms, write batches: %d",
+                    dataManager.isWriteAheadLoggingEnabled(),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(idle, 0.50)),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(idle, 0.99)),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(contended, 0.50)),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(contended, 0.99)),
+                    BenchmarkRule.millis(BenchmarkRule.percentile(contended, 1)),
+                    writes.get());
+        }
+    }
+
+    /**
+     * Measures query latencies while writer threads insert and delete rows.
+     *
+     * @param dataManager The data manager.
+     * @param writerCount The number of writer threads.
+     * @param writes Counts the write batches.
+     * @return The sorted latencies in nanoseconds.
+     */
+    private List<Long> measureReads(final BenchmarkDataManager dataManager, int writerCount, final AtomicInteger writes) throws InterruptedException {
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        final CountDownLatch writersStarted = new CountDownLatch(writerCount);
+        final CountDownLatch writersFinished = new CountDownLatch(writerCount);
+
+        for (int i = 0; i < writerCount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writersStarted.countDown();
+                    while (isRunning.get()) {
+                        writeBatch(dataManager);
+                        writes.incrementAndGet();
+                    }
+
+                    writersFinished.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(writersStarted.await(1, TimeUnit.MINUTES));
+
+        List<Long> latencies = new ArrayList<>();
+        try {
+            for (int i = 0; i < WARM_UP_READ_COUNT + READ_COUNT; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = dataManager.query(BenchmarkDataManager.TABLE_NAME, null, null, null, BenchmarkDataManager.COLUMN_NAME_KEY + " DESC", "20");
+                assertNotNull(cursor);
+                while (cursor.moveToNext()) {
+                    cursor.getString(1);
+                }
+
+                cursor.close();
+                long elapsed = System.nanoTime() - start;
+
+                if (i >= WARM_UP_READ_COUNT) {
+                    latencies.add(elapsed);
+                }
+            }
+        } finally {
+            isRunning.set(false);
+        }
+
+        assertTrue(writersFinished.await(1, TimeUnit.MINUTES));
+
+        Collections.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Inserts a batch of rows and deletes the oldest rows over the max row count.
+     *
+     * @param dataManager The data manager.
+     */
+    private static void writeBatch(BenchmarkDataManager dataManager) {
+        fillRows(dataManager, WRITE_BATCH_SIZE);
+        dataManager.delete(BenchmarkDataManager.TABLE_NAME, BenchmarkDataManager.COLUMN_NAME_KEY + " <= (SELECT MAX("
+                + BenchmarkDataManager.COLUMN_NAME_KEY + ") FROM " + BenchmarkDataManager.TABLE_NAME + ") - ?", new String[] { String.valueOf(MAX_ROW_COUNT) });
+    }
+
+    /**
+     * Inserts rows in a single transaction.
+     *
+     * @param dataManager The data manager.
+     * @param count The number of rows.
+     */
+    private static void fillRows(BenchmarkDataManager dataManager, int count) {
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new ContentValues();
+            values[i].put(BenchmarkDataManager.COLUMN_NAME_VALUE, "{\"event\":\"benchmark\",\"index\":" + i + "}");
+        }
+
+        dataManager.bulkInsert(BenchmarkDataManager.TABLE_NAME, values);
+    }
+
+    /**
+     * Data manager with a single table of text rows.
+     */
+    private static class BenchmarkDataManager extends DataManager {
+
+        static final String TABLE_NAME = "rows";
+        static final String COLUMN_NAME_KEY = "_id";
+        static final String COLUMN_NAME_VALUE = "value";
+
+        BenchmarkDataManager(boolean enableWriteAheadLogging) {
+            super(RuntimeEnvironment.application, "benchmark", enableWriteAheadLogging ? "contention_wal.db" : "contention.db", 1, enableWriteAheadLogging);
+        }
+
+        @Override
+        protected void onCreate(@NonNull SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + COLUMN_NAME_KEY + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_NAME_VALUE + " TEXT);");
+        }
+
+        @Override
+        protected void bindValuesToSqliteStatement(@NonNull String table, @NonNull SQLiteStatement statement, @NonNull ContentValues values) {
+            bind(statement, 1, values.getAsString(COLUMN_NAME_VALUE));
+        }
+
+        @Override
+        protected SQLiteStatement getInsertStatement(@NonNull String table, @NonNull SQLiteDatabase db) {
+            return db.compileStatement(buildInsertStatement(TABLE_NAME, COLUMN_NAME_VALUE));
+        }
+    }
+}
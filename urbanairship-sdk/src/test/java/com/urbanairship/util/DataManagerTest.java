@@ -0,0 +1,137 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.After;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataManagerTest extends BaseTestCase {
+
+    private static final String APP_KEY = "data_manager_test";
+
+    private TestDataManager dataManager;
+
+    @After
+    public void takeDown() {
+        if (dataManager != null) {
+            dataManager.close();
+            RuntimeEnvironment.application.deleteDatabase(dataManager.databaseName);
+        }
+    }
+
+    /**
+     * Test a data manager with write-ahead logging enabled uses WAL mode and checkpoints the log
+     * into the database.
+     */
+    @Test
+    public void testCheckpoint() {
+        dataManager = new TestDataManager("wal.db", true);
+        assertTrue(dataManager.isWriteAheadLoggingEnabled());
+        assertEquals("wal", getJournalMode());
+
+        insertRows(100);
+
+        // The rows are only in the write-ahead log until the log is checkpointed
+        File databaseFile = RuntimeEnvironment.application.getDatabasePath(dataManager.databaseName);
+        long length = databaseFile.length();
+
+        dataManager.writableDatabaseCount = 0;
+        dataManager.checkpoint();
+
+        assertEquals(1, dataManager.writableDatabaseCount);
+        assertTrue(databaseFile.length() > length);
+    }
+
+    /**
+     * Test checkpoint does nothing when write-ahead logging is disabled.
+     */
+    @Test
+    public void testCheckpointDisabled() {
+        dataManager = new TestDataManager("no_wal.db", false);
+        assertFalse(dataManager.isWriteAheadLoggingEnabled());
+        assertFalse("wal".equalsIgnoreCase(getJournalMode()));
+
+        insertRows(10);
+
+        dataManager.writableDatabaseCount = 0;
+        dataManager.checkpoint();
+
+        assertEquals(0, dataManager.writableDatabaseCount);
+    }
+
+    private String getJournalMode() {
+        Cursor cursor = dataManager.rawQuery("PRAGMA journal_mode", null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0).toLowerCase();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void insertRows(int count) {
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(TestDataManager.COLUMN_NAME_VALUE, "{\"event\":\"test\",\"index\":" + i + ",\"padding\":\"0123456789012345678901234567890123456789\"}");
+            assertTrue(dataManager.insert(TestDataManager.TABLE_NAME, values) != -1);
+        }
+    }
+
+    /**
+     * Data manager with a single table of text rows that counts the writable database requests.
+     */
+    private static class TestDataManager extends DataManager {
+
+        static final String TABLE_NAME = "rows";
+        static final String COLUMN_NAME_KEY = "_id";
+        static final String COLUMN_NAME_VALUE = "value";
+
+        final String databaseName;
+        int writableDatabaseCount;
+
+        TestDataManager(String name, boolean enableWriteAheadLogging) {
+            super(RuntimeEnvironment.application, APP_KEY, name, 1, enableWriteAheadLogging);
+            this.databaseName = APP_KEY + "_" + name;
+        }
+
+        @Override
+        protected SQLiteDatabase getWritableDatabase() {
+            writableDatabaseCount++;
+            return super.getWritableDatabase();
+        }
+
+        @Override
+        protected void onCreate(@NonNull SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + COLUMN_NAME_KEY + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_NAME_VALUE + " TEXT);");
+        }
+
+        @Override
+        protected void bindValuesToSqliteStatement(@NonNull String table, @NonNull SQLiteStatement statement, @NonNull ContentValues values) {
+            bind(statement, 1, values.getAsString(COLUMN_NAME_VALUE));
+        }
+
+        @Override
+        protected SQLiteStatement getInsertStatement(@NonNull String table, @NonNull SQLiteDatabase db) {
+            return db.compileStatement(buildInsertStatement(TABLE_NAME, COLUMN_NAME_VALUE));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* Copyright 2016 Urban Airship and Contributors */
+
+package com.urbanairship.util;
+
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ServiceInfo;
+
+import com.urbanairship.BaseTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ManifestUtilsTest extends BaseTestCase {
+
+    private static final String PACKAGE_NAME = "com.urbanairship.test";
+
+    private Context mockContext;
+    private PackageManager mockPackageManager;
+    private PackageInfo packageInfo;
+
+    @Before
+    public void setUp() throws PackageManager.NameNotFoundException {
+        mockContext = mock(Context.class);
+        mockPackageManager = mock(PackageManager.class);
+
+        packageInfo = new PackageInfo();
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.processName = PACKAGE_NAME;
+
+        when(mockContext.getPackageName()).thenReturn(PACKAGE_NAME);
+        when(mockContext.getPackageManager()).thenReturn(mockPackageManager);
+        when(mockPackageManager.getPackageInfo(eq(PACKAGE_NAME), anyInt())).thenReturn(packageInfo);
+    }
+
+    /**
+     * Test an app whose components all run in the application's process is single process.
+     */
+    @Test
+    public void testSingleProcess() {
+        packageInfo.activities = new ActivityInfo[] { createActivity(PACKAGE_NAME), createActivity(null) };
+        packageInfo.services = new ServiceInfo[] { createService(PACKAGE_NAME) };
+        packageInfo.receivers = new ActivityInfo[] { createActivity(PACKAGE_NAME) };
+        packageInfo.providers = new ProviderInfo[] { createProvider(PACKAGE_NAME) };
+
+        assertTrue(ManifestUtils.isSingleProcess(mockContext));
+    }
+
+    /**
+     * Test an app without components of a type is single process.
+     */
+    @Test
+    public void testNullComponents() {
+        assertTrue(ManifestUtils.isSingleProcess(mockContext));
+
+        packageInfo.providers = new ProviderInfo[] { createProvider(PACKAGE_NAME) };
+        assertTrue(ManifestUtils.isSingleProcess(mockContext));
+    }
+
+    /**
+     * Test an app with a component in another process is not single process.
+     */
+    @Test
+    public void testComponentInOtherProcess() {
+        packageInfo.activities = new ActivityInfo[] { createActivity(PACKAGE_NAME) };
+        packageInfo.services = new ServiceInfo[] { createService(PACKAGE_NAME + ":remote") };
+
+        assertFalse(ManifestUtils.isSingleProcess(mockContext));
+
+        packageInfo.services = null;
+        packageInfo.providers = new ProviderInfo[] { createProvider(PACKAGE_NAME + ":remote") };
+
+        assertFalse(ManifestUtils.isSingleProcess(mockContext));
+    }
+
+    /**
+     * Test each component type is read with a separate call.
+     */
+    @Test
+    public void testComponentTypesReadSeparately() throws PackageManager.NameNotFoundException {
+        assertTrue(ManifestUtils.isSingleProcess(mockContext));
+
+        verify(mockPackageManager).getPackageInfo(PACKAGE_NAME, PackageManager.GET_ACTIVITIES);
+        verify(mockPackageManager).getPackageInfo(PACKAGE_NAME, PackageManager.GET_SERVICES);
+        verify(mockPackageManager).getPackageInfo(PACKAGE_NAME, PackageManager.GET_RECEIVERS);
+        verify(mockPackageManager).getPackageInfo(PACKAGE_NAME, PackageManager.GET_PROVIDERS);
+        verify(mockPackageManager, times(4)).getPackageInfo(eq(PACKAGE_NAME), anyInt());
+    }
+
+    /**
+     * Test an app whose components can not be read is not single process.
+     */
+    @Test
+    public void testPackageInfoUnavailable() throws PackageManager.NameNotFoundException {
+        when(mockPackageManager.getPackageInfo(eq(PACKAGE_NAME), anyInt())).thenThrow(new PackageManager.NameNotFoundException());
+        assertFalse(ManifestUtils.isSingleProcess(mockContext));
+    }
+
+    private static ActivityInfo createActivity(String processName) {
+        ActivityInfo info = new ActivityInfo();
+        info.processName = processName;
+        return info;
+    }
+
+    private static ServiceInfo createService(String processName) {
+        ServiceInfo info = new ServiceInfo();
+        info.processName = processName;
+        return info;
+    }
+
+    private static ProviderInfo createProvider(String processName) {
+        ProviderInfo info = new ProviderInfo();
+        info.processName = processName;
+        return info;
+    }
+}
@@ -21,6 +21,9 @@ import com.urbanairship.actions.ActionTestUtils;
 import com.urbanairship.actions.ActionValue;
 import com.urbanairship.actions.ActionValueException;
 import com.urbanairship.actions.StubbedActionRunRequest;
+import com.urbanairship.richpush.MessageBodyCache;
+import com.urbanairship.richpush.RichPushInbox;
+import com.urbanairship.richpush.RichPushMessage;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +41,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
@@ -546,4 +550,32 @@ public class UAWebViewClientTest extends BaseTestCase {
         // Verify our callback was called
         verify(completionCallback).onFinish(arguments, result);
     }
+
+    /**
+     * Test only the body of the web view's message is looked up in the message body cache.
+     */
+    @Test
+    public void testInterceptMessageBody() {
+        MessageBodyCache mockCache = mock(MessageBodyCache.class);
+        RichPushInbox mockInbox = mock(RichPushInbox.class);
+        when(mockInbox.getMessageBodyCache()).thenReturn(mockCache);
+        TestApplication.getApplication().setInbox(mockInbox);
+
+        RichPushMessage message = mock(RichPushMessage.class);
+        when(message.getMessageBodyUrl()).thenReturn("https://example.com/message/body/");
+
+        UAWebView messageWebView = mock(UAWebView.class);
+        when(messageWebView.getCurrentMessage()).thenReturn(message);
+
+        // Not a message web view
+        assertNull(client.shouldInterceptRequest(webView, "https://example.com/message/body/"));
+
+        // Sub-resource of the message
+        assertNull(client.shouldInterceptRequest(messageWebView, "https://example.com/message/image.png"));
+        verifyZeroInteractions(mockCache);
+
+        // Message body that is not cached
+        assertNull(client.shouldInterceptRequest(messageWebView, "https://example.com/message/body/"));
+        verify(mockCache).get("https://example.com/message/body/");
+    }
 }